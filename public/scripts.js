@@ -15,6 +15,7 @@ class AppState {
     this.repositories = [];
     this.branches = [];
     this.commits = [];
+    this.expandedChains = [];
     this.loadState();
   }
 
@@ -195,6 +196,7 @@ class ApiClient {
       body: JSON.stringify({
         branch_id_1: sourceBranchId,
         branch_id_2: targetBranchId,
+        include_content: true,
       }),
     });
   }
@@ -220,10 +222,16 @@ class ApiClient {
   /**
    * コミットグラフを取得
    * @param {number} repositoryId - リポジトリID
+   * @param {Object} options - detail（"summary" で直線区間を要約）と expand（展開する要約ノードID）
    * @returns {Promise<Object>} グラフデータ
    */
-  async getGraph(repositoryId) {
-    return this.request(`/graph?repository_id=${repositoryId}`);
+  async getGraph(repositoryId, options = {}) {
+    const params = new URLSearchParams({ repository_id: repositoryId });
+    if (options.detail) params.set("detail", options.detail);
+    if (options.expand && options.expand.length > 0) {
+      params.set("expand", options.expand.join(","));
+    }
+    return this.request(`/graph?${params}`);
   }
 }
 
@@ -292,8 +300,13 @@ class UIHelper {
 
 // Graph Visualization
 class GraphVisualizer {
-  constructor(containerId) {
+  /**
+   * @param {string} containerId - 描画先の要素ID
+   * @param {Function} onExpand - 要約ノードをダブルクリックしたときに呼ばれる関数
+   */
+  constructor(containerId, onExpand = null) {
     this.container = document.getElementById(containerId);
+    this.onExpand = onExpand;
     this.network = null;
   }
 
@@ -308,6 +321,11 @@ class GraphVisualizer {
       return;
     }
 
+    // サーバーで配置済みの場合は座標をそのまま使う
+    const positioned = graphData.nodes.every(
+      (node) => node.x !== undefined && node.y !== undefined
+    );
+
     // ノードの色とスタイルを設定
     const nodes = new vis.DataSet(
       graphData.nodes.map((node) => ({
@@ -317,6 +335,7 @@ class GraphVisualizer {
         color: this.getNodeColor(node),
         font: { size: 12, color: "#24292e" },
         margin: 10,
+        ...(positioned ? { x: node.x, y: node.y } : {}),
       }))
     );
 
@@ -336,7 +355,7 @@ class GraphVisualizer {
     const options = {
       layout: {
         hierarchical: {
-          enabled: true,
+          enabled: !positioned,
           direction: "UD",
           sortMethod: "directed",
           nodeSpacing: 150,
@@ -366,6 +385,14 @@ class GraphVisualizer {
 
     this.container.innerHTML = "";
     this.network = new vis.Network(this.container, { nodes, edges }, options);
+
+    // 要約ノードをダブルクリックすると展開する
+    this.network.on("doubleClick", (params) => {
+      const nodeId = params.nodes[0];
+      if (this.onExpand && typeof nodeId === "string" && nodeId.startsWith("chain-")) {
+        this.onExpand(nodeId);
+      }
+    });
   }
 
   /**
@@ -374,6 +401,13 @@ class GraphVisualizer {
    * @returns {Object} 色設定
    */
   getNodeColor(node) {
+    if (node.summary) {
+      return {
+        background: "#6a737d",
+        border: "#586069",
+        highlight: { background: "#959da5", border: "#586069" },
+      };
+    }
     if (node.shape === "ellipse" || node.branch) {
       return {
         background: "#d73a49",
@@ -407,7 +441,10 @@ class GraphVisualizer {
 // Application Controller
 class AppController {
   constructor() {
-    this.graphVisualizer = new GraphVisualizer("graphVisualization");
+    this.graphVisualizer = new GraphVisualizer("graphVisualization", (chainId) => {
+      appState.expandedChains.push(chainId);
+      this.refreshGraph();
+    });
     this.initializeEventListeners();
     this.initialize();
   }
@@ -545,6 +582,7 @@ class AppController {
       appState.currentRepository = appState.repositories.find(
         (r) => r.id == repoId
       );
+      appState.expandedChains = [];
       await this.loadBranches();
       await this.refreshGraph();
       appState.saveState();
@@ -877,7 +915,11 @@ class AppController {
     if (!appState.currentRepository) return;
 
     try {
-      const graphData = await apiClient.getGraph(appState.currentRepository.id);
+      // 直線区間を要約し、ダブルクリックで展開した区間だけを個別に表示する
+      const graphData = await apiClient.getGraph(appState.currentRepository.id, {
+        detail: "summary",
+        expand: appState.expandedChains,
+      });
       this.graphVisualizer.drawGraph(graphData);
     } catch (error) {
       UIHelper.showStatus(`グラフ更新エラー: ${error.message}`, "error");
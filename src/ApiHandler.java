@@ -3,6 +3,8 @@ package src;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
 
@@ -32,8 +34,24 @@ class UserHandler extends BaseApiHandler {
  * リポジトリ管理ハンドラー
  */
 class RepositoryHandler extends BaseApiHandler {
+    private final BundleManager bundleManager;
+
+    public RepositoryHandler() {
+        super();
+        this.bundleManager = new BundleManager();
+    }
+
     @Override
     protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/export")) {
+            handleExport(exchange, method, path);
+            return;
+        }
+        if (path.endsWith("/import")) {
+            handleImport(exchange, method);
+            return;
+        }
         switch (method) {
             case "GET" -> {
                 String query = exchange.getRequestURI().getQuery();
@@ -59,19 +77,76 @@ class RepositoryHandler extends BaseApiHandler {
     }
 
     /**
-     * クエリパラメータを抽出
-     * 
-     * @param query クエリ文字列
-     * @param param パラメータ名
-     * @return パラメータ値
+     * /api/repository/{id}/export: リポジトリをバンドルとしてストリーミングで返す（compress=false で非圧縮）
      */
-    private String extractQueryParam(String query, String param) {
-        for (String p : query.split("&")) {
-            if (p.startsWith(param + "=")) {
-                return p.substring(param.length() + 1);
+    private void handleExport(HttpExchange exchange, String method, String path) throws IOException {
+        if (!"GET".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        String[] segments = path.split("/");
+        int repositoryId;
+        try {
+            repositoryId = Integer.parseInt(segments[segments.length - 2]);
+        } catch (NumberFormatException e) {
+            sendErrorResponse(exchange, "Invalid repository id");
+            return;
+        }
+        if (bundleManager.getRepositoryName(repositoryId) == null) {
+            sendErrorResponse(exchange, "Repository not found");
+            return;
+        }
+
+        boolean compress = !"false".equals(extractQueryParam(exchange.getRequestURI().getQuery(), "compress"));
+        Path spool;
+        try {
+            // ロックを保持したまま一時ファイルへ書き出し、転送はロックを外してから行う
+            spool = bundleManager.exportToFile(repositoryId, compress);
+        } catch (IOException e) {
+            System.err.println("Bundle export error: " + e.getMessage());
+            sendErrorResponse(exchange, "Bundle export failed");
+            return;
+        }
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().set("Content-Disposition",
+                    "attachment; filename=\"repository-" + repositoryId + (compress ? ".bundle.gz" : ".bundle") + "\"");
+            exchange.sendResponseHeaders(200, Files.size(spool));
+            try (OutputStream os = exchange.getResponseBody()) {
+                Files.copy(spool, os);
             }
+        } finally {
+            Files.deleteIfExists(spool);
         }
-        return "";
+    }
+
+    /**
+     * /api/repository/import?owner_id=&name=: リクエストボディのバンドルから新しいリポジトリを作成
+     */
+    private void handleImport(HttpExchange exchange, String method) throws IOException {
+        if (!"POST".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        Integer ownerId = extractIntQueryParam(query, "owner_id");
+        if (ownerId == null) {
+            sendErrorResponse(exchange, "owner_id is required");
+            return;
+        }
+        String name = java.net.URLDecoder.decode(extractQueryParam(query, "name"), "UTF-8");
+
+        BundleManager.ImportResult result;
+        try (InputStream in = exchange.getRequestBody()) {
+            result = bundleManager.importBundle(in, ownerId, name.isEmpty() ? null : name);
+        } catch (IOException e) {
+            System.err.println("Bundle import error: " + e.getMessage());
+            sendErrorResponse(exchange, escapeJson(e.getMessage()));
+            return;
+        }
+        sendJsonResponse(exchange, String.format(
+                "{\"success\":true,\"repository_id\":%d,\"commits\":%d,\"files\":%d,\"branches\":%d}",
+                result.repositoryId(), result.commits(), result.files(), result.branches()));
     }
 }
 
@@ -92,7 +167,7 @@ class BranchHandler extends BaseApiHandler {
                     }
                 }
                 List<Map<String, Object>> branches = dbManager.getBranches(repositoryId);
-                sendJsonResponse(exchange, listToJson(branches, "branches"));
+                sendList(exchange, branches, "branches");
             }
             case "POST" -> {
                 String requestBody = readRequestBody(exchange);
@@ -104,22 +179,6 @@ class BranchHandler extends BaseApiHandler {
             default -> exchange.sendResponseHeaders(405, -1);
         }
     }
-
-    /**
-     * クエリパラメータを抽出
-     * 
-     * @param query クエリ文字列
-     * @param param パラメータ名
-     * @return パラメータ値
-     */
-    private String extractQueryParam(String query, String param) {
-        for (String p : query.split("&")) {
-            if (p.startsWith(param + "=")) {
-                return p.substring(param.length() + 1);
-            }
-        }
-        return "";
-    }
 }
 
 /**
@@ -135,28 +194,45 @@ class CommitHandler extends BaseApiHandler {
 
     @Override
     protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestURI().getPath().endsWith("/upload")) {
+            handleUpload(exchange, method);
+            return;
+        }
         switch (method) {
             case "GET" -> {
                 String query = exchange.getRequestURI().getQuery();
-                Integer repositoryId = null;
-                if (query != null && query.contains("repository_id=")) {
-                    String repoIdStr = extractQueryParam(query, "repository_id");
-                    if (!repoIdStr.isEmpty()) {
-                        repositoryId = Integer.valueOf(repoIdStr);
-                    }
+                Integer limit = extractIntQueryParam(query, "limit");
+                String since = java.net.URLDecoder.decode(extractQueryParam(query, "since"), "UTF-8");
+                String until = java.net.URLDecoder.decode(extractQueryParam(query, "until"), "UTF-8");
+                List<CommitManager.CommitRecord> commits = commitManager.getCommits(
+                        extractIntQueryParam(query, "repository_id"),
+                        extractIntQueryParam(query, "author_id"),
+                        since.isEmpty() ? null : since,
+                        until.isEmpty() ? null : until,
+                        extractIntQueryParam(query, "before_id"),
+                        limit != null ? limit : CommitManager.DEFAULT_PAGE_SIZE);
+                Integer nextBeforeId = nextBeforeId(commits, limit != null ? limit : CommitManager.DEFAULT_PAGE_SIZE);
+                if (acceptsMessagePack(exchange)) {
+                    sendMessagePack(exchange, commitsToMessagePack(commits, nextBeforeId));
+                } else {
+                    sendJsonResponse(exchange, commitsToJson(commits, nextBeforeId));
                 }
-                List<Map<String, Object>> commits = commitManager.getCommits(repositoryId);
-                sendJsonResponse(exchange, listToJson(commits, "commits"));
             }
             case "POST" -> {
                 String requestBody = readRequestBody(exchange);
                 String branchIdStr = extractJsonField(requestBody, "branch_id");
                 String message = extractJsonField(requestBody, "message");
                 String authorIdStr = extractJsonField(requestBody, "author_id");
-                String content = extractJsonField(requestBody, "content");
+                Map<String, String> changes = extractJsonStringMap(requestBody, "files");
+                if (changes == null) {
+                    changes = new LinkedHashMap<>();
+                    changes.put(CommitManager.DEFAULT_FILENAME, extractJsonField(requestBody, "content"));
+                } else if (requestBody.contains("\"content\":")) {
+                    changes.putIfAbsent(CommitManager.DEFAULT_FILENAME, extractJsonField(requestBody, "content"));
+                }
 
                 CommitManager.CreateCommitCommand command = commitManager.new CreateCommitCommand(
-                        Integer.parseInt(branchIdStr), message, Integer.parseInt(authorIdStr), content);
+                        Integer.parseInt(branchIdStr), message, Integer.parseInt(authorIdStr), changes);
                 boolean success = commitManager.executeCommitCommand(command);
                 sendJsonResponse(exchange, String.format("{\"success\":%s}", success));
             }
@@ -165,19 +241,86 @@ class CommitHandler extends BaseApiHandler {
     }
 
     /**
-     * クエリパラメータを抽出
+     * /api/commit/upload?branch_id=&author_id=&filename=&message=: リクエストボディをそのままファイル内容としてコミット
+     *
+     * ボディは一定の大きさずつ読み込んで圧縮するため、元の内容全体をメモリに保持しない
+     */
+    private void handleUpload(HttpExchange exchange, String method) throws IOException {
+        if (!"POST".equals(method) && !"PUT".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        Integer branchId = extractIntQueryParam(query, "branch_id");
+        Integer authorId = extractIntQueryParam(query, "author_id");
+        String filename = java.net.URLDecoder.decode(extractQueryParam(query, "filename"), "UTF-8");
+        String message = java.net.URLDecoder.decode(extractQueryParam(query, "message"), "UTF-8");
+        if (branchId == null || authorId == null || filename.isEmpty()) {
+            sendErrorResponse(exchange, "branch_id, author_id and filename are required");
+            return;
+        }
+        checkContentLength(exchange, CommitManager.UPLOAD_MAX_BYTES);
+
+        ContentCodec.StreamedContent content;
+        try (InputStream in = exchange.getRequestBody()) {
+            content = ContentCodec.encode(in, CommitManager.UPLOAD_MAX_BYTES, SearchIndex.MAX_INDEXED_CHARS);
+        } catch (java.nio.charset.CharacterCodingException e) {
+            sendErrorResponse(exchange, "Content must be UTF-8");
+            return;
+        }
+        boolean success = commitManager.executeCommitCommand(commitManager.new UploadFileCommand(
+                branchId, message.isEmpty() ? "Upload " + filename : message, authorId, filename, content));
+        sendJsonResponse(exchange, String.format("{\"success\":%s,\"size\":%d,\"content_hash\":\"%s\"}",
+                success, content.size(), content.hash()));
+    }
+
+    /**
+     * 次のページを取得するための before_id を計算
      * 
-     * @param query クエリ文字列
-     * @param param パラメータ名
-     * @return パラメータ値
+     * @param commits コミットリスト
+     * @param limit   要求した件数
+     * @return 次のページがある場合は最後のコミットID、ない場合はnull
      */
-    private String extractQueryParam(String query, String param) {
-        for (String p : query.split("&")) {
-            if (p.startsWith(param + "=")) {
-                return p.substring(param.length() + 1);
-            }
+    private Integer nextBeforeId(List<CommitManager.CommitRecord> commits, int limit) {
+        boolean hasMore = !commits.isEmpty() && commits.size() >= Math.min(limit, CommitManager.MAX_PAGE_SIZE);
+        return hasMore ? commits.get(commits.size() - 1).id() : null;
+    }
+
+    /**
+     * コミット一覧をJSONに変換
+     * 
+     * @param commits      コミットリスト
+     * @param nextBeforeId 次のページの before_id（ない場合はnull）
+     * @return JSON文字列
+     */
+    private String commitsToJson(List<CommitManager.CommitRecord> commits, Integer nextBeforeId) {
+        StringBuilder json = new StringBuilder(commits.size() * 160 + 48);
+        json.append("{\"commits\": [");
+        for (int i = 0; i < commits.size(); i++) {
+            if (i > 0)
+                json.append(",");
+            appendCommitJson(json, commits.get(i));
         }
-        return "";
+        json.append("],\"next_before_id\":").append(nextBeforeId);
+        json.append("}");
+        return json.toString();
+    }
+
+    /**
+     * コミット一覧をMessagePackに変換（構造はJSONと同じ）
+     * 
+     * @param commits      コミットリスト
+     * @param nextBeforeId 次のページの before_id（ない場合はnull）
+     * @return 書き込み済みのエンコーダー
+     */
+    private MessagePackWriter commitsToMessagePack(List<CommitManager.CommitRecord> commits, Integer nextBeforeId) {
+        MessagePackWriter writer = new MessagePackWriter(commits.size() * 96 + 32);
+        writer.mapHeader(2).string("commits").arrayHeader(commits.size());
+        for (CommitManager.CommitRecord commit : commits) {
+            writeCommit(writer, commit);
+        }
+        writer.string("next_before_id").value(nextBeforeId);
+        return writer;
     }
 }
 
@@ -194,8 +337,16 @@ class FileHandler extends BaseApiHandler {
 
     @Override
     protected void handleRequest(HttpExchange exchange, String method) throws IOException {
-        if ("GET".equals(method)) {
+        if ("GET".equals(method) || "HEAD".equals(method)) {
             String query = exchange.getRequestURI().getQuery();
+            String commitIdStr = extractQueryParam(query, "commit_id");
+            if (!commitIdStr.isEmpty()) {
+                String filename = java.net.URLDecoder.decode(extractQueryParam(query, "filename"), "UTF-8");
+                if (filename.isEmpty())
+                    filename = CommitManager.DEFAULT_FILENAME;
+                sendRawContent(exchange, Integer.parseInt(commitIdStr), filename, "HEAD".equals(method));
+                return;
+            }
             if (query != null && query.contains("branch_id=")) {
                 String branchIdStr = extractQueryParam(query, "branch_id");
                 if (!branchIdStr.isEmpty()) {
@@ -212,19 +363,100 @@ class FileHandler extends BaseApiHandler {
     }
 
     /**
-     * クエリパラメータを抽出
+     * 指定コミットのファイル内容をそのまま送信（Rangeヘッダー対応）
      * 
-     * @param query クエリ文字列
-     * @param param パラメータ名
-     * @return パラメータ値
+     * @param exchange HTTPエクスチェンジ
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @param headOnly ヘッダーのみ送信する場合true
+     * @throws IOException IO例外
+     */
+    private void sendRawContent(HttpExchange exchange, int commitId, String filename, boolean headOnly)
+            throws IOException {
+        long total = commitManager.getContentLength(commitId, filename);
+        if (total < 0) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        long start = 0;
+        long end = total - 1;
+        int status = 200;
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            long[] parsed = parseRange(range, total);
+            if (parsed == null) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + total);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            start = parsed[0];
+            end = parsed[1];
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        }
+
+        long length = end - start + 1;
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        if (headOnly || length <= 0) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(Math.max(length, 0)));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        try (InputStream in = commitManager.openContentRange(commitId, filename, start, length)) {
+            if (in == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                in.transferTo(os);
+            }
+        }
+    }
+
+    /**
+     * Rangeヘッダー（単一範囲）を解析
+     * 
+     * @param header Rangeヘッダーの値
+     * @param total  内容の全バイト長
+     * @return {開始, 終了}（満たせない範囲の場合はnull）
      */
-    private String extractQueryParam(String query, String param) {
-        for (String p : query.split("&")) {
-            if (p.startsWith(param + "=")) {
-                return p.substring(param.length() + 1);
+    private long[] parseRange(String header, long total) {
+        if (!header.startsWith("bytes=") || header.contains(","))
+            return null;
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 末尾からのバイト数指定（bytes=-N）
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0)
+                    return null;
+                start = Math.max(0, total - suffix);
+                end = total - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? total - 1 : Math.min(Long.parseLong(last), total - 1);
             }
+            if (start >= total || start > end)
+                return null;
+            if (end - start + 1 > Integer.MAX_VALUE)
+                end = start + Integer.MAX_VALUE - 1;
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return "";
     }
 }
 
@@ -233,51 +465,137 @@ class FileHandler extends BaseApiHandler {
  */
 class MergeHandler extends BaseApiHandler {
     private final MergeManager mergeManager;
+    private final CommitManager commitManager;
 
     public MergeHandler() {
         super();
         this.mergeManager = new MergeManager();
+        this.commitManager = new CommitManager();
     }
 
     @Override
     protected void handleRequest(HttpExchange exchange, String method) throws IOException {
         if ("POST".equals(method)) {
             String requestBody = readRequestBody(exchange);
-            String branchId1Str = extractJsonField(requestBody, "branch_id_1");
-            String branchId2Str = extractJsonField(requestBody, "branch_id_2");
+            boolean includeContent = "true".equals(extractJsonField(requestBody, "include_content"));
 
-            int branchId1 = Integer.parseInt(branchId1Str);
-            int branchId2 = Integer.parseInt(branchId2Str);
+            // branch_ids を指定した場合は全ブランチを1つのマージコミットにまとめる
+            List<Integer> branchIds = extractJsonIntArray(requestBody, "branch_ids");
+            if (branchIds == null) {
+                branchIds = List.of(Integer.parseInt(extractJsonField(requestBody, "branch_id_1")),
+                        Integer.parseInt(extractJsonField(requestBody, "branch_id_2")));
+            } else if (branchIds.isEmpty()) {
+                sendErrorResponse(exchange, "branch_ids is empty");
+                return;
+            }
+            List<Integer> targetBranchIds = branchIds;
 
-            MergeResult result = mergeManager.performStrictMerge(branchId1, branchId2);
+            // async=true の場合はジョブとして登録し、結果は /api/jobs/{id} で取得する
+            if ("true".equals(extractJsonField(requestBody, "async"))) {
+                Integer repositoryId = commitManager.getBranchRepositoryId(targetBranchIds.get(0));
+                if (repositoryId == null) {
+                    sendErrorResponse(exchange, "Branch not found");
+                    return;
+                }
+                MergeJobQueue.MergeJob job = MergeJobQueue.getInstance().submit(repositoryId,
+                        () -> mergeManager.performOctopusMerge(targetBranchIds, includeContent));
+                if (job == null) {
+                    sendErrorResponse(exchange, "Too many pending merge jobs");
+                    return;
+                }
+                sendJsonResponse(exchange, String.format("{\"success\":true,\"job_id\":%d,\"status\":\"%s\"}",
+                        job.getId(), job.getStatus().name().toLowerCase()));
+                return;
+            }
 
-            if (result instanceof MergeResult.Success success) {
-                sendJsonResponse(exchange, String.format("{\"success\":true,\"message\":\"%s\"}", success.message()));
-            } else if (result instanceof MergeResult.Conflict conflict) {
-                String json = String.format(
-                        "{\"success\":false,\"branch_id_1\":%d,\"text_1\":\"%s\",\"branch_id_2\":%d,\"text_2\":\"%s\"}",
-                        conflict.branchId1(), escapeJson(conflict.content1()), conflict.branchId2(), escapeJson(conflict.content2()));
-                sendJsonResponse(exchange, json);
+            sendJsonResponse(exchange, mergeResultToJson(mergeManager.performOctopusMerge(targetBranchIds, includeContent)));
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+}
+
+/**
+ * 非同期ジョブハンドラー（/api/jobs/{id}）
+ */
+class JobHandler extends BaseApiHandler {
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String path = exchange.getRequestURI().getPath();
+            String idStr = path.substring(path.lastIndexOf('/') + 1);
+            MergeJobQueue.MergeJob job = null;
+            try {
+                job = MergeJobQueue.getInstance().getJob(Integer.parseInt(idStr));
+            } catch (NumberFormatException ignored) {
+            }
+            if (job == null) {
+                sendErrorResponse(exchange, "Job not found");
+                return;
+            }
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"id\":").append(job.getId())
+                    .append(",\"repository_id\":").append(job.getRepositoryId())
+                    .append(",\"status\":\"").append(job.getStatus().name().toLowerCase()).append("\"");
+            if (job.getResult() != null) {
+                json.append(",\"result\":").append(mergeResultToJson(job.getResult()));
             }
+            if (job.getError() != null) {
+                json.append(",\"error\":").append(valueToJson(job.getError()));
+            }
+            json.append("}");
+            sendJsonResponse(exchange, json.toString());
         } else {
             exchange.sendResponseHeaders(405, -1);
         }
     }
+}
 
-    /**
-     * JSON用文字列エスケープ
-     * 
-     * @param str エスケープする文字列
-     * @return エスケープされた文字列
-     */
-    private String escapeJson(String str) {
-        if (str == null)
-            return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+/**
+ * マージプレビューハンドラー
+ */
+class MergePreviewHandler extends BaseApiHandler {
+    private final MergeManager mergeManager;
+
+    public MergePreviewHandler() {
+        super();
+        this.mergeManager = new MergeManager();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer branchId1 = extractIntQueryParam(query, "branch_id_1");
+            Integer branchId2 = extractIntQueryParam(query, "branch_id_2");
+            if (branchId1 == null || branchId2 == null) {
+                sendErrorResponse(exchange, "branch_id_1 and branch_id_2 are required");
+                return;
+            }
+
+            MergeManager.MergePreview preview = mergeManager.previewMerge(branchId1, branchId2);
+            if (preview == null) {
+                sendErrorResponse(exchange, "Branch not found");
+                return;
+            }
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"branch_id_1\":").append(preview.branchId1())
+                    .append(",\"head_commit_id_1\":").append(preview.headCommitId1())
+                    .append(",\"branch_id_2\":").append(preview.branchId2())
+                    .append(",\"head_commit_id_2\":").append(preview.headCommitId2())
+                    .append(",\"outcome\":\"").append(preview.outcome().name().toLowerCase()).append("\"")
+                    .append(",\"fast_forward_to\":")
+                    .append(preview.targetCommitId() != 0 ? String.valueOf(preview.targetCommitId()) : "null")
+                    .append(",\"hunks\":");
+            appendHunksJson(json, preview.hunks());
+            json.append("}");
+            sendJsonResponse(exchange, json.toString());
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
     }
 }
 
@@ -296,14 +614,21 @@ class ForceMergeHandler extends BaseApiHandler {
     protected void handleRequest(HttpExchange exchange, String method) throws IOException {
         if ("POST".equals(method)) {
             String requestBody = readRequestBody(exchange);
-            String branchId1Str = extractJsonField(requestBody, "branch_id_1");
-            String branchId2Str = extractJsonField(requestBody, "branch_id_2");
             String text = extractJsonField(requestBody, "text");
 
-            int branchId1 = Integer.parseInt(branchId1Str);
-            int branchId2 = Integer.parseInt(branchId2Str);
-
-            MergeResult result = mergeManager.performForceMerge(branchId1, branchId2, text);
+            List<Integer> branchIds = extractJsonIntArray(requestBody, "branch_ids");
+            MergeResult result;
+            if (branchIds != null) {
+                if (branchIds.isEmpty()) {
+                    sendErrorResponse(exchange, "branch_ids is empty");
+                    return;
+                }
+                result = mergeManager.performForceMerge(branchIds, text);
+            } else {
+                int branchId1 = Integer.parseInt(extractJsonField(requestBody, "branch_id_1"));
+                int branchId2 = Integer.parseInt(extractJsonField(requestBody, "branch_id_2"));
+                result = mergeManager.performForceMerge(branchId1, branchId2, text);
+            }
 
             if (result instanceof MergeResult.Success success) {
                 sendJsonResponse(exchange, String.format("{\"success\":true,\"message\":\"%s\"}", success.message()));
@@ -328,8 +653,23 @@ class GraphHandler extends BaseApiHandler {
                 String repoIdStr = extractQueryParam(query, "repository_id");
                 if (!repoIdStr.isEmpty()) {
                     int repositoryId = Integer.parseInt(repoIdStr);
-                    String graphJson = generateGraphJson(repositoryId);
-                    sendJsonResponse(exchange, graphJson);
+                    try {
+                        // 書き込みがなければキャッシュ済みのバイト列をそのまま返す
+                        GraphCache.Payload payload;
+                        if ("summary".equals(extractQueryParam(query, "detail"))) {
+                            payload = GraphCache.getInstance().getSummaryPayload(repositoryId, parseExpand(query));
+                        } else {
+                            payload = GraphCache.getInstance().getPayload(repositoryId);
+                        }
+                        if (acceptsMessagePack(exchange)) {
+                            sendMessagePack(exchange, payload.msgpack());
+                        } else {
+                            sendJsonBytes(exchange, payload.json(), acceptsGzip(exchange) ? payload.gzip() : null);
+                        }
+                    } catch (SQLException e) {
+                        System.err.println("Graph generation error: " + e.getMessage());
+                        sendJsonResponse(exchange, "{\"nodes\":[],\"edges\":[],\"error\":\"" + escapeJson(e.getMessage()) + "\"}");
+                    }
                     return;
                 }
             }
@@ -340,110 +680,408 @@ class GraphHandler extends BaseApiHandler {
     }
 
     /**
-     * グラフJSONを生成
+     * 展開する要約ノードを取得（"chain-12,chain-40" または "12,40" 形式）
      * 
-     * @param repositoryId リポジトリID
-     * @return グラフJSON
+     * @param query クエリ文字列
+     * @return 要約ノードの先頭コミットID
      */
-    private String generateGraphJson(int repositoryId) {
-        List<String> nodes = new ArrayList<>();
-        List<String> edges = new ArrayList<>();
-
-        try (Connection conn = dbManager.getConnection()) {
-            // コミットノード作成
-            String commitSql = "SELECT id, message, parent_commit_id, parent_commit_id_2 FROM git_commit WHERE repository_id = ? ORDER BY id";
-            try (PreparedStatement stmt = conn.prepareStatement(commitSql)) {
-                stmt.setInt(1, repositoryId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        int commitId = rs.getInt("id");
-                        String message = rs.getString("message");
-                        int parentId = rs.getInt("parent_commit_id");
-                        int parentId2 = rs.getInt("parent_commit_id_2");
-
-                        // コミットノード追加
-                        nodes.add(String.format(
-                                "{\"id\":%d,\"label\":\"%s\",\"shape\":\"box\"}",
-                                commitId, escapeJson(message)));
-
-                        // 親コミットへのエッジ
-                        if (parentId != 0) {
-                            edges.add(String.format("{\"from\":%d,\"to\":%d}", parentId, commitId));
-                        }
+    private Set<Integer> parseExpand(String query) {
+        Set<Integer> expand = new HashSet<>();
+        for (String id : extractQueryParam(query, "expand").split(",")) {
+            id = id.trim();
+            if (id.startsWith("chain-"))
+                id = id.substring("chain-".length());
+            if (!id.isEmpty())
+                expand.add(Integer.parseInt(id));
+        }
+        return expand;
+    }
+}
 
-                        // 2番目の親コミットへのエッジ（マージコミット）
-                        if (parentId2 != 0) {
-                            edges.add(String.format(
-                                    "{\"from\":%d,\"to\":%d,\"dashes\":true,\"color\":\"#28a745\"}",
-                                    parentId2, commitId));
-                        }
-                    }
-                }
+/**
+ * 差分ハンドラー
+ */
+class DiffHandler extends BaseApiHandler {
+    private final DiffManager diffManager;
+
+    public DiffHandler() {
+        super();
+        this.diffManager = new DiffManager();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            String fromStr = extractQueryParam(query, "from");
+            String toStr = extractQueryParam(query, "to");
+            if (fromStr.isEmpty() || toStr.isEmpty()) {
+                sendErrorResponse(exchange, "from and to are required");
+                return;
             }
 
-            // ブランチノード作成
-            String branchSql = "SELECT id, name, head_commit_id FROM branch WHERE repository_id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(branchSql)) {
-                stmt.setInt(1, repositoryId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        int branchId = rs.getInt("id");
-                        String branchName = rs.getString("name");
-                        int headCommitId = rs.getInt("head_commit_id");
-
-                        if (headCommitId != 0) {
-                            // ブランチノード追加
-                            nodes.add(String.format(
-                                    "{\"id\":\"branch-%d\",\"label\":\"%s\",\"shape\":\"ellipse\",\"color\":\"#d73a49\"}",
-                                    branchId, escapeJson(branchName)));
-
-                            // ブランチからコミットへのエッジ
-                            edges.add(String.format(
-                                    "{\"from\":\"branch-%d\",\"to\":%d,\"color\":\"#d73a49\",\"label\":\"%s\"}",
-                                    branchId, headCommitId, escapeJson(branchName)));
-                        }
-                    }
-                }
+            String filename = java.net.URLDecoder.decode(extractQueryParam(query, "filename"), "UTF-8");
+            DiffManager.DiffResult result = diffManager.diff(Integer.parseInt(fromStr), Integer.parseInt(toStr),
+                    filename.isEmpty() ? null : filename);
+            if (result == null) {
+                sendErrorResponse(exchange, "Commit not found");
+                return;
             }
 
-        } catch (SQLException e) {
-            System.err.println("Graph generation error: " + e.getMessage());
-            return "{\"nodes\":[],\"edges\":[],\"error\":\"" + e.getMessage() + "\"}";
+            if ("unified".equals(extractQueryParam(query, "format"))) {
+                sendTextResponse(exchange, DiffManager.toUnified(result));
+                return;
+            }
+            sendJsonResponse(exchange, diffToJson(result));
+        } else {
+            exchange.sendResponseHeaders(405, -1);
         }
-
-        return String.format("{\"nodes\":[%s],\"edges\":[%s]}",
-                String.join(",", nodes), String.join(",", edges));
     }
 
     /**
-     * クエリパラメータを抽出
+     * 差分結果をJSONに変換
      * 
-     * @param query クエリ文字列
-     * @param param パラメータ名
-     * @return パラメータ値
+     * @param result 差分結果
+     * @return JSON文字列
+     */
+    private String diffToJson(DiffManager.DiffResult result) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"from\":").append(result.fromCommitId())
+                .append(",\"to\":").append(result.toCommitId())
+                .append(",\"files\":[");
+        for (int i = 0; i < result.files().size(); i++) {
+            DiffManager.FileDiff file = result.files().get(i);
+            if (i > 0)
+                json.append(",");
+            json.append("{\"filename\":\"").append(escapeJson(file.filename()))
+                    .append("\",\"status\":\"").append(file.status().label())
+                    .append("\",\"hunks\":");
+            appendHunksJson(json, file.hunks());
+            json.append("}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+}
+
+/**
+ * ブランチ履歴ハンドラー
+ */
+class LogHandler extends BaseApiHandler {
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final CommitManager commitManager;
+
+    public LogHandler() {
+        super();
+        this.commitManager = new CommitManager();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer branchId = extractIntQueryParam(query, "branch_id");
+            if (branchId == null) {
+                sendErrorResponse(exchange, "branch_id is required");
+                return;
+            }
+            Integer headCommitId = commitManager.getBranchHeadCommitId(branchId);
+            if (headCommitId == null) {
+                sendErrorResponse(exchange, "Branch not found");
+                return;
+            }
+            Integer limit = extractIntQueryParam(query, "limit");
+            boolean firstParent = "true".equals(extractQueryParam(query, "first_parent"));
+
+            // 見つかった順に書き出す（チャンク転送）。途中で失敗した場合は閉じずに例外を投げ、
+            // 終端のない応答として打ち切る（途中までの履歴を完全なJSONとして返さない）
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"));
+            writer.write("{\"branch_id\":" + branchId + ",\"commits\":[");
+            if (headCommitId != 0) {
+                boolean[] first = { true };
+                StringBuilder json = new StringBuilder(256);
+                commitManager.walkLog(headCommitId, limit != null ? limit : DEFAULT_LIMIT, firstParent, commit -> {
+                    json.setLength(0);
+                    if (!first[0])
+                        json.append(",");
+                    first[0] = false;
+                    appendCommitJson(json, commit);
+                    writer.append(json);
+                });
+            }
+            writer.write("]}");
+            writer.close();
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+}
+
+/**
+ * 全文検索ハンドラー
+ */
+class SearchHandler extends BaseApiHandler {
+    private final SearchIndex searchIndex;
+
+    public SearchHandler() {
+        super();
+        this.searchIndex = new SearchIndex();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer repositoryId = extractIntQueryParam(query, "repository_id");
+            String q = java.net.URLDecoder.decode(extractQueryParam(query, "q"), "UTF-8");
+            if (repositoryId == null || q.isBlank()) {
+                sendErrorResponse(exchange, "repository_id and q are required");
+                return;
+            }
+            Integer limit = extractIntQueryParam(query, "limit");
+            Integer offset = extractIntQueryParam(query, "offset");
+            SearchIndex.SearchPage page = searchIndex.search(repositoryId, q,
+                    limit != null ? limit : SearchIndex.DEFAULT_PAGE_SIZE, offset != null ? offset : 0);
+
+            StringBuilder json = new StringBuilder(page.hits().size() * 200 + 64);
+            json.append("{\"results\": [");
+            for (int i = 0; i < page.hits().size(); i++) {
+                SearchIndex.SearchHit hit = page.hits().get(i);
+                if (i > 0)
+                    json.append(",");
+                json.append("{\"type\":\"").append(hit.fileId() != null ? "file" : "commit").append("\"");
+                json.append(",\"commit_id\":").append(hit.commitId());
+                json.append(",\"file_id\":").append(hit.fileId());
+                json.append(",\"filename\":")
+                        .append(hit.filename() != null ? "\"" + escapeJson(hit.filename()) + "\"" : "null");
+                json.append(",\"message\":\"").append(escapeJson(hit.message())).append("\"");
+                json.append(",\"snippet\":\"").append(escapeJson(hit.snippet())).append("\"");
+                json.append(",\"score\":").append(hit.score()).append("}");
+            }
+            json.append("],\"next_offset\":").append(page.nextOffset()).append("}");
+            sendJsonResponse(exchange, json.toString());
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+}
+
+/**
+ * 行ごとの最終変更コミット（blame）ハンドラー
+ */
+class BlameHandler extends BaseApiHandler {
+    private final BlameManager blameManager;
+
+    public BlameHandler() {
+        super();
+        this.blameManager = new BlameManager();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer branchId = extractIntQueryParam(query, "branch_id");
+            if (branchId == null) {
+                sendErrorResponse(exchange, "branch_id is required");
+                return;
+            }
+            String filename = java.net.URLDecoder.decode(extractQueryParam(query, "filename"), "UTF-8");
+            BlameManager.BlameResult result = blameManager.blame(branchId,
+                    filename.isEmpty() ? CommitManager.DEFAULT_FILENAME : filename);
+            if (result == null) {
+                sendErrorResponse(exchange, "File not found");
+                return;
+            }
+
+            StringBuilder json = new StringBuilder(result.lines().size() * 120 + 96);
+            json.append("{\"branch_id\":").append(branchId)
+                    .append(",\"commit_id\":").append(result.commitId())
+                    .append(",\"filename\":\"").append(escapeJson(result.filename()))
+                    .append("\",\"lines\":[");
+            for (int i = 0; i < result.lines().size(); i++) {
+                BlameManager.BlameLine line = result.lines().get(i);
+                if (i > 0)
+                    json.append(",");
+                json.append("{\"line\":").append(line.line())
+                        .append(",\"commit_id\":").append(line.commitId())
+                        .append(",\"author_id\":").append(line.authorId())
+                        .append(",\"author\":").append(valueToJson(line.author()))
+                        .append(",\"created_at\":").append(valueToJson(line.createdAt()))
+                        .append(",\"text\":\"").append(escapeJson(line.text())).append("\"}");
+            }
+            json.append("]}");
+            sendJsonResponse(exchange, json.toString());
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+}
+
+/**
+ * 祖先関係ハンドラー
+ */
+class AncestryHandler extends BaseApiHandler {
+    private final CommitGraph commitGraph;
+
+    public AncestryHandler() {
+        super();
+        this.commitGraph = new CommitGraph();
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer commitIdA = extractIntQueryParam(query, "a");
+            Integer commitIdB = extractIntQueryParam(query, "b");
+            if (commitIdA == null || commitIdB == null) {
+                sendErrorResponse(exchange, "a and b are required");
+                return;
+            }
+
+            CommitGraph.Ancestry ancestry = commitGraph.getAncestry(commitIdA, commitIdB);
+            if (ancestry == null) {
+                sendErrorResponse(exchange, "Commit not found");
+                return;
+            }
+            sendJsonResponse(exchange, String.format(
+                    "{\"a\":%d,\"b\":%d,\"a_is_ancestor_of_b\":%s,\"b_is_ancestor_of_a\":%s,\"merge_base\":%s}",
+                    ancestry.commitIdA(), ancestry.commitIdB(), ancestry.aAncestorOfB(), ancestry.bAncestorOfA(),
+                    ancestry.mergeBase() != 0 ? String.valueOf(ancestry.mergeBase()) : "null"));
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+}
+
+/**
+ * ガベージコレクションハンドラー
+ */
+class GcHandler extends BaseApiHandler {
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        GarbageCollector collector = GarbageCollector.getInstance();
+        if ("GET".equals(method)) {
+            sendJsonResponse(exchange, resultToJson(collector.getLastResult()));
+        } else if ("POST".equals(method)) {
+            GarbageCollector.GcResult result = collector.run();
+            if (result == null) {
+                sendErrorResponse(exchange, "Garbage collection failed");
+                return;
+            }
+            sendJsonResponse(exchange, resultToJson(result));
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+
+    /**
+     * 実行結果をJSONに変換
+     *
+     * @param result 実行結果（未実行の場合はnull）
+     * @return JSON
      */
-    private String extractQueryParam(String query, String param) {
-        for (String p : query.split("&")) {
-            if (p.startsWith(param + "=")) {
-                return p.substring(param.length() + 1);
+    private String resultToJson(GarbageCollector.GcResult result) {
+        if (result == null)
+            return "{\"last_run\":null}";
+        return String.format(
+                "{\"last_run\":{\"repositories\":%d,\"deleted_commits\":%d,\"deleted_files\":%d,\"deleted_trees\":%d,\"retained_commits\":%d,\"archived_files\":%d,\"freed_pages\":%d,\"elapsed_nanos\":%d}}",
+                result.repositories(), result.deletedCommits(), result.deletedFiles(), result.deletedTrees(),
+                result.retainedCommits(), result.archivedFiles(), result.freedPages(), result.elapsedNanos());
+    }
+}
+
+/**
+ * アーカイブハンドラー
+ */
+class ArchiveHandler extends BaseApiHandler {
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        ArchiveStore archiveStore = ArchiveStore.getInstance();
+        if ("GET".equals(method)) {
+            ArchiveStore.ArchiveResult totals = archiveStore.getTotals();
+            if (totals == null) {
+                sendErrorResponse(exchange, "Failed to read archive");
+                return;
+            }
+            sendJsonResponse(exchange, resultToJson(totals, 0));
+        } else if ("POST".equals(method)) {
+            String query = exchange.getRequestURI().getQuery();
+            Integer ageDays = extractIntQueryParam(query, "age_days");
+            Integer depth = extractIntQueryParam(query, "depth");
+            ArchiveStore.ArchivePolicy policy = ageDays == null && depth == null
+                    ? ArchiveStore.ArchivePolicy.fromSystemProperties()
+                    : new ArchiveStore.ArchivePolicy(ageDays != null ? ageDays : 0, depth != null ? depth : 0);
+            if (!policy.isEnabled()) {
+                sendErrorResponse(exchange, "age_days or depth is required");
+                return;
+            }
+            ArchiveStore.ArchiveResult result = archiveStore.archive(policy);
+            if (result == null) {
+                sendErrorResponse(exchange, "Archive failed");
+                return;
             }
+            long freedPages = result.files() > 0 ? dbManager.incrementalVacuum() : 0;
+            sendJsonResponse(exchange, resultToJson(result, freedPages));
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+
+    /**
+     * 結果をJSONに変換
+     */
+    private String resultToJson(ArchiveStore.ArchiveResult result, long freedPages) {
+        return String.format(
+                "{\"segments\":%d,\"files\":%d,\"bytes\":%d,\"stored_bytes\":%d,\"freed_pages\":%d}",
+                result.segments(), result.files(), result.bytes(), result.storedBytes(), freedPages);
+    }
+}
+
+/**
+ * メトリクスハンドラー
+ */
+class MetricsHandler extends BaseApiHandler {
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, String method) throws IOException {
+        if ("GET".equals(method)) {
+            LockManager.LockStats locks = LockManager.getInstance().getStats();
+            StringBuilder json = new StringBuilder();
+            json.append(String.format(
+                    "{\"locks\":{\"acquisitions\":%d,\"contended\":%d,\"total_wait_nanos\":%d,\"max_wait_nanos\":%d}",
+                    locks.acquisitions(), locks.contended(), locks.totalWaitNanos(), locks.maxWaitNanos()));
+            json.append(",\"caches\":{\"file_content\":");
+            appendCacheStatsJson(json, CommitManager.getContentCacheStats());
+            json.append(",\"branch_head\":");
+            appendCacheStatsJson(json, CommitManager.getBranchCacheStats());
+            json.append(",\"blame\":");
+            appendCacheStatsJson(json, BlameManager.getCacheStats());
+            json.append(",\"graph\":");
+            appendCacheStatsJson(json, GraphCache.getInstance().getCacheStats());
+            json.append("}}");
+            sendJsonResponse(exchange, json.toString());
+        } else {
+            exchange.sendResponseHeaders(405, -1);
         }
-        return "";
     }
 
     /**
-     * JSON用文字列エスケープ
+     * キャッシュ統計をJSONとして追記
      * 
-     * @param str エスケープする文字列
-     * @return エスケープされた文字列
+     * @param json  出力先
+     * @param stats キャッシュ統計
      */
-    private String escapeJson(String str) {
-        if (str == null)
-            return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    private void appendCacheStatsJson(StringBuilder json, LruCache.CacheStats stats) {
+        json.append(String.format(Locale.ROOT,
+                "{\"hits\":%d,\"misses\":%d,\"hit_ratio\":%.4f,\"evictions\":%d,\"entries\":%d,\"weight\":%d,\"max_weight\":%d}",
+                stats.hits(), stats.misses(), stats.hitRatio(), stats.evictions(), stats.entries(), stats.weight(),
+                stats.maxWeight()));
     }
 }
\ No newline at end of file
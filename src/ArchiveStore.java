@@ -0,0 +1,502 @@
+package src;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 古い履歴のファイル内容のアーカイブ管理クラス（Singletonパターン使用）
+ *
+ * 作成から一定期間、またはブランチのHEADから一定の世代以上たったコミットのfile行の内容を
+ * 圧縮してディスク上のセグメントファイルへ移し、データベースの content を NULL にする。
+ * file行は書き込み後に変更されないため、移した内容は file_archive の位置情報から読み戻せる。
+ * いずれかのブランチのHEADのツリーに含まれるfile行は頻繁に読まれるため移さない。
+ * 空いたページは incremental VACUUM（{@link DatabaseManager#incrementalVacuum()}）で切り詰める。
+ */
+public class ArchiveStore {
+    /** セグメントファイルの置き場所（システムプロパティ archive.dir で変更可能） */
+    private static final Path ARCHIVE_DIR = Paths.get(System.getProperty("archive.dir", "database/archive"));
+    /** 1セグメントの圧縮後の目安の大きさ */
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    /** 1セグメントのfile行の上限 */
+    private static final int SEGMENT_FILES = 5000;
+    private static ArchiveStore instance;
+
+    private final DatabaseManager dbManager;
+    private final TreeStore treeStore;
+    /** セグメントID → 読み込み用のチャネル */
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+
+    private ArchiveStore() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.treeStore = new TreeStore();
+        // テーブルの再作成でセグメントは参照されなくなるため、ファイルごと削除する
+        dbManager.addResetListener(this::deleteAllSegments);
+    }
+
+    /**
+     * シングルトンインスタンスを取得
+     *
+     * @return ArchiveStoreインスタンス
+     */
+    public static synchronized ArchiveStore getInstance() {
+        if (instance == null) {
+            instance = new ArchiveStore();
+        }
+        return instance;
+    }
+
+    /**
+     * アーカイブの対象レコード（0の条件は使わない）
+     *
+     * @param maxAgeDays 作成からの日数がこれを超えたコミットを対象にする
+     * @param minDepth   リポジトリの最も新しいHEADからの世代数がこれ以上のコミットを対象にする
+     */
+    public record ArchivePolicy(int maxAgeDays, int minDepth) {
+        /**
+         * システムプロパティ archive.age.days / archive.depth から作成
+         *
+         * @return アーカイブの対象
+         */
+        public static ArchivePolicy fromSystemProperties() {
+            return new ArchivePolicy(Integer.getInteger("archive.age.days", 0), Integer.getInteger("archive.depth", 0));
+        }
+
+        /**
+         * いずれかの条件が指定されているかどうか
+         *
+         * @return 指定されている場合true
+         */
+        public boolean isEnabled() {
+            return maxAgeDays > 0 || minDepth > 0;
+        }
+    }
+
+    /**
+     * アーカイブ結果レコード
+     *
+     * @param segments    作成したセグメント数
+     * @param files       移したfile行の数
+     * @param bytes       移した内容の大きさ（UTF-8）
+     * @param storedBytes 圧縮後の大きさ
+     */
+    public record ArchiveResult(int segments, int files, long bytes, long storedBytes) {
+    }
+
+    /**
+     * セグメント内の1件の位置レコード
+     */
+    private record Entry(int fileId, long offset, int storedLength, long size) {
+    }
+
+    /**
+     * 対象のfile行の内容をセグメントへ移す（同時に1つだけ実行する）
+     *
+     * @param policy アーカイブの対象
+     * @return アーカイブ結果（失敗した場合はnull）
+     */
+    public synchronized ArchiveResult archive(ArchivePolicy policy) {
+        if (!policy.isEnabled())
+            return new ArchiveResult(0, 0, 0, 0);
+
+        int segments = 0;
+        int files = 0;
+        long bytes = 0;
+        long storedBytes = 0;
+        try (Connection conn = dbManager.getConnection()) {
+            prepare(conn);
+            Files.createDirectories(ARCHIVE_DIR);
+
+            StringBuilder where = new StringBuilder();
+            if (policy.maxAgeDays() > 0)
+                where.append("c.created_at < datetime('now', '-").append(policy.maxAgeDays()).append(" days')");
+            if (policy.minDepth() > 0) {
+                if (where.length() > 0)
+                    where.append(" OR ");
+                where.append("g.generation <= k.generation - ").append(policy.minDepth());
+            }
+            String sql = "SELECT f.id, f.content, f.content_encoding FROM file f "
+                    + "JOIN git_commit c ON c.id = f.commit_id "
+                    + "LEFT JOIN commit_graph g ON g.commit_id = c.id "
+                    + "LEFT JOIN archive_cutoff k ON k.repository_id = c.repository_id "
+                    + "WHERE f.id > ? AND f.content IS NOT NULL AND f.id NOT IN (SELECT id FROM archive_hot) "
+                    + "AND (" + where + ") ORDER BY f.id LIMIT " + SEGMENT_FILES;
+
+            int lastId = 0;
+            while (true) {
+                Path temp = Files.createTempFile(ARCHIVE_DIR, "segment-", ".tmp");
+                List<Entry> entries = new ArrayList<>();
+                long offset = 0;
+                long segmentBytes = 0;
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                        PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, lastId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next() && offset < SEGMENT_BYTES) {
+                            byte[] content = ContentCodec.decode(rs, "content", "content_encoding")
+                                    .getBytes(StandardCharsets.UTF_8);
+                            byte[] stored = ContentCodec.deflate(content, Deflater.BEST_COMPRESSION);
+                            // 縮まない内容はそのまま書く（stored_length = size で判別する）
+                            if (stored.length >= content.length)
+                                stored = content;
+                            ByteBuffer buffer = ByteBuffer.wrap(stored);
+                            while (buffer.hasRemaining())
+                                out.write(buffer);
+                            lastId = rs.getInt("id");
+                            entries.add(new Entry(lastId, offset, stored.length, content.length));
+                            offset += stored.length;
+                            segmentBytes += content.length;
+                        }
+                    }
+                    // 位置情報を確定する前にセグメントをディスクへ書き切る
+                    out.force(true);
+                } catch (IOException | SQLException e) {
+                    Files.deleteIfExists(temp);
+                    throw e;
+                }
+                if (entries.isEmpty()) {
+                    Files.deleteIfExists(temp);
+                    break;
+                }
+
+                commitSegment(conn, temp, entries, offset);
+                segments++;
+                files += entries.size();
+                bytes += segmentBytes;
+                storedBytes += offset;
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Archive error: " + e.getMessage());
+            return null;
+        }
+        return new ArchiveResult(segments, files, bytes, storedBytes);
+    }
+
+    /**
+     * アーカイブ済みのfile行の内容を読み戻す
+     *
+     * @param conn   データベース接続
+     * @param fileId file行ID
+     * @return ファイル内容（アーカイブされていない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    public String read(Connection conn, int fileId) throws SQLException {
+        String sql = "SELECT segment_id, offset, stored_length, size FROM file_archive WHERE file_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    return null;
+                int size = (int) rs.getLong("size");
+                byte[] stored = readSegment(rs.getInt("segment_id"), rs.getLong("offset"), rs.getInt("stored_length"));
+                byte[] content = stored.length == size ? stored : ContentCodec.inflate(stored, size);
+                return new String(content, StandardCharsets.UTF_8);
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new SQLException("Archived content for file " + fileId + " is unreadable", e);
+        }
+    }
+
+    /**
+     * アーカイブ済みのfile行の内容を、セグメントから少しずつ読み込んで展開するストリームを開く
+     *
+     * @param conn   データベース接続
+     * @param fileId file行ID
+     * @return 内容（UTF-8）のストリーム（アーカイブされていない場合はnull、呼び出し側で閉じる）
+     * @throws SQLException SQL例外
+     */
+    public InputStream open(Connection conn, int fileId) throws SQLException {
+        String sql = "SELECT segment_id, offset, stored_length, size FROM file_archive WHERE file_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    return null;
+                InputStream stored = new SegmentInputStream(channel(rs.getInt("segment_id")), rs.getLong("offset"),
+                        rs.getInt("stored_length"));
+                return rs.getInt("stored_length") == rs.getLong("size") ? stored : new InflaterInputStream(stored);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Archived content for file " + fileId + " is unreadable", e);
+        }
+    }
+
+    /**
+     * アーカイブ済みのfile行の内容のバイト長（UTF-8）を取得
+     *
+     * @param conn   データベース接続
+     * @param fileId file行ID
+     * @return バイト長（アーカイブされていない場合は-1）
+     * @throws SQLException SQL例外
+     */
+    public long size(Connection conn, int fileId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT size FROM file_archive WHERE file_id = ?")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong("size") : -1;
+            }
+        }
+    }
+
+    /**
+     * 現在アーカイブされている内容の合計を取得
+     *
+     * @return 合計（セグメント数, file行数, 元の大きさ, 圧縮後の大きさ）（失敗した場合はnull）
+     */
+    public ArchiveResult getTotals() {
+        String sql = "SELECT (SELECT COUNT(*) FROM archive_segment) AS segments, COUNT(*) AS files, "
+                + "COALESCE(SUM(size), 0) AS bytes, COALESCE(SUM(stored_length), 0) AS stored FROM file_archive";
+        try (Connection conn = dbManager.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return new ArchiveResult(rs.getInt("segments"), rs.getInt("files"), rs.getLong("bytes"),
+                    rs.getLong("stored"));
+        } catch (SQLException e) {
+            System.err.println("Archive stats error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * file行を参照しなくなったセグメントを削除（ガベージコレクションの後に呼ぶ）
+     *
+     * @return 削除したセグメント数
+     */
+    public synchronized int removeEmptySegments() {
+        List<Integer> segmentIds = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT id FROM archive_segment "
+                            + "WHERE id NOT IN (SELECT DISTINCT segment_id FROM file_archive)")) {
+                while (rs.next())
+                    segmentIds.add(rs.getInt("id"));
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM archive_segment WHERE id = ?")) {
+                for (int segmentId : segmentIds) {
+                    stmt.setInt(1, segmentId);
+                    stmt.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Archive cleanup error: " + e.getMessage());
+            return 0;
+        }
+        for (int segmentId : segmentIds) {
+            closeChannel(segmentId);
+            try {
+                Files.deleteIfExists(segmentPath(segmentId));
+            } catch (IOException e) {
+                System.err.println("Archive cleanup error: " + e.getMessage());
+            }
+        }
+        return segmentIds.size();
+    }
+
+    /**
+     * 対象外のfile行（HEADのツリーに含まれるもの）と、リポジトリごとの最新の世代を求める
+     *
+     * @param conn データベース接続
+     * @throws SQLException SQL例外
+     */
+    private void prepare(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS archive_hot (id INTEGER PRIMARY KEY)");
+            stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS archive_cutoff "
+                    + "(repository_id INTEGER PRIMARY KEY, generation INTEGER)");
+            stmt.executeUpdate("DELETE FROM archive_hot");
+            stmt.executeUpdate("DELETE FROM archive_cutoff");
+            stmt.executeUpdate("INSERT INTO archive_cutoff SELECT b.repository_id, MAX(g.generation) FROM branch b "
+                    + "JOIN commit_graph g ON g.commit_id = b.head_commit_id GROUP BY b.repository_id");
+        }
+
+        List<Integer> treeIds = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT DISTINCT c.tree_id FROM branch b "
+                        + "JOIN git_commit c ON c.id = b.head_commit_id WHERE c.tree_id IS NOT NULL")) {
+            while (rs.next())
+                treeIds.add(rs.getInt("tree_id"));
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT OR IGNORE INTO archive_hot(id) VALUES(?)")) {
+            for (int treeId : treeIds) {
+                for (int fileId : treeStore.resolve(conn, treeId).values()) {
+                    stmt.setInt(1, fileId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 書き出したセグメントを登録し、file行の内容を NULL にする
+     *
+     * @param conn    データベース接続
+     * @param temp    書き出したセグメント（一時ファイル）
+     * @param entries 位置情報
+     * @param bytes   セグメントの大きさ
+     * @throws SQLException SQL例外
+     * @throws IOException  IO例外
+     */
+    private void commitSegment(Connection conn, Path temp, List<Entry> entries, long bytes)
+            throws SQLException, IOException {
+        Path segment = null;
+        conn.setAutoCommit(false);
+        try {
+            int segmentId;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO archive_segment(file_count, bytes, created_at) VALUES(?, ?, datetime('now'))",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, entries.size());
+                stmt.setLong(2, bytes);
+                stmt.executeUpdate();
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    rs.next();
+                    segmentId = rs.getInt(1);
+                }
+            }
+            closeChannel(segmentId);
+            segment = segmentPath(segmentId);
+            Files.move(temp, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            try (PreparedStatement insert = conn.prepareStatement("INSERT OR REPLACE INTO file_archive"
+                    + "(file_id, segment_id, offset, stored_length, size) VALUES(?, ?, ?, ?, ?)");
+                    PreparedStatement clear = conn.prepareStatement("UPDATE file SET content = NULL, content_encoding = NULL WHERE id = ?")) {
+                for (Entry entry : entries) {
+                    insert.setInt(1, entry.fileId());
+                    insert.setInt(2, segmentId);
+                    insert.setLong(3, entry.offset());
+                    insert.setInt(4, entry.storedLength());
+                    insert.setLong(5, entry.size());
+                    insert.addBatch();
+                    clear.setInt(1, entry.fileId());
+                    clear.addBatch();
+                }
+                insert.executeBatch();
+                clear.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            conn.rollback();
+            Files.deleteIfExists(segment != null ? segment : temp);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * セグメントの一部を読み込む
+     */
+    private byte[] readSegment(int segmentId, long offset, int length) throws IOException {
+        FileChannel channel = channel(segmentId);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of archive segment " + segmentId);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 読み込み用のチャネルを取得（開いていなければ開く）
+     */
+    private FileChannel channel(int segmentId) throws IOException {
+        FileChannel channel = channels.get(segmentId);
+        if (channel == null) {
+            FileChannel opened = FileChannel.open(segmentPath(segmentId), StandardOpenOption.READ);
+            channel = channels.putIfAbsent(segmentId, opened);
+            if (channel == null) {
+                channel = opened;
+            } else {
+                opened.close();
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * セグメントファイルの一部分を読むストリーム（位置指定で読むため、同じチャネルを複数のスレッドで共有できる）
+     */
+    private static class SegmentInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        SegmentInputStream(FileChannel channel, long offset, int length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end)
+                return -1;
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read < 0)
+                throw new IOException("Unexpected end of archive segment");
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * 読み込み用のチャネルを閉じる
+     */
+    private void closeChannel(int segmentId) {
+        FileChannel channel = channels.remove(segmentId);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Archive close error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * すべてのセグメントを削除（データベース再初期化時）
+     */
+    private synchronized void deleteAllSegments() {
+        for (int segmentId : new ArrayList<>(channels.keySet()))
+            closeChannel(segmentId);
+        if (!Files.isDirectory(ARCHIVE_DIR))
+            return;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(ARCHIVE_DIR, "segment-*")) {
+            for (Path segment : segments)
+                Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            System.err.println("Archive cleanup error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * セグメントファイルのパスを取得
+     */
+    private static Path segmentPath(int segmentId) {
+        return ARCHIVE_DIR.resolve("segment-" + segmentId + ".seg");
+    }
+}
\ No newline at end of file
@@ -10,6 +10,10 @@ import java.util.*;
  * API ハンドラー基底クラス（Template Method パターン使用）
  */
 public abstract class BaseApiHandler implements HttpHandler {
+    protected static final String MESSAGE_PACK_TYPE = "application/msgpack";
+    /** JSONリクエストボディの最大バイト数（システムプロパティ request.max.bytes で変更可能） */
+    protected static final int REQUEST_MAX_BYTES = Integer.getInteger("request.max.bytes", 16 * 1024 * 1024);
+
     protected final DatabaseManager dbManager;
 
     public BaseApiHandler() {
@@ -28,7 +32,15 @@ public abstract class BaseApiHandler implements HttpHandler {
 
         try {
             handleRequest(exchange, method);
+        } catch (ContentCodec.ContentTooLargeException e) {
+            sendJsonResponse(exchange, 413,
+                    String.format("{\"success\":false,\"error\":\"%s\"}", e.getMessage()));
         } catch (IOException e) {
+            if (exchange.getResponseCode() != -1) {
+                // ヘッダー送信後（チャンク転送の途中など）は正常に終端させず、接続ごと打ち切る
+                System.err.println("Response aborted: " + e.getMessage());
+                throw e;
+            }
             sendErrorResponse(exchange, "Internal server error: " + e.getMessage());
         }
     }
@@ -54,15 +66,38 @@ public abstract class BaseApiHandler implements HttpHandler {
     }
 
     /**
-     * リクエストボディを読み込み
+     * リクエストボディを読み込み（UTF-8）
      * 
      * @param exchange HTTPエクスチェンジ
      * @return リクエストボディ
-     * @throws IOException IO例外
+     * @throws ContentCodec.ContentTooLargeException {@link #REQUEST_MAX_BYTES} を超えた場合
+     * @throws IOException                           IO例外
      */
     protected String readRequestBody(HttpExchange exchange) throws IOException {
-        try (Scanner scanner = new Scanner(exchange.getRequestBody()).useDelimiter("\\A")) {
-            return scanner.hasNext() ? scanner.next() : "";
+        checkContentLength(exchange, REQUEST_MAX_BYTES);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(REQUEST_MAX_BYTES + 1);
+            if (body.length > REQUEST_MAX_BYTES)
+                throw new ContentCodec.ContentTooLargeException(REQUEST_MAX_BYTES);
+            return new String(body, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Content-Length が上限を超えていないか確認（ボディを読む前に拒否する）
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @param maxBytes 最大バイト数
+     * @throws ContentCodec.ContentTooLargeException 上限を超えた場合
+     */
+    protected void checkContentLength(HttpExchange exchange, long maxBytes)
+            throws ContentCodec.ContentTooLargeException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > maxBytes)
+                throw new ContentCodec.ContentTooLargeException(maxBytes);
+        } catch (NumberFormatException e) {
+            // 不正な値はボディを読みながら確認する
         }
     }
 
@@ -74,14 +109,137 @@ public abstract class BaseApiHandler implements HttpHandler {
      * @throws IOException IO例外
      */
     protected void sendJsonResponse(HttpExchange exchange, String jsonResponse) throws IOException {
+        sendJsonResponse(exchange, 200, jsonResponse);
+    }
+
+    /**
+     * ステータスコードを指定してJSONレスポンスを送信
+     * 
+     * @param exchange     HTTPエクスチェンジ
+     * @param status       ステータスコード
+     * @param jsonResponse JSONレスポンス
+     * @throws IOException IO例外
+     */
+    protected void sendJsonResponse(HttpExchange exchange, int status, String jsonResponse) throws IOException {
         byte[] bytes = jsonResponse.getBytes("UTF-8");
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * テキストレスポンスを送信
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @param text     テキスト
+     * @throws IOException IO例外
+     */
+    protected void sendTextResponse(HttpExchange exchange, String text) throws IOException {
+        byte[] bytes = text.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
         exchange.sendResponseHeaders(200, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(bytes);
         }
     }
 
+    /**
+     * シリアライズ済みのJSONを送信（クライアントが対応していればgzip済みのバイト列を使用）
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @param json     JSONのバイト列（UTF-8）
+     * @param gzip     gzip圧縮済みのJSON（nullの場合は常に非圧縮）
+     * @throws IOException IO例外
+     */
+    protected void sendJsonBytes(HttpExchange exchange, byte[] json, byte[] gzip) throws IOException {
+        byte[] body = json;
+        if (gzip != null && acceptsGzip(exchange)) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            body = gzip;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.getResponseHeaders().set("Vary", "Accept, Accept-Encoding");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * クライアントがgzip圧縮されたレスポンスを受け付けるか判定
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @return gzip圧縮して返せる場合はtrue
+     */
+    protected boolean acceptsGzip(HttpExchange exchange) {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    /**
+     * クライアントがMessagePack形式を受け付けるか判定（Acceptヘッダーで指定された場合のみ）
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @return MessagePackで返す場合はtrue
+     */
+    protected boolean acceptsMessagePack(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && (accept.contains(MESSAGE_PACK_TYPE) || accept.contains("application/x-msgpack"));
+    }
+
+    /**
+     * MessagePackレスポンスを送信
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @param writer   書き込み済みのエンコーダー
+     * @throws IOException IO例外
+     */
+    protected void sendMessagePack(HttpExchange exchange, MessagePackWriter writer) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", MESSAGE_PACK_TYPE);
+        exchange.getResponseHeaders().set("Vary", "Accept");
+        exchange.sendResponseHeaders(200, writer.size());
+        try (OutputStream os = exchange.getResponseBody()) {
+            writer.writeTo(os);
+        }
+    }
+
+    /**
+     * シリアライズ済みのMessagePackを送信
+     * 
+     * @param exchange HTTPエクスチェンジ
+     * @param msgpack  MessagePackのバイト列
+     * @throws IOException IO例外
+     */
+    protected void sendMessagePack(HttpExchange exchange, byte[] msgpack) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", MESSAGE_PACK_TYPE);
+        exchange.getResponseHeaders().set("Vary", "Accept");
+        exchange.sendResponseHeaders(200, msgpack.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(msgpack);
+        }
+    }
+
+    /**
+     * Mapのリストを配列名付きで送信（Acceptヘッダーに応じてJSONまたはMessagePack）
+     * 
+     * @param exchange  HTTPエクスチェンジ
+     * @param list      送信するリスト
+     * @param arrayName 配列名
+     * @throws IOException IO例外
+     */
+    protected void sendList(HttpExchange exchange, List<? extends Map<String, ?>> list, String arrayName)
+            throws IOException {
+        if (acceptsMessagePack(exchange)) {
+            MessagePackWriter writer = new MessagePackWriter(list.size() * 64 + 16);
+            writer.mapHeader(1).string(arrayName).value(list);
+            sendMessagePack(exchange, writer);
+        } else {
+            sendJsonResponse(exchange, listToJson(list, arrayName));
+        }
+    }
+
     /**
      * エラーレスポンスを送信
      * 
@@ -119,8 +277,208 @@ public abstract class BaseApiHandler implements HttpHandler {
         }
 
         startIndex += pattern.length();
-        int endIndex = json.indexOf('"', startIndex);
-        return json.substring(startIndex, endIndex);
+        StringBuilder value = new StringBuilder();
+        readJsonString(json, startIndex, value);
+        return value.toString();
+    }
+
+    /**
+     * JSONからオブジェクト型フィールドを文字列のMapとして抽出（値はstringまたはnull）
+     * 
+     * @param json  JSON文字列
+     * @param field フィールド名
+     * @return キー → 値（フィールドが存在しない場合はnull）
+     */
+    protected Map<String, String> extractJsonStringMap(String json, String field) {
+        String pattern = "\"" + field + "\":";
+        int index = json.indexOf(pattern);
+        if (index == -1)
+            return null;
+        index = skipWhitespace(json, index + pattern.length());
+        if (index >= json.length() || json.charAt(index) != '{')
+            return null;
+
+        Map<String, String> map = new LinkedHashMap<>();
+        index = skipWhitespace(json, index + 1);
+        while (index < json.length() && json.charAt(index) == '"') {
+            StringBuilder key = new StringBuilder();
+            index = skipWhitespace(json, readJsonString(json, index + 1, key) + 1);
+            if (index >= json.length() || json.charAt(index) != ':')
+                break;
+            index = skipWhitespace(json, index + 1);
+
+            if (json.startsWith("null", index)) {
+                map.put(key.toString(), null);
+                index += 4;
+            } else if (index < json.length() && json.charAt(index) == '"') {
+                StringBuilder value = new StringBuilder();
+                index = readJsonString(json, index + 1, value) + 1;
+                map.put(key.toString(), value.toString());
+            } else {
+                break;
+            }
+
+            index = skipWhitespace(json, index);
+            if (index < json.length() && json.charAt(index) == ',')
+                index = skipWhitespace(json, index + 1);
+        }
+        return map;
+    }
+
+    /**
+     * JSONから整数配列フィールドを抽出
+     * 
+     * @param json  JSON文字列
+     * @param field フィールド名
+     * @return 整数のリスト（フィールドが存在しない、または整数以外を含む場合はnull）
+     */
+    protected List<Integer> extractJsonIntArray(String json, String field) {
+        String pattern = "\"" + field + "\":";
+        int index = json.indexOf(pattern);
+        if (index == -1)
+            return null;
+        index = skipWhitespace(json, index + pattern.length());
+        if (index >= json.length() || json.charAt(index) != '[')
+            return null;
+
+        int end = json.indexOf(']', index);
+        if (end == -1)
+            return null;
+        List<Integer> values = new ArrayList<>();
+        for (String item : json.substring(index + 1, end).split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.isEmpty())
+                continue;
+            try {
+                values.add(Integer.parseInt(trimmed));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * JSON文字列リテラルを読み込み、エスケープを解除
+     * 
+     * @param json  JSON文字列
+     * @param start 開始引用符の次の位置
+     * @param out   読み込んだ値の出力先
+     * @return 終了引用符の位置
+     */
+    private int readJsonString(String json, int start, StringBuilder out) {
+        int i = start;
+        for (; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"')
+                break;
+            if (c == '\\' && i + 1 < json.length()) {
+                char next = json.charAt(++i);
+                switch (next) {
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'u' -> {
+                        if (i + 4 < json.length()) {
+                            out.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                            i += 4;
+                        }
+                    }
+                    default -> out.append(next);
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 空白を読み飛ばす
+     * 
+     * @param json  JSON文字列
+     * @param index 開始位置
+     * @return 空白でない最初の位置
+     */
+    private int skipWhitespace(String json, int index) {
+        while (index < json.length() && Character.isWhitespace(json.charAt(index)))
+            index++;
+        return index;
+    }
+
+    /**
+     * クエリパラメータを抽出
+     * 
+     * @param query クエリ文字列
+     * @param param パラメータ名
+     * @return パラメータ値
+     */
+    protected String extractQueryParam(String query, String param) {
+        if (query == null)
+            return "";
+        for (String p : query.split("&")) {
+            if (p.startsWith(param + "=")) {
+                return p.substring(param.length() + 1);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 整数のクエリパラメータを抽出
+     * 
+     * @param query クエリ文字列
+     * @param param パラメータ名
+     * @return パラメータ値（指定がない場合はnull）
+     */
+    protected Integer extractIntQueryParam(String query, String param) {
+        String value = extractQueryParam(query, param);
+        return value.isEmpty() ? null : Integer.valueOf(value);
+    }
+
+    /**
+     * JSON用文字列エスケープ
+     * 
+     * @param str エスケープする文字列
+     * @return エスケープされた文字列
+     */
+    protected String escapeJson(String str) {
+        return escapeJsonString(str);
+    }
+
+    /**
+     * JSON用文字列エスケープ（ハンドラー以外からJSONを組み立てる場合に使用）
+     * 
+     * @param str エスケープする文字列
+     * @return エスケープされた文字列
+     */
+    static String escapeJsonString(String str) {
+        if (str == null)
+            return "";
+        StringBuilder sb = null;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            String escaped = switch (c) {
+                case '\\' -> "\\\\";
+                case '"' -> "\\\"";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                // その他の制御文字はJSONにそのまま含められない
+                default -> c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+            };
+            if (escaped == null) {
+                if (sb != null)
+                    sb.append(c);
+                continue;
+            }
+            if (sb == null)
+                sb = new StringBuilder(str.length() + 16).append(str, 0, i);
+            sb.append(escaped);
+        }
+        return sb == null ? str : sb.toString();
     }
 
     /**
@@ -178,6 +536,86 @@ public abstract class BaseApiHandler implements HttpHandler {
             return "null";
         if (value instanceof Number || value instanceof Boolean)
             return value.toString();
-        return String.format("\"%s\"", value.toString().replace("\"", "\\\""));
+        return "\"" + escapeJson(value.toString()) + "\"";
+    }
+
+    /**
+     * マージ結果をJSONに変換
+     * 
+     * @param result マージ結果
+     * @return JSON文字列
+     */
+    protected String mergeResultToJson(MergeResult result) {
+        if (result instanceof MergeResult.Conflict conflict) {
+            return conflict.content1() != null
+                    ? String.format(
+                            "{\"success\":false,\"branch_id_1\":%d,\"text_1\":\"%s\",\"branch_id_2\":%d,\"text_2\":\"%s\"}",
+                            conflict.branchId1(), escapeJson(conflict.content1()), conflict.branchId2(), escapeJson(conflict.content2()))
+                    : String.format("{\"success\":false,\"branch_id_1\":%d,\"branch_id_2\":%d}",
+                            conflict.branchId1(), conflict.branchId2());
+        }
+        return String.format("{\"success\":true,\"message\":\"%s\"}", ((MergeResult.Success) result).message());
+    }
+
+    /**
+     * コミットをJSONオブジェクトとして追記
+     * 
+     * @param json   出力先
+     * @param commit コミット
+     */
+    protected void appendCommitJson(StringBuilder json, CommitManager.CommitRecord commit) {
+        json.append("{\"id\":").append(commit.id())
+                .append(",\"repository_id\":").append(commit.repositoryId())
+                .append(",\"author_id\":").append(commit.authorId())
+                .append(",\"message\":").append(valueToJson(commit.message()))
+                .append(",\"parent_commit_id\":").append(commit.parentCommitId())
+                .append(",\"parent_commit_id_2\":").append(commit.parentCommitId2())
+                .append(",\"created_at\":").append(valueToJson(commit.createdAt()))
+                .append("}");
+    }
+
+    /**
+     * コミットをMessagePackのマップとして書き込む（キーはJSONと同じ）
+     * 
+     * @param writer 出力先
+     * @param commit コミット
+     */
+    protected void writeCommit(MessagePackWriter writer, CommitManager.CommitRecord commit) {
+        writer.mapHeader(7)
+                .string("id").integer(commit.id())
+                .string("repository_id").integer(commit.repositoryId())
+                .string("author_id").integer(commit.authorId())
+                .string("message").string(commit.message())
+                .string("parent_commit_id").integer(commit.parentCommitId())
+                .string("parent_commit_id_2").integer(commit.parentCommitId2())
+                .string("created_at").string(commit.createdAt());
+    }
+
+    /**
+     * ハンクの配列をJSONとして追記
+     * 
+     * @param json  出力先
+     * @param hunks ハンク
+     */
+    protected void appendHunksJson(StringBuilder json, List<LineDiff.Hunk> hunks) {
+        json.append("[");
+        for (int i = 0; i < hunks.size(); i++) {
+            LineDiff.Hunk hunk = hunks.get(i);
+            if (i > 0)
+                json.append(",");
+            json.append("{\"old_start\":").append(hunk.oldStart())
+                    .append(",\"old_lines\":").append(hunk.oldLines())
+                    .append(",\"new_start\":").append(hunk.newStart())
+                    .append(",\"new_lines\":").append(hunk.newLines())
+                    .append(",\"header\":\"").append(hunk.header()).append("\",\"lines\":[");
+            List<String> lines = hunk.lines();
+            for (int j = 0; j < lines.size(); j++) {
+                if (j > 0)
+                    json.append(",");
+                json.append("\"").append(escapeJson(lines.get(j))).append("\"");
+            }
+            json.append("]}");
+        }
+        json.append("]");
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 行ごとの最終変更コミット（blame）管理クラス
+ *
+ * 第1親の履歴を古い順にたどり、内容が変わったコミットごとに行差分で帰属を引き継ぐ。
+ * 結果は（コミット, ファイル名）単位でキャッシュし、コミットが追加された場合は
+ * キャッシュ済みの祖先から差分を適用するだけで求める。
+ * 第2親以降から取り込まれた行は、マージコミットの変更として扱う。
+ */
+public class BlameManager {
+    private static final long CACHE_WEIGHT = 8L * 1024 * 1024;
+    /** IN句に並べるコミットIDの上限（SQLiteのパラメータ数の上限より小さくする） */
+    private static final int INFO_BATCH = 500;
+
+    /** コミットは不変のため、（コミットID, ファイル名）で結果をキャッシュできる */
+    private static final LruCache<String, Blame> cache = new LruCache<>(CACHE_WEIGHT,
+            blame -> 64 + 4L * blame.lineCommits().length);
+
+    static {
+        DatabaseManager.getInstance().addResetListener(cache::clear);
+    }
+
+    private final DatabaseManager dbManager;
+    private final CommitManager commitManager;
+    private final TreeStore treeStore;
+
+    public BlameManager() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.commitManager = new CommitManager();
+        this.treeStore = new TreeStore();
+    }
+
+    /**
+     * 行の帰属レコード（キャッシュ用）
+     *
+     * @param fileId      file行ID
+     * @param lineCommits 行ごとの最終変更コミットID
+     */
+    private record Blame(int fileId, int[] lineCommits) {
+    }
+
+    /**
+     * 第1親の履歴上の1コミットレコード
+     *
+     * @param commitId コミットID
+     * @param fileId   そのコミットでのfile行ID
+     */
+    private record Step(int commitId, int fileId) {
+    }
+
+    /**
+     * コミットの作成者情報レコード
+     *
+     * @param authorId  作成者ID
+     * @param author    作成者名
+     * @param createdAt 作成日時
+     */
+    private record CommitInfo(int authorId, String author, String createdAt) {
+    }
+
+    /**
+     * blameの1行レコード
+     *
+     * @param line      行番号（1始まり）
+     * @param text      行の内容
+     * @param commitId  最終変更コミットID
+     * @param authorId  作成者ID
+     * @param author    作成者名
+     * @param createdAt コミットの作成日時
+     */
+    public record BlameLine(int line, String text, int commitId, int authorId, String author, String createdAt) {
+    }
+
+    /**
+     * blame結果レコード
+     *
+     * @param commitId 対象コミットID
+     * @param filename ファイル名
+     * @param lines    行ごとの帰属
+     */
+    public record BlameResult(int commitId, String filename, List<BlameLine> lines) {
+    }
+
+    /**
+     * ブランチのHEADでのファイルのblameを取得
+     *
+     * @param branchId ブランチID
+     * @param filename ファイル名
+     * @return blame結果（ブランチまたはファイルが存在しない場合はnull）
+     */
+    public BlameResult blame(int branchId, String filename) {
+        Integer headCommitId = commitManager.getBranchHeadCommitId(branchId);
+        if (headCommitId == null || headCommitId == 0)
+            return null;
+
+        try (Connection conn = dbManager.getConnection()) {
+            Blame blame = compute(conn, headCommitId, filename);
+            if (blame == null)
+                return null;
+            String content = commitManager.readContent(conn, blame.fileId());
+            List<String> texts = LineDiff.splitLines(content);
+
+            Set<Integer> commitIds = new HashSet<>();
+            for (int commitId : blame.lineCommits())
+                commitIds.add(commitId);
+            Map<Integer, CommitInfo> commits = getCommitInfo(conn, commitIds);
+
+            List<BlameLine> lines = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                int commitId = blame.lineCommits()[i];
+                CommitInfo info = commits.getOrDefault(commitId, new CommitInfo(0, null, null));
+                lines.add(new BlameLine(i + 1, texts.get(i), commitId, info.authorId(), info.author(),
+                        info.createdAt()));
+            }
+            return new BlameResult(headCommitId, filename, lines);
+        } catch (SQLException e) {
+            System.err.println("Blame error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * blameキャッシュの統計を取得
+     *
+     * @return キャッシュ統計
+     */
+    public static LruCache.CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * コミットでのファイルの行の帰属を求める
+     *
+     * 第1親をキャッシュ済みのコミットかファイルが存在しないコミットまでさかのぼり、
+     * そこから古い順に、内容が変わったコミットだけ行差分を適用する
+     *
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @return 行の帰属（ファイルが存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    private Blame compute(Connection conn, int commitId, String filename) throws SQLException {
+        List<Step> steps = new ArrayList<>();
+        Blame base = null;
+        String sql = "SELECT parent_commit_id, tree_id FROM git_commit WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int current = commitId;
+            while (current != 0) {
+                base = cache.get(key(current, filename));
+                if (base != null)
+                    break;
+
+                stmt.setInt(1, current);
+                int parentId = 0;
+                Integer fileId = null;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next())
+                        break;
+                    parentId = rs.getInt("parent_commit_id");
+                    int treeId = rs.getInt("tree_id");
+                    if (!rs.wasNull())
+                        fileId = treeStore.lookup(conn, treeId, filename);
+                }
+                if (fileId == null)
+                    break;
+                steps.add(new Step(current, fileId));
+                current = parentId;
+            }
+        }
+        if (steps.isEmpty())
+            return base;
+
+        List<String> lines = base != null ? LineDiff.splitLines(commitManager.readContent(conn, base.fileId())) : null;
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            Step step = steps.get(i);
+            if (base != null && base.fileId() == step.fileId())
+                continue;
+
+            List<String> newLines = LineDiff.splitLines(commitManager.readContent(conn, step.fileId()));
+            int[] lineCommits = new int[newLines.size()];
+            Arrays.fill(lineCommits, step.commitId());
+            if (base != null) {
+                // 変わらなかった行は前の帰属を引き継ぐ
+                for (LineDiff.Edit edit : LineDiff.diff(lines, newLines)) {
+                    if (edit.op() == LineDiff.Op.EQUAL)
+                        lineCommits[edit.newIndex()] = base.lineCommits()[edit.oldIndex()];
+                }
+            }
+            base = new Blame(step.fileId(), lineCommits);
+            lines = newLines;
+        }
+        cache.put(key(commitId, filename), base);
+        return base;
+    }
+
+    /**
+     * コミットの作成者と作成日時を取得
+     *
+     * @param conn      データベース接続
+     * @param commitIds コミットID
+     * @return コミットID → 作成者情報
+     * @throws SQLException SQL例外
+     */
+    private Map<Integer, CommitInfo> getCommitInfo(Connection conn, Set<Integer> commitIds) throws SQLException {
+        Map<Integer, CommitInfo> info = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(commitIds);
+        for (int from = 0; from < ids.size(); from += INFO_BATCH) {
+            List<Integer> batch = ids.subList(from, Math.min(from + INFO_BATCH, ids.size()));
+            String sql = "SELECT c.id, c.author_id, n.username, c.created_at FROM git_commit c "
+                    + "LEFT JOIN name n ON n.id = c.author_id WHERE c.id IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++)
+                    stmt.setInt(i + 1, batch.get(i));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        info.put(rs.getInt("id"), new CommitInfo(rs.getInt("author_id"), rs.getString("username"),
+                                rs.getString("created_at")));
+                    }
+                }
+            }
+        }
+        return info;
+    }
+
+    /**
+     * キャッシュのキーを作成
+     */
+    private static String key(int commitId, String filename) {
+        return commitId + ":" + filename;
+    }
+}
\ No newline at end of file
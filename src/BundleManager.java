@@ -0,0 +1,775 @@
+package src;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * リポジトリのバンドル（エクスポート・インポート用ファイル）管理クラス
+ * 
+ * バンドルは作成者名・コミット・ファイル・ツリー・ブランチをレコードとして順に並べたバイナリ形式で、
+ * 必要に応じて全体をgzip圧縮する。エクスポートはコミットIDのキーセットで一定件数ずつ読み出しながら
+ * 書き出すため、リポジトリ全体をメモリに載せない。
+ * 
+ * ヘッダーには各テーブルのID範囲を書いておき、インポートでは先に同じ大きさのID範囲を確保して
+ * 「元のID - 最小ID + 確保した先頭ID」に置き換える。そのため参照先の行より先に参照元の行が来てもよく、
+ * 行は一定件数ごとのバッチ・トランザクションでそのまま書き込める。
+ */
+public class BundleManager {
+    private static final int MAGIC = 0x47415042; // "GAPB"
+    /** 2: 親の数を1バイトではなくintで書く（256以上の親を持つオクトパスマージのため） */
+    private static final int VERSION = 2;
+    private static final int PAGE_SIZE = 500;
+    private static final int BATCH_ROWS = 5000;
+
+    private static final int USER = 'U';
+    private static final int COMMIT = 'C';
+    private static final int FILE = 'F';
+    private static final int TREE = 'T';
+    private static final int TREE_ENTRY = 'E';
+    private static final int BRANCH = 'B';
+    private static final int END = 0;
+
+    /** ID範囲を持つテーブル（ヘッダーに書く順） */
+    private static final String[] TABLES = { "git_commit", "file", "tree", "branch" };
+
+    private final DatabaseManager dbManager;
+    private final CommitGraph commitGraph;
+    private final SearchIndex searchIndex;
+    private final LockManager lockManager;
+    private final ArchiveStore archiveStore;
+
+    public BundleManager() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.commitGraph = new CommitGraph();
+        this.searchIndex = new SearchIndex();
+        this.lockManager = LockManager.getInstance();
+        this.archiveStore = ArchiveStore.getInstance();
+    }
+
+    /**
+     * インポート結果レコード
+     * 
+     * @param repositoryId 作成したリポジトリID
+     * @param commits      コミット数
+     * @param files        ファイル数
+     * @param branches     ブランチ数
+     */
+    public record ImportResult(int repositoryId, int commits, int files, int branches) {
+    }
+
+    /**
+     * バンドル内のID範囲レコード
+     * 
+     * @param min 最小ID（行がない場合は0）
+     * @param max 最大ID（行がない場合は0）
+     */
+    private record IdRange(int min, int max) {
+        private boolean isEmpty() {
+            return max == 0;
+        }
+    }
+
+    /**
+     * リポジトリ名を取得
+     * 
+     * @param repositoryId リポジトリID
+     * @return リポジトリ名（存在しない場合はnull）
+     */
+    public String getRepositoryName(int repositoryId) {
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT name FROM repository WHERE id = ?")) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Objects.requireNonNullElse(rs.getString("name"), "") : null;
+            }
+        } catch (SQLException e) {
+            System.err.println("Bundle lookup error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * リポジトリをバンドルとして書き出す
+     * 
+     * 一時ファイルに書き出してから出力先へ送るため、出力先への転送中はリポジトリのロックを保持しない。
+     * 
+     * @param repositoryId リポジトリID
+     * @param out          出力先（呼び出し側で閉じる）
+     * @param compress     gzip圧縮するか
+     * @throws IOException 書き込みまたは読み出しに失敗した場合
+     */
+    public void export(int repositoryId, OutputStream out, boolean compress) throws IOException {
+        Path spool = exportToFile(repositoryId, compress);
+        try {
+            Files.copy(spool, out);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * リポジトリをバンドルとして一時ファイルに書き出す
+     * 
+     * 書き出し中だけリポジトリの書き込みロックを保持し、途中のコミットが混ざらない状態を一時ファイルに固定する。
+     * ロックの保持時間はディスクへの書き込み時間で決まり、ダウンロードする側の速度に左右されない。
+     * 
+     * @param repositoryId リポジトリID
+     * @param compress     gzip圧縮するか
+     * @return 書き出した一時ファイル（呼び出し側で削除する）
+     * @throws IOException 書き込みまたは読み出しに失敗した場合
+     */
+    public Path exportToFile(int repositoryId, boolean compress) throws IOException {
+        Path spool = Files.createTempFile("bundle-", compress ? ".bundle.gz" : ".bundle");
+        Lock lock = lockManager.lockRepository(repositoryId);
+        try (OutputStream out = Files.newOutputStream(spool)) {
+            writeBundle(repositoryId, out, compress);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        return spool;
+    }
+
+    /**
+     * リポジトリのバンドルを出力先へ書き込む（呼び出し側でリポジトリのロックを保持する）
+     * 
+     * 途中で失敗した場合は終端レコードが書かれないため、インポート側で不完全なバンドルとして検出される。
+     */
+    private void writeBundle(int repositoryId, OutputStream out, boolean compress) throws IOException {
+        GZIPOutputStream gzip = compress ? new GZIPOutputStream(out, 64 * 1024) : null;
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip != null ? gzip : out, 64 * 1024));
+
+        try (Connection conn = dbManager.getConnection()) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            writeString(data, getRepositoryName(repositoryId));
+            for (String table : TABLES) {
+                IdRange range = exportRange(conn, repositoryId, table);
+                data.writeInt(range.min());
+                data.writeInt(range.max());
+            }
+
+            exportUsers(conn, repositoryId, data);
+            int lastCommitId = 0;
+            int lastTreeId = 0;
+            while (true) {
+                List<int[]> page = new ArrayList<>();
+                lastTreeId = exportCommitPage(conn, repositoryId, lastCommitId, lastTreeId, data, page);
+                if (page.isEmpty())
+                    break;
+                int firstCommitId = page.get(0)[0];
+                lastCommitId = page.get(page.size() - 1)[0];
+                exportFiles(conn, repositoryId, firstCommitId, lastCommitId, data);
+            }
+            exportBranches(conn, repositoryId, data);
+            data.writeByte(END);
+        } catch (SQLException e) {
+            throw new IOException("Bundle export failed: " + e.getMessage(), e);
+        }
+        data.flush();
+        if (gzip != null)
+            gzip.finish();
+    }
+
+    /**
+     * バンドルを読み込んで新しいリポジトリを作成
+     * 
+     * gzip圧縮されたバンドルは先頭バイトで判別して展開する。途中で失敗した場合は書き込み済みの行を削除する。
+     * 
+     * @param in      入力（呼び出し側で閉じる）
+     * @param ownerId 作成するリポジトリの所有者ID
+     * @param name    リポジトリ名（nullの場合はバンドル内の名前）
+     * @return インポート結果
+     * @throws IOException バンドルが不正、または読み込みに失敗した場合
+     */
+    public ImportResult importBundle(InputStream in, int ownerId, String name) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+        buffered.mark(2);
+        boolean gzipped = buffered.read() == 0x1f && buffered.read() == 0x8b;
+        buffered.reset();
+        DataInputStream data = new DataInputStream(
+                gzipped ? new BufferedInputStream(new GZIPInputStream(buffered, 64 * 1024), 64 * 1024) : buffered);
+
+        if (data.readInt() != MAGIC)
+            throw new IOException("Invalid bundle");
+        int version = data.readInt();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Invalid bundle");
+        String bundleName = readString(data);
+        IdRange[] ranges = new IdRange[TABLES.length];
+        for (int i = 0; i < TABLES.length; i++) {
+            ranges[i] = new IdRange(data.readInt(), data.readInt());
+        }
+
+        Connection conn = null;
+        int repositoryId = 0;
+        int[] offsets = null;
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false);
+
+            // リポジトリ作成で書き込みロックを取ってからID範囲を確保する
+            repositoryId = insertRepository(conn, name != null ? name : bundleName, ownerId);
+            offsets = reserveIds(conn, ranges);
+            conn.commit();
+
+            ImportResult result = importRecords(conn, data, version, repositoryId, ranges, offsets);
+            conn.commit();
+            return result;
+        } catch (SQLException | IOException | RuntimeException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    if (offsets != null)
+                        deleteImported(conn, repositoryId, ranges, offsets);
+                } catch (SQLException rollbackError) {
+                    System.err.println("Bundle cleanup error: " + rollbackError.getMessage());
+                }
+            }
+            if (e instanceof IOException io)
+                throw io;
+            throw new IOException("Bundle import failed: " + e.getMessage(), e);
+        } finally {
+            // インポート中に読まれた途中までのグラフを残さない
+            if (repositoryId != 0)
+                GraphCache.getInstance().evict(repositoryId);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * テーブルごとのID範囲を取得
+     * 
+     * ツリーは各コミットの作成時に1つずつ作られ、基底ツリーも同じリポジトリの祖先コミットのツリーのため、
+     * リポジトリのコミットが参照するツリーがそのリポジトリのツリー全体になる
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param table        テーブル名
+     * @return ID範囲
+     * @throws SQLException SQL例外
+     */
+    private IdRange exportRange(Connection conn, int repositoryId, String table) throws SQLException {
+        String sql = switch (table) {
+            case "git_commit" -> "SELECT MIN(id), MAX(id) FROM git_commit WHERE repository_id = ?";
+            case "file" -> "SELECT MIN(f.id), MAX(f.id) FROM file f JOIN git_commit c ON c.id = f.commit_id "
+                    + "WHERE c.repository_id = ?";
+            case "tree" -> "SELECT MIN(tree_id), MAX(tree_id) FROM git_commit WHERE repository_id = ?";
+            default -> "SELECT MIN(id), MAX(id) FROM branch WHERE repository_id = ?";
+        };
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new IdRange(rs.getInt(1), rs.getInt(2));
+            }
+        }
+    }
+
+    /**
+     * コミットの作成者を書き出す
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param data         出力先
+     * @throws SQLException SQL例外
+     * @throws IOException  IO例外
+     */
+    private void exportUsers(Connection conn, int repositoryId, DataOutputStream data)
+            throws SQLException, IOException {
+        String sql = "SELECT id, username FROM name WHERE id IN "
+                + "(SELECT DISTINCT author_id FROM git_commit WHERE repository_id = ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    data.writeByte(USER);
+                    data.writeInt(rs.getInt("id"));
+                    writeString(data, rs.getString("username"));
+                }
+            }
+        }
+    }
+
+    /**
+     * コミット1ページ分と、その親・新しく作られたツリーを書き出す
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param afterId      前のページの最後のコミットID
+     * @param lastTreeId   書き出し済みの最大ツリーID
+     * @param data         出力先
+     * @param page         書き出したコミットの {ID, ツリーID} の出力先
+     * @return 書き出し済みの最大ツリーID
+     * @throws SQLException SQL例外
+     * @throws IOException  IO例外
+     */
+    private int exportCommitPage(Connection conn, int repositoryId, int afterId, int lastTreeId,
+            DataOutputStream data, List<int[]> page) throws SQLException, IOException {
+        String commitSql = "SELECT c.id, c.author_id, c.message, c.tree_id, c.created_at, "
+                + "(SELECT group_concat(parent_commit_id) FROM "
+                + "(SELECT parent_commit_id FROM commit_parent WHERE commit_id = c.id ORDER BY position)) AS parents "
+                + "FROM git_commit c WHERE c.repository_id = ? AND c.id > ? ORDER BY c.id LIMIT ?";
+        try (PreparedStatement stmt = conn.prepareStatement(commitSql)) {
+            stmt.setInt(1, repositoryId);
+            stmt.setInt(2, afterId);
+            stmt.setInt(3, PAGE_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int commitId = rs.getInt("id");
+                    int treeId = rs.getInt("tree_id");
+                    String parents = rs.getString("parents");
+                    String[] parentIds = parents == null ? new String[0] : parents.split(",");
+
+                    data.writeByte(COMMIT);
+                    data.writeInt(commitId);
+                    data.writeInt(rs.getInt("author_id"));
+                    writeString(data, rs.getString("message"));
+                    data.writeInt(treeId);
+                    writeString(data, rs.getString("created_at"));
+                    data.writeInt(parentIds.length);
+                    for (String parentId : parentIds) {
+                        data.writeInt(Integer.parseInt(parentId));
+                    }
+                    page.add(new int[] { commitId, treeId });
+                }
+            }
+        }
+        if (page.isEmpty())
+            return lastTreeId;
+
+        // マージで再利用されたツリーは書き出し済みのため、新しいIDのツリーだけを書き出す
+        String treeSql = "SELECT id, base_tree_id, depth, entry_count FROM tree WHERE id IN "
+                + "(SELECT tree_id FROM git_commit WHERE repository_id = ? AND id BETWEEN ? AND ?) AND id > ? ORDER BY id";
+        String entrySql = "SELECT tree_id, filename, file_id FROM tree_entry WHERE tree_id IN "
+                + "(SELECT tree_id FROM git_commit WHERE repository_id = ? AND id BETWEEN ? AND ?) AND tree_id > ?";
+        int maxTreeId = lastTreeId;
+        try (PreparedStatement stmt = conn.prepareStatement(treeSql)) {
+            setPageRange(stmt, repositoryId, page, lastTreeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    maxTreeId = Math.max(maxTreeId, rs.getInt("id"));
+                    data.writeByte(TREE);
+                    data.writeInt(rs.getInt("id"));
+                    data.writeInt(rs.getInt("base_tree_id"));
+                    data.writeInt(rs.getInt("depth"));
+                    data.writeInt(rs.getInt("entry_count"));
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(entrySql)) {
+            setPageRange(stmt, repositoryId, page, lastTreeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    data.writeByte(TREE_ENTRY);
+                    data.writeInt(rs.getInt("tree_id"));
+                    writeString(data, rs.getString("filename"));
+                    data.writeInt(rs.getInt("file_id"));
+                }
+            }
+        }
+        return maxTreeId;
+    }
+
+    /**
+     * ページのコミット範囲をツリー取得用のパラメータに設定
+     */
+    private static void setPageRange(PreparedStatement stmt, int repositoryId, List<int[]> page, int lastTreeId)
+            throws SQLException {
+        stmt.setInt(1, repositoryId);
+        stmt.setInt(2, page.get(0)[0]);
+        stmt.setInt(3, page.get(page.size() - 1)[0]);
+        stmt.setInt(4, lastTreeId);
+    }
+
+    /**
+     * コミット範囲のファイルを書き出す
+     * 
+     * @param conn          データベース接続
+     * @param repositoryId  リポジトリID
+     * @param firstCommitId 範囲の最初のコミットID
+     * @param lastCommitId  範囲の最後のコミットID
+     * @param data          出力先
+     * @throws SQLException SQL例外
+     * @throws IOException  IO例外
+     */
+    private void exportFiles(Connection conn, int repositoryId, int firstCommitId, int lastCommitId,
+            DataOutputStream data) throws SQLException, IOException {
+        String sql = "SELECT f.id, f.commit_id, f.filename, f.content, f.content_hash, f.content_encoding FROM file f "
+                + "JOIN git_commit c ON c.id = f.commit_id "
+                + "WHERE f.commit_id BETWEEN ? AND ? AND c.repository_id = ? ORDER BY f.id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, firstCommitId);
+            stmt.setInt(2, lastCommitId);
+            stmt.setInt(3, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    data.writeByte(FILE);
+                    data.writeInt(rs.getInt("id"));
+                    data.writeInt(rs.getInt("commit_id"));
+                    writeString(data, rs.getString("filename"));
+                    String content = ContentCodec.decode(rs, "content", "content_encoding");
+                    // アーカイブ済みの内容はセグメントから読み戻す
+                    writeString(data, content != null ? content : archiveStore.read(conn, rs.getInt("id")));
+                    writeString(data, rs.getString("content_hash"));
+                }
+            }
+        }
+    }
+
+    /**
+     * ブランチを書き出す
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param data         出力先
+     * @throws SQLException SQL例外
+     * @throws IOException  IO例外
+     */
+    private void exportBranches(Connection conn, int repositoryId, DataOutputStream data)
+            throws SQLException, IOException {
+        String sql = "SELECT id, name, head_commit_id FROM branch WHERE repository_id = ? ORDER BY id";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    data.writeByte(BRANCH);
+                    data.writeInt(rs.getInt("id"));
+                    writeString(data, rs.getString("name"));
+                    data.writeInt(rs.getInt("head_commit_id"));
+                }
+            }
+        }
+    }
+
+    /**
+     * リポジトリを作成
+     * 
+     * @param conn    データベース接続
+     * @param name    リポジトリ名
+     * @param ownerId 所有者ID
+     * @return リポジトリID
+     * @throws SQLException SQL例外
+     */
+    private int insertRepository(Connection conn, String name, int ownerId) throws SQLException {
+        String sql = "INSERT INTO repository(name, owner_id) VALUES(?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, name);
+            stmt.setInt(2, ownerId);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next())
+                    return rs.getInt(1);
+            }
+        }
+        throw new SQLException("Failed to create repository: " + name);
+    }
+
+    /**
+     * テーブルごとにバンドルのID範囲と同じ大きさのIDを確保
+     * 
+     * AUTOINCREMENTの採番位置（sqlite_sequence）を範囲の末尾まで進めるため、
+     * インポート中に他のリクエストが作成する行とIDが重ならない
+     * 
+     * @param conn   データベース接続（トランザクション中）
+     * @param ranges バンドルのID範囲
+     * @return テーブルごとのIDのずらし幅
+     * @throws SQLException SQL例外
+     */
+    private int[] reserveIds(Connection conn, IdRange[] ranges) throws SQLException {
+        int[] offsets = new int[TABLES.length];
+        for (int i = 0; i < TABLES.length; i++) {
+            if (ranges[i].isEmpty())
+                continue;
+            int current = 0;
+            String sql = "SELECT MAX(COALESCE((SELECT seq FROM sqlite_sequence WHERE name = ?), 0), "
+                    + "COALESCE((SELECT MAX(id) FROM " + TABLES[i] + "), 0))";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, TABLES[i]);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next())
+                        current = rs.getInt(1);
+                }
+            }
+            offsets[i] = current + 1 - ranges[i].min();
+            int reservedMax = ranges[i].max() + offsets[i];
+
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE sqlite_sequence SET seq = ? WHERE name = ?")) {
+                stmt.setInt(1, reservedMax);
+                stmt.setString(2, TABLES[i]);
+                if (stmt.executeUpdate() == 0) {
+                    try (PreparedStatement insert = conn.prepareStatement(
+                            "INSERT INTO sqlite_sequence(name, seq) VALUES(?, ?)")) {
+                        insert.setString(1, TABLES[i]);
+                        insert.setInt(2, reservedMax);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * バンドルのレコードを読み込んでバッチで書き込む
+     * 
+     * @param conn         データベース接続（トランザクション中）
+     * @param data         入力
+     * @param version      バンドルの形式のバージョン
+     * @param repositoryId 作成したリポジトリID
+     * @param ranges       バンドルのID範囲
+     * @param offsets      テーブルごとのIDのずらし幅
+     * @return インポート結果
+     * @throws SQLException SQL例外
+     * @throws IOException  バンドルが不正な場合
+     */
+    private ImportResult importRecords(Connection conn, DataInputStream data, int version, int repositoryId,
+            IdRange[] ranges, int[] offsets) throws SQLException, IOException {
+        Map<Integer, Integer> authors = new HashMap<>();
+        int commits = 0;
+        int files = 0;
+        int branches = 0;
+        int pendingRows = 0;
+
+        try (PreparedStatement commitStmt = conn.prepareStatement(
+                "INSERT INTO git_commit(id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, "
+                        + "tree_id, created_at) VALUES(?, ?, ?, ?, ?, ?, ?, ?)");
+                PreparedStatement parentStmt = conn.prepareStatement(
+                        "INSERT INTO commit_parent(commit_id, position, parent_commit_id) VALUES(?, ?, ?)");
+                PreparedStatement fileStmt = conn.prepareStatement(
+                        "INSERT INTO file(id, commit_id, filename, content, content_hash, content_encoding, size) "
+                                + "VALUES(?, ?, ?, ?, ?, ?, ?)");
+                PreparedStatement treeStmt = conn.prepareStatement(
+                        "INSERT INTO tree(id, base_tree_id, depth, entry_count) VALUES(?, ?, ?, ?)");
+                PreparedStatement entryStmt = conn.prepareStatement(
+                        "INSERT INTO tree_entry(tree_id, filename, file_id) VALUES(?, ?, ?)");
+                PreparedStatement branchStmt = conn.prepareStatement(
+                        "INSERT INTO branch(id, name, repository_id, head_commit_id) VALUES(?, ?, ?, ?)")) {
+            PreparedStatement[] batches = { commitStmt, parentStmt, fileStmt, treeStmt, entryStmt, branchStmt };
+
+            while (true) {
+                int type = data.readUnsignedByte();
+                if (type == END)
+                    break;
+                switch (type) {
+                    case USER -> {
+                        int authorId = data.readInt();
+                        authors.put(authorId, dbManager.findOrCreateUser(conn, readString(data)));
+                    }
+                    case COMMIT -> {
+                        int commitId = remap(data.readInt(), 0, ranges, offsets);
+                        Integer authorId = authors.get(data.readInt());
+                        if (authorId == null)
+                            throw new IOException("Invalid bundle: unknown author");
+                        String message = readString(data);
+                        Integer treeId = remapNullable(data.readInt(), 2, ranges, offsets);
+                        String createdAt = readString(data);
+                        int parentCount = version >= 2 ? data.readInt() : data.readUnsignedByte();
+                        if (parentCount < 0)
+                            throw new IOException("Invalid bundle: parent count");
+                        int[] parentIds = new int[parentCount];
+                        for (int i = 0; i < parentIds.length; i++) {
+                            parentIds[i] = remap(data.readInt(), 0, ranges, offsets);
+                        }
+
+                        commitStmt.setInt(1, commitId);
+                        commitStmt.setInt(2, repositoryId);
+                        commitStmt.setInt(3, authorId);
+                        commitStmt.setString(4, message);
+                        setNullableInt(commitStmt, 5, parentIds.length > 0 ? parentIds[0] : null);
+                        setNullableInt(commitStmt, 6, parentIds.length > 1 ? parentIds[1] : null);
+                        setNullableInt(commitStmt, 7, treeId);
+                        commitStmt.setString(8, createdAt);
+                        commitStmt.addBatch();
+                        for (int i = 0; i < parentIds.length; i++) {
+                            parentStmt.setInt(1, commitId);
+                            parentStmt.setInt(2, i);
+                            parentStmt.setInt(3, parentIds[i]);
+                            parentStmt.addBatch();
+                        }
+                        // 世代番号とブルームフィルタはIDに依存するため作り直す（親は先に記録済み）
+                        commitGraph.record(conn, commitId, parentIds);
+                        searchIndex.indexCommit(conn, repositoryId, commitId, message);
+                        commits++;
+                        pendingRows += 1 + parentIds.length;
+                    }
+                    case FILE -> {
+                        int fileId = remap(data.readInt(), 1, ranges, offsets);
+                        int fileCommitId = remap(data.readInt(), 0, ranges, offsets);
+                        String filename = readString(data);
+                        String content = readString(data);
+                        fileStmt.setInt(1, fileId);
+                        fileStmt.setInt(2, fileCommitId);
+                        fileStmt.setString(3, filename);
+                        ContentCodec.bind(fileStmt, 4, 6, content);
+                        fileStmt.setString(5, readString(data));
+                        fileStmt.setLong(7, ContentCodec.utf8Length(content));
+                        fileStmt.addBatch();
+                        searchIndex.indexFile(conn, repositoryId, fileCommitId, fileId, filename, content);
+                        files++;
+                        pendingRows++;
+                    }
+                    case TREE -> {
+                        treeStmt.setInt(1, remap(data.readInt(), 2, ranges, offsets));
+                        setNullableInt(treeStmt, 2, remapNullable(data.readInt(), 2, ranges, offsets));
+                        treeStmt.setInt(3, data.readInt());
+                        treeStmt.setInt(4, data.readInt());
+                        treeStmt.addBatch();
+                        pendingRows++;
+                    }
+                    case TREE_ENTRY -> {
+                        entryStmt.setInt(1, remap(data.readInt(), 2, ranges, offsets));
+                        entryStmt.setString(2, readString(data));
+                        // 削除を表すエントリはfile_idがNULL
+                        setNullableInt(entryStmt, 3, remapNullable(data.readInt(), 1, ranges, offsets));
+                        entryStmt.addBatch();
+                        pendingRows++;
+                    }
+                    case BRANCH -> {
+                        branchStmt.setInt(1, remap(data.readInt(), 3, ranges, offsets));
+                        branchStmt.setString(2, readString(data));
+                        branchStmt.setInt(3, repositoryId);
+                        setNullableInt(branchStmt, 4, remapNullable(data.readInt(), 0, ranges, offsets));
+                        branchStmt.addBatch();
+                        branches++;
+                        pendingRows++;
+                    }
+                    default -> throw new IOException("Invalid bundle: unknown record " + type);
+                }
+
+                if (pendingRows >= BATCH_ROWS) {
+                    executeBatches(batches);
+                    conn.commit();
+                    pendingRows = 0;
+                }
+            }
+            executeBatches(batches);
+        }
+        return new ImportResult(repositoryId, commits, files, branches);
+    }
+
+    /**
+     * 溜まったバッチを実行
+     */
+    private static void executeBatches(PreparedStatement[] batches) throws SQLException {
+        for (PreparedStatement stmt : batches) {
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * インポート途中で失敗した行を削除
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId 作成したリポジトリID
+     * @param ranges       バンドルのID範囲
+     * @param offsets      テーブルごとのIDのずらし幅
+     * @throws SQLException SQL例外
+     */
+    private void deleteImported(Connection conn, int repositoryId, IdRange[] ranges, int[] offsets)
+            throws SQLException {
+        String[] deleteSqls = {
+                "DELETE FROM commit_parent WHERE commit_id BETWEEN ? AND ?",
+                "DELETE FROM commit_graph WHERE commit_id BETWEEN ? AND ?",
+                "DELETE FROM git_commit WHERE id BETWEEN ? AND ?",
+                "DELETE FROM file WHERE id BETWEEN ? AND ?",
+                "DELETE FROM tree_entry WHERE tree_id BETWEEN ? AND ?",
+                "DELETE FROM tree WHERE id BETWEEN ? AND ?",
+                "DELETE FROM branch WHERE id BETWEEN ? AND ?"
+        };
+        int[] tableOf = { 0, 0, 0, 1, 2, 2, 3 };
+        // 検索インデックスからの削除には登録した内容が必要なため、file行より先に削除する
+        searchIndex.removeRepository(conn, repositoryId);
+        for (int i = 0; i < deleteSqls.length; i++) {
+            IdRange range = ranges[tableOf[i]];
+            if (range.isEmpty())
+                continue;
+            try (PreparedStatement stmt = conn.prepareStatement(deleteSqls[i])) {
+                stmt.setInt(1, range.min() + offsets[tableOf[i]]);
+                stmt.setInt(2, range.max() + offsets[tableOf[i]]);
+                stmt.executeUpdate();
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM repository WHERE id = ?")) {
+            stmt.setInt(1, repositoryId);
+            stmt.executeUpdate();
+        }
+        conn.commit();
+    }
+
+    /**
+     * バンドル内のIDを新しいIDに置き換える
+     * 
+     * @param id      バンドル内のID
+     * @param table   TABLES内の位置
+     * @param ranges  バンドルのID範囲
+     * @param offsets テーブルごとのIDのずらし幅
+     * @return 新しいID
+     * @throws IOException IDが範囲外の場合
+     */
+    private static int remap(int id, int table, IdRange[] ranges, int[] offsets) throws IOException {
+        if (id < ranges[table].min() || id > ranges[table].max() || ranges[table].isEmpty())
+            throw new IOException("Invalid bundle: " + TABLES[table] + " id out of range: " + id);
+        return id + offsets[table];
+    }
+
+    /**
+     * バンドル内のIDを新しいIDに置き換える（0はnull）
+     */
+    private static Integer remapNullable(int id, int table, IdRange[] ranges, int[] offsets) throws IOException {
+        return id == 0 ? null : remap(id, table, ranges, offsets);
+    }
+
+    /**
+     * 整数パラメータを設定（nullはNULL）
+     */
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value != null) {
+            stmt.setInt(index, value);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    /**
+     * 文字列を書き込む（長さ + UTF-8、nullは長さ-1）
+     */
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * 文字列を読み込む
+     */
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length == -1)
+            return null;
+        if (length < 0)
+            throw new IOException("Invalid bundle: negative string length");
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
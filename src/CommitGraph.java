@@ -0,0 +1,306 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * コミットグラフの到達可能性インデックス
+ * 
+ * 各コミットに世代番号（親の最大世代 + 1）と祖先集合のブルームフィルタを持たせ、
+ * 「AはBの祖先か」やマージベースの探索で不要な走査を打ち切る。
+ * コミット作成時に同じトランザクション内で増分更新する。
+ *
+ * 全祖先を1つのフィルタに入れると長い履歴ではほぼ全ビットが立って判定に使えなくなるため、
+ * フィルタには世代番号を {@link #BLOOM_WINDOW} ごとに区切った同じ区間の祖先だけを入れる。
+ * 祖先候補が別の区間にある場合は世代番号だけで打ち切る。
+ */
+public class CommitGraph {
+    private static final int BLOOM_BYTES = 256;
+    private static final int BLOOM_HASHES = 3;
+    /** ブルームフィルタに入れる祖先の世代の区間の幅 */
+    static final int BLOOM_WINDOW = 64;
+    private static final int CACHE_ENTRIES = 20000;
+
+    /** 書き込み済みのノードは不変のためキャッシュできる */
+    private static final LruCache<Integer, Node> nodeCache = new LruCache<>(CACHE_ENTRIES);
+
+    static {
+        DatabaseManager.getInstance().addResetListener(nodeCache::clear);
+    }
+
+    private final DatabaseManager dbManager;
+
+    public CommitGraph() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * グラフノードレコード
+     * 
+     * @param commitId   コミットID
+     * @param generation 世代番号（ルートは1）
+     * @param bloom      同じ世代区間にある祖先（自身を含む）のブルームフィルタ
+     * @param parents    親コミットID
+     */
+    record Node(int commitId, int generation, byte[] bloom, int[] parents) {
+    }
+
+    /**
+     * 祖先関係の判定結果レコード
+     * 
+     * @param commitIdA   コミットAのID
+     * @param commitIdB   コミットBのID
+     * @param aAncestorOfB AがBの祖先の場合true
+     * @param bAncestorOfA BがAの祖先の場合true
+     * @param mergeBase   マージベースのコミットID（存在しない場合は0）
+     */
+    public record Ancestry(int commitIdA, int commitIdB, boolean aAncestorOfB, boolean bAncestorOfA, int mergeBase) {
+    }
+
+    /**
+     * 新しいコミットをインデックスに追加
+     * 
+     * @param conn      データベース接続（コミット作成と同じトランザクション）
+     * @param commitId  コミットID
+     * @param parentIds 親コミットID
+     * @throws SQLException SQL例外
+     */
+    public void record(Connection conn, int commitId, int... parentIds) throws SQLException {
+        int generation = 1;
+        List<Node> parents = new ArrayList<>(parentIds.length);
+        for (int parentId : parentIds) {
+            if (parentId == 0)
+                continue;
+            Node parent = getNode(conn, parentId);
+            if (parent == null)
+                continue;
+            parents.add(parent);
+            generation = Math.max(generation, parent.generation() + 1);
+        }
+        // 世代番号は親より必ず大きいため、同じ区間の祖先へは同じ区間の親を経由してのみ到達する
+        byte[] bloom = new byte[BLOOM_BYTES];
+        for (Node parent : parents) {
+            if (windowStart(parent.generation()) != windowStart(generation))
+                continue;
+            for (int i = 0; i < BLOOM_BYTES; i++)
+                bloom[i] |= parent.bloom()[i];
+        }
+        addToBloom(bloom, commitId);
+
+        String sql = "INSERT INTO commit_graph(commit_id, generation, ancestor_bloom) VALUES(?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, commitId);
+            stmt.setInt(2, generation);
+            stmt.setBytes(3, bloom);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 2つのコミットの祖先関係とマージベースを取得
+     * 
+     * @param commitIdA コミットAのID
+     * @param commitIdB コミットBのID
+     * @return 判定結果（どちらかが存在しない場合はnull）
+     */
+    public Ancestry getAncestry(int commitIdA, int commitIdB) {
+        try (Connection conn = dbManager.getConnection()) {
+            if (getNode(conn, commitIdA) == null || getNode(conn, commitIdB) == null)
+                return null;
+            return new Ancestry(commitIdA, commitIdB,
+                    isAncestor(conn, commitIdA, commitIdB),
+                    isAncestor(conn, commitIdB, commitIdA),
+                    findMergeBase(conn, commitIdA, commitIdB));
+        } catch (SQLException e) {
+            System.err.println("Ancestry error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * ancestorId が commitId の祖先（同一を含む）か判定
+     * 
+     * @param conn       データベース接続
+     * @param ancestorId 祖先候補のコミットID
+     * @param commitId   子孫側のコミットID
+     * @return 祖先の場合true
+     * @throws SQLException SQL例外
+     */
+    public boolean isAncestor(Connection conn, int ancestorId, int commitId) throws SQLException {
+        if (ancestorId == commitId)
+            return true;
+        Node target = getNode(conn, ancestorId);
+        Node start = getNode(conn, commitId);
+        if (target == null || start == null)
+            return false;
+
+        Deque<Node> stack = new ArrayDeque<>();
+        Set<Integer> visited = new HashSet<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.commitId() == ancestorId)
+                return true;
+            // 世代が祖先候補以下、または同じ区間にあってブルームフィルタに含まれない場合はこの先に存在しない
+            if (node.generation() <= target.generation())
+                continue;
+            if (target.generation() >= windowStart(node.generation()) && !mightContain(node.bloom(), ancestorId))
+                continue;
+            for (int parentId : node.parents()) {
+                if (visited.add(parentId)) {
+                    Node parent = getNode(conn, parentId);
+                    if (parent != null)
+                        stack.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * マージベース（共通祖先のうち最も新しい世代のもの）を探索
+     * 
+     * @param conn      データベース接続
+     * @param commitIdA コミットAのID
+     * @param commitIdB コミットBのID
+     * @return マージベースのコミットID（存在しない場合は0）
+     * @throws SQLException SQL例外
+     */
+    public int findMergeBase(Connection conn, int commitIdA, int commitIdB) throws SQLException {
+        if (commitIdA == commitIdB)
+            return commitIdA;
+        final int fromA = 1;
+        final int fromB = 2;
+
+        // 世代の大きい順に取り出すことで、最初に両側から到達したノードが最良の共通祖先になる
+        PriorityQueue<Node> queue = new PriorityQueue<>(
+                Comparator.comparingInt(Node::generation).thenComparingInt(Node::commitId).reversed());
+        Map<Integer, Integer> flags = new HashMap<>();
+        Node a = getNode(conn, commitIdA);
+        Node b = getNode(conn, commitIdB);
+        if (a == null || b == null)
+            return 0;
+        flags.put(commitIdA, fromA);
+        flags.put(commitIdB, fromB);
+        queue.add(a);
+        queue.add(b);
+
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            int flag = flags.get(node.commitId());
+            if (flag == (fromA | fromB))
+                return node.commitId();
+            for (int parentId : node.parents()) {
+                int parentFlag = flags.getOrDefault(parentId, 0);
+                if ((parentFlag | flag) != parentFlag) {
+                    boolean queued = parentFlag != 0;
+                    flags.put(parentId, parentFlag | flag);
+                    if (!queued) {
+                        Node parent = getNode(conn, parentId);
+                        if (parent != null)
+                            queue.add(parent);
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * ノードを取得
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @return ノード（存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    Node getNode(Connection conn, int commitId) throws SQLException {
+        Node cached = nodeCache.get(commitId);
+        if (cached != null)
+            return cached;
+
+        int generation;
+        byte[] bloom;
+        String sql = "SELECT generation, ancestor_bloom FROM commit_graph WHERE commit_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, commitId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    return null;
+                generation = rs.getInt("generation");
+                bloom = rs.getBytes("ancestor_bloom");
+            }
+        }
+
+        List<Integer> parentIds = new ArrayList<>();
+        String parentSql = "SELECT parent_commit_id FROM commit_parent WHERE commit_id = ? ORDER BY position";
+        try (PreparedStatement stmt = conn.prepareStatement(parentSql)) {
+            stmt.setInt(1, commitId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    parentIds.add(rs.getInt("parent_commit_id"));
+                }
+            }
+        }
+
+        Node node = new Node(commitId, generation, bloom, parentIds.stream().mapToInt(Integer::intValue).toArray());
+        // 未確定のトランザクション内で読んだノードはロールバックされうるためキャッシュしない
+        if (conn.getAutoCommit())
+            nodeCache.put(commitId, node);
+        return node;
+    }
+
+    /**
+     * 世代番号が属する区間の最初の世代を計算
+     * 
+     * @param generation 世代番号
+     * @return 区間の最初の世代
+     */
+    static int windowStart(int generation) {
+        return generation - generation % BLOOM_WINDOW;
+    }
+
+    /**
+     * ブルームフィルタにコミットIDを追加
+     * 
+     * @param bloom    ブルームフィルタ
+     * @param commitId コミットID
+     */
+    private static void addToBloom(byte[] bloom, int commitId) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(commitId, i);
+            bloom[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    /**
+     * ブルームフィルタにコミットIDが含まれる可能性があるか判定
+     * 
+     * @param bloom    ブルームフィルタ
+     * @param commitId コミットID
+     * @return 含まれる可能性がある場合true
+     */
+    private static boolean mightContain(byte[] bloom, int commitId) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(commitId, i);
+            if ((bloom[bit >>> 3] & (1 << (bit & 7))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * i番目のハッシュ関数でビット位置を計算
+     * 
+     * @param commitId コミットID
+     * @param i        ハッシュ関数の番号
+     * @return ビット位置
+     */
+    private static int bloomBit(int commitId, int i) {
+        int h = commitId * 0x9E3779B1 + i * 0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return (h & 0x7FFFFFFF) % (BLOOM_BYTES * 8);
+    }
+}
\ No newline at end of file
@@ -1,16 +1,71 @@
 package src;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.InflaterInputStream;
 
 /**
  * コミット管理クラス（Command パターンを使用）
  */
 public class CommitManager {
+    /** ファイル名を指定しない操作で対象となるファイル */
+    public static final String DEFAULT_FILENAME = "main.txt";
+    /** コミット一覧の1ページの既定件数 */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /** コミット一覧の1ページの最大件数 */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * アップロードできるファイルの最大バイト数（システムプロパティ upload.max.bytes で変更可能）
+     *
+     * 差分・blame・マージ・JSONでの内容取得はファイル全体を文字列に展開するため、
+     * JSONのリクエストボディと同じ大きさに抑える
+     */
+    public static final long UPLOAD_MAX_BYTES = Long.getLong("upload.max.bytes", 16L * 1024 * 1024);
+
+    /** ファイル内容キャッシュの容量（バイト、システムプロパティ cache.content.bytes で変更可能） */
+    private static final long CONTENT_CACHE_BYTES = Long.getLong("cache.content.bytes", 64L * 1024 * 1024);
+    private static final int BRANCH_CACHE_ENTRIES = 10000;
+    /** 履歴の走査で1つの接続から読むコミット数 */
+    private static final int LOG_BATCH = 256;
+
+    /** file行は書き込み後に変更されないため、file行IDで内容をキャッシュできる */
+    private static final LruCache<Integer, String> contentCache = new LruCache<>(CONTENT_CACHE_BYTES,
+            content -> 40 + 2L * content.length());
+    /** ブランチID → HEAD（コミット・マージ時に無効化） */
+    private static final LruCache<Integer, BranchHead> branchCache = new LruCache<>(BRANCH_CACHE_ENTRIES);
+    /** ブランチの無効化回数（無効化と並行して読んだ古い値をキャッシュしないために使用） */
+    private static final AtomicLong branchInvalidations = new AtomicLong();
+
+    static {
+        DatabaseManager.getInstance().addResetListener(() -> {
+            contentCache.clear();
+            branchCache.clear();
+            branchInvalidations.incrementAndGet();
+        });
+    }
+
     private final DatabaseManager dbManager;
+    private final TreeStore treeStore;
+    private final CommitGraph commitGraph;
+    private final SearchIndex searchIndex;
+    private final LockManager lockManager;
+    private final ArchiveStore archiveStore;
 
     public CommitManager() {
         this.dbManager = DatabaseManager.getInstance();
+        this.treeStore = new TreeStore();
+        this.commitGraph = new CommitGraph();
+        this.searchIndex = new SearchIndex();
+        this.lockManager = LockManager.getInstance();
+        this.archiveStore = ArchiveStore.getInstance();
     }
 
     /**
@@ -32,10 +87,10 @@ public class CommitManager {
         private final int branchId;
         private final String message;
         private final int authorId;
-        private final String content;
+        private final Map<String, String> changes;
 
         /**
-         * コンストラクタ
+         * コンストラクタ（main.txt のみを変更）
          * 
          * @param branchId ブランチID
          * @param message  コミットメッセージ
@@ -43,15 +98,78 @@ public class CommitManager {
          * @param content  ファイル内容
          */
         public CreateCommitCommand(int branchId, String message, int authorId, String content) {
+            this(branchId, message, authorId, Collections.singletonMap(DEFAULT_FILENAME, content));
+        }
+
+        /**
+         * コンストラクタ（複数ファイルを変更）
+         * 
+         * @param branchId ブランチID
+         * @param message  コミットメッセージ
+         * @param authorId 作成者ID
+         * @param changes  変更するファイル（ファイル名 → 内容、nullは削除）
+         */
+        public CreateCommitCommand(int branchId, String message, int authorId, Map<String, String> changes) {
+            this.branchId = branchId;
+            this.message = message;
+            this.authorId = authorId;
+            this.changes = changes;
+        }
+
+        @Override
+        public boolean execute() {
+            // HEADの読み取りから更新までを同じリポジトリの他の書き込みと直列化する
+            Integer repositoryId = getBranchRepositoryId(branchId);
+            if (repositoryId == null)
+                return false;
+            Lock lock = lockManager.lockRepository(repositoryId);
+            try {
+                return createCommitSnapshot(branchId, message, authorId, changes, Map.of());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * リクエストボディから読み込んだ1ファイルをコミットするコマンド
+     */
+    public class UploadFileCommand implements CommitCommand {
+        private final int branchId;
+        private final String message;
+        private final int authorId;
+        private final String filename;
+        private final ContentCodec.StreamedContent content;
+
+        /**
+         * コンストラクタ
+         * 
+         * @param branchId ブランチID
+         * @param message  コミットメッセージ
+         * @param authorId 作成者ID
+         * @param filename ファイル名
+         * @param content  {@link ContentCodec#encode} で変換済みの内容
+         */
+        public UploadFileCommand(int branchId, String message, int authorId, String filename,
+                ContentCodec.StreamedContent content) {
             this.branchId = branchId;
             this.message = message;
             this.authorId = authorId;
+            this.filename = filename;
             this.content = content;
         }
 
         @Override
         public boolean execute() {
-            return createCommitSnapshot(branchId, message, authorId, content);
+            Integer repositoryId = getBranchRepositoryId(branchId);
+            if (repositoryId == null)
+                return false;
+            Lock lock = lockManager.lockRepository(repositoryId);
+            try {
+                return createCommitSnapshot(branchId, message, authorId, Map.of(), Map.of(filename, content));
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -60,9 +178,9 @@ public class CommitManager {
      */
     public class CreateMergeCommitCommand implements CommitCommand {
         private final int repositoryId;
-        private final int parentCommitId1;
-        private final int parentCommitId2;
+        private final List<Integer> parentCommitIds;
         private final String content;
+        private final Map<Integer, Integer> branchHeads;
 
         /**
          * コンストラクタ
@@ -70,18 +188,36 @@ public class CommitManager {
          * @param repositoryId    リポジトリID
          * @param parentCommitId1 親コミットID1
          * @param parentCommitId2 親コミットID2
-         * @param content         ファイル内容
+         * @param content         main.txt の内容（nullの場合は親コミット1のツリーをそのまま使用）
          */
         public CreateMergeCommitCommand(int repositoryId, int parentCommitId1, int parentCommitId2, String content) {
+            this(repositoryId, List.of(parentCommitId1, parentCommitId2), content, Map.of());
+        }
+
+        /**
+         * コンストラクタ（N個の親を持つマージコミット）
+         * 
+         * @param repositoryId    リポジトリID
+         * @param parentCommitIds 親コミットID（先頭のツリーを引き継ぐ）
+         * @param content         main.txt の内容（nullの場合は最初の親のツリーをそのまま使用）
+         * @param branchHeads     同じトランザクションで新しいコミットへ進めるブランチ（ブランチID → 現在のHEADコミットID）
+         */
+        public CreateMergeCommitCommand(int repositoryId, List<Integer> parentCommitIds, String content,
+                Map<Integer, Integer> branchHeads) {
             this.repositoryId = repositoryId;
-            this.parentCommitId1 = parentCommitId1;
-            this.parentCommitId2 = parentCommitId2;
+            this.parentCommitIds = List.copyOf(parentCommitIds);
             this.content = content;
+            this.branchHeads = Map.copyOf(branchHeads);
         }
 
         @Override
         public boolean execute() {
-            return createMergeCommit(repositoryId, parentCommitId1, parentCommitId2, content);
+            Lock lock = lockManager.lockRepository(repositoryId);
+            try {
+                return createMergeCommit(repositoryId, parentCommitIds, content, branchHeads);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -98,13 +234,17 @@ public class CommitManager {
     /**
      * 通常のコミットを作成
      * 
+     * 変更されたファイルのみを書き込み、その他のファイルは親コミットのツリーと共有する
+     * 
      * @param branchId ブランチID
      * @param message  コミットメッセージ
      * @param authorId 作成者ID
-     * @param content  ファイル内容
+     * @param changes  変更するファイル（ファイル名 → 内容、nullは削除）
+     * @param uploads  変換済みの内容で追加・変更するファイル（ファイル名 → 内容）
      * @return 作成成功フラグ
      */
-    private boolean createCommitSnapshot(int branchId, String message, int authorId, String content) {
+    private boolean createCommitSnapshot(int branchId, String message, int authorId, Map<String, String> changes,
+            Map<String, ContentCodec.StreamedContent> uploads) {
         Connection conn = null;
         try {
             conn = dbManager.getConnection();
@@ -159,14 +299,29 @@ public class CommitManager {
                 return false;
             }
 
-            // ファイル保存
-            String fileSql = "INSERT INTO file(commit_id, filename, content) VALUES(?, ?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(fileSql)) {
-                stmt.setInt(1, newCommitId);
-                stmt.setString(2, "main.txt");
-                stmt.setString(3, content);
-                stmt.executeUpdate();
+            if (parentCommitId != null && parentCommitId != 0) {
+                insertParents(conn, newCommitId, List.of(parentCommitId));
+            }
+
+            // 変更ファイル保存とツリー作成
+            Integer parentTreeId = parentCommitId != null && parentCommitId != 0
+                    ? getCommitTreeId(conn, parentCommitId)
+                    : null;
+            Map<String, Integer> treeChanges = new HashMap<>();
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                Integer fileId = change.getValue() != null
+                        ? insertFile(conn, repositoryId, newCommitId, change.getKey(), change.getValue())
+                        : null;
+                treeChanges.put(change.getKey(), fileId);
+            }
+            for (Map.Entry<String, ContentCodec.StreamedContent> upload : uploads.entrySet()) {
+                treeChanges.put(upload.getKey(),
+                        insertFile(conn, repositoryId, newCommitId, upload.getKey(), upload.getValue()));
             }
+            int treeId = treeStore.writeTree(conn, parentTreeId, treeChanges);
+            setCommitTree(conn, newCommitId, treeId);
+            commitGraph.record(conn, newCommitId, parentCommitId != null ? parentCommitId : 0);
+            searchIndex.indexCommit(conn, repositoryId, newCommitId, message);
 
             // ブランチのHEAD更新
             String updateBranchSql = "UPDATE branch SET head_commit_id = ? WHERE id = ?";
@@ -177,6 +332,8 @@ public class CommitManager {
             }
 
             conn.commit();
+            invalidateBranches(List.of(branchId));
+            GraphCache.getInstance().invalidate(repositoryId);
             return true;
 
         } catch (SQLException e) {
@@ -202,26 +359,36 @@ public class CommitManager {
     /**
      * マージコミットを作成
      * 
+     * 親の一覧を commit_parent に記録し、指定されたブランチのHEADも同じトランザクションで更新する
+     * 
      * @param repositoryId    リポジトリID
-     * @param parentCommitId1 親コミットID1
-     * @param parentCommitId2 親コミットID2
+     * @param parentCommitIds 親コミットID
      * @param content         ファイル内容
-     * @return 作成成功フラグ
+     * @param branchHeads     更新するブランチ（ブランチID → 現在のHEADコミットID）
+     * @return 作成成功フラグ（他の書き込みでHEADが変わっていた場合false）
      */
-    private boolean createMergeCommit(int repositoryId, int parentCommitId1, int parentCommitId2, String content) {
+    private boolean createMergeCommit(int repositoryId, List<Integer> parentCommitIds, String content,
+            Map<Integer, Integer> branchHeads) {
+        if (parentCommitIds.isEmpty())
+            return false;
+        int parentCommitId1 = parentCommitIds.get(0);
         Connection conn = null;
         try {
             conn = dbManager.getConnection();
             conn.setAutoCommit(false);
 
-            // マージコミット作成
+            // マージコミット作成（3番目以降の親は commit_parent のみに記録）
             String commitSql = "INSERT INTO git_commit(repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at) VALUES(?, 1, 'Merge commit', ?, ?, datetime('now'))";
             int newCommitId = -1;
 
             try (PreparedStatement stmt = conn.prepareStatement(commitSql, PreparedStatement.RETURN_GENERATED_KEYS)) {
                 stmt.setInt(1, repositoryId);
                 stmt.setInt(2, parentCommitId1);
-                stmt.setInt(3, parentCommitId2);
+                if (parentCommitIds.size() > 1) {
+                    stmt.setInt(3, parentCommitIds.get(1));
+                } else {
+                    stmt.setNull(3, Types.INTEGER);
+                }
                 stmt.executeUpdate();
 
                 try (ResultSet rs = stmt.getGeneratedKeys()) {
@@ -235,17 +402,38 @@ public class CommitManager {
                 conn.rollback();
                 return false;
             }
+            insertParents(conn, newCommitId, parentCommitIds);
 
-            // ファイル保存
-            String fileSql = "INSERT INTO file(commit_id, filename, content) VALUES(?, ?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(fileSql)) {
-                stmt.setInt(1, newCommitId);
-                stmt.setString(2, "main.txt");
-                stmt.setString(3, content);
-                stmt.executeUpdate();
+            // ツリー作成（内容の指定がなければ親コミット1のツリーを共有）
+            Integer parentTreeId = getCommitTreeId(conn, parentCommitId1);
+            int treeId;
+            if (content == null && parentTreeId != null) {
+                treeId = parentTreeId;
+            } else {
+                int fileId = insertFile(conn, repositoryId, newCommitId, DEFAULT_FILENAME, content != null ? content : "");
+                treeId = treeStore.writeTree(conn, parentTreeId, Map.of(DEFAULT_FILENAME, fileId));
+            }
+            setCommitTree(conn, newCommitId, treeId);
+            commitGraph.record(conn, newCommitId, parentCommitIds.stream().mapToInt(Integer::intValue).toArray());
+            searchIndex.indexCommit(conn, repositoryId, newCommitId, "Merge commit");
+
+            // ブランチのHEAD更新（読み取り後にHEADが動いていたら全体を取り消す）
+            String updateBranchSql = "UPDATE branch SET head_commit_id = ? WHERE id = ? AND head_commit_id = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(updateBranchSql)) {
+                for (Map.Entry<Integer, Integer> branch : branchHeads.entrySet()) {
+                    stmt.setInt(1, newCommitId);
+                    stmt.setInt(2, branch.getKey());
+                    stmt.setInt(3, branch.getValue());
+                    if (stmt.executeUpdate() != 1) {
+                        conn.rollback();
+                        return false;
+                    }
+                }
             }
 
             conn.commit();
+            invalidateBranches(branchHeads.keySet());
+            GraphCache.getInstance().invalidate(repositoryId);
             return true;
 
         } catch (SQLException e) {
@@ -269,35 +457,89 @@ public class CommitManager {
     }
 
     /**
-     * コミット一覧を取得
+     * コミット情報レコード
+     * 
+     * @param id              コミットID
+     * @param repositoryId    リポジトリID
+     * @param authorId        作成者ID
+     * @param message         コミットメッセージ
+     * @param parentCommitId  親コミットID（存在しない場合は0）
+     * @param parentCommitId2 2番目の親コミットID（存在しない場合は0）
+     * @param createdAt       作成日時
+     */
+    public record CommitRecord(int id, int repositoryId, int authorId, String message,
+            int parentCommitId, int parentCommitId2, String createdAt) {
+    }
+
+    /**
+     * コミット一覧を取得（最新の1ページ分）
      * 
      * @param repositoryId リポジトリID（nullの場合は全て）
-     * @return コミットリスト
+     * @return コミットリスト（ID降順）
      */
-    public List<Map<String, Object>> getCommits(Integer repositoryId) {
-        List<Map<String, Object>> commits = new ArrayList<>();
-        String sql = repositoryId != null
-                ? "SELECT id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at FROM git_commit WHERE repository_id = ? ORDER BY id DESC"
-                : "SELECT id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at FROM git_commit ORDER BY id DESC";
+    public List<CommitRecord> getCommits(Integer repositoryId) {
+        return getCommits(repositoryId, null, null, null, null, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * コミット一覧をキーセット方式でページ取得
+     * 
+     * 次のページは、取得した最後のコミットIDを beforeId に指定して取得する
+     * 
+     * @param repositoryId リポジトリID（nullの場合は全て）
+     * @param authorId     作成者ID（nullの場合は全て）
+     * @param since        この日時以降に作成されたもの（nullの場合は制限なし）
+     * @param until        この日時以前に作成されたもの（nullの場合は制限なし）
+     * @param beforeId     このIDより古いもの（nullの場合は最新から）
+     * @param limit        最大件数
+     * @return コミットリスト（ID降順）
+     */
+    public List<CommitRecord> getCommits(Integer repositoryId, Integer authorId, String since, String until,
+            Integer beforeId, int limit) {
+        List<CommitRecord> commits = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at FROM git_commit WHERE 1 = 1");
+        if (repositoryId != null) {
+            sql.append(" AND repository_id = ?");
+            params.add(repositoryId);
+        }
+        if (authorId != null) {
+            sql.append(" AND author_id = ?");
+            params.add(authorId);
+        }
+        if (since != null) {
+            sql.append(" AND created_at >= ?");
+            params.add(since);
+        }
+        if (until != null) {
+            sql.append(" AND created_at <= ?");
+            params.add(until);
+        }
+        if (beforeId != null) {
+            sql.append(" AND id < ?");
+            params.add(beforeId);
+        }
+        sql.append(" ORDER BY id DESC LIMIT ?");
+        params.add(Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
 
         try (Connection conn = dbManager.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+                PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
 
-            if (repositoryId != null) {
-                stmt.setInt(1, repositoryId);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
             }
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> commit = new LinkedHashMap<>();
-                    commit.put("id", rs.getInt("id"));
-                    commit.put("repository_id", rs.getInt("repository_id"));
-                    commit.put("author_id", rs.getInt("author_id"));
-                    commit.put("message", rs.getString("message"));
-                    commit.put("parent_commit_id", rs.getInt("parent_commit_id"));
-                    commit.put("parent_commit_id_2", rs.getInt("parent_commit_id_2"));
-                    commit.put("created_at", rs.getString("created_at"));
-                    commits.add(commit);
+                    commits.add(new CommitRecord(
+                            rs.getInt(1),
+                            rs.getInt(2),
+                            rs.getInt(3),
+                            rs.getString(4),
+                            rs.getInt(5),
+                            rs.getInt(6),
+                            rs.getString(7)));
                 }
             }
         } catch (SQLException e) {
@@ -307,6 +549,238 @@ public class CommitManager {
         return commits;
     }
 
+    /**
+     * 履歴走査で見つかったコミットを受け取るインターフェース
+     */
+    public interface CommitVisitor {
+        /**
+         * コミットを受け取る
+         * 
+         * @param commit コミット
+         * @throws IOException 出力先の書き込みエラー
+         */
+        void visit(CommitRecord commit) throws IOException;
+    }
+
+    /**
+     * ブランチのHEADから履歴をたどり、新しい順にコミットを渡す
+     * 
+     * 再帰CTEで {@link #LOG_BATCH} 件ずつ走査し、接続を返してから visitor へ渡す。
+     * visitor がクライアントへの書き込みで待たされても、読み取りロックで書き込みを止めない。
+     * 次のバッチは、読んだコミットの親のうち最後のIDより小さいものから再開する
+     * （親は常に子より小さいIDを持つため、これで未読の祖先をすべてたどれる）。
+     * 
+     * @param headCommitId 走査を開始するコミットID
+     * @param limit        最大件数
+     * @param firstParent  trueの場合は最初の親のみをたどる
+     * @param visitor      コミットの受け取り先
+     * @throws IOException 読み出しに失敗した場合、または visitor の書き込みエラー
+     */
+    public void walkLog(int headCommitId, int limit, boolean firstParent, CommitVisitor visitor) throws IOException {
+        int remaining = Math.max(1, limit);
+        SortedSet<Integer> frontier = new TreeSet<>(List.of(headCommitId));
+        while (remaining > 0 && !frontier.isEmpty()) {
+            List<CommitRecord> batch;
+            try (Connection conn = dbManager.getConnection()) {
+                batch = readLogBatch(conn, frontier, Math.min(remaining, LOG_BATCH), firstParent);
+                if (batch.isEmpty())
+                    break;
+                int lastId = batch.get(batch.size() - 1).id();
+                if (firstParent) {
+                    for (CommitRecord commit : batch) {
+                        if (commit.parentCommitId() != 0)
+                            frontier.add(commit.parentCommitId());
+                    }
+                } else {
+                    frontier.addAll(readParentIds(conn, batch));
+                }
+                frontier = new TreeSet<>(frontier.headSet(lastId));
+            } catch (SQLException e) {
+                throw new IOException("Walk log error: " + e.getMessage(), e);
+            }
+            for (CommitRecord commit : batch) {
+                visitor.visit(commit);
+            }
+            remaining -= batch.size();
+        }
+    }
+
+    /**
+     * 指定したコミットから履歴を新しい順に一定件数読む
+     * 
+     * @param conn        データベース接続
+     * @param startIds    走査を開始するコミットID
+     * @param limit       最大件数
+     * @param firstParent trueの場合は最初の親のみをたどる
+     * @return コミット（ID降順）
+     * @throws SQLException SQL例外
+     */
+    private List<CommitRecord> readLogBatch(Connection conn, Collection<Integer> startIds, int limit,
+            boolean firstParent) throws SQLException {
+        String columns = "c.id, c.repository_id, c.author_id, c.message, c.parent_commit_id, c.parent_commit_id_2, c.created_at";
+        String step = firstParent
+                ? "SELECT " + columns + " FROM log JOIN git_commit c ON c.id = log.parent_commit_id"
+                : "SELECT " + columns + " FROM log JOIN commit_parent p ON p.commit_id = log.id"
+                        + " JOIN git_commit c ON c.id = p.parent_commit_id";
+        // 親は常に子より小さいIDを持つため、ID降順の優先度キューで走査すると新しい順に重複なく得られる
+        String sql = "WITH RECURSIVE log(id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at) AS ("
+                + "SELECT " + columns + " FROM git_commit c WHERE c.id IN (" + joinIds(startIds) + ") "
+                + "UNION " + step + " ORDER BY 1 DESC LIMIT ?) "
+                + "SELECT id, repository_id, author_id, message, parent_commit_id, parent_commit_id_2, created_at FROM log";
+
+        List<CommitRecord> commits = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    commits.add(new CommitRecord(
+                            rs.getInt(1),
+                            rs.getInt(2),
+                            rs.getInt(3),
+                            rs.getString(4),
+                            rs.getInt(5),
+                            rs.getInt(6),
+                            rs.getString(7)));
+                }
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * コミットのすべての親のIDを取得
+     * 
+     * @param conn    データベース接続
+     * @param commits コミット
+     * @return 親コミットID
+     * @throws SQLException SQL例外
+     */
+    private Set<Integer> readParentIds(Connection conn, List<CommitRecord> commits) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        for (CommitRecord commit : commits) {
+            ids.add(commit.id());
+        }
+        Set<Integer> parentIds = new HashSet<>();
+        String sql = "SELECT parent_commit_id FROM commit_parent WHERE commit_id IN (" + joinIds(ids) + ")";
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                parentIds.add(rs.getInt(1));
+            }
+        }
+        return parentIds;
+    }
+
+    /**
+     * IDをSQLのIN句用に連結（整数のみのため埋め込んでよい）
+     * 
+     * @param ids ID
+     * @return カンマ区切りのID
+     */
+    private static String joinIds(Collection<Integer> ids) {
+        StringJoiner joined = new StringJoiner(",");
+        for (int id : ids) {
+            joined.add(Integer.toString(id));
+        }
+        return joined.toString();
+    }
+
+    /**
+     * ブランチのHEADコミットIDを取得
+     * 
+     * @param branchId ブランチID
+     * @return HEADコミットID（ブランチが存在しない場合はnull、コミットがない場合は0）
+     */
+    public Integer getBranchHeadCommitId(int branchId) {
+        BranchHead head = getBranchHead(branchId);
+        return head != null ? head.headCommitId() : null;
+    }
+
+    /**
+     * ブランチが属するリポジトリIDを取得
+     * 
+     * @param branchId ブランチID
+     * @return リポジトリID（ブランチが存在しない場合はnull）
+     */
+    public Integer getBranchRepositoryId(int branchId) {
+        BranchHead head = getBranchHead(branchId);
+        return head != null ? head.repositoryId() : null;
+    }
+
+    /**
+     * ブランチのHEAD情報レコード
+     * 
+     * @param repositoryId リポジトリID
+     * @param headCommitId HEADコミットID（コミットがない場合は0）
+     */
+    public record BranchHead(int repositoryId, int headCommitId) {
+    }
+
+    /**
+     * ブランチのHEAD情報を取得（キャッシュ経由）
+     * 
+     * @param branchId ブランチID
+     * @return HEAD情報（ブランチが存在しない場合はnull）
+     */
+    public BranchHead getBranchHead(int branchId) {
+        BranchHead cached = branchCache.get(branchId);
+        if (cached != null)
+            return cached;
+
+        long invalidations = branchInvalidations.get();
+        String sql = "SELECT repository_id, head_commit_id FROM branch WHERE id = ?";
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, branchId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    BranchHead head = new BranchHead(rs.getInt("repository_id"), rs.getInt("head_commit_id"));
+                    // 読み取り中に無効化があった場合は古い値の可能性があるためキャッシュしない
+                    synchronized (branchCache) {
+                        if (branchInvalidations.get() == invalidations)
+                            branchCache.put(branchId, head);
+                    }
+                    return head;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Get branch head error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * ブランチのHEADキャッシュを無効化（HEADを更新するトランザクションの確定後に呼ぶ）
+     * 
+     * @param branchIds ブランチID
+     */
+    void invalidateBranches(Collection<Integer> branchIds) {
+        synchronized (branchCache) {
+            branchInvalidations.incrementAndGet();
+            for (int branchId : branchIds) {
+                branchCache.remove(branchId);
+            }
+        }
+    }
+
+    /**
+     * ファイル内容キャッシュの統計を取得
+     * 
+     * @return キャッシュ統計
+     */
+    public static LruCache.CacheStats getContentCacheStats() {
+        return contentCache.getStats();
+    }
+
+    /**
+     * ブランチHEADキャッシュの統計を取得
+     * 
+     * @return キャッシュ統計
+     */
+    public static LruCache.CacheStats getBranchCacheStats() {
+        return branchCache.getStats();
+    }
+
     /**
      * 指定ブランチのファイル内容を取得
      * 
@@ -318,40 +792,389 @@ public class CommitManager {
 
         try (Connection conn = dbManager.getConnection()) {
             // ブランチのHEADコミット取得
-            Integer headCommitId = null;
-            String branchSql = "SELECT head_commit_id FROM branch WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(branchSql)) {
-                stmt.setInt(1, branchId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        headCommitId = rs.getInt("head_commit_id");
-                        if (rs.wasNull() || headCommitId == 0) {
-                            headCommitId = null;
-                        }
+            BranchHead head = getBranchHead(branchId);
+            if (head != null && head.headCommitId() != 0) {
+                int headCommitId = head.headCommitId();
+                // HEADのツリーに含まれるファイル内容取得
+                Map<String, Integer> tree = resolveCommitTree(conn, headCommitId);
+                for (Map.Entry<String, Integer> entry : tree.entrySet()) {
+                    String content = readContent(conn, entry.getValue());
+                    if (content != null) {
+                        Map<String, Object> file = new LinkedHashMap<>();
+                        file.put("commit_id", headCommitId);
+                        file.put("file_id", entry.getValue());
+                        file.put("filename", entry.getKey());
+                        file.put("text", content);
+                        files.add(file);
                     }
                 }
             }
+        } catch (SQLException e) {
+            System.err.println("Get files error: " + e.getMessage());
+        }
+
+        return files;
+    }
+
+    /**
+     * 指定コミットの main.txt の内容を取得
+     * 
+     * @param commitId コミットID
+     * @return ファイル内容（存在しない場合はnull）
+     */
+    public String getFileContent(int commitId) {
+        return getFileContent(commitId, DEFAULT_FILENAME);
+    }
+
+    /**
+     * 指定コミットのファイル内容を取得
+     * 
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @return ファイル内容（存在しない場合はnull）
+     */
+    public String getFileContent(int commitId, String filename) {
+        try (Connection conn = dbManager.getConnection()) {
+            Integer fileId = findFileId(conn, commitId, filename);
+            return fileId != null ? readContent(conn, fileId) : null;
+        } catch (SQLException e) {
+            System.err.println("Get file content error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * file行の内容を取得（キャッシュ経由、圧縮されている場合は展開し、アーカイブ済みの場合はセグメントから読み戻す）
+     * 
+     * @param conn   データベース接続
+     * @param fileId file行ID
+     * @return ファイル内容（file行が存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    String readContent(Connection conn, int fileId) throws SQLException {
+        String cached = contentCache.get(fileId);
+        if (cached != null)
+            return cached;
+
+        String sql = "SELECT content, content_encoding FROM file WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    String content = ContentCodec.decode(rs, "content", "content_encoding");
+                    if (content == null)
+                        content = archiveStore.read(conn, fileId);
+                    if (content == null)
+                        content = "";
+                    // 未確定のトランザクション内で読んだ行はロールバックされうるためキャッシュしない
+                    if (conn.getAutoCommit())
+                        contentCache.put(fileId, content);
+                    return content;
+                }
+            }
+        }
+        return null;
+    }
 
-            if (headCommitId != null) {
-                // ファイル内容取得
-                String fileSql = "SELECT id, commit_id, content FROM file WHERE commit_id = ?";
-                try (PreparedStatement stmt = conn.prepareStatement(fileSql)) {
-                    stmt.setInt(1, headCommitId);
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        while (rs.next()) {
-                            Map<String, Object> file = new LinkedHashMap<>();
-                            file.put("commit_id", rs.getInt("commit_id"));
-                            file.put("file_id", rs.getInt("id"));
-                            file.put("text", rs.getString("content"));
-                            files.add(file);
-                        }
+    /**
+     * 指定コミットのファイル内容のバイト長（UTF-8）を取得
+     * 
+     * 書き込み時に記録したバイト長を返すため、圧縮・アーカイブ済みの内容も展開しない
+     * 
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @return バイト長（存在しない場合は-1）
+     */
+    public long getContentLength(int commitId, String filename) {
+        String sql = "SELECT size, content_encoding, content IS NULL AS archived, "
+                + "CASE WHEN size IS NULL AND content_encoding IS NULL THEN length(CAST(content AS BLOB)) END AS raw_size "
+                + "FROM file WHERE id = ?";
+        try (Connection conn = dbManager.getConnection()) {
+            Integer fileId = findFileId(conn, commitId, filename);
+            if (fileId == null)
+                return -1;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, fileId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next())
+                        return -1;
+                    long size = rs.getLong("size");
+                    if (!rs.wasNull())
+                        return size;
+                    // バイト長を記録する前に書き込まれた行
+                    if (rs.getBoolean("archived"))
+                        return Math.max(0, archiveStore.size(conn, fileId));
+                    if (rs.getString("content_encoding") == null)
+                        return rs.getLong("raw_size");
+                }
+            }
+            return readContent(conn, fileId).getBytes(StandardCharsets.UTF_8).length;
+        } catch (SQLException e) {
+            System.err.println("Get content length error: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * 指定コミットのファイル内容を範囲指定で取得
+     * 
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @param offset   開始位置（バイト）
+     * @param length   取得するバイト数
+     * @return 内容のバイト列（存在しない場合はnull）
+     */
+    public byte[] readContentRange(int commitId, String filename, long offset, int length) {
+        try (InputStream in = openContentRange(commitId, filename, offset, length)) {
+            return in != null ? in.readAllBytes() : null;
+        } catch (IOException e) {
+            System.err.println("Read content range error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 指定コミットのファイル内容を範囲指定で読むストリームを開く
+     * 
+     * 圧縮・アーカイブ済みの内容は先頭から展開しながら読み飛ばし、範囲の終わりで打ち切るため、
+     * ファイル全体を展開して保持しない。そのまま格納された内容は、形式の判定と同じ1回の読み取りで
+     * 要求された範囲だけをSQLite側で切り出す。
+     * 
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @param offset   開始位置（バイト）
+     * @param length   読むバイト数
+     * @return 内容のストリーム（存在しない場合はnull、呼び出し側で閉じる）
+     * @throws IOException IO例外
+     */
+    public InputStream openContentRange(int commitId, String filename, long offset, long length)
+            throws IOException {
+        // 形式の判定と内容の読み出しを1回の読み取りで行い、途中でアーカイブされても食い違わないようにする
+        String sql = "SELECT content_encoding, content IS NULL AS archived, "
+                + "CASE WHEN content_encoding IS NOT NULL THEN content END AS compressed, "
+                + "CASE WHEN content_encoding IS NULL THEN substr(CAST(content AS BLOB), ?, ?) END AS raw_range "
+                + "FROM file WHERE id = ?";
+        try (Connection conn = dbManager.getConnection()) {
+            Integer fileId = findFileId(conn, commitId, filename);
+            if (fileId == null)
+                return null;
+            InputStream in;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, offset + 1);
+                stmt.setLong(2, length);
+                stmt.setInt(3, fileId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next())
+                        return null;
+                    String encoding = rs.getString("content_encoding");
+                    if (encoding != null) {
+                        if (!ContentCodec.DEFLATE.equals(encoding))
+                            throw new IOException("Unknown content encoding: " + encoding);
+                        in = new InflaterInputStream(new ByteArrayInputStream(rs.getBytes("compressed")));
+                    } else if (rs.getBoolean("archived")) {
+                        in = archiveStore.open(conn, fileId);
+                        if (in == null)
+                            return InputStream.nullInputStream();
+                    } else {
+                        byte[] range = rs.getBytes("raw_range");
+                        return new ByteArrayInputStream(range != null ? range : new byte[0]);
                     }
                 }
             }
+            try {
+                in.skipNBytes(offset);
+            } catch (EOFException e) {
+                in.close();
+                return InputStream.nullInputStream();
+            }
+            return new LimitedInputStream(in, length);
         } catch (SQLException e) {
-            System.err.println("Get files error: " + e.getMessage());
+            throw new IOException("Read content range error: " + e.getMessage(), e);
         }
+    }
 
-        return files;
+    /**
+     * 指定したバイト数で打ち切るストリーム
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = super.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+    }
+
+    /**
+     * コミットのツリーを解決
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @return ファイル名 → file行ID
+     * @throws SQLException SQL例外
+     */
+    Map<String, Integer> resolveCommitTree(Connection conn, int commitId) throws SQLException {
+        Integer treeId = getCommitTreeId(conn, commitId);
+        return treeId != null ? treeStore.resolve(conn, treeId) : new TreeMap<>();
+    }
+
+    /**
+     * コミット内のファイルのfile行IDを検索
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @param filename ファイル名
+     * @return file行ID（存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    Integer findFileId(Connection conn, int commitId, String filename) throws SQLException {
+        Integer treeId = getCommitTreeId(conn, commitId);
+        return treeId != null ? treeStore.lookup(conn, treeId, filename) : null;
+    }
+
+    /**
+     * コミットのツリーIDを取得
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @return ツリーID（存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    Integer getCommitTreeId(Connection conn, int commitId) throws SQLException {
+        String sql = "SELECT tree_id FROM git_commit WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, commitId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int treeId = rs.getInt("tree_id");
+                    return rs.wasNull() ? null : treeId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * コミットの親を順序付きで記録
+     * 
+     * @param conn            データベース接続
+     * @param commitId        コミットID
+     * @param parentCommitIds 親コミットID（先頭が最初の親）
+     * @throws SQLException SQL例外
+     */
+    private void insertParents(Connection conn, int commitId, List<Integer> parentCommitIds) throws SQLException {
+        String sql = "INSERT INTO commit_parent(commit_id, position, parent_commit_id) VALUES(?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parentCommitIds.size(); i++) {
+                stmt.setInt(1, commitId);
+                stmt.setInt(2, i);
+                stmt.setInt(3, parentCommitIds.get(i));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * コミットにツリーを設定
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @param treeId   ツリーID
+     * @throws SQLException SQL例外
+     */
+    private void setCommitTree(Connection conn, int commitId, int treeId) throws SQLException {
+        String sql = "UPDATE git_commit SET tree_id = ? WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, treeId);
+            stmt.setInt(2, commitId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * ファイル内容を保存し、検索インデックスに登録
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param commitId     コミットID
+     * @param filename     ファイル名
+     * @param content      ファイル内容
+     * @return file行ID
+     * @throws SQLException SQL例外
+     */
+    private int insertFile(Connection conn, int repositoryId, int commitId, String filename, String content)
+            throws SQLException {
+        String sql = "INSERT INTO file(commit_id, filename, content, content_hash, content_encoding, size) "
+                + "VALUES(?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, commitId);
+            stmt.setString(2, filename);
+            ContentCodec.bind(stmt, 3, 5, content);
+            stmt.setString(4, ContentHash.of(content));
+            stmt.setLong(6, ContentCodec.utf8Length(content));
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    int fileId = rs.getInt(1);
+                    searchIndex.indexFile(conn, repositoryId, commitId, fileId, filename, content);
+                    return fileId;
+                }
+            }
+        }
+        throw new SQLException("Failed to store file: " + filename);
+    }
+
+    /**
+     * 変換済みのファイル内容を保存し、先頭部分を検索インデックスに登録
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param commitId     コミットID
+     * @param filename     ファイル名
+     * @param content      変換済みの内容
+     * @return file行ID
+     * @throws SQLException SQL例外
+     */
+    private int insertFile(Connection conn, int repositoryId, int commitId, String filename,
+            ContentCodec.StreamedContent content) throws SQLException {
+        String sql = "INSERT INTO file(commit_id, filename, content, content_hash, content_encoding, size) "
+                + "VALUES(?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, commitId);
+            stmt.setString(2, filename);
+            content.bind(stmt, 3, 5);
+            stmt.setString(4, content.hash());
+            stmt.setLong(6, content.size());
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    int fileId = rs.getInt(1);
+                    searchIndex.indexFile(conn, repositoryId, commitId, fileId, filename, content.indexText());
+                    return fileId;
+                }
+            }
+        }
+        throw new SQLException("Failed to store file: " + filename);
     }
 }
\ No newline at end of file
@@ -0,0 +1,371 @@
+package src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * file行の内容の圧縮・展開
+ *
+ * 一定の大きさ以上の内容はDeflateで圧縮してBLOBとして格納し、content_encoding に方式を記録する。
+ * 小さい内容と、圧縮しても十分に縮まない内容はそのままTEXTとして格納する（content_encoding はNULL）。
+ */
+public final class ContentCodec {
+    /** 圧縮方式: Deflate（zlib形式） */
+    public static final String DEFLATE = "deflate";
+    /** これより小さい内容（UTF-8のバイト数）は圧縮しない（システムプロパティ content.compress.threshold で変更可能） */
+    public static final int THRESHOLD = Integer.getInteger("content.compress.threshold", 1024);
+
+    /** ストリームから読み込む単位 */
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private ContentCodec() {
+    }
+
+    /**
+     * ストリームから読み込んで格納用に変換した内容
+     *
+     * @param hash       内容のハッシュ（{@link ContentHash#of(String)} と同じ値）
+     * @param size       UTF-8のバイト数
+     * @param text       そのまま格納する内容（圧縮した場合はnull）
+     * @param compressed 圧縮した内容（そのまま格納する場合はnull）
+     * @param indexText  検索インデックスに登録する先頭部分
+     */
+    public record StreamedContent(String hash, long size, String text, byte[] compressed, String indexText) {
+        /**
+         * INSERT文に内容と圧縮方式を設定
+         *
+         * @param stmt          INSERT文
+         * @param contentIndex  content のパラメータ位置
+         * @param encodingIndex content_encoding のパラメータ位置
+         * @throws SQLException SQL例外
+         */
+        public void bind(PreparedStatement stmt, int contentIndex, int encodingIndex) throws SQLException {
+            ContentCodec.bind(stmt, contentIndex, encodingIndex, text, compressed);
+        }
+    }
+
+    /**
+     * 内容が上限を超えた
+     */
+    public static class ContentTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ContentTooLargeException(long maxBytes) {
+            super("Content exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * ストリームを一定の大きさずつ読み込み、ハッシュ計算・UTF-8の検証・圧縮を同時に行う
+     *
+     * 内容全体を文字列として保持しないため、使用するメモリは圧縮後の大きさと検索用の先頭部分に収まる。
+     * しきい値以上の内容は縮み方に関わらず圧縮して格納する。
+     *
+     * @param in         入力ストリーム（UTF-8）
+     * @param maxBytes   受け付ける最大バイト数
+     * @param indexChars 検索インデックスに登録する最大文字数
+     * @return 格納用に変換した内容
+     * @throws ContentTooLargeException 上限を超えた場合
+     * @throws CharacterCodingException UTF-8として不正な場合
+     * @throws IOException              IO例外
+     */
+    public static StreamedContent encode(InputStream in, long maxBytes, int indexChars) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        ByteBuffer pending = ByteBuffer.allocate(CHUNK_BYTES + 8);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_BYTES + 8);
+        StringBuilder index = new StringBuilder();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = null;
+        DeflaterOutputStream deflater = null;
+        long size = 0;
+        try {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                size += read;
+                if (size > maxBytes)
+                    throw new ContentTooLargeException(maxBytes);
+                digest.update(chunk, 0, read);
+
+                // しきい値に達するまではそのまま保持し、達したら保持分から圧縮に切り替える
+                if (deflater == null && head.size() + read < THRESHOLD) {
+                    head.write(chunk, 0, read);
+                } else {
+                    if (deflater == null) {
+                        compressed = new ByteArrayOutputStream();
+                        deflater = new DeflaterOutputStream(compressed);
+                        head.writeTo(deflater);
+                        head = null;
+                    }
+                    deflater.write(chunk, 0, read);
+                }
+
+                pending.put(chunk, 0, read);
+                pending.flip();
+                decodeChunk(decoder, pending, chars, index, indexChars, false);
+                pending.compact();
+            }
+            pending.flip();
+            decodeChunk(decoder, pending, chars, index, indexChars, true);
+
+            String hash = ContentHash.toHex(digest.digest());
+            if (deflater == null) {
+                String text = new String(head.toByteArray(), StandardCharsets.UTF_8);
+                return new StreamedContent(hash, size, text, null, text);
+            }
+            deflater.close();
+            deflater = null;
+            return new StreamedContent(hash, size, null, compressed.toByteArray(), index.toString());
+        } finally {
+            if (deflater != null)
+                deflater.close();
+        }
+    }
+
+    /**
+     * 読み込んだバイト列をUTF-8として検証し、検索用の先頭部分を集める
+     */
+    private static void decodeChunk(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars,
+            StringBuilder index, int indexChars, boolean endOfInput) throws CharacterCodingException {
+        while (true) {
+            chars.clear();
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (!result.isError() && endOfInput && result.isUnderflow())
+                result = decoder.flush(chars);
+            if (result.isError())
+                result.throwException();
+            chars.flip();
+            if (index.length() < indexChars)
+                index.append(chars, 0, Math.min(chars.length(), indexChars - index.length()));
+            if (result.isUnderflow())
+                return;
+        }
+    }
+
+    /**
+     * 格納用に内容を圧縮
+     *
+     * @param content ファイル内容
+     * @return 圧縮した内容（そのまま格納する場合はnull）
+     */
+    public static byte[] compress(String content) {
+        if (content == null || content.length() < THRESHOLD / 3)
+            return null;
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        if (data.length < THRESHOLD)
+            return null;
+        byte[] compressed = deflate(data, Deflater.DEFAULT_COMPRESSION);
+        // 1/8以上縮まない場合は展開の手間に見合わない
+        return compressed.length <= data.length - data.length / 8 ? compressed : null;
+    }
+
+    /**
+     * 内容をUTF-8に変換した場合のバイト数を計算（変換はしない）
+     *
+     * @param content ファイル内容
+     * @return バイト数
+     */
+    public static long utf8Length(String content) {
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length()
+                    && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // 対になっていないサロゲートは '?'（1バイト）に置き換えられる
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * INSERT文に内容と圧縮方式を設定
+     *
+     * @param stmt          INSERT文
+     * @param contentIndex  content のパラメータ位置
+     * @param encodingIndex content_encoding のパラメータ位置
+     * @param content       ファイル内容
+     * @throws SQLException SQL例外
+     */
+    public static void bind(PreparedStatement stmt, int contentIndex, int encodingIndex, String content)
+            throws SQLException {
+        bind(stmt, contentIndex, encodingIndex, content, compress(content));
+    }
+
+    /**
+     * INSERT文に内容と圧縮方式を設定（圧縮済みの場合）
+     *
+     * @param stmt          INSERT文
+     * @param contentIndex  content のパラメータ位置
+     * @param encodingIndex content_encoding のパラメータ位置
+     * @param content       ファイル内容
+     * @param compressed    {@link #compress(String)} の結果
+     * @throws SQLException SQL例外
+     */
+    public static void bind(PreparedStatement stmt, int contentIndex, int encodingIndex, String content,
+            byte[] compressed) throws SQLException {
+        if (compressed != null) {
+            stmt.setBytes(contentIndex, compressed);
+            stmt.setString(encodingIndex, DEFLATE);
+        } else {
+            stmt.setString(contentIndex, content);
+            stmt.setNull(encodingIndex, Types.VARCHAR);
+        }
+    }
+
+    /**
+     * 検索結果から内容を取り出す（圧縮されている場合は展開する）
+     *
+     * @param rs             検索結果
+     * @param contentColumn  content の列名
+     * @param encodingColumn content_encoding の列名
+     * @return ファイル内容（content がNULLの場合はnull）
+     * @throws SQLException SQL例外
+     */
+    public static String decode(ResultSet rs, String contentColumn, String encodingColumn) throws SQLException {
+        String encoding = rs.getString(encodingColumn);
+        if (encoding == null)
+            return rs.getString(contentColumn);
+        if (!DEFLATE.equals(encoding))
+            throw new SQLException("Unknown content encoding: " + encoding);
+        byte[] compressed = rs.getBytes(contentColumn);
+        if (compressed == null)
+            return null;
+        try {
+            return new String(inflate(compressed, compressed.length * 4), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new SQLException("Compressed content is corrupt", e);
+        }
+    }
+
+    /**
+     * file行の内容の先頭部分を読み込む（圧縮・アーカイブされている場合も先頭部分だけを展開する）
+     *
+     * 結果は内容全体を読み込んでから先頭 maxChars 文字を切り出した場合と一致する
+     *
+     * @param conn     データベース接続
+     * @param fileId   file行ID
+     * @param maxChars 最大文字数
+     * @return 先頭部分（file行が存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    public static String readPrefix(Connection conn, int fileId, int maxChars) throws SQLException {
+        String sql = "SELECT content_encoding, CASE WHEN content_encoding IS NULL THEN substr(content, 1, ?) "
+                + "ELSE content END AS content FROM file WHERE id = ?";
+        InputStream in;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, maxChars);
+            stmt.setInt(2, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    return null;
+                String encoding = rs.getString("content_encoding");
+                if (encoding == null) {
+                    String text = rs.getString("content");
+                    if (text != null)
+                        return text.length() <= maxChars ? text : text.substring(0, maxChars);
+                    in = ArchiveStore.getInstance().open(conn, fileId);
+                    if (in == null)
+                        return "";
+                } else if (DEFLATE.equals(encoding)) {
+                    in = new InflaterInputStream(new ByteArrayInputStream(rs.getBytes("content")));
+                } else {
+                    throw new SQLException("Unknown content encoding: " + encoding);
+                }
+            }
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            StringBuilder prefix = new StringBuilder(Math.min(maxChars, 8192));
+            char[] buffer = new char[8192];
+            int read;
+            while (prefix.length() < maxChars
+                    && (read = reader.read(buffer, 0, Math.min(buffer.length, maxChars - prefix.length()))) != -1)
+                prefix.append(buffer, 0, read);
+            return prefix.toString();
+        } catch (IOException e) {
+            throw new SQLException("Content of file " + fileId + " is unreadable", e);
+        }
+    }
+
+    /**
+     * Deflateで圧縮
+     *
+     * @param data  元のデータ
+     * @param level 圧縮レベル
+     * @return 圧縮したデータ
+     */
+    static byte[] deflate(byte[] data, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, data.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflateで圧縮されたデータを展開
+     *
+     * @param data     圧縮されたデータ
+     * @param sizeHint 展開後の大きさの見込み（正確な場合は余分なコピーをしない）
+     * @return 展開したデータ
+     * @throws DataFormatException 不正なデータ
+     */
+    static byte[] inflate(byte[] data, int sizeHint) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[Math.max(64, sizeHint)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                int read = inflater.inflate(buffer, length, buffer.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("Truncated compressed data");
+                length += read;
+            }
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        } finally {
+            inflater.end();
+        }
+    }
+}
\ No newline at end of file
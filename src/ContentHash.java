@@ -0,0 +1,54 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ファイル内容のハッシュ（SHA-256）計算
+ */
+public final class ContentHash {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {
+    }
+
+    /**
+     * 内容のハッシュを計算
+     * 
+     * @param content ファイル内容（UTF-8として扱う）
+     * @return 16進表記のハッシュ
+     */
+    public static String of(String content) {
+        MessageDigest digest = newDigest();
+        return toHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * ハッシュ計算器を生成
+     * 
+     * @return SHA-256 の MessageDigest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * バイト列を16進表記に変換
+     * 
+     * @param bytes バイト列
+     * @return 16進表記
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
\ No newline at end of file
@@ -8,7 +8,35 @@ import java.util.*;
  */
 public class DatabaseManager {
     private static final String DB_URL = "jdbc:sqlite:database/database.db";
+    /** テーブルとインデックスの作成SQL（既に存在する場合は何もしない） */
+    private static final String[] CREATE_TABLE_QUERIES = {
+            "CREATE TABLE IF NOT EXISTS name (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE)",
+            "CREATE TABLE IF NOT EXISTS repository (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, owner_id INTEGER)",
+            "CREATE TABLE IF NOT EXISTS branch (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, repository_id INTEGER, head_commit_id INTEGER)",
+            "CREATE TABLE IF NOT EXISTS git_commit (id INTEGER PRIMARY KEY AUTOINCREMENT, repository_id INTEGER, author_id INTEGER, message TEXT, parent_commit_id INTEGER, parent_commit_id_2 INTEGER, tree_id INTEGER, created_at DATETIME)",
+            "CREATE TABLE IF NOT EXISTS file (id INTEGER PRIMARY KEY AUTOINCREMENT, commit_id INTEGER, filename TEXT, content TEXT, content_hash TEXT, content_encoding TEXT, size INTEGER)",
+            "CREATE TABLE IF NOT EXISTS tree (id INTEGER PRIMARY KEY AUTOINCREMENT, base_tree_id INTEGER, depth INTEGER, entry_count INTEGER)",
+            "CREATE TABLE IF NOT EXISTS tree_entry (tree_id INTEGER, filename TEXT, file_id INTEGER, PRIMARY KEY (tree_id, filename)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS commit_graph (commit_id INTEGER PRIMARY KEY, generation INTEGER, ancestor_bloom BLOB)",
+            "CREATE TABLE IF NOT EXISTS commit_parent (commit_id INTEGER, position INTEGER, parent_commit_id INTEGER, PRIMARY KEY (commit_id, position)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS archive_segment (id INTEGER PRIMARY KEY AUTOINCREMENT, file_count INTEGER, bytes INTEGER, created_at DATETIME)",
+            "CREATE TABLE IF NOT EXISTS file_archive (file_id INTEGER PRIMARY KEY, segment_id INTEGER, offset INTEGER, stored_length INTEGER, size INTEGER)",
+            "CREATE TABLE IF NOT EXISTS search_entry (id INTEGER PRIMARY KEY, repository_id INTEGER, commit_id INTEGER, file_id INTEGER)",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS search_index USING fts5(filename, body, content='')",
+            "CREATE INDEX IF NOT EXISTS idx_commit_parent_parent ON commit_parent(parent_commit_id)",
+            "CREATE INDEX IF NOT EXISTS idx_file_commit ON file(commit_id)",
+            "CREATE INDEX IF NOT EXISTS idx_file_archive_segment ON file_archive(segment_id)",
+            "CREATE INDEX IF NOT EXISTS idx_search_entry_commit ON search_entry(commit_id)",
+            "CREATE INDEX IF NOT EXISTS idx_search_entry_repository ON search_entry(repository_id)",
+            "CREATE INDEX IF NOT EXISTS idx_commit_repository ON git_commit(repository_id, id)",
+            "CREATE INDEX IF NOT EXISTS idx_commit_author ON git_commit(author_id, id)",
+            "CREATE INDEX IF NOT EXISTS idx_commit_repository_author ON git_commit(repository_id, author_id, id)",
+            "CREATE INDEX IF NOT EXISTS idx_commit_repository_created ON git_commit(repository_id, created_at)"
+    };
+    /** incremental VACUUM 1回で解放するページ数 */
+    private static final int VACUUM_PAGES = 1000;
     private static DatabaseManager instance;
+    private final List<Runnable> resetListeners = new ArrayList<>();
 
     private DatabaseManager() {
     }
@@ -35,6 +63,15 @@ public class DatabaseManager {
         return DriverManager.getConnection(DB_URL);
     }
 
+    /**
+     * データベース再初期化時に呼ばれるリスナーを登録（キャッシュ破棄用）
+     * 
+     * @param listener リスナー
+     */
+    public synchronized void addResetListener(Runnable listener) {
+        resetListeners.add(listener);
+    }
+
     /**
      * データベースとテーブルを初期化
      */
@@ -47,6 +84,14 @@ public class DatabaseManager {
         }
 
         String[] dropTableQueries = {
+                "DROP TABLE IF EXISTS search_index",
+                "DROP TABLE IF EXISTS search_entry",
+                "DROP TABLE IF EXISTS file_archive",
+                "DROP TABLE IF EXISTS archive_segment",
+                "DROP TABLE IF EXISTS commit_parent",
+                "DROP TABLE IF EXISTS commit_graph",
+                "DROP TABLE IF EXISTS tree_entry",
+                "DROP TABLE IF EXISTS tree",
                 "DROP TABLE IF EXISTS file",
                 "DROP TABLE IF EXISTS git_commit",
                 "DROP TABLE IF EXISTS branch",
@@ -54,14 +99,6 @@ public class DatabaseManager {
                 "DROP TABLE IF EXISTS name"
         };
 
-        String[] createTableQueries = {
-                "CREATE TABLE IF NOT EXISTS name (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT UNIQUE)",
-                "CREATE TABLE IF NOT EXISTS repository (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, owner_id INTEGER)",
-                "CREATE TABLE IF NOT EXISTS branch (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, repository_id INTEGER, head_commit_id INTEGER)",
-                "CREATE TABLE IF NOT EXISTS git_commit (id INTEGER PRIMARY KEY AUTOINCREMENT, repository_id INTEGER, author_id INTEGER, message TEXT, parent_commit_id INTEGER, parent_commit_id_2 INTEGER, created_at DATETIME)",
-                "CREATE TABLE IF NOT EXISTS file (id INTEGER PRIMARY KEY AUTOINCREMENT, commit_id INTEGER, filename TEXT, content TEXT)"
-        };
-
         try (Connection conn = getConnection()) {
             // 既存のテーブルを削除
             for (String query : dropTableQueries) {
@@ -70,18 +107,154 @@ public class DatabaseManager {
                 }
             }
 
+            // GCで削除した行の空きページを少しずつファイルから切り詰められるようにする
+            // （既存のファイルの設定はVACUUMで反映される）
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+            }
+
             // テーブルを再作成
-            for (String query : createTableQueries) {
+            for (String query : CREATE_TABLE_QUERIES) {
                 try (PreparedStatement stmt = conn.prepareStatement(query)) {
                     stmt.executeUpdate();
                 }
             }
+            synchronized (this) {
+                resetListeners.forEach(Runnable::run);
+            }
             System.out.println("Database initialized successfully");
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
         }
     }
 
+    /**
+     * 既存のデータを残したまま、不足しているテーブルとインデックスを作成
+     * 
+     * @return 成功した場合true
+     */
+    public boolean ensureSchema() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            System.err.println("SQLite JDBC driver not found: " + e.getMessage());
+            return false;
+        }
+
+        try (Connection conn = getConnection()) {
+            for (String query : CREATE_TABLE_QUERIES) {
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    stmt.executeUpdate();
+                }
+            }
+            // 圧縮に対応する前に作成されたデータベース
+            addColumnIfMissing(conn, "file", "content_encoding", "TEXT");
+            // 内容のバイト長を記録する前に作成されたデータベース（NULLの行は読み込み時に計算する）
+            addColumnIfMissing(conn, "file", "size", "INTEGER");
+            // 検索インデックスが本文を保持していた頃に作成されたデータベース
+            migrateSearchIndex(conn);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Database schema error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 列が存在しない場合は追加
+     *
+     * @param conn   データベース接続
+     * @param table  テーブル名
+     * @param column 列名
+     * @param type   型
+     * @throws SQLException SQL例外
+     */
+    private void addColumnIfMissing(Connection conn, String table, String column, String type) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+                while (rs.next()) {
+                    if (column.equals(rs.getString("name")))
+                        return;
+                }
+            }
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+        }
+    }
+
+    /**
+     * 本文を保持する形式の検索インデックスを、本文を保持しない形式に移行
+     *
+     * 登録済みのトークンはそのまま移すため、内容を読み直さない
+     *
+     * @param conn データベース接続
+     * @throws SQLException SQL例外
+     */
+    private void migrateSearchIndex(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = 'search_index'")) {
+                if (!rs.next() || rs.getString("sql").contains("content=''"))
+                    return;
+            }
+            conn.setAutoCommit(false);
+            try {
+                stmt.executeUpdate("INSERT INTO search_entry(id, repository_id, commit_id, file_id) "
+                        + "SELECT rowid, repository_id, commit_id, file_id FROM search_index");
+                stmt.executeUpdate("ALTER TABLE search_index RENAME TO search_index_old");
+                stmt.executeUpdate("CREATE VIRTUAL TABLE search_index USING fts5(filename, body, content='')");
+                stmt.executeUpdate("INSERT INTO search_index(rowid, filename, body) "
+                        + "SELECT rowid, filename, body FROM search_index_old");
+                stmt.executeUpdate("DROP TABLE search_index_old");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * 空きページをファイルから切り詰める（auto_vacuum = INCREMENTAL の場合のみ）
+     *
+     * 一度に切り詰めるページ数を抑え、他の書き込みを長く止めない
+     *
+     * @return 解放したページ数
+     */
+    public long incrementalVacuum() {
+        try (Connection conn = getConnection()) {
+            if (pragma(conn, "auto_vacuum") != 2)
+                return 0;
+            long before = pragma(conn, "freelist_count");
+            long remaining = before;
+            while (remaining > 0) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")");
+                }
+                long now = pragma(conn, "freelist_count");
+                if (now >= remaining)
+                    break;
+                remaining = now;
+            }
+            return before - remaining;
+        } catch (SQLException e) {
+            System.err.println("Vacuum error: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 整数値のPRAGMAを取得
+     */
+    private static long pragma(Connection conn, String name) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
     /**
      * ユーザーを作成
      * 
@@ -101,6 +274,34 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * ユーザー名に対応するユーザーを取得（存在しない場合は作成）
+     * 
+     * @param conn     データベース接続
+     * @param username ユーザー名
+     * @return ユーザーID
+     * @throws SQLException SQL例外
+     */
+    public int findOrCreateUser(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM name WHERE username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next())
+                    return rs.getInt("id");
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO name(username) VALUES(?)",
+                PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, username);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next())
+                    return rs.getInt(1);
+            }
+        }
+        throw new SQLException("Failed to create user: " + username);
+    }
+
     /**
      * 全ユーザーを取得
      * 
@@ -0,0 +1,183 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * コミット間の差分管理クラス
+ * 
+ * 両方のコミットのツリーを解決し、file行が異なるパスごとに行差分を求める
+ */
+public class DiffManager {
+    private static final int CONTEXT_LINES = 3;
+    private static final long CACHE_WEIGHT = 8L * 1024 * 1024;
+
+    /** コミットは不変のため、コミットIDの組（とファイル名）で差分をキャッシュできる */
+    private static final LruCache<String, DiffResult> cache = new LruCache<>(CACHE_WEIGHT, DiffManager::weigh);
+
+    static {
+        DatabaseManager.getInstance().addResetListener(cache::clear);
+    }
+
+    private final DatabaseManager dbManager;
+    private final CommitManager commitManager;
+
+    public DiffManager() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.commitManager = new CommitManager();
+    }
+
+    /**
+     * ファイルの変更種別
+     */
+    public enum Status {
+        ADDED, DELETED, MODIFIED;
+
+        /**
+         * API表記（小文字）を取得
+         * 
+         * @return 表記
+         */
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * ファイルごとの差分レコード
+     * 
+     * @param filename ファイル名
+     * @param status   変更種別
+     * @param hunks    unified 形式のハンク
+     */
+    public record FileDiff(String filename, Status status, List<LineDiff.Hunk> hunks) {
+    }
+
+    /**
+     * 差分結果レコード
+     * 
+     * @param fromCommitId 変更前コミットID
+     * @param toCommitId   変更後コミットID
+     * @param files        内容が変わったファイルの差分（ファイル名順）
+     */
+    public record DiffResult(int fromCommitId, int toCommitId, List<FileDiff> files) {
+    }
+
+    /**
+     * 2つのコミット間の全ファイルの差分を取得
+     * 
+     * @param fromCommitId 変更前コミットID
+     * @param toCommitId   変更後コミットID
+     * @return 差分結果（コミットが存在しない場合はnull）
+     */
+    public DiffResult diff(int fromCommitId, int toCommitId) {
+        return diff(fromCommitId, toCommitId, null);
+    }
+
+    /**
+     * 2つのコミット間の差分を取得
+     * 
+     * @param fromCommitId 変更前コミットID
+     * @param toCommitId   変更後コミットID
+     * @param filename     対象のファイル名（nullの場合は全ファイル）
+     * @return 差分結果（コミットが存在しない場合はnull）
+     */
+    public DiffResult diff(int fromCommitId, int toCommitId, String filename) {
+        String key = fromCommitId + ":" + toCommitId + (filename != null ? "/" + filename : "");
+        DiffResult cached = cache.get(key);
+        if (cached != null)
+            return cached;
+
+        List<FileDiff> files = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection()) {
+            Map<String, Integer> fromTree = resolveTree(conn, fromCommitId);
+            Map<String, Integer> toTree = resolveTree(conn, toCommitId);
+            if (fromTree == null || toTree == null)
+                return null;
+
+            SortedSet<String> paths = new TreeSet<>(fromTree.keySet());
+            paths.addAll(toTree.keySet());
+            if (filename != null)
+                paths.retainAll(Set.of(filename));
+            for (String path : paths) {
+                Integer fromFileId = fromTree.get(path);
+                Integer toFileId = toTree.get(path);
+                if (Objects.equals(fromFileId, toFileId))
+                    continue;
+                List<String> before = fromFileId != null
+                        ? LineDiff.splitLines(commitManager.readContent(conn, fromFileId)) : List.of();
+                List<String> after = toFileId != null
+                        ? LineDiff.splitLines(commitManager.readContent(conn, toFileId)) : List.of();
+                List<LineDiff.Hunk> hunks = LineDiff.toHunks(LineDiff.diff(before, after), CONTEXT_LINES);
+                // 別のfile行でも内容が同じ場合は変更なし
+                if (fromFileId != null && toFileId != null && hunks.isEmpty())
+                    continue;
+                Status status = fromFileId == null ? Status.ADDED : toFileId == null ? Status.DELETED : Status.MODIFIED;
+                files.add(new FileDiff(path, status, hunks));
+            }
+        } catch (SQLException e) {
+            System.err.println("Diff error: " + e.getMessage());
+            return null;
+        }
+
+        DiffResult result = new DiffResult(fromCommitId, toCommitId, files);
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * コミットのツリーを解決
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @return ファイル名 → file行ID（コミットが存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    private Map<String, Integer> resolveTree(Connection conn, int commitId) throws SQLException {
+        if (commitManager.getCommitTreeId(conn, commitId) == null) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM git_commit WHERE id = ?")) {
+                stmt.setInt(1, commitId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next())
+                        return null;
+                }
+            }
+        }
+        return commitManager.resolveCommitTree(conn, commitId);
+    }
+
+    /**
+     * ファイルごとの差分を unified 形式のテキストに変換
+     * 
+     * @param result 差分結果
+     * @return unified 形式のテキスト
+     */
+    public static String toUnified(DiffResult result) {
+        StringBuilder sb = new StringBuilder();
+        for (FileDiff file : result.files()) {
+            sb.append("--- ").append(file.status() == Status.ADDED ? "/dev/null" : "a/" + file.filename()).append('\n');
+            sb.append("+++ ").append(file.status() == Status.DELETED ? "/dev/null" : "b/" + file.filename()).append('\n');
+            sb.append(LineDiff.toUnified(file.hunks()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * キャッシュ上の差分結果のおおよそのバイト数を計算
+     * 
+     * @param result 差分結果
+     * @return バイト数
+     */
+    private static long weigh(DiffResult result) {
+        long weight = 64;
+        for (FileDiff file : result.files()) {
+            weight += 64 + 2L * file.filename().length();
+            for (LineDiff.Hunk hunk : file.hunks()) {
+                weight += 64;
+                for (String line : hunk.lines())
+                    weight += 48 + 2L * line.length();
+            }
+        }
+        return weight;
+    }
+}
\ No newline at end of file
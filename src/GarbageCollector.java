@@ -0,0 +1,365 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 到達できないコミットのガベージコレクション（Singletonパターン使用）
+ *
+ * リポジトリごとに全ブランチのHEADから親をたどって到達できるコミットに印を付け、
+ * 印のないコミットとそのfile行・ツリー・インデックスを一定件数ずつのトランザクションで削除する。
+ * ブランチのHEADは子孫へ進むだけなので、印付けの時点で到達できないコミットは以後も到達できない。
+ * 続けて archive.age.days / archive.depth が指定されている場合は古い履歴のファイル内容を
+ * アーカイブし（{@link ArchiveStore}）、最後に incremental VACUUM で空きページをファイルから切り詰める。
+ */
+public class GarbageCollector {
+    /** 1トランザクションで削除するコミット数 */
+    private static final int BATCH_COMMITS = 500;
+    private static GarbageCollector instance;
+
+    private final DatabaseManager dbManager;
+    private final LockManager lockManager;
+    private final SearchIndex searchIndex;
+    private final ArchiveStore archiveStore;
+    private ScheduledExecutorService scheduler;
+    private volatile GcResult lastResult;
+
+    private GarbageCollector() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.lockManager = LockManager.getInstance();
+        this.searchIndex = new SearchIndex();
+        this.archiveStore = ArchiveStore.getInstance();
+    }
+
+    /**
+     * シングルトンインスタンスを取得
+     *
+     * @return GarbageCollectorインスタンス
+     */
+    public static synchronized GarbageCollector getInstance() {
+        if (instance == null) {
+            instance = new GarbageCollector();
+        }
+        return instance;
+    }
+
+    /**
+     * 実行結果レコード
+     *
+     * @param repositories     対象にしたリポジトリ数
+     * @param deletedCommits   削除したコミット数
+     * @param deletedFiles     削除したfile行の数
+     * @param deletedTrees     削除したツリー数
+     * @param retainedCommits  到達できないが、file行を到達できるツリーが参照しているため残したコミット数
+     * @param archivedFiles    アーカイブしたfile行の数
+     * @param freedPages       VACUUMで解放したページ数
+     * @param elapsedNanos     所要時間
+     */
+    public record GcResult(int repositories, int deletedCommits, int deletedFiles, int deletedTrees,
+            int retainedCommits, int archivedFiles, long freedPages, long elapsedNanos) {
+    }
+
+    /**
+     * 定期実行を開始（既に開始している場合は何もしない）
+     *
+     * @param intervalMinutes 実行間隔（分）
+     */
+    public synchronized void startSchedule(long intervalMinutes) {
+        if (scheduler != null || intervalMinutes <= 0)
+            return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gc-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run();
+            } catch (RuntimeException e) {
+                System.err.println("GC error: " + e.getMessage());
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 直近の実行結果を取得
+     *
+     * @return 実行結果（未実行の場合はnull）
+     */
+    public GcResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * ガベージコレクションを実行（同時に1つだけ実行する）
+     *
+     * @return 実行結果（失敗した場合はnull）
+     */
+    public synchronized GcResult run() {
+        long started = System.nanoTime();
+        int repositories = 0;
+        int[] totals = new int[4];
+        long freedPages = 0;
+
+        try (Connection conn = dbManager.getConnection()) {
+            createWorkTables(conn);
+            for (int repositoryId : getRepositoryIds(conn)) {
+                int[] counts = collectRepository(conn, repositoryId);
+                if (counts == null)
+                    continue;
+                repositories++;
+                for (int i = 0; i < totals.length; i++)
+                    totals[i] += counts[i];
+                if (counts[0] > 0)
+                    GraphCache.getInstance().evict(repositoryId);
+            }
+        } catch (SQLException e) {
+            System.err.println("GC error: " + e.getMessage());
+            return null;
+        }
+        if (totals[0] > 0)
+            archiveStore.removeEmptySegments();
+
+        ArchiveStore.ArchiveResult archived = archiveStore.archive(ArchiveStore.ArchivePolicy.fromSystemProperties());
+        int archivedFiles = archived != null ? archived.files() : 0;
+        if (totals[0] > 0 || archivedFiles > 0)
+            freedPages = dbManager.incrementalVacuum();
+
+        GcResult result = new GcResult(repositories, totals[0], totals[1], totals[2], totals[3], archivedFiles,
+                freedPages, System.nanoTime() - started);
+        lastResult = result;
+        return result;
+    }
+
+    /**
+     * 1つのリポジトリを処理
+     *
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @return {削除したコミット数, file行数, ツリー数, 残したコミット数}（対象外の場合はnull）
+     * @throws SQLException SQL例外
+     */
+    private int[] collectRepository(Connection conn, int repositoryId) throws SQLException {
+        // 印付けの間はコミットの作成を止める（作成中のコミットはまだHEADから到達できない）
+        Lock lock = lockManager.lockRepository(repositoryId);
+        int retained;
+        try {
+            // HEADのないリポジトリはインポート中の可能性があるため対象外
+            if (!mark(conn, repositoryId))
+                return null;
+            retained = selectGarbage(conn, repositoryId);
+        } finally {
+            lock.unlock();
+        }
+
+        // 到達できないコミットは以後も変化しないため、ロックを持たずに少しずつ削除する
+        int[] counts = { 0, 0, 0, retained };
+        int lastId = 0;
+        while (true) {
+            List<Integer> batch = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id FROM gc_garbage WHERE id > ? ORDER BY id LIMIT " + BATCH_COMMITS)) {
+                stmt.setInt(1, lastId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next())
+                        batch.add(rs.getInt("id"));
+                }
+            }
+            if (batch.isEmpty())
+                break;
+            lastId = batch.get(batch.size() - 1);
+            int[] deleted = deleteBatch(conn, batch);
+            for (int i = 0; i < deleted.length; i++)
+                counts[i] += deleted[i];
+        }
+        return counts;
+    }
+
+    /**
+     * 作業用の一時テーブルを作成（接続ごと）
+     *
+     * @param conn データベース接続
+     * @throws SQLException SQL例外
+     */
+    private void createWorkTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : List.of("gc_reachable", "gc_tree", "gc_live_file", "gc_garbage", "gc_kept")) {
+                stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS " + table + " (id INTEGER PRIMARY KEY)");
+            }
+        }
+    }
+
+    /**
+     * HEADから到達できるコミットと、そのツリー（差分の基底を含む）・参照しているfile行に印を付ける
+     *
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @return HEADを持つブランチがある場合true
+     * @throws SQLException SQL例外
+     */
+    private boolean mark(Connection conn, int repositoryId) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM gc_reachable");
+            stmt.executeUpdate("DELETE FROM gc_tree");
+            stmt.executeUpdate("DELETE FROM gc_live_file");
+            stmt.executeUpdate("DELETE FROM gc_garbage");
+            stmt.executeUpdate("DELETE FROM gc_kept");
+        }
+
+        String reachableSql = "INSERT INTO gc_reachable WITH RECURSIVE reach(id) AS ("
+                + "SELECT head_commit_id FROM branch WHERE repository_id = ? AND head_commit_id > 0 "
+                + "UNION SELECT p.parent_commit_id FROM commit_parent p JOIN reach r ON p.commit_id = r.id) "
+                + "SELECT id FROM reach";
+        try (PreparedStatement stmt = conn.prepareStatement(reachableSql)) {
+            stmt.setInt(1, repositoryId);
+            if (stmt.executeUpdate() == 0)
+                return false;
+        }
+
+        markTrees(conn, "gc_reachable");
+        return true;
+    }
+
+    /**
+     * 一時テーブルにあるコミットのツリー（差分の基底を含む）と、印の付いたツリーが参照しているfile行に印を付ける
+     *
+     * @param conn        データベース接続
+     * @param commitTable コミットIDを持つ一時テーブル
+     * @throws SQLException SQL例外
+     */
+    private void markTrees(Connection conn, String commitTable) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT OR IGNORE INTO gc_tree WITH RECURSIVE t(id) AS ("
+                    + "SELECT c.tree_id FROM git_commit c JOIN " + commitTable + " r ON r.id = c.id "
+                    + "WHERE c.tree_id IS NOT NULL "
+                    + "UNION SELECT tr.base_tree_id FROM tree tr JOIN t ON tr.id = t.id WHERE tr.base_tree_id IS NOT NULL) "
+                    + "SELECT id FROM t");
+            stmt.executeUpdate("INSERT OR IGNORE INTO gc_live_file SELECT DISTINCT e.file_id FROM tree_entry e "
+                    + "JOIN gc_tree t ON t.id = e.tree_id WHERE e.file_id IS NOT NULL");
+        }
+    }
+
+    /**
+     * 印のないコミットを削除対象にする
+     *
+     * 到達できるツリーが参照しているfile行を持つコミットは、file行ごと残す。
+     * 残したコミットのツリーとその差分の基底も削除できないため、それらが参照するfile行を持つコミットも
+     * 残す必要がある。新たに残すコミットがなくなるまで印付けを繰り返す。
+     *
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @return 残したコミット数
+     * @throws SQLException SQL例外
+     */
+    private int selectGarbage(Connection conn, int repositoryId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO gc_garbage SELECT id FROM git_commit "
+                + "WHERE repository_id = ? AND id NOT IN (SELECT id FROM gc_reachable)")) {
+            stmt.setInt(1, repositoryId);
+            stmt.executeUpdate();
+        }
+        int retained = 0;
+        while (true) {
+            int kept;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM gc_kept");
+                stmt.executeUpdate("INSERT INTO gc_kept SELECT DISTINCT f.commit_id FROM file f "
+                        + "JOIN gc_live_file l ON l.id = f.id JOIN gc_garbage g ON g.id = f.commit_id");
+                kept = stmt.executeUpdate("DELETE FROM gc_garbage WHERE id IN (SELECT id FROM gc_kept)");
+            }
+            if (kept == 0)
+                return retained;
+            retained += kept;
+            markTrees(conn, "gc_kept");
+        }
+    }
+
+    /**
+     * コミットの一部を1つのトランザクションで削除
+     *
+     * @param conn      データベース接続
+     * @param commitIds 削除するコミットID
+     * @return {削除したコミット数, file行数, ツリー数}
+     * @throws SQLException SQL例外
+     */
+    private int[] deleteBatch(Connection conn, List<Integer> commitIds) throws SQLException {
+        String in = " IN (" + String.join(",", Collections.nCopies(commitIds.size(), "?")) + ")";
+        int[] counts = new int[3];
+        conn.setAutoCommit(false);
+        try {
+            // 到達できるコミットと共有していないツリーだけを削除
+            List<Integer> treeIds = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT tree_id FROM git_commit WHERE id"
+                    + in + " AND tree_id IS NOT NULL AND tree_id NOT IN (SELECT id FROM gc_tree)")) {
+                bind(stmt, commitIds);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next())
+                        treeIds.add(rs.getInt("tree_id"));
+                }
+            }
+            if (!treeIds.isEmpty()) {
+                String treeIn = " IN (" + String.join(",", Collections.nCopies(treeIds.size(), "?")) + ")";
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM tree_entry WHERE tree_id" + treeIn)) {
+                    bind(stmt, treeIds);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM tree WHERE id" + treeIn)) {
+                    bind(stmt, treeIds);
+                    counts[2] = stmt.executeUpdate();
+                }
+            }
+
+            // 検索インデックスからの削除には登録した内容が必要なため、file行より先に削除する
+            searchIndex.removeCommits(conn, commitIds);
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM file_archive WHERE file_id IN "
+                    + "(SELECT id FROM file WHERE commit_id" + in + ")")) {
+                bind(stmt, commitIds);
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM file WHERE commit_id" + in)) {
+                bind(stmt, commitIds);
+                counts[1] = stmt.executeUpdate();
+            }
+            for (String sql : List.of("DELETE FROM commit_parent WHERE commit_id" + in,
+                    "DELETE FROM commit_graph WHERE commit_id" + in)) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    bind(stmt, commitIds);
+                    stmt.executeUpdate();
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM git_commit WHERE id" + in)) {
+                bind(stmt, commitIds);
+                counts[0] = stmt.executeUpdate();
+            }
+            conn.commit();
+            return counts;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * リポジトリID一覧を取得
+     */
+    private static List<Integer> getRepositoryIds(Connection conn) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id FROM repository ORDER BY id")) {
+            while (rs.next())
+                ids.add(rs.getInt("id"));
+        }
+        return ids;
+    }
+
+    /**
+     * IDを順にパラメータへ設定
+     */
+    private static void bind(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++)
+            stmt.setInt(i + 1, ids.get(i));
+    }
+}
\ No newline at end of file
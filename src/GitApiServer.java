@@ -3,6 +3,7 @@ package src;
 import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
 
 /**
  * Git-like Version Control System API Server
@@ -10,6 +11,8 @@ import java.net.InetSocketAddress;
  */
 public class GitApiServer {
     private static final int PORT = 8080;
+    private static final int HANDLER_THREADS = 16;
+    private static final long GC_INTERVAL_MINUTES = 60;
 
     /** 
      * サーバーを起動
@@ -18,8 +21,12 @@ public class GitApiServer {
      * @throws IOException サーバー起動エラー
      */
     public static void main(String[] args) throws IOException {
-        // データベース初期化
-        DatabaseManager.getInstance().initializeDatabase();
+        // データベース初期化（-Ddb.keep=true の場合はインポート済みのデータを残す）
+        if (Boolean.getBoolean("db.keep")) {
+            DatabaseManager.getInstance().ensureSchema();
+        } else {
+            DatabaseManager.getInstance().initializeDatabase();
+        }
 
         // HTTPサーバー作成
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
@@ -31,12 +38,26 @@ public class GitApiServer {
         server.createContext("/api/commit", new CommitHandler());
         server.createContext("/api/file", new FileHandler());
         server.createContext("/api/merge", new MergeHandler());
+        server.createContext("/api/merge/preview", new MergePreviewHandler());
         server.createContext("/api/force-merge", new ForceMergeHandler());
+        server.createContext("/api/jobs", new JobHandler());
         server.createContext("/api/graph", new GraphHandler());
+        server.createContext("/api/diff", new DiffHandler());
+        server.createContext("/api/log", new LogHandler());
+        server.createContext("/api/ancestry", new AncestryHandler());
+        server.createContext("/api/search", new SearchHandler());
+        server.createContext("/api/blame", new BlameHandler());
+        server.createContext("/api/gc", new GcHandler());
+        server.createContext("/api/archive", new ArchiveHandler());
+        server.createContext("/api/metrics", new MetricsHandler());
 
-        server.setExecutor(null);
+        // 書き込みはリポジトリ単位のロックで直列化されるため、リクエストは並行して処理する
+        server.setExecutor(Executors.newFixedThreadPool(HANDLER_THREADS));
         server.start();
 
+        // 到達できないコミットの定期削除（-Dgc.interval.minutes=0 で無効）
+        GarbageCollector.getInstance().startSchedule(Long.getLong("gc.interval.minutes", GC_INTERVAL_MINUTES));
+
         System.out.println("Git API Server is running on http://localhost:" + PORT + "/api");
     }
 }
\ No newline at end of file
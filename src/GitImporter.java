@@ -0,0 +1,747 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ディスク上のgitリポジトリから履歴を一括インポートするクラス（オフライン用）
+ *
+ * ブランチから到達できるコミットを親が先になる順に並べ、一定数ごとのまとまりで
+ * ツリーの差分計算とblobの展開を複数スレッドで行い、1つのトランザクションで書き込む。
+ * ファイル内容は同じblobを1つのfile行で共有する。UTF-8として読めないblob（バイナリなど）のパスは取り込まない。
+ *
+ * 使い方: java src.GitImporter リポジトリのパス [リポジトリ名] [所有者のユーザー名] [スレッド数]
+ */
+public class GitImporter {
+    /** 1トランザクションで書き込むコミット数 */
+    private static final int CHUNK_COMMITS = 256;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+
+    private final DatabaseManager dbManager;
+    private final TreeStore treeStore;
+    private final CommitGraph commitGraph;
+    private final SearchIndex searchIndex;
+    private final int threads;
+
+    /**
+     * インポート結果レコード
+     *
+     * @param repositoryId  作成したリポジトリID
+     * @param commits       コミット数
+     * @param files         作成したfile行の数（同じ内容は1行）
+     * @param skippedFiles  UTF-8として読めないため取り込まなかったblobの数
+     * @param branches      ブランチ数
+     * @param inflatedBytes 展開したオブジェクトのバイト数
+     * @param elapsedNanos  所要時間
+     */
+    public record ImportStats(int repositoryId, int commits, int files, int skippedFiles, int branches,
+            long inflatedBytes, long elapsedNanos) {
+        /**
+         * 1秒あたりのコミット数を取得
+         *
+         * @return コミット数/秒
+         */
+        public double commitsPerSecond() {
+            return commits / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        /**
+         * 1秒あたりの展開量を取得
+         *
+         * @return MB/秒
+         */
+        public double megabytesPerSecond() {
+            return inflatedBytes / 1048576.0 / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+    }
+
+    /**
+     * インポートの進捗の通知先
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * コミットのまとまりを書き込んだときに呼ばれる
+         *
+         * @param importedCommits 書き込み済みのコミット数
+         * @param totalCommits    インポートするコミットの総数
+         */
+        void onProgress(int importedCommits, int totalCommits);
+    }
+
+    /**
+     * gitのコミットレコード
+     *
+     * @param id      コミットID（16進）
+     * @param tree    ルートツリーID（16進）
+     * @param parents 親コミットID（インポート対象に存在するもののみ）
+     * @param author  作者名
+     * @param time    作成日時（UNIX時間）
+     * @param message コミットメッセージ
+     */
+    private record GitCommit(String id, String tree, List<String> parents, String author, long time,
+            String message) {
+    }
+
+    /**
+     * gitのツリーエントリレコード
+     *
+     * @param id   オブジェクトID（16進）
+     * @param tree サブツリーの場合true
+     */
+    private record TreeEntry(String id, boolean tree) {
+    }
+
+    /**
+     * インポート済みのコミットレコード
+     *
+     * @param commitId コミットID
+     * @param treeId   ツリーID
+     * @param gitTree  gitのルートツリーID（16進）
+     */
+    private record ImportedCommit(int commitId, int treeId, String gitTree) {
+    }
+
+    /**
+     * 展開したblobレコード
+     *
+     * @param content    内容（UTF-8として読めない場合はnull）
+     * @param compressed 格納用に圧縮した内容（そのまま格納する場合はnull）
+     */
+    private record BlobContent(String content, byte[] compressed) {
+    }
+
+    /**
+     * コンストラクタ（スレッド数はCPUコア数）
+     */
+    public GitImporter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * コンストラクタ
+     *
+     * @param threads ツリーの差分計算とblobの展開に使うスレッド数
+     */
+    public GitImporter(int threads) {
+        this.dbManager = DatabaseManager.getInstance();
+        this.treeStore = new TreeStore();
+        this.commitGraph = new CommitGraph();
+        this.searchIndex = new SearchIndex();
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * gitリポジトリの全ブランチを新しいリポジトリとしてインポート
+     *
+     * @param gitDir         .gitディレクトリ、作業ツリー、またはベアリポジトリのパス
+     * @param repositoryName リポジトリ名（nullの場合はディレクトリ名）
+     * @param ownerName      所有者のユーザー名（nullの場合は最初のブランチの先頭コミットの作者）
+     * @return インポート結果
+     * @throws IOException gitリポジトリが読めない場合、または書き込みに失敗した場合
+     */
+    public ImportStats importRepository(Path gitDir, String repositoryName, String ownerName) throws IOException {
+        return importRepository(gitDir, repositoryName, ownerName, (importedCommits, totalCommits) -> {
+        });
+    }
+
+    /**
+     * gitリポジトリの全ブランチを新しいリポジトリとしてインポート（進捗を通知）
+     *
+     * @param gitDir         .gitディレクトリ、作業ツリー、またはベアリポジトリのパス
+     * @param repositoryName リポジトリ名（nullの場合はディレクトリ名）
+     * @param ownerName      所有者のユーザー名（nullの場合は最初のブランチの先頭コミットの作者）
+     * @param progress       コミットのまとまりを書き込むたびに呼ばれる通知先
+     * @return インポート結果
+     * @throws IOException gitリポジトリが読めない場合、または書き込みに失敗した場合
+     */
+    public ImportStats importRepository(Path gitDir, String repositoryName, String ownerName,
+            ProgressListener progress) throws IOException {
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (GitObjectStore store = new GitObjectStore(gitDir)) {
+            Map<String, String> branches = store.readBranches();
+            if (branches.isEmpty())
+                throw new IOException("No branches found: " + gitDir);
+            List<GitCommit> history = collectHistory(store, branches.values());
+
+            if (repositoryName == null) {
+                String dirName = gitDir.toAbsolutePath().normalize().getFileName().toString();
+                repositoryName = dirName.equals(".git")
+                        ? gitDir.toAbsolutePath().normalize().getParent().getFileName().toString()
+                        : dirName.replaceFirst("\\.git$", "");
+            }
+            if (ownerName == null) {
+                String firstHead = branches.values().iterator().next();
+                ownerName = history.stream().filter(c -> c.id().equals(firstHead)).findFirst().orElseThrow().author();
+            }
+
+            try (Connection conn = dbManager.getConnection()) {
+                int repositoryId = createRepository(conn, repositoryName, ownerName);
+                List<Integer> treeIds = new ArrayList<>();
+                try {
+                    Map<String, ImportedCommit> imported = new HashMap<>();
+                    Map<String, Integer> blobFileIds = new HashMap<>();
+                    Set<String> skippedBlobs = new HashSet<>();
+                    Map<String, Integer> authorIds = new HashMap<>();
+
+                    conn.setAutoCommit(false);
+                    for (int from = 0; from < history.size(); from += CHUNK_COMMITS) {
+                        List<GitCommit> chunk = history.subList(from, Math.min(from + CHUNK_COMMITS, history.size()));
+                        importChunk(conn, store, executor, repositoryId, chunk, imported, blobFileIds,
+                                skippedBlobs, authorIds, treeIds);
+                        conn.commit();
+                        progress.onProgress(from + chunk.size(), history.size());
+                    }
+
+                    writeBranches(conn, repositoryId, branches, imported);
+                    conn.commit();
+                    conn.setAutoCommit(true);
+                    return new ImportStats(repositoryId, history.size(), blobFileIds.size(), skippedBlobs.size(),
+                            branches.size(), store.getInflatedBytes(), System.nanoTime() - started);
+                } catch (SQLException | IOException e) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                    deleteImported(conn, repositoryId, treeIds);
+                    throw e;
+                } finally {
+                    // インポート中に読まれた途中までのグラフを残さない
+                    GraphCache.getInstance().evict(repositoryId);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Import failed: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * ブランチから到達できるコミットを、親が子より先になる順に集める
+     *
+     * @param store オブジェクトデータベース
+     * @param heads ブランチの先頭コミットID
+     * @return コミット一覧（親が先）
+     * @throws IOException 先頭コミットが存在しない場合、または読み込みに失敗した場合
+     */
+    private List<GitCommit> collectHistory(GitObjectStore store, Collection<String> heads) throws IOException {
+        Map<String, GitCommit> parsed = new HashMap<>();
+        Set<String> done = new HashSet<>();
+        // shallow cloneなどで存在しない親は、親なしとして扱う
+        Set<String> missing = new HashSet<>();
+        List<GitCommit> ordered = new ArrayList<>();
+
+        Deque<String> stack = new ArrayDeque<>();
+        for (String head : heads) {
+            stack.push(head);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (done.contains(id) || missing.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                GitCommit commit = parsed.get(id);
+                if (commit == null) {
+                    commit = readCommit(store, id);
+                    if (commit == null) {
+                        if (id.equals(head))
+                            throw new IOException("Branch head not found: " + head);
+                        missing.add(id);
+                        stack.pop();
+                        continue;
+                    }
+                    parsed.put(id, commit);
+                }
+
+                boolean ready = true;
+                for (String parent : commit.parents()) {
+                    if (!done.contains(parent) && !missing.contains(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(id);
+                    List<String> parents = commit.parents().stream().filter(p -> !missing.contains(p)).toList();
+                    ordered.add(new GitCommit(id, commit.tree(), parents, commit.author(), commit.time(),
+                            commit.message()));
+                    parsed.remove(id);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * コミットオブジェクトを読み込んで解析
+     *
+     * @param store オブジェクトデータベース
+     * @param id    コミットID（16進）
+     * @return コミット（存在しない場合はnull）
+     * @throws IOException コミット以外のオブジェクトの場合、または読み込みに失敗した場合
+     */
+    private GitCommit readCommit(GitObjectStore store, String id) throws IOException {
+        GitObjectStore.GitObject object = store.read(id);
+        if (object == null)
+            return null;
+        if (object.type() != GitObjectStore.COMMIT)
+            throw new IOException("Not a commit: " + id);
+
+        String text = new String(object.data(), StandardCharsets.UTF_8);
+        int headerEnd = text.indexOf("\n\n");
+        String header = headerEnd < 0 ? text : text.substring(0, headerEnd);
+        String message = headerEnd < 0 ? "" : text.substring(headerEnd + 2).stripTrailing();
+
+        String tree = null;
+        List<String> parents = new ArrayList<>();
+        String author = "unknown";
+        long time = 0;
+        for (String line : header.split("\n")) {
+            if (line.startsWith("tree ")) {
+                tree = line.substring(5).trim();
+            } else if (line.startsWith("parent ")) {
+                parents.add(line.substring(7).trim());
+            } else if (line.startsWith("author ")) {
+                // "author 名前 <メール> UNIX時間 タイムゾーン"
+                int emailStart = line.indexOf(" <");
+                int emailEnd = line.lastIndexOf("> ");
+                if (emailStart > 7)
+                    author = line.substring(7, emailStart).trim();
+                if (emailEnd > 0) {
+                    String[] when = line.substring(emailEnd + 2).trim().split(" ");
+                    try {
+                        time = Long.parseLong(when[0]);
+                    } catch (NumberFormatException e) {
+                        time = 0;
+                    }
+                }
+            }
+        }
+        if (tree == null)
+            throw new IOException("Commit without tree: " + id);
+        return new GitCommit(id, tree, parents, author, time, message);
+    }
+
+    /**
+     * コミットのまとまりを1つのトランザクションで書き込む
+     *
+     * @param conn         データベース接続（トランザクション中）
+     * @param store        オブジェクトデータベース
+     * @param executor     差分計算と展開に使うスレッドプール
+     * @param repositoryId リポジトリID
+     * @param chunk        コミット（親が先）
+     * @param imported     インポート済みのコミット（更新される）
+     * @param blobFileIds  blobのID → file行ID（更新される）
+     * @param skippedBlobs UTF-8として読めないため取り込まなかったblobのID（更新される）
+     * @param authorIds    作者名 → ユーザーID（更新される）
+     * @param treeIds      作成したツリーID（失敗時の削除用、更新される）
+     * @throws SQLException SQL例外
+     * @throws IOException  オブジェクトの読み込みに失敗した場合
+     */
+    private void importChunk(Connection conn, GitObjectStore store, ExecutorService executor, int repositoryId,
+            List<GitCommit> chunk, Map<String, ImportedCommit> imported, Map<String, Integer> blobFileIds,
+            Set<String> skippedBlobs, Map<String, Integer> authorIds, List<Integer> treeIds)
+            throws SQLException, IOException {
+        // 第1親とのツリーの差分を並列に計算
+        Map<String, String> gitTrees = new HashMap<>();
+        List<Callable<Map<String, String>>> diffTasks = new ArrayList<>();
+        for (GitCommit commit : chunk) {
+            String firstParent = commit.parents().isEmpty() ? null : commit.parents().get(0);
+            String baseTree = firstParent == null ? null
+                    : gitTrees.containsKey(firstParent) ? gitTrees.get(firstParent) : imported.get(firstParent).gitTree();
+            gitTrees.put(commit.id(), commit.tree());
+            diffTasks.add(() -> {
+                Map<String, String> changes = new TreeMap<>();
+                diffTree(store, baseTree, commit.tree(), "", changes);
+                return changes;
+            });
+        }
+        List<Map<String, String>> changesPerCommit = runAll(executor, diffTasks);
+
+        // 未インポートのblobを並列に展開
+        Set<String> newBlobs = new LinkedHashSet<>();
+        for (Map<String, String> changes : changesPerCommit) {
+            for (String blobId : changes.values()) {
+                if (blobId != null && !blobFileIds.containsKey(blobId) && !skippedBlobs.contains(blobId))
+                    newBlobs.add(blobId);
+            }
+        }
+        List<Callable<BlobContent>> blobTasks = new ArrayList<>();
+        for (String blobId : newBlobs) {
+            blobTasks.add(() -> {
+                GitObjectStore.GitObject blob = store.read(blobId);
+                if (blob == null)
+                    throw new IOException("Missing blob: " + blobId);
+                String content = decodeUtf8(blob.data());
+                if (content == null)
+                    return new BlobContent(null, null);
+                // 格納用の圧縮も並列に行う
+                return new BlobContent(content, ContentCodec.compress(content));
+            });
+        }
+        Map<String, BlobContent> contents = new HashMap<>();
+        Iterator<String> blobIds = newBlobs.iterator();
+        for (BlobContent content : runAll(executor, blobTasks)) {
+            contents.put(blobIds.next(), content);
+        }
+
+        String commitSql = "INSERT INTO git_commit(repository_id, author_id, message, parent_commit_id, "
+                + "parent_commit_id_2, created_at) VALUES(?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement commitStmt = conn.prepareStatement(commitSql, PreparedStatement.RETURN_GENERATED_KEYS);
+                PreparedStatement fileStmt = conn.prepareStatement(
+                        "INSERT INTO file(commit_id, filename, content, content_hash, content_encoding, size) "
+                                + "VALUES(?, ?, ?, ?, ?, ?)",
+                        PreparedStatement.RETURN_GENERATED_KEYS);
+                PreparedStatement treeStmt = conn.prepareStatement("UPDATE git_commit SET tree_id = ? WHERE id = ?");
+                PreparedStatement parentStmt = conn.prepareStatement(
+                        "INSERT INTO commit_parent(commit_id, position, parent_commit_id) VALUES(?, ?, ?)")) {
+            for (int i = 0; i < chunk.size(); i++) {
+                GitCommit commit = chunk.get(i);
+                int[] parentIds = commit.parents().stream().mapToInt(p -> imported.get(p).commitId()).toArray();
+
+                Integer authorId = authorIds.get(commit.author());
+                if (authorId == null) {
+                    authorId = dbManager.findOrCreateUser(conn, commit.author());
+                    authorIds.put(commit.author(), authorId);
+                }
+                commitStmt.setInt(1, repositoryId);
+                commitStmt.setInt(2, authorId);
+                commitStmt.setString(3, commit.message());
+                setNullableInt(commitStmt, 4, parentIds.length > 0 ? parentIds[0] : null);
+                setNullableInt(commitStmt, 5, parentIds.length > 1 ? parentIds[1] : null);
+                commitStmt.setString(6, TIMESTAMP.format(Instant.ofEpochSecond(commit.time())));
+                commitStmt.executeUpdate();
+                int commitId;
+                try (ResultSet rs = commitStmt.getGeneratedKeys()) {
+                    if (!rs.next())
+                        throw new SQLException("Failed to create commit");
+                    commitId = rs.getInt(1);
+                }
+
+                Map<String, Integer> treeChanges = new HashMap<>();
+                for (Map.Entry<String, String> change : changesPerCommit.get(i).entrySet()) {
+                    String blobId = change.getValue();
+                    // UTF-8として読めない内容（バイナリなど）のパスは取り込まず、以前の内容も残さない
+                    if (blobId == null || skippedBlobs.contains(blobId)) {
+                        treeChanges.put(change.getKey(), null);
+                        continue;
+                    }
+                    Integer fileId = blobFileIds.get(blobId);
+                    if (fileId == null) {
+                        BlobContent blob = contents.remove(blobId);
+                        String content = blob.content();
+                        if (content == null) {
+                            System.err.println("Skipped non-UTF-8 file: " + change.getKey() + " (" + blobId + ")");
+                            skippedBlobs.add(blobId);
+                            treeChanges.put(change.getKey(), null);
+                            continue;
+                        }
+                        fileStmt.setInt(1, commitId);
+                        fileStmt.setString(2, change.getKey());
+                        ContentCodec.bind(fileStmt, 3, 5, content, blob.compressed());
+                        fileStmt.setString(4, ContentHash.of(content));
+                        fileStmt.setLong(6, ContentCodec.utf8Length(content));
+                        fileStmt.executeUpdate();
+                        try (ResultSet rs = fileStmt.getGeneratedKeys()) {
+                            if (!rs.next())
+                                throw new SQLException("Failed to create file");
+                            fileId = rs.getInt(1);
+                        }
+                        blobFileIds.put(blobId, fileId);
+                        searchIndex.indexFile(conn, repositoryId, commitId, fileId, change.getKey(), content);
+                    }
+                    treeChanges.put(change.getKey(), fileId);
+                }
+
+                // 内容が第1親と同じコミットはツリーを共有する
+                Integer parentTreeId = parentIds.length > 0 ? imported.get(commit.parents().get(0)).treeId() : null;
+                int treeId;
+                if (parentTreeId != null && treeChanges.isEmpty()) {
+                    treeId = parentTreeId;
+                } else {
+                    treeId = treeStore.writeTree(conn, parentTreeId, treeChanges);
+                    treeIds.add(treeId);
+                }
+                treeStmt.setInt(1, treeId);
+                treeStmt.setInt(2, commitId);
+                treeStmt.executeUpdate();
+
+                for (int position = 0; position < parentIds.length; position++) {
+                    parentStmt.setInt(1, commitId);
+                    parentStmt.setInt(2, position);
+                    parentStmt.setInt(3, parentIds[position]);
+                    parentStmt.addBatch();
+                }
+                commitGraph.record(conn, commitId, parentIds);
+                searchIndex.indexCommit(conn, repositoryId, commitId, commit.message());
+                imported.put(commit.id(), new ImportedCommit(commitId, treeId, commit.tree()));
+            }
+            parentStmt.executeBatch();
+        }
+    }
+
+    /**
+     * blobの内容をUTF-8として厳密に読む（不正なバイト列を置換文字に置き換えない）
+     *
+     * @param data blobの内容
+     * @return 文字列（UTF-8として読めない場合はnull）
+     */
+    private static String decodeUtf8(byte[] data) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 2つのツリーの差分を求める（同じIDのサブツリーは読まない）
+     *
+     * @param store   オブジェクトデータベース
+     * @param oldTree 変更前のツリーID（nullは空）
+     * @param newTree 変更後のツリーID（nullは空）
+     * @param prefix  パスの接頭辞
+     * @param changes パス → blobのID（nullは削除）の出力先
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private void diffTree(GitObjectStore store, String oldTree, String newTree, String prefix,
+            Map<String, String> changes) throws IOException {
+        if (Objects.equals(oldTree, newTree))
+            return;
+        Map<String, TreeEntry> oldEntries = oldTree == null ? Map.of() : readTree(store, oldTree);
+        Map<String, TreeEntry> newEntries = newTree == null ? Map.of() : readTree(store, newTree);
+
+        Set<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+        for (String name : names) {
+            TreeEntry before = oldEntries.get(name);
+            TreeEntry after = newEntries.get(name);
+            if (before != null && after != null && before.equals(after))
+                continue;
+            String path = prefix + name;
+
+            String beforeTree = before != null && before.tree() ? before.id() : null;
+            String afterTree = after != null && after.tree() ? after.id() : null;
+            if (beforeTree != null || afterTree != null)
+                diffTree(store, beforeTree, afterTree, path + "/", changes);
+
+            if (after != null && !after.tree()) {
+                changes.put(path, after.id());
+            } else if (before != null && !before.tree()) {
+                changes.put(path, null);
+            }
+        }
+    }
+
+    /**
+     * ツリーオブジェクトを読み込んで解析（サブモジュールは除く）
+     *
+     * @param store オブジェクトデータベース
+     * @param id    ツリーID（16進）
+     * @return 名前 → エントリ
+     * @throws IOException ツリーが存在しない場合、または読み込みに失敗した場合
+     */
+    private Map<String, TreeEntry> readTree(GitObjectStore store, String id) throws IOException {
+        GitObjectStore.GitObject object = store.read(id);
+        if (object == null || object.type() != GitObjectStore.TREE)
+            throw new IOException("Missing tree: " + id);
+
+        // "<モード> <名前>\0<20バイトのID>" の繰り返し
+        byte[] data = object.data();
+        Map<String, TreeEntry> entries = new HashMap<>();
+        HexFormat hex = HexFormat.of();
+        int pos = 0;
+        while (pos < data.length) {
+            int space = pos;
+            while (data[space] != ' ')
+                space++;
+            int nul = space + 1;
+            while (data[nul] != 0)
+                nul++;
+            String mode = new String(data, pos, space - pos, StandardCharsets.US_ASCII);
+            String name = new String(data, space + 1, nul - space - 1, StandardCharsets.UTF_8);
+            String entryId = hex.formatHex(data, nul + 1, nul + 21);
+            pos = nul + 21;
+
+            if (mode.equals("160000"))
+                continue;
+            entries.put(name, new TreeEntry(entryId, mode.equals("40000")));
+        }
+        return entries;
+    }
+
+    /**
+     * タスクをすべて実行し、結果を順番どおりに返す
+     *
+     * @param executor スレッドプール
+     * @param tasks    タスク
+     * @return 結果
+     * @throws IOException いずれかのタスクが失敗した場合
+     */
+    private static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Import failed: " + e.getCause(), e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * リポジトリを作成
+     *
+     * @param conn           データベース接続
+     * @param repositoryName リポジトリ名
+     * @param ownerName      所有者のユーザー名
+     * @return リポジトリID
+     * @throws SQLException SQL例外
+     */
+    private int createRepository(Connection conn, String repositoryName, String ownerName) throws SQLException {
+        int ownerId = dbManager.findOrCreateUser(conn, ownerName);
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO repository(name, owner_id) VALUES(?, ?)",
+                PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, repositoryName);
+            stmt.setInt(2, ownerId);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next())
+                    return rs.getInt(1);
+            }
+        }
+        throw new SQLException("Failed to create repository: " + repositoryName);
+    }
+
+    /**
+     * ブランチを作成
+     *
+     * @param conn         データベース接続（トランザクション中）
+     * @param repositoryId リポジトリID
+     * @param branches     ブランチ名 → 先頭コミットID（16進）
+     * @param imported     インポート済みのコミット
+     * @throws SQLException SQL例外
+     */
+    private void writeBranches(Connection conn, int repositoryId, Map<String, String> branches,
+            Map<String, ImportedCommit> imported) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO branch(name, repository_id, head_commit_id) VALUES(?, ?, ?)")) {
+            for (Map.Entry<String, String> branch : branches.entrySet()) {
+                stmt.setString(1, branch.getKey());
+                stmt.setInt(2, repositoryId);
+                stmt.setInt(3, imported.get(branch.getValue()).commitId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * 途中まで書き込んだリポジトリを削除
+     *
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param treeIds      作成したツリーID
+     * @throws SQLException SQL例外
+     */
+    private void deleteImported(Connection conn, int repositoryId, List<Integer> treeIds) throws SQLException {
+        String commits = "(SELECT id FROM git_commit WHERE repository_id = ?)";
+        String[] deleteSqls = {
+                "DELETE FROM commit_parent WHERE commit_id IN " + commits,
+                "DELETE FROM commit_graph WHERE commit_id IN " + commits,
+                "DELETE FROM file WHERE commit_id IN " + commits,
+                "DELETE FROM git_commit WHERE repository_id = ?",
+                "DELETE FROM branch WHERE repository_id = ?",
+                "DELETE FROM repository WHERE id = ?"
+        };
+        searchIndex.removeRepository(conn, repositoryId);
+        for (String sql : deleteSqls) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, repositoryId);
+                stmt.executeUpdate();
+            }
+        }
+        try (PreparedStatement entryStmt = conn.prepareStatement("DELETE FROM tree_entry WHERE tree_id = ?");
+                PreparedStatement treeStmt = conn.prepareStatement("DELETE FROM tree WHERE id = ?")) {
+            for (int treeId : treeIds) {
+                entryStmt.setInt(1, treeId);
+                entryStmt.addBatch();
+                treeStmt.setInt(1, treeId);
+                treeStmt.addBatch();
+            }
+            entryStmt.executeBatch();
+            treeStmt.executeBatch();
+        }
+    }
+
+    /**
+     * NULL許容の整数パラメータを設定
+     */
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.INTEGER);
+        } else {
+            stmt.setInt(index, value);
+        }
+    }
+
+    /**
+     * コマンドラインからインポートを実行
+     *
+     * @param args リポジトリのパス [リポジトリ名] [所有者のユーザー名] [スレッド数]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java src.GitImporter <git-dir> [repository-name] [owner] [threads]");
+            System.exit(1);
+        }
+        if (!DatabaseManager.getInstance().ensureSchema())
+            System.exit(1);
+
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long[] lastProgress = { System.nanoTime() };
+        try {
+            ImportStats stats = new GitImporter(threads).importRepository(Paths.get(args[0]),
+                    args.length > 1 ? args[1] : null, args.length > 2 ? args[2] : null,
+                    (importedCommits, totalCommits) -> {
+                        if (System.nanoTime() - lastProgress[0] > PROGRESS_INTERVAL_NANOS) {
+                            lastProgress[0] = System.nanoTime();
+                            System.out.printf("  %d / %d commits%n", importedCommits, totalCommits);
+                        }
+                    });
+            System.out.printf("Imported repository %d: %d commits, %d files, %d branches%n",
+                    stats.repositoryId(), stats.commits(), stats.files(), stats.branches());
+            if (stats.skippedFiles() > 0)
+                System.out.printf("Skipped %d non-UTF-8 files%n", stats.skippedFiles());
+            System.out.printf("%.1f s, %.0f commits/s, %.1f MB/s inflated (%d threads)%n",
+                    stats.elapsedNanos() / 1e9, stats.commitsPerSecond(), stats.megabytesPerSecond(), threads);
+        } catch (IOException e) {
+            System.err.println("Git import error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
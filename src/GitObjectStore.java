@@ -0,0 +1,469 @@
+package src;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * gitリポジトリのオブジェクトデータベース読み取りクラス
+ *
+ * ルーズオブジェクト（objects/xx/...）とパックファイル（objects/pack/*.pack と v2 形式の .idx）に対応し、
+ * パック内のOFS_DELTA・REF_DELTAは基底オブジェクトに差分を適用して復元する。
+ * パックは位置指定の読み取りのみを使い、Inflaterはスレッドごとに再利用するため、複数スレッドから同時に読める。
+ */
+public class GitObjectStore implements Closeable {
+    public static final int COMMIT = 1;
+    public static final int TREE = 2;
+    public static final int BLOB = 3;
+    public static final int TAG = 4;
+    private static final int OFS_DELTA = 6;
+    private static final int REF_DELTA = 7;
+
+    private static final int ID_LENGTH = 20;
+    private static final long DELTA_BASE_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final Path gitDir;
+    private final List<Pack> packs = new ArrayList<>();
+    /** 差分の基底として読んだオブジェクト（同じ基底を共有する差分が続くことが多い） */
+    private final LruCache<PackOffset, GitObject> deltaBaseCache = new LruCache<>(DELTA_BASE_CACHE_BYTES,
+            object -> object.data().length + 64L);
+    private final AtomicLong inflatedBytes = new AtomicLong();
+
+    /**
+     * gitオブジェクトレコード
+     *
+     * @param type 種類（COMMIT, TREE, BLOB, TAG）
+     * @param data 内容
+     */
+    public record GitObject(int type, byte[] data) {
+    }
+
+    /**
+     * パック内の位置レコード（差分基底キャッシュのキー）
+     */
+    private record PackOffset(int pack, long offset) {
+    }
+
+    /**
+     * パックファイルと、そのインデックス
+     */
+    private static class Pack {
+        private final int number;
+        private final FileChannel channel;
+        /** オブジェクトIDを昇順に連結したもの */
+        private final byte[] ids;
+        private final long[] offsets;
+        private final int[] fanout = new int[256];
+
+        private Pack(int number, FileChannel channel, byte[] ids, long[] offsets, int[] fanout) {
+            this.number = number;
+            this.channel = channel;
+            this.ids = ids;
+            this.offsets = offsets;
+            System.arraycopy(fanout, 0, this.fanout, 0, 256);
+        }
+
+        /**
+         * オブジェクトのパック内の位置を検索
+         *
+         * @param id オブジェクトID（20バイト）
+         * @return 位置（存在しない場合は-1）
+         */
+        private long find(byte[] id) {
+            int first = id[0] & 0xff;
+            int low = first == 0 ? 0 : fanout[first - 1];
+            int high = fanout[first] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Arrays.compareUnsigned(ids, mid * ID_LENGTH, mid * ID_LENGTH + ID_LENGTH, id, 0, ID_LENGTH);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return offsets[mid];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * コンストラクタ
+     *
+     * @param path .gitディレクトリ、作業ツリー、またはベアリポジトリのパス
+     * @throws IOException gitリポジトリでない場合、またはインデックスが読めない場合
+     */
+    public GitObjectStore(Path path) throws IOException {
+        this.gitDir = Files.isDirectory(path.resolve(".git")) ? path.resolve(".git") : path;
+        if (!Files.isDirectory(gitDir.resolve("objects")))
+            throw new IOException("Not a git repository: " + path);
+
+        Path packDir = gitDir.resolve("objects").resolve("pack");
+        if (Files.isDirectory(packDir)) {
+            try (Stream<Path> files = Files.list(packDir)) {
+                for (Path idx : files.filter(p -> p.toString().endsWith(".idx")).sorted().toList()) {
+                    String name = idx.getFileName().toString();
+                    Path pack = packDir.resolve(name.substring(0, name.length() - 4) + ".pack");
+                    if (Files.exists(pack))
+                        packs.add(openPack(packs.size(), idx, pack));
+                }
+            }
+        }
+    }
+
+    /**
+     * ブランチ一覧を取得（packed-refs とルーズな参照の両方を読み、ルーズな参照を優先）
+     *
+     * @return ブランチ名（refs/heads/ 以下）→ コミットID（16進）
+     * @throws IOException IO例外
+     */
+    public Map<String, String> readBranches() throws IOException {
+        Map<String, String> branches = new TreeMap<>();
+        Path packedRefs = gitDir.resolve("packed-refs");
+        if (Files.exists(packedRefs)) {
+            for (String line : Files.readAllLines(packedRefs, StandardCharsets.UTF_8)) {
+                if (line.startsWith("#") || line.startsWith("^") || line.length() < 42)
+                    continue;
+                String ref = line.substring(41).trim();
+                if (ref.startsWith("refs/heads/"))
+                    branches.put(ref.substring("refs/heads/".length()), line.substring(0, 40));
+            }
+        }
+
+        Path heads = gitDir.resolve("refs").resolve("heads");
+        if (Files.isDirectory(heads)) {
+            try (Stream<Path> files = Files.walk(heads)) {
+                for (Path ref : files.filter(Files::isRegularFile).toList()) {
+                    String id = Files.readString(ref, StandardCharsets.UTF_8).trim();
+                    // シンボリック参照は対象外
+                    if (id.length() == 40 && !id.startsWith("ref:"))
+                        branches.put(heads.relativize(ref).toString().replace(File.separatorChar, '/'), id);
+                }
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * オブジェクトを読み込む
+     *
+     * @param id オブジェクトID（16進）
+     * @return オブジェクト（存在しない場合はnull）
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    public GitObject read(String id) throws IOException {
+        byte[] rawId = HexFormat.of().parseHex(id);
+        for (Pack pack : packs) {
+            long offset = pack.find(rawId);
+            if (offset >= 0)
+                return readPacked(pack, offset);
+        }
+        return readLoose(id);
+    }
+
+    /**
+     * 展開したバイト数の合計を取得（スループット計測用）
+     *
+     * @return バイト数
+     */
+    public long getInflatedBytes() {
+        return inflatedBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Pack pack : packs) {
+            pack.channel.close();
+        }
+    }
+
+    /**
+     * パックのインデックス（v2形式）を読み込む
+     *
+     * @param number パック番号
+     * @param idx    インデックスファイル
+     * @param pack   パックファイル
+     * @return パック
+     * @throws IOException 対応していない形式の場合
+     */
+    private Pack openPack(int number, Path idx, Path pack) throws IOException {
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(idx));
+        if (index.getInt() != 0xff744f63 || index.getInt() != 2)
+            throw new IOException("Unsupported pack index (only version 2): " + idx);
+        int[] fanout = new int[256];
+        for (int i = 0; i < 256; i++) {
+            fanout[i] = index.getInt();
+        }
+        int count = fanout[255];
+        byte[] ids = new byte[count * ID_LENGTH];
+        index.get(ids);
+        // CRC32 の表は使わない
+        index.position(index.position() + count * 4);
+        int largeOffsetTable = index.position() + count * 4;
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            int offset = index.getInt();
+            if (offset < 0) {
+                // 最上位ビットが立っている場合は8バイトの位置の表への添字
+                offsets[i] = index.getLong(largeOffsetTable + (offset & 0x7fffffff) * 8);
+            } else {
+                offsets[i] = offset;
+            }
+        }
+        return new Pack(number, FileChannel.open(pack, StandardOpenOption.READ), ids, offsets, fanout);
+    }
+
+    /**
+     * ルーズオブジェクトを読み込む
+     *
+     * @param id オブジェクトID（16進）
+     * @return オブジェクト（存在しない場合はnull）
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    private GitObject readLoose(String id) throws IOException {
+        Path file = gitDir.resolve("objects").resolve(id.substring(0, 2)).resolve(id.substring(2));
+        if (!Files.exists(file))
+            return null;
+        byte[] compressed = Files.readAllBytes(file);
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Truncated object: " + id);
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt object: " + id, e);
+        }
+        byte[] raw = out.toByteArray();
+        inflatedBytes.addAndGet(raw.length);
+
+        // "<種類> <サイズ>\0<内容>"
+        int space = indexOf(raw, (byte) ' ', 0);
+        int nul = indexOf(raw, (byte) 0, space + 1);
+        if (space < 0 || nul < 0)
+            throw new IOException("Corrupt object header: " + id);
+        int type = switch (new String(raw, 0, space, StandardCharsets.US_ASCII)) {
+            case "commit" -> COMMIT;
+            case "tree" -> TREE;
+            case "blob" -> BLOB;
+            case "tag" -> TAG;
+            default -> throw new IOException("Unknown object type: " + id);
+        };
+        return new GitObject(type, Arrays.copyOfRange(raw, nul + 1, raw.length));
+    }
+
+    /**
+     * パック内のオブジェクトを読み込む（差分の場合は基底を読んで適用する）
+     *
+     * @param pack   パック
+     * @param offset パック内の位置
+     * @return オブジェクト
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    private GitObject readPacked(Pack pack, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(32);
+        pack.channel.read(header, offset);
+        header.flip();
+
+        // 種類とサイズ（可変長）
+        int c = header.get() & 0xff;
+        int type = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = header.get() & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+        if (size > Integer.MAX_VALUE - 16)
+            throw new IOException("Object too large at offset " + offset);
+
+        switch (type) {
+            case COMMIT, TREE, BLOB, TAG -> {
+                return new GitObject(type, inflate(pack, offset + header.position(), (int) size));
+            }
+            case OFS_DELTA -> {
+                c = header.get() & 0xff;
+                long distance = c & 0x7f;
+                while ((c & 0x80) != 0) {
+                    c = header.get() & 0xff;
+                    distance = ((distance + 1) << 7) | (c & 0x7f);
+                }
+                byte[] delta = inflate(pack, offset + header.position(), (int) size);
+                GitObject base = readDeltaBase(pack, offset - distance);
+                return new GitObject(base.type(), applyDelta(base.data(), delta));
+            }
+            case REF_DELTA -> {
+                byte[] baseId = new byte[ID_LENGTH];
+                header.get(baseId);
+                byte[] delta = inflate(pack, offset + header.position(), (int) size);
+                long baseOffset = pack.find(baseId);
+                GitObject base = baseOffset >= 0 ? readDeltaBase(pack, baseOffset) : read(HexFormat.of().formatHex(baseId));
+                if (base == null)
+                    throw new IOException("Missing delta base: " + HexFormat.of().formatHex(baseId));
+                return new GitObject(base.type(), applyDelta(base.data(), delta));
+            }
+            default -> throw new IOException("Unknown pack object type " + type + " at offset " + offset);
+        }
+    }
+
+    /**
+     * 差分の基底を読み込む（キャッシュ付き）
+     *
+     * @param pack   パック
+     * @param offset パック内の位置
+     * @return オブジェクト
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    private GitObject readDeltaBase(Pack pack, long offset) throws IOException {
+        PackOffset key = new PackOffset(pack.number, offset);
+        GitObject cached = deltaBaseCache.get(key);
+        if (cached != null)
+            return cached;
+        GitObject base = readPacked(pack, offset);
+        deltaBaseCache.put(key, base);
+        return base;
+    }
+
+    /**
+     * パック内のzlib圧縮データを展開
+     *
+     * @param pack     パック
+     * @param position 圧縮データの開始位置
+     * @param size     展開後のサイズ
+     * @return 展開したデータ
+     * @throws IOException 読み込みまたは展開に失敗した場合
+     */
+    private byte[] inflate(Pack pack, long position, int size) throws IOException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        byte[] out = new byte[size];
+        byte[] scratch = new byte[1];
+        ByteBuffer input = ByteBuffer.allocate(Math.min(64 * 1024, Math.max(512, size / 2 + 64)));
+        int produced = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int n = pack.channel.read(input, position);
+                    if (n <= 0)
+                        throw new IOException("Unexpected end of pack");
+                    position += n;
+                    inflater.setInput(input.array(), 0, n);
+                }
+                // 必要なサイズを書き終えた後はストリームの終端を読むだけ
+                int n = produced < size
+                        ? inflater.inflate(out, produced, size - produced)
+                        : inflater.inflate(scratch);
+                if (produced >= size && n > 0)
+                    throw new IOException("Object larger than its header");
+                produced += n;
+                if (inflater.needsDictionary())
+                    throw new IOException("Unsupported zlib dictionary");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pack data", e);
+        }
+        if (produced != size)
+            throw new IOException("Object smaller than its header");
+        inflatedBytes.addAndGet(size);
+        return out;
+    }
+
+    /**
+     * git形式の差分を適用
+     *
+     * @param base  基底の内容
+     * @param delta 差分（基底サイズ・結果サイズの後に、コピー命令と挿入命令が並ぶ）
+     * @return 適用結果
+     * @throws IOException 差分が不正な場合
+     */
+    static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+        int[] pos = { 0 };
+        long baseSize = readDeltaSize(delta, pos);
+        long resultSize = readDeltaSize(delta, pos);
+        if (baseSize != base.length || resultSize > Integer.MAX_VALUE)
+            throw new IOException("Delta does not match its base");
+
+        byte[] result = new byte[(int) resultSize];
+        int out = 0;
+        int p = pos[0];
+        while (p < delta.length) {
+            int op = delta[p++] & 0xff;
+            if ((op & 0x80) != 0) {
+                // コピー: 続くバイトのうちビットが立っているものが位置とサイズ
+                long copyOffset = 0;
+                int copySize = 0;
+                for (int i = 0; i < 4; i++) {
+                    if ((op & (1 << i)) != 0)
+                        copyOffset |= (long) (delta[p++] & 0xff) << (8 * i);
+                }
+                for (int i = 0; i < 3; i++) {
+                    if ((op & (0x10 << i)) != 0)
+                        copySize |= (delta[p++] & 0xff) << (8 * i);
+                }
+                if (copySize == 0)
+                    copySize = 0x10000;
+                if (copyOffset + copySize > base.length || out + copySize > result.length)
+                    throw new IOException("Delta copy out of range");
+                System.arraycopy(base, (int) copyOffset, result, out, copySize);
+                out += copySize;
+            } else if (op != 0) {
+                // 挿入: 命令の値がそのままバイト数
+                if (p + op > delta.length || out + op > result.length)
+                    throw new IOException("Delta insert out of range");
+                System.arraycopy(delta, p, result, out, op);
+                p += op;
+                out += op;
+            } else {
+                throw new IOException("Reserved delta opcode");
+            }
+        }
+        if (out != result.length)
+            throw new IOException("Delta result size mismatch");
+        return result;
+    }
+
+    /**
+     * 差分ヘッダーの可変長サイズを読む
+     */
+    private static long readDeltaSize(byte[] delta, int[] pos) {
+        long size = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = delta[pos[0]++] & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return size;
+    }
+
+    /**
+     * バイト列から値を検索
+     */
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value)
+                return i;
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,733 @@
+package src;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * リポジトリごとのコミットグラフJSONキャッシュ（Singletonパターン使用）
+ * 
+ * コミットは追記のみのため、コミット部分のJSONは前回の最大コミットIDより新しいものだけを読み込んで追記する。
+ * ブランチ部分は書き込みのたびに変わるため、無効化後の最初の読み取りで読み直す。
+ * 完成したペイロードはバイト列として保持し、gzip圧縮・MessagePackは最初に求められたときに作る。
+ * 
+ * 各コミットには git log --graph と同様のレーン（列）と行を割り当て、座標として返す。
+ * 親は常に子より小さいIDを持つため、ID順に古いものから処理すれば追記分だけで配置を確定できる。
+ * 
+ * 要約表示のため、コミットを「親が1つで子が1つ」の直線区間（セグメント）に分けて保持する。
+ * 要約ではルート・マージ・分岐点・ブランチの先端だけを展開し、間の直線区間を1つのノードにまとめるため、
+ * 生成の手間と出力の大きさはコミット数ではなくグラフの形（分岐・マージ・ブランチの数）に比例する。
+ * 
+ * グラフはペイロードとノードのおおよそのバイト数で重み付けしたLRUキャッシュに保持し、
+ * 容量を超えた場合は最も長く読まれていないリポジトリのグラフを破棄する（次の読み取りで読み直す）。
+ */
+public class GraphCache {
+    private static final int LANE_WIDTH = 150;
+    private static final int ROW_HEIGHT = 100;
+    private static GraphCache instance;
+
+    /** グラフキャッシュの容量（バイト、システムプロパティ cache.graph.bytes で変更可能） */
+    private static final long CACHE_BYTES = Long.getLong("cache.graph.bytes", 64L * 1024 * 1024);
+
+    /** 存在しないリポジトリのペイロード */
+    private static final Payload EMPTY = toPayload("{\"nodes\":[],\"edges\":[]}");
+
+    private final DatabaseManager dbManager;
+    private final LruCache<Integer, CachedGraph> graphs = new LruCache<>(CACHE_BYTES, CachedGraph::weight);
+
+    private GraphCache() {
+        this.dbManager = DatabaseManager.getInstance();
+        dbManager.addResetListener(graphs::clear);
+    }
+
+    /**
+     * シングルトンインスタンスを取得
+     * 
+     * @return GraphCacheインスタンス
+     */
+    public static synchronized GraphCache getInstance() {
+        if (instance == null) {
+            instance = new GraphCache();
+        }
+        return instance;
+    }
+
+    /**
+     * グラフのペイロード
+     * 
+     * gzip圧縮とMessagePackは、その形式を求めるクライアントが最初に読んだときに作って保持する。
+     * 書き込みのたびに作り直されるペイロードで、使われない形式を毎回作らないようにする。
+     */
+    public static final class Payload {
+        private final byte[] json;
+        private byte[] gzip;
+        private byte[] msgpack;
+
+        private Payload(byte[] json) {
+            this.json = json;
+        }
+
+        /**
+         * JSONのバイト列を取得
+         * 
+         * @return JSONのバイト列（UTF-8）
+         */
+        public byte[] json() {
+            return json;
+        }
+
+        /**
+         * gzip圧縮済みのJSONを取得
+         * 
+         * @return gzip圧縮済みのJSON
+         */
+        public synchronized byte[] gzip() {
+            if (gzip == null)
+                gzip = GraphCache.gzip(json);
+            return gzip;
+        }
+
+        /**
+         * 同じ内容のMessagePackを取得
+         * 
+         * @return MessagePackのバイト列
+         */
+        public synchronized byte[] msgpack() {
+            if (msgpack == null)
+                msgpack = new MessagePackWriter(json.length).json(new String(json, StandardCharsets.UTF_8))
+                        .toByteArray();
+            return msgpack;
+        }
+    }
+
+    /**
+     * ブランチレコード
+     * 
+     * @param branchId     ブランチID
+     * @param name         ブランチ名（JSONエスケープ済み）
+     * @param headCommitId HEADコミットID
+     */
+    private record BranchRef(int branchId, String name, int headCommitId) {
+    }
+
+    /**
+     * キャッシュ上のグラフ
+     * 
+     * グラフは追記で大きくなるため、重みは格納時に求めた値を保持し、変わったときは入れ直す
+     * 
+     * @param graph  グラフ
+     * @param weight 格納時のおおよそのバイト数
+     */
+    private record CachedGraph(RepositoryGraph graph, long weight) {
+    }
+
+    /**
+     * 読み込み済みのコミット
+     */
+    private static class CommitNode {
+        private final String label;
+        private final List<Integer> parentIds;
+        private final int lane;
+        private final int row;
+        private int children;
+        private Segment segment;
+        private int index;
+
+        private CommitNode(String label, List<Integer> parentIds, int lane, int row) {
+            this.label = label;
+            this.parentIds = parentIds;
+            this.lane = lane;
+            this.row = row;
+        }
+    }
+
+    /**
+     * 直線区間（先頭以外は親が1つ、末尾以外は子が1つのコミット列）
+     */
+    private static class Segment {
+        private final List<Integer> commits = new ArrayList<>();
+    }
+
+    /**
+     * リポジトリ1つ分のグラフ
+     */
+    private static class RepositoryGraph {
+        private final StringBuilder commitNodes = new StringBuilder();
+        private final StringBuilder commitEdges = new StringBuilder();
+        /** レーンごとに、そのレーンを子が引き継ぐのを待っているコミットID（0は空き） */
+        private final List<Integer> laneTips = new ArrayList<>();
+        private final Map<Integer, CommitNode> nodes = new HashMap<>();
+        private final List<Segment> segments = new ArrayList<>();
+        private int lastCommitId;
+        /** 最新のブランチ一覧（nullの場合は読み直しが必要） */
+        private List<BranchRef> branches;
+        private Payload payload;
+        private Payload summary;
+        /** 読み込み済みのコミット（ラベル・親・区間）のおおよそのバイト数 */
+        private long nodeBytes;
+        /** キャッシュから破棄されたか（以降は入れ直さない） */
+        private boolean discarded;
+
+        /**
+         * おおよそのバイト数を計算
+         * 
+         * ペイロードはgzip圧縮・MessagePackが後から作られる分も見込んでJSONの2倍とする
+         * 
+         * @return バイト数
+         */
+        private long weigh() {
+            long weight = 256 + nodeBytes + 2L * (commitNodes.capacity() + commitEdges.capacity())
+                    + 8L * laneTips.size();
+            if (payload != null)
+                weight += 2L * payload.json().length;
+            if (summary != null)
+                weight += 2L * summary.json().length;
+            return weight;
+        }
+
+        /**
+         * コミットを追加し、レーン・行と直線区間を割り当てる
+         * 
+         * 最初の親がまだレーンの先端であればそのレーンを引き継ぎ、そうでなければ空いている最も左のレーンを使う。
+         * マージされた2番目以降の親のレーンは、引き継がれていなければ解放する。
+         * 
+         * @param commitId  コミットID
+         * @param label     コミットメッセージ（JSONエスケープ済み）
+         * @param parentIds 親コミットID（先頭が最初の親）
+         * @return 追加したコミット
+         */
+        private CommitNode add(int commitId, String label, List<Integer> parentIds) {
+            int lane = -1;
+            if (!parentIds.isEmpty()) {
+                CommitNode parent = nodes.get(parentIds.get(0));
+                if (parent != null && laneTips.get(parent.lane) == (int) parentIds.get(0))
+                    lane = parent.lane;
+            }
+            for (int parentId : parentIds.subList(Math.min(1, parentIds.size()), parentIds.size())) {
+                CommitNode parent = nodes.get(parentId);
+                if (parent != null && laneTips.get(parent.lane) == parentId)
+                    laneTips.set(parent.lane, 0);
+            }
+            if (lane == -1) {
+                lane = laneTips.indexOf(0);
+                if (lane == -1) {
+                    lane = laneTips.size();
+                    laneTips.add(0);
+                }
+            }
+            laneTips.set(lane, commitId);
+
+            CommitNode node = new CommitNode(label, parentIds, lane, nodes.size());
+            nodes.put(commitId, node);
+
+            CommitNode firstParent = null;
+            for (int parentId : parentIds) {
+                CommitNode parent = nodes.get(parentId);
+                if (parent == null)
+                    continue;
+                parent.children++;
+                // 2つ目の子ができた親は分岐点となるため、直線区間をその直後で分割する
+                if (parent.children == 2)
+                    split(parent);
+                if (firstParent == null)
+                    firstParent = parent;
+            }
+            if (parentIds.size() == 1 && firstParent != null && firstParent.children == 1) {
+                node.segment = firstParent.segment;
+            } else {
+                node.segment = new Segment();
+                segments.add(node.segment);
+            }
+            node.index = node.segment.commits.size();
+            node.segment.commits.add(commitId);
+            return node;
+        }
+
+        /**
+         * 直線区間を指定したコミットの直後で分割
+         * 
+         * @param node 新しい区間の直前になるコミット
+         */
+        private void split(CommitNode node) {
+            List<Integer> tail = node.segment.commits.subList(node.index + 1, node.segment.commits.size());
+            if (tail.isEmpty())
+                return;
+            Segment segment = new Segment();
+            for (int commitId : tail) {
+                CommitNode moved = nodes.get(commitId);
+                moved.segment = segment;
+                moved.index = segment.commits.size();
+                segment.commits.add(commitId);
+            }
+            tail.clear();
+            segments.add(segment);
+        }
+    }
+
+    /**
+     * グラフのペイロードを取得（キャッシュが古い場合は差分を反映してから返す）
+     * 
+     * @param repositoryId リポジトリID
+     * @return ペイロード
+     * @throws SQLException SQL例外
+     */
+    public Payload getPayload(int repositoryId) throws SQLException {
+        RepositoryGraph graph = graph(repositoryId);
+        if (graph == null)
+            return EMPTY;
+        synchronized (graph) {
+            refresh(repositoryId, graph);
+            if (graph.payload == null) {
+                StringBuilder branchNodes = new StringBuilder();
+                StringBuilder branchEdges = new StringBuilder();
+                appendBranches(graph, branchNodes, branchEdges, true);
+                graph.payload = toPayload("{\"nodes\":[" + join(graph.commitNodes, branchNodes)
+                        + "],\"edges\":[" + join(graph.commitEdges, branchEdges) + "]}");
+                store(repositoryId, graph);
+            }
+            return graph.payload;
+        }
+    }
+
+    /**
+     * 直線区間をまとめた要約グラフのペイロードを取得
+     * 
+     * ルート・マージ・分岐点・ブランチの先端以外が2つ以上続く区間は、先頭のコミットIDを使った
+     * "chain-{ID}" という要約ノードになる。展開を指定しない要約はキャッシュする。
+     * 
+     * @param repositoryId リポジトリID
+     * @param expand       展開する要約ノードの先頭コミットID
+     * @return ペイロード
+     * @throws SQLException SQL例外
+     */
+    public Payload getSummaryPayload(int repositoryId, Set<Integer> expand) throws SQLException {
+        RepositoryGraph graph = graph(repositoryId);
+        if (graph == null)
+            return EMPTY;
+        synchronized (graph) {
+            refresh(repositoryId, graph);
+            if (!expand.isEmpty())
+                return toPayload(renderSummary(graph, expand));
+            if (graph.summary == null) {
+                graph.summary = toPayload(renderSummary(graph, expand));
+                store(repositoryId, graph);
+            }
+            return graph.summary;
+        }
+    }
+
+    /**
+     * キャッシュ済みのグラフを取得し、なければ作成する
+     * 
+     * 存在しないリポジトリIDのグラフは作らないため、任意のIDを指定した読み取りでキャッシュが増えることはない。
+     * 
+     * @param repositoryId リポジトリID
+     * @return グラフ（リポジトリが存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    private RepositoryGraph graph(int repositoryId) throws SQLException {
+        CachedGraph cached = graphs.get(repositoryId);
+        if (cached != null)
+            return cached.graph();
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM repository WHERE id = ?")) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next())
+                    return null;
+            }
+        }
+        synchronized (graphs) {
+            cached = graphs.get(repositoryId);
+            if (cached != null)
+                return cached.graph();
+            RepositoryGraph graph = new RepositoryGraph();
+            graphs.put(repositoryId, new CachedGraph(graph, graph.weigh()));
+            return graph;
+        }
+    }
+
+    /**
+     * グラフを現在の重みでキャッシュに入れ直す（呼び出し側でgraphを同期すること）
+     * 
+     * 容量を超えるグラフはキャッシュに入らず、その読み取りの間だけ使われる
+     * 
+     * @param repositoryId リポジトリID
+     * @param graph        グラフ
+     */
+    private void store(int repositoryId, RepositoryGraph graph) {
+        if (graph.discarded)
+            return;
+        long weight = graph.weigh();
+        if (weight > CACHE_BYTES)
+            graphs.remove(repositoryId);
+        else
+            graphs.put(repositoryId, new CachedGraph(graph, weight));
+    }
+
+    /**
+     * リポジトリのグラフを古い状態にする（コミット・マージの確定後に呼ぶ）
+     * 
+     * 読み込み済みのコミット部分は保持し、次の読み取りで新しいコミットとブランチのみを反映する
+     * 
+     * @param repositoryId リポジトリID
+     */
+    public void invalidate(int repositoryId) {
+        CachedGraph cached = graphs.get(repositoryId);
+        if (cached != null) {
+            RepositoryGraph graph = cached.graph();
+            synchronized (graph) {
+                graph.branches = null;
+                graph.payload = null;
+                graph.summary = null;
+            }
+        }
+    }
+
+    /**
+     * リポジトリのグラフを破棄（コミットの削除など追記以外の変更後に呼ぶ）
+     * 
+     * @param repositoryId リポジトリID
+     */
+    public void evict(int repositoryId) {
+        CachedGraph cached = graphs.get(repositoryId);
+        if (cached != null) {
+            // 読み取り中のスレッドが古いグラフを入れ直さないよう、先に破棄済みにする
+            synchronized (cached.graph()) {
+                cached.graph().discarded = true;
+            }
+        }
+        graphs.remove(repositoryId);
+    }
+
+    /**
+     * グラフキャッシュの統計を取得
+     * 
+     * @return 統計
+     */
+    public LruCache.CacheStats getCacheStats() {
+        return graphs.getStats();
+    }
+
+    /**
+     * 無効化されていれば新しいコミットとブランチを読み込む（呼び出し側でgraphを同期すること）
+     * 
+     * @param repositoryId リポジトリID
+     * @param graph        読み込み先
+     * @throws SQLException SQL例外
+     */
+    private void refresh(int repositoryId, RepositoryGraph graph) throws SQLException {
+        if (graph.branches != null)
+            return;
+        try (Connection conn = dbManager.getConnection()) {
+            appendCommits(conn, repositoryId, graph);
+            graph.branches = loadBranches(conn, repositoryId);
+            store(repositoryId, graph);
+        } catch (SQLException e) {
+            // 追記の途中で失敗した場合は次回すべて読み直す
+            graph.discarded = true;
+            graphs.remove(repositoryId);
+            throw e;
+        }
+    }
+
+    /**
+     * 前回読み込んだコミットより新しいコミットのノードとエッジを追記
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @param graph        追記先
+     * @throws SQLException SQL例外
+     */
+    private void appendCommits(Connection conn, int repositoryId, RepositoryGraph graph) throws SQLException {
+        String commitSql = "SELECT c.id, c.message, p.parent_commit_id FROM git_commit c "
+                + "LEFT JOIN commit_parent p ON p.commit_id = c.id "
+                + "WHERE c.repository_id = ? AND c.id > ? ORDER BY c.id, p.position";
+        try (PreparedStatement stmt = conn.prepareStatement(commitSql)) {
+            stmt.setInt(1, repositoryId);
+            stmt.setInt(2, graph.lastCommitId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int commitId = 0;
+                String message = null;
+                List<Integer> parentIds = new ArrayList<>();
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    if (id != commitId) {
+                        if (commitId != 0)
+                            appendCommit(graph, commitId, message, parentIds);
+                        commitId = id;
+                        message = rs.getString("message");
+                        parentIds = new ArrayList<>();
+                    }
+                    int parentId = rs.getInt("parent_commit_id");
+                    if (parentId != 0)
+                        parentIds.add(parentId);
+                }
+                if (commitId != 0)
+                    appendCommit(graph, commitId, message, parentIds);
+            }
+        }
+    }
+
+    /**
+     * コミット1件分のノードとエッジを追記
+     * 
+     * @param graph     追記先
+     * @param commitId  コミットID
+     * @param message   コミットメッセージ
+     * @param parentIds 親コミットID（先頭が最初の親）
+     */
+    private void appendCommit(RepositoryGraph graph, int commitId, String message, List<Integer> parentIds) {
+        CommitNode node = graph.add(commitId, BaseApiHandler.escapeJsonString(message), parentIds);
+
+        // コミットノード追加
+        appendCommitNode(separate(graph.commitNodes), commitId, node);
+        graph.commitNodes.append(String.format(",\"x\":%d,\"y\":%d}", node.lane * LANE_WIDTH, node.row * ROW_HEIGHT));
+
+        for (int i = 0; i < parentIds.size(); i++) {
+            appendEdge(separate(graph.commitEdges), String.valueOf(parentIds.get(i)), String.valueOf(commitId), i > 0);
+        }
+        graph.nodeBytes += 96 + 2L * node.label.length() + 16L * parentIds.size();
+        graph.lastCommitId = commitId;
+    }
+
+    /**
+     * ブランチ一覧を読み込む
+     * 
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @return HEADを持つブランチ（ID順）
+     * @throws SQLException SQL例外
+     */
+    private List<BranchRef> loadBranches(Connection conn, int repositoryId) throws SQLException {
+        List<BranchRef> branches = new ArrayList<>();
+        String branchSql = "SELECT id, name, head_commit_id FROM branch WHERE repository_id = ? ORDER BY id";
+        try (PreparedStatement stmt = conn.prepareStatement(branchSql)) {
+            stmt.setInt(1, repositoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int headCommitId = rs.getInt("head_commit_id");
+                    if (headCommitId != 0) {
+                        branches.add(new BranchRef(rs.getInt("id"),
+                                BaseApiHandler.escapeJsonString(rs.getString("name")), headCommitId));
+                    }
+                }
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * ブランチのノードとエッジを作成
+     * 
+     * 座標を付ける場合、ブランチノードはコミットのレーンと重ならないよう、HEADと同じ行の左側に並べる
+     * 
+     * @param graph      読み込み済みのグラフ
+     * @param nodes      ノードの出力先
+     * @param edges      エッジの出力先
+     * @param positioned 座標を付けるか
+     */
+    private void appendBranches(RepositoryGraph graph, StringBuilder nodes, StringBuilder edges, boolean positioned) {
+        Map<Integer, Integer> labelsPerHead = new HashMap<>();
+        for (BranchRef branch : graph.branches) {
+            // ブランチノード追加
+            separate(nodes).append(String.format(
+                    "{\"id\":\"branch-%d\",\"label\":\"%s\",\"shape\":\"ellipse\",\"color\":\"#d73a49\"",
+                    branch.branchId(), branch.name()));
+            CommitNode head = graph.nodes.get(branch.headCommitId());
+            if (positioned && head != null) {
+                int index = labelsPerHead.merge(branch.headCommitId(), 1, Integer::sum);
+                nodes.append(String.format(",\"x\":%d,\"y\":%d", -index * LANE_WIDTH, head.row * ROW_HEIGHT));
+            }
+            nodes.append("}");
+
+            // ブランチからコミットへのエッジ
+            separate(edges).append(String.format(
+                    "{\"from\":\"branch-%d\",\"to\":%d,\"color\":\"#d73a49\",\"label\":\"%s\"}",
+                    branch.branchId(), branch.headCommitId(), branch.name()));
+        }
+    }
+
+    /**
+     * 要約グラフのJSONを作成
+     * 
+     * @param graph  読み込み済みのグラフ
+     * @param expand 展開する要約ノードの先頭コミットID
+     * @return JSON
+     */
+    private String renderSummary(RepositoryGraph graph, Set<Integer> expand) {
+        // ブランチの先端は直線区間の途中にあっても展開する
+        Map<Segment, TreeSet<Integer>> heads = new HashMap<>();
+        for (BranchRef branch : graph.branches) {
+            CommitNode head = graph.nodes.get(branch.headCommitId());
+            if (head != null)
+                heads.computeIfAbsent(head.segment, key -> new TreeSet<>()).add(head.index);
+        }
+
+        StringBuilder nodes = new StringBuilder();
+        StringBuilder edges = new StringBuilder();
+        // 区間の先頭・末尾のコミットID → 表示しているノードのID（JSONの値）
+        Map<Integer, String> shownAs = new HashMap<>();
+        for (Segment segment : graph.segments) {
+            List<Integer> commits = segment.commits;
+            TreeSet<Integer> expanded = new TreeSet<>(heads.getOrDefault(segment, new TreeSet<>()));
+            if (graph.nodes.get(commits.get(0)).parentIds.size() != 1)
+                expanded.add(0);
+            if (graph.nodes.get(commits.get(commits.size() - 1)).children > 1)
+                expanded.add(commits.size() - 1);
+
+            String previous = null;
+            int start = 0;
+            for (int index : expanded) {
+                previous = appendRun(graph, commits, start, index, previous, expand, nodes, edges, shownAs);
+                previous = appendRun(graph, commits, index, index + 1, previous, expand, nodes, edges, shownAs);
+                start = index + 1;
+            }
+            appendRun(graph, commits, start, commits.size(), previous, expand, nodes, edges, shownAs);
+        }
+
+        // 区間の先頭から親（別の区間の末尾）へのエッジ
+        for (Segment segment : graph.segments) {
+            int commitId = segment.commits.get(0);
+            List<Integer> parentIds = graph.nodes.get(commitId).parentIds;
+            for (int i = 0; i < parentIds.size(); i++) {
+                String parent = shownAs.get(parentIds.get(i));
+                if (parent != null)
+                    appendEdge(separate(edges), parent, shownAs.get(commitId), i > 0);
+            }
+        }
+
+        appendBranches(graph, nodes, edges, false);
+        return "{\"nodes\":[" + nodes + "],\"edges\":[" + edges + "]}";
+    }
+
+    /**
+     * 直線区間の一部を出力（2件以上で展開指定がなければ要約ノードにまとめる）
+     * 
+     * @param graph    読み込み済みのグラフ
+     * @param commits  直線区間のコミットID
+     * @param from     開始位置
+     * @param to       終了位置（含まない）
+     * @param previous 直前に出力したノードのID（JSONの値、ない場合はnull）
+     * @param expand   展開する要約ノードの先頭コミットID
+     * @param nodes    ノードの出力先
+     * @param edges    エッジの出力先
+     * @param shownAs  区間の先頭・末尾のコミットと表示ノードの対応の出力先
+     * @return 最後に出力したノードのID（何も出力しなかった場合はprevious）
+     */
+    private String appendRun(RepositoryGraph graph, List<Integer> commits, int from, int to, String previous,
+            Set<Integer> expand, StringBuilder nodes, StringBuilder edges, Map<Integer, String> shownAs) {
+        if (from >= to)
+            return previous;
+        int firstId = commits.get(from);
+        int lastId = commits.get(to - 1);
+
+        if (to - from == 1 || expand.contains(firstId)) {
+            for (int commitId : commits.subList(from, to)) {
+                appendCommitNode(separate(nodes), commitId, graph.nodes.get(commitId)).append('}');
+                String shown = String.valueOf(commitId);
+                if (previous != null)
+                    appendEdge(separate(edges), previous, shown, false);
+                previous = shown;
+            }
+            shownAs.put(firstId, String.valueOf(firstId));
+            shownAs.put(lastId, String.valueOf(lastId));
+            return previous;
+        }
+
+        String shown = "\"chain-" + firstId + "\"";
+        separate(nodes).append(String.format(
+                "{\"id\":%s,\"label\":\"%d件のコミット\",\"shape\":\"box\",\"summary\":true,"
+                        + "\"count\":%d,\"first\":%d,\"last\":%d}",
+                shown, to - from, to - from, firstId, lastId));
+        if (previous != null)
+            appendEdge(separate(edges), previous, shown, false);
+        shownAs.put(firstId, shown);
+        shownAs.put(lastId, shown);
+        return shown;
+    }
+
+    /**
+     * コミットノードを出力（閉じ括弧は呼び出し側で追加する）
+     * 
+     * @param json     出力先
+     * @param commitId コミットID
+     * @param node     コミット
+     * @return 出力先
+     */
+    private static StringBuilder appendCommitNode(StringBuilder json, int commitId, CommitNode node) {
+        return json.append(String.format("{\"id\":%d,\"label\":\"%s\",\"shape\":\"box\",\"lane\":%d,\"row\":%d",
+                commitId, node.label, node.lane, node.row));
+    }
+
+    /**
+     * エッジを出力
+     * 
+     * @param json  出力先
+     * @param from  親側のノードID（JSONの値）
+     * @param to    子側のノードID（JSONの値）
+     * @param merge 2番目以降の親へのエッジ（マージコミット）か
+     */
+    private static void appendEdge(StringBuilder json, String from, String to, boolean merge) {
+        json.append("{\"from\":").append(from).append(",\"to\":").append(to);
+        if (merge)
+            json.append(",\"dashes\":true,\"color\":\"#28a745\"");
+        json.append('}');
+    }
+
+    /**
+     * 空でなければ区切りのカンマを追加
+     * 
+     * @param json 出力先
+     * @return 出力先
+     */
+    private static StringBuilder separate(StringBuilder json) {
+        if (json.length() > 0)
+            json.append(',');
+        return json;
+    }
+
+    /**
+     * 2つのJSON要素列をカンマでつなぐ
+     * 
+     * @param first  先頭の要素列
+     * @param second 後続の要素列
+     * @return 連結した要素列
+     */
+    private static String join(CharSequence first, CharSequence second) {
+        if (first.length() == 0)
+            return second.toString();
+        if (second.length() == 0)
+            return first.toString();
+        return first + "," + second;
+    }
+
+    /**
+     * JSONをペイロードに変換
+     * 
+     * @param json JSON
+     * @return ペイロード（gzip圧縮・MessagePackは最初に読まれたときに作る）
+     */
+    private static Payload toPayload(String json) {
+        return new Payload(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * gzip圧縮
+     * 
+     * @param bytes 圧縮するバイト列
+     * @return 圧縮済みのバイト列
+     */
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,305 @@
+package src;
+
+import java.util.*;
+
+/**
+ * 行単位の差分計算（Myers の O(ND) アルゴリズムの線形空間版）
+ */
+public final class LineDiff {
+
+    /** これを超える編集距離の範囲は最短を求めず、まとめて置き換えとして扱う（システムプロパティ diff.max.cost で変更可能） */
+    static final int MAX_COST = Integer.getInteger("diff.max.cost", 10000);
+
+    private LineDiff() {
+    }
+
+    /**
+     * 編集操作の種類
+     */
+    public enum Op {
+        EQUAL, DELETE, INSERT
+    }
+
+    /**
+     * 1行分の編集操作
+     * 
+     * @param op       操作の種類
+     * @param oldIndex 変更前テキストでの位置（0始まり）
+     * @param newIndex 変更後テキストでの位置（0始まり）
+     * @param line     行の内容
+     */
+    public record Edit(Op op, int oldIndex, int newIndex, String line) {
+    }
+
+    /**
+     * unified 形式のハンク
+     * 
+     * @param oldStart 変更前の開始行（1始まり）
+     * @param oldLines 変更前の行数
+     * @param newStart 変更後の開始行（1始まり）
+     * @param newLines 変更後の行数
+     * @param lines    先頭に ' ', '-', '+' を付けた行
+     */
+    public record Hunk(int oldStart, int oldLines, int newStart, int newLines, List<String> lines) {
+
+        /**
+         * ハンクヘッダーを取得
+         * 
+         * @return "@@ -a,b +c,d @@" 形式のヘッダー
+         */
+        public String header() {
+            return "@@ -" + oldStart + "," + oldLines + " +" + newStart + "," + newLines + " @@";
+        }
+    }
+
+    /**
+     * テキストを行に分割
+     * 
+     * @param text テキスト（nullは空扱い）
+     * @return 行リスト
+     */
+    public static List<String> splitLines(String text) {
+        if (text == null || text.isEmpty())
+            return new ArrayList<>();
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\n", -1)));
+        if (text.endsWith("\n"))
+            lines.remove(lines.size() - 1);
+        return lines;
+    }
+
+    /**
+     * 2つの行リストの差分を計算
+     * 
+     * @param a 変更前の行
+     * @param b 変更後の行
+     * @return 編集操作の列（一致行を含む）
+     */
+    public static List<Edit> diff(List<String> a, List<String> b) {
+        int n = a.size();
+        int m = b.size();
+
+        // 共通の先頭・末尾は探索対象から外す
+        int prefix = 0;
+        while (prefix < n && prefix < m && a.get(prefix).equals(b.get(prefix)))
+            prefix++;
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && a.get(n - 1 - suffix).equals(b.get(m - 1 - suffix)))
+            suffix++;
+
+        List<Edit> edits = new ArrayList<>(Math.max(n, m) + 1);
+        for (int i = 0; i < prefix; i++)
+            edits.add(new Edit(Op.EQUAL, i, i, a.get(i)));
+
+        myers(a.subList(prefix, n - suffix), b.subList(prefix, m - suffix), prefix, prefix, edits);
+
+        for (int i = suffix; i > 0; i--)
+            edits.add(new Edit(Op.EQUAL, n - i, m - i, a.get(n - i)));
+        return edits;
+    }
+
+    /**
+     * Myers の線形空間版（中央のスネークで分割統治）で編集列を求める
+     * 
+     * 探索の各段で保持するのは対角線ごとの到達位置のみのため、使用メモリは行数に比例する。
+     * 
+     * @param a         変更前の行（部分）
+     * @param b         変更後の行（部分）
+     * @param oldOffset a の先頭の元位置
+     * @param newOffset b の先頭の元位置
+     * @param out       編集操作の出力先
+     */
+    private static void myers(List<String> a, List<String> b, int oldOffset, int newOffset, List<Edit> out) {
+        int n = a.size();
+        int m = b.size();
+
+        int prefix = 0;
+        while (prefix < n && prefix < m && a.get(prefix).equals(b.get(prefix))) {
+            out.add(new Edit(Op.EQUAL, oldOffset + prefix, newOffset + prefix, a.get(prefix)));
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && a.get(n - 1 - suffix).equals(b.get(m - 1 - suffix)))
+            suffix++;
+
+        List<String> midA = a.subList(prefix, n - suffix);
+        List<String> midB = b.subList(prefix, m - suffix);
+        int midOld = oldOffset + prefix;
+        int midNew = newOffset + prefix;
+        int[] split = midA.isEmpty() || midB.isEmpty() ? null : middleSnake(midA, midB);
+        if (split == null) {
+            for (int i = 0; i < midA.size(); i++)
+                out.add(new Edit(Op.DELETE, midOld + i, midNew, midA.get(i)));
+            for (int j = 0; j < midB.size(); j++)
+                out.add(new Edit(Op.INSERT, midOld + midA.size(), midNew + j, midB.get(j)));
+        } else {
+            int x = split[0];
+            int y = split[1];
+            myers(midA.subList(0, x), midB.subList(0, y), midOld, midNew, out);
+            myers(midA.subList(x, midA.size()), midB.subList(y, midB.size()), midOld + x, midNew + y, out);
+        }
+
+        for (int i = suffix; i > 0; i--)
+            out.add(new Edit(Op.EQUAL, oldOffset + n - i, newOffset + m - i, a.get(n - i)));
+    }
+
+    /**
+     * 前後から同時に探索し、最短編集経路が通る分割点を求める
+     * 
+     * @param a 変更前の行（空でない）
+     * @param b 変更後の行（空でない）
+     * @return 分割点 {x, y}（編集距離が {@link #MAX_COST} を超える場合はnull）
+     */
+    private static int[] middleSnake(List<String> a, List<String> b) {
+        int n = a.size();
+        int m = b.size();
+        int maxD = Math.min((n + m + 1) / 2, MAX_COST);
+        int offset = maxD + 1;
+        int length = 2 * offset + 1;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // 差が奇数なら前向き、偶数なら後ろ向きの探索で重なりを確認する
+        boolean front = (delta & 1) != 0;
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int index = offset + k;
+                int x = k == -d || (k != d && forward[index - 1] < forward[index + 1])
+                        ? forward[index + 1]
+                        : forward[index - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                forward[index] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (front) {
+                    int other = offset + delta - k;
+                    if (other >= 0 && other < length && backward[other] != -1 && x >= n - backward[other])
+                        return new int[] { x, y };
+                }
+            }
+
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int index = offset + k;
+                int x = k == -d || (k != d && backward[index - 1] < backward[index + 1])
+                        ? backward[index + 1]
+                        : backward[index - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.get(n - 1 - x).equals(b.get(m - 1 - y))) {
+                    x++;
+                    y++;
+                }
+                backward[index] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!front) {
+                    int other = offset + delta - k;
+                    if (other >= 0 && other < length && forward[other] != -1) {
+                        int forwardX = forward[other];
+                        int forwardY = forwardX - (other - offset);
+                        if (forwardX >= n - x)
+                            return new int[] { forwardX, forwardY };
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 編集列を unified 形式のハンクにまとめる
+     * 
+     * @param edits   編集操作の列
+     * @param context 前後に含める一致行数
+     * @return ハンクリスト
+     */
+    public static List<Hunk> toHunks(List<Edit> edits, int context) {
+        List<Hunk> hunks = new ArrayList<>();
+        int size = edits.size();
+        int i = 0;
+
+        while (i < size) {
+            int change = i;
+            while (change < size && edits.get(change).op() == Op.EQUAL)
+                change++;
+            if (change == size)
+                break;
+
+            int start = Math.max(i, change - context);
+            int lastChange = change;
+            int j = change;
+            while (j < size) {
+                if (edits.get(j).op() != Op.EQUAL) {
+                    lastChange = j;
+                } else if (j - lastChange > 2 * context) {
+                    break;
+                }
+                j++;
+            }
+            int end = Math.min(size, lastChange + context + 1);
+
+            List<String> lines = new ArrayList<>(end - start);
+            int oldLines = 0;
+            int newLines = 0;
+            for (int e = start; e < end; e++) {
+                Edit edit = edits.get(e);
+                switch (edit.op()) {
+                    case EQUAL -> {
+                        lines.add(" " + edit.line());
+                        oldLines++;
+                        newLines++;
+                    }
+                    case DELETE -> {
+                        lines.add("-" + edit.line());
+                        oldLines++;
+                    }
+                    case INSERT -> {
+                        lines.add("+" + edit.line());
+                        newLines++;
+                    }
+                }
+            }
+
+            Edit first = edits.get(start);
+            int oldStart = oldLines > 0 ? first.oldIndex() + 1 : first.oldIndex();
+            int newStart = newLines > 0 ? first.newIndex() + 1 : first.newIndex();
+            hunks.add(new Hunk(oldStart, oldLines, newStart, newLines, lines));
+            i = end;
+        }
+
+        return hunks;
+    }
+
+    /**
+     * ハンクを unified 形式のテキストに変換
+     * 
+     * @param hunks ハンクリスト
+     * @return unified 形式のテキスト
+     */
+    public static String toUnified(List<Hunk> hunks) {
+        StringBuilder sb = new StringBuilder();
+        for (Hunk hunk : hunks) {
+            sb.append(hunk.header()).append('\n');
+            for (String line : hunk.lines())
+                sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
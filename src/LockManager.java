@@ -0,0 +1,83 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * リポジトリ単位の書き込みロック管理クラス（Singletonパターン使用）
+ *
+ * リポジトリIDをストライプ数で割った位置のロックを使用するため、同じリポジトリへの書き込みは直列化され、
+ * 別ストライプのリポジトリは並行して処理できる。ロックは再入可能で、マージ処理の中でコミット作成を呼んでもよい。
+ */
+public class LockManager {
+    private static final int STRIPES = 64;
+    private static LockManager instance;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private LockManager() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * シングルトンインスタンスを取得
+     *
+     * @return LockManagerインスタンス
+     */
+    public static synchronized LockManager getInstance() {
+        if (instance == null) {
+            instance = new LockManager();
+        }
+        return instance;
+    }
+
+    /**
+     * ロック統計レコード
+     *
+     * @param acquisitions   取得回数
+     * @param contended      待ちが発生した回数
+     * @param totalWaitNanos 待ち時間の合計（ナノ秒）
+     * @param maxWaitNanos   最大待ち時間（ナノ秒）
+     */
+    public record LockStats(long acquisitions, long contended, long totalWaitNanos, long maxWaitNanos) {
+    }
+
+    /**
+     * リポジトリの書き込みロックを取得
+     *
+     * 呼び出し側は finally で unlock すること
+     *
+     * @param repositoryId リポジトリID
+     * @return 取得済みのロック
+     */
+    public Lock lockRepository(int repositoryId) {
+        ReentrantLock lock = locks[Math.floorMod(repositoryId, STRIPES)];
+        acquisitions.incrementAndGet();
+        if (lock.tryLock())
+            return lock;
+
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        contended.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        return lock;
+    }
+
+    /**
+     * ロック統計を取得
+     *
+     * @return ロック統計
+     */
+    public LockStats getStats() {
+        return new LockStats(acquisitions.get(), contended.get(), totalWaitNanos.get(), maxWaitNanos.get());
+    }
+}
\ No newline at end of file
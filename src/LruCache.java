@@ -0,0 +1,144 @@
+package src;
+
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * 容量制限付きLRUキャッシュ（スレッドセーフ）
+ * 
+ * 容量はエントリ数、または重み関数で計算した合計（バイト数など）で制限する
+ * 
+ * @param <K> キーの型
+ * @param <V> 値の型
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param maxEntries 保持する最大エントリ数
+     */
+    public LruCache(int maxEntries) {
+        this(maxEntries, value -> 1);
+    }
+
+    /**
+     * コンストラクタ（重み付き）
+     * 
+     * @param maxWeight 保持する重みの合計の上限
+     * @param weigher   値の重みを計算する関数
+     */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * キャッシュ統計レコード
+     * 
+     * @param hits      ヒット数
+     * @param misses    ミス数
+     * @param evictions 容量超過による破棄数
+     * @param entries   現在のエントリ数
+     * @param weight    現在の重みの合計
+     * @param maxWeight 重みの上限
+     */
+    public record CacheStats(long hits, long misses, long evictions, int entries, long weight, long maxWeight) {
+        /**
+         * ヒット率を計算
+         * 
+         * @return ヒット率（アクセスがない場合は0）
+         */
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * 値を取得
+     * 
+     * @param key キー
+     * @return キャッシュされた値（存在しない場合はnull）
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * 値を格納
+     * 
+     * 上限を超えた場合は最も長く使われていないエントリから破棄する。
+     * 単体で上限を超える値は格納しない。
+     * 
+     * @param key   キー
+     * @param value 値
+     */
+    public synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight)
+            return;
+        V previous = map.put(key, value);
+        if (previous != null)
+            totalWeight -= weigher.applyAsLong(previous);
+        totalWeight += weight;
+
+        Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+        while (totalWeight > maxWeight && eldest.hasNext()) {
+            Map.Entry<K, V> entry = eldest.next();
+            totalWeight -= weigher.applyAsLong(entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * 値を削除
+     * 
+     * @param key キー
+     */
+    public synchronized void remove(K key) {
+        V previous = map.remove(key);
+        if (previous != null)
+            totalWeight -= weigher.applyAsLong(previous);
+    }
+
+    /**
+     * 全エントリを削除
+     */
+    public synchronized void clear() {
+        map.clear();
+        totalWeight = 0;
+    }
+
+    /**
+     * 現在のエントリ数を取得
+     * 
+     * @return エントリ数
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * 統計を取得
+     * 
+     * @return キャッシュ統計
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, map.size(), totalWeight, maxWeight);
+    }
+}
\ No newline at end of file
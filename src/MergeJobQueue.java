@@ -0,0 +1,169 @@
+package src;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 非同期マージジョブのキュー（Singletonパターン使用）
+ * 
+ * 固定数のワーカーでジョブを実行する。同じリポジトリのジョブはリポジトリごとの待ち行列に並べて1件ずつ実行し、
+ * 異なるリポジトリのジョブは並行して実行する。
+ */
+public class MergeJobQueue {
+    private static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_PENDING_JOBS = 256;
+    private static final int MAX_RETAINED_JOBS = 1000;
+    private static MergeJobQueue instance;
+
+    private final ExecutorService executor;
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    /** ジョブID → ジョブ（古いものから破棄） */
+    private final LruCache<Integer, MergeJob> jobs = new LruCache<>(MAX_RETAINED_JOBS);
+    /** リポジトリID → 実行待ちのジョブ（キーが存在する間はそのリポジトリのジョブが実行中） */
+    private final Map<Integer, Deque<MergeJob>> repositoryQueues = new HashMap<>();
+    private int pendingJobs;
+
+    private MergeJobQueue() {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "merge-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * シングルトンインスタンスを取得
+     * 
+     * @return MergeJobQueueインスタンス
+     */
+    public static synchronized MergeJobQueue getInstance() {
+        if (instance == null) {
+            instance = new MergeJobQueue();
+        }
+        return instance;
+    }
+
+    /**
+     * ジョブの状態
+     */
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * マージジョブ
+     */
+    public static class MergeJob {
+        private final int id;
+        private final int repositoryId;
+        private final Supplier<MergeResult> task;
+        private volatile Status status = Status.QUEUED;
+        private volatile MergeResult result;
+        private volatile String error;
+
+        private MergeJob(int id, int repositoryId, Supplier<MergeResult> task) {
+            this.id = id;
+            this.repositoryId = repositoryId;
+            this.task = task;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getRepositoryId() {
+            return repositoryId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * マージ結果を取得
+         * 
+         * @return マージ結果（完了前はnull）
+         */
+        public MergeResult getResult() {
+            return result;
+        }
+
+        /**
+         * 失敗時のエラーメッセージを取得
+         * 
+         * @return エラーメッセージ（失敗していない場合はnull）
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * マージジョブを登録
+     * 
+     * @param repositoryId リポジトリID（同じIDのジョブは登録順に1件ずつ実行される）
+     * @param task         マージ処理
+     * @return 登録したジョブ（待ちジョブが上限に達している場合はnull）
+     */
+    public MergeJob submit(int repositoryId, Supplier<MergeResult> task) {
+        MergeJob job = new MergeJob(nextJobId.getAndIncrement(), repositoryId, task);
+        synchronized (repositoryQueues) {
+            if (pendingJobs >= MAX_PENDING_JOBS)
+                return null;
+            pendingJobs++;
+            jobs.put(job.id, job);
+
+            Deque<MergeJob> queue = repositoryQueues.get(repositoryId);
+            if (queue != null) {
+                // 同じリポジトリのジョブが実行中のため、完了後に実行する
+                queue.addLast(job);
+                return job;
+            }
+            repositoryQueues.put(repositoryId, new ArrayDeque<>());
+        }
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * ジョブを取得
+     * 
+     * @param jobId ジョブID
+     * @return ジョブ（存在しない、または破棄済みの場合はnull）
+     */
+    public MergeJob getJob(int jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * ジョブを実行し、同じリポジトリの次のジョブを起動
+     * 
+     * @param job ジョブ
+     */
+    private void run(MergeJob job) {
+        job.status = Status.RUNNING;
+        try {
+            job.result = job.task.get();
+            job.status = Status.DONE;
+        } catch (Throwable e) {
+            // Error（OutOfMemoryError など）でもジョブを終わらせ、後続のジョブが待ち続けないようにする
+            System.err.println("Merge job error: " + e);
+            job.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            job.status = Status.FAILED;
+        } finally {
+            MergeJob next;
+            synchronized (repositoryQueues) {
+                pendingJobs--;
+                Deque<MergeJob> queue = repositoryQueues.get(job.repositoryId);
+                next = queue.pollFirst();
+                if (next == null)
+                    repositoryQueues.remove(job.repositoryId);
+            }
+            if (next != null)
+                executor.execute(() -> run(next));
+        }
+    }
+}
\ No newline at end of file
@@ -1,17 +1,73 @@
 package src;
 
 import java.sql.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 
 /**
  * マージ管理クラス（Strategy パターンを使用）
  */
 public class MergeManager {
+    private static final int ANALYSIS_CACHE_ENTRIES = 1024;
+
+    /** コミットは不変のため、HEADコミットIDの組でマージの判定結果をキャッシュできる */
+    private static final LruCache<String, Analysis> analysisCache = new LruCache<>(ANALYSIS_CACHE_ENTRIES);
+
+    static {
+        DatabaseManager.getInstance().addResetListener(analysisCache::clear);
+    }
+
     private final DatabaseManager dbManager;
     private final CommitManager commitManager;
+    private final CommitGraph commitGraph;
+    private final DiffManager diffManager;
+    private final LockManager lockManager;
 
     public MergeManager() {
         this.dbManager = DatabaseManager.getInstance();
         this.commitManager = new CommitManager();
+        this.commitGraph = new CommitGraph();
+        this.diffManager = new DiffManager();
+        this.lockManager = LockManager.getInstance();
+    }
+
+    /**
+     * 2つのHEADをマージした場合の結果の種類
+     */
+    public enum MergeOutcome {
+        /** 同じコミットを指している */
+        UP_TO_DATE,
+        /** 一方が他方の祖先で、ブランチの付け替えのみで済む */
+        FAST_FORWARD,
+        /** ツリーの内容が一致し、マージコミットを作成できる */
+        CLEAN,
+        /** 内容が異なる */
+        CONFLICT
+    }
+
+    /**
+     * マージの判定結果レコード
+     * 
+     * @param outcome        結果の種類
+     * @param targetCommitId Fast-forward先のコミットID（それ以外は0）
+     */
+    private record Analysis(MergeOutcome outcome, int targetCommitId) {
+    }
+
+    /**
+     * マージプレビューレコード
+     * 
+     * @param branchId1      ブランチ1のID
+     * @param headCommitId1  ブランチ1のHEADコミットID
+     * @param branchId2      ブランチ2のID
+     * @param headCommitId2  ブランチ2のHEADコミットID
+     * @param outcome        結果の種類
+     * @param targetCommitId Fast-forward先のコミットID（それ以外は0）
+     * @param hunks          コンフリクト時の main.txt の差分（ブランチ1 → ブランチ2、それ以外は空）
+     */
+    public record MergePreview(int branchId1, int headCommitId1, int branchId2, int headCommitId2,
+            MergeOutcome outcome, int targetCommitId, List<LineDiff.Hunk> hunks) {
     }
 
     /**
@@ -25,55 +81,120 @@ public class MergeManager {
          * @param branchId2 ブランチ2のID
          * @return マージ結果
          */
-        MergeResult merge(int branchId1, int branchId2);
+        default MergeResult merge(int branchId1, int branchId2) {
+            return merge(List.of(branchId1, branchId2));
+        }
+
+        /**
+         * 複数ブランチを1つのコミットにまとめてマージ（オクトパスマージ）
+         * 
+         * @param branchIds ブランチIDのリスト（先頭のブランチのツリーを引き継ぐ）
+         * @return マージ結果
+         */
+        MergeResult merge(List<Integer> branchIds);
     }
 
     /**
-     * 厳密マージ戦略（内容が一致する場合のみマージ）
+     * 厳密マージ戦略（全ファイルの内容が一致する場合のみマージ）
      */
     public class StrictMergeStrategy implements MergeStrategy {
+        private final boolean includeContent;
+
+        /**
+         * コンストラクタ（コンフリクト時に内容を含める）
+         */
+        public StrictMergeStrategy() {
+            this(true);
+        }
+
+        /**
+         * コンストラクタ
+         * 
+         * @param includeContent コンフリクト時に main.txt の内容を結果に含める場合true
+         */
+        public StrictMergeStrategy(boolean includeContent) {
+            this.includeContent = includeContent;
+        }
+
         @Override
-        public MergeResult merge(int branchId1, int branchId2) {
+        public MergeResult merge(List<Integer> branchIds) {
+            return mergeLocked(branchIds, this::mergeBranches);
+        }
+
+        /**
+         * リポジトリのロックを保持した状態でマージを実行
+         * 
+         * @param ids 重複を除いたブランチIDのリスト
+         * @return マージ結果
+         */
+        private MergeResult mergeBranches(List<Integer> ids) {
+            int firstId = ids.get(0);
+            int secondId = ids.size() > 1 ? ids.get(1) : firstId;
             try (Connection conn = dbManager.getConnection()) {
                 // 各ブランチのHEADコミット取得
-                BranchInfo branch1 = getBranchInfo(conn, branchId1);
-                BranchInfo branch2 = getBranchInfo(conn, branchId2);
+                List<BranchInfo> branches = getBranchInfos(ids);
+                if (branches == null) {
+                    return new MergeResult.Conflict(firstId, "", secondId, "");
+                }
 
-                if (branch1 == null || branch2 == null) {
-                    return new MergeResult.Conflict(branchId1, "", branchId2, "");
+                // 他のHEADの祖先になっているHEADを除くと、残ったものが実際に統合すべき先端になる
+                List<BranchInfo> tips = reduceToTips(conn, branches);
+                if (tips.size() == 1) {
+                    int target = tips.get(0).headCommitId();
+                    if (branches.stream().allMatch(branch -> branch.headCommitId() == target)) {
+                        return new MergeResult.Success("既に最新です");
+                    }
+                    // 一方のHEADがもう一方の祖先ならブランチの付け替えのみ（Fast-forward）
+                    return fastForward(conn, branches, target)
+                            ? new MergeResult.Success("Fast-forwardマージが完了しました")
+                            : new MergeResult.Conflict(firstId, "", secondId, "");
                 }
 
-                // ファイル内容取得
-                String content1 = getFileContent(conn, branch1.headCommitId());
-                String content2 = getFileContent(conn, branch2.headCommitId());
-
-                if (content1 == null)
-                    content1 = "";
-                if (content2 == null)
-                    content2 = "";
-
-                // 内容比較
-                if (content1.equals(content2)) {
-                    // マージコミット作成
-                    CommitManager.CreateMergeCommitCommand mergeCommand = commitManager.new CreateMergeCommitCommand(
-                            branch1.repositoryId(),
-                            branch1.headCommitId(),
-                            branch2.headCommitId(),
-                            content1);
-
-                    if (commitManager.executeCommitCommand(mergeCommand)) {
-                        // 両ブランチのHEAD更新
-                        updateBranchHeads(conn, branchId1, branchId2, getLatestCommitId(conn, branch1.repositoryId()));
-                        return new MergeResult.Success("マージが完了しました");
+                // ツリー比較（プレビュー済みのHEADの組は判定結果を再利用）
+                BranchInfo base = tips.get(0);
+                for (BranchInfo other : tips.subList(1, tips.size())) {
+                    if (analyze(conn, base.headCommitId(), other.headCommitId()).outcome() != MergeOutcome.CLEAN) {
+                        return conflict(conn, base, other);
                     }
                 }
 
-                return new MergeResult.Conflict(branchId1, content1, branchId2, content2);
+                // マージコミット作成（ツリーは最初の先端と共有し、全ブランチのHEADを同じトランザクションで更新）
+                CommitManager.CreateMergeCommitCommand mergeCommand = commitManager.new CreateMergeCommitCommand(
+                        base.repositoryId(),
+                        headCommitIds(tips),
+                        null,
+                        branchHeads(branches));
+
+                if (commitManager.executeCommitCommand(mergeCommand)) {
+                    return new MergeResult.Success("マージが完了しました");
+                }
+                return conflict(conn, base, tips.get(1));
 
             } catch (SQLException e) {
                 System.err.println("Merge error: " + e.getMessage());
-                return new MergeResult.Conflict(branchId1, "", branchId2, "");
+                return new MergeResult.Conflict(firstId, "", secondId, "");
+            }
+        }
+
+        /**
+         * コンフリクト結果を作成
+         * 
+         * @param conn    データベース接続
+         * @param branch1 ブランチ1
+         * @param branch2 ブランチ2
+         * @return コンフリクト結果
+         * @throws SQLException SQL例外
+         */
+        private MergeResult conflict(Connection conn, BranchInfo branch1, BranchInfo branch2) throws SQLException {
+            if (!includeContent) {
+                return new MergeResult.Conflict(branch1.branchId(), null, branch2.branchId(), null);
             }
+
+            // ファイル内容取得
+            String content1 = getFileContent(conn, branch1.headCommitId());
+            String content2 = getFileContent(conn, branch2.headCommitId());
+            return new MergeResult.Conflict(branch1.branchId(), content1 != null ? content1 : "",
+                    branch2.branchId(), content2 != null ? content2 : "");
         }
     }
 
@@ -93,131 +214,294 @@ public class MergeManager {
         }
 
         @Override
-        public MergeResult merge(int branchId1, int branchId2) {
-            try (Connection conn = dbManager.getConnection()) {
-                BranchInfo branch1 = getBranchInfo(conn, branchId1);
-                BranchInfo branch2 = getBranchInfo(conn, branchId2);
+        public MergeResult merge(List<Integer> branchIds) {
+            return mergeLocked(branchIds, this::mergeBranches);
+        }
 
-                if (branch1 == null || branch2 == null) {
-                    return new MergeResult.Conflict(branchId1, "", branchId2, "");
-                }
+        /**
+         * リポジトリのロックを保持した状態で強制マージを実行
+         * 
+         * @param ids 重複を除いたブランチIDのリスト
+         * @return マージ結果
+         */
+        private MergeResult mergeBranches(List<Integer> ids) {
+            int firstId = ids.get(0);
+            int secondId = ids.size() > 1 ? ids.get(1) : firstId;
+            List<BranchInfo> branches = getBranchInfos(ids);
+            if (branches == null) {
+                return new MergeResult.Conflict(firstId, "", secondId, "");
+            }
 
-                // 強制マージコミット作成
-                CommitManager.CreateMergeCommitCommand mergeCommand = commitManager.new CreateMergeCommitCommand(
-                        branch1.repositoryId(),
-                        branch1.headCommitId(),
-                        branch2.headCommitId(),
-                        forcedContent);
+            // 強制マージコミット作成（全ブランチのHEADを同じトランザクションで更新）
+            CommitManager.CreateMergeCommitCommand mergeCommand = commitManager.new CreateMergeCommitCommand(
+                    branches.get(0).repositoryId(),
+                    headCommitIds(branches),
+                    forcedContent,
+                    branchHeads(branches));
 
-                if (commitManager.executeCommitCommand(mergeCommand)) {
-                    // 両ブランチのHEAD更新
-                    updateBranchHeads(conn, branchId1, branchId2, getLatestCommitId(conn, branch1.repositoryId()));
-                    return new MergeResult.Success("強制マージが完了しました");
-                }
+            if (commitManager.executeCommitCommand(mergeCommand)) {
+                return new MergeResult.Success("強制マージが完了しました");
+            }
 
-                return new MergeResult.Conflict(branchId1, "", branchId2, "");
+            return new MergeResult.Conflict(firstId, "", secondId, "");
+        }
+    }
 
-            } catch (SQLException e) {
-                System.err.println("Force merge error: " + e.getMessage());
-                return new MergeResult.Conflict(branchId1, "", branchId2, "");
-            }
+    /**
+     * 対象リポジトリの書き込みロックを取得してマージを実行
+     * 
+     * HEADの読み取りから更新までの間に同じリポジトリへのコミットやマージが割り込まないようにする
+     * 
+     * @param branchIds ブランチIDのリスト
+     * @param merge     マージ処理（重複を除いたブランチIDを受け取る）
+     * @return マージ結果
+     */
+    private MergeResult mergeLocked(List<Integer> branchIds, Function<List<Integer>, MergeResult> merge) {
+        List<Integer> ids = distinct(branchIds);
+        Integer repositoryId = commitManager.getBranchRepositoryId(ids.get(0));
+        if (repositoryId == null) {
+            return new MergeResult.Conflict(ids.get(0), "", ids.size() > 1 ? ids.get(1) : ids.get(0), "");
+        }
+        Lock lock = lockManager.lockRepository(repositoryId);
+        try {
+            return merge.apply(ids);
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * ブランチ情報レコード
      * 
+     * @param branchId     ブランチID
      * @param repositoryId リポジトリID
      * @param headCommitId HEADコミットID
      */
-    private record BranchInfo(int repositoryId, int headCommitId) {
+    private record BranchInfo(int branchId, int repositoryId, int headCommitId) {
     }
 
     /**
      * ブランチ情報を取得
      * 
-     * @param conn     データベース接続
      * @param branchId ブランチID
-     * @return ブランチ情報
-     * @throws SQLException SQL例外
+     * @return ブランチ情報（存在しない、またはコミットがない場合はnull）
      */
-    private BranchInfo getBranchInfo(Connection conn, int branchId) throws SQLException {
-        String sql = "SELECT repository_id, head_commit_id FROM branch WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, branchId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    int repositoryId = rs.getInt("repository_id");
-                    int headCommitId = rs.getInt("head_commit_id");
-                    if (headCommitId == 0)
-                        return null;
-                    return new BranchInfo(repositoryId, headCommitId);
-                }
-            }
+    private BranchInfo getBranchInfo(int branchId) {
+        CommitManager.BranchHead head = commitManager.getBranchHead(branchId);
+        if (head == null || head.headCommitId() == 0)
+            return null;
+        return new BranchInfo(branchId, head.repositoryId(), head.headCommitId());
+    }
+
+    /**
+     * 複数ブランチの情報を取得
+     * 
+     * @param branchIds ブランチIDのリスト
+     * @return ブランチ情報（存在しない・コミットがない・リポジトリが異なるブランチを含む場合はnull）
+     */
+    private List<BranchInfo> getBranchInfos(List<Integer> branchIds) {
+        List<BranchInfo> branches = new ArrayList<>();
+        for (int branchId : branchIds) {
+            BranchInfo branch = getBranchInfo(branchId);
+            if (branch == null || (!branches.isEmpty() && branch.repositoryId() != branches.get(0).repositoryId()))
+                return null;
+            branches.add(branch);
         }
-        return null;
+        return branches;
     }
 
     /**
-     * ファイル内容を取得
+     * 他のブランチのHEADから到達できるHEADを除外し、統合すべき先端のみを残す
+     * 
+     * 同じHEADを持つブランチは先に現れたものを残す
      * 
      * @param conn     データベース接続
-     * @param commitId コミットID
-     * @return ファイル内容
+     * @param branches ブランチ情報
+     * @return 先端となるブランチ（入力の順序を保つ）
      * @throws SQLException SQL例外
      */
-    private String getFileContent(Connection conn, int commitId) throws SQLException {
-        String sql = "SELECT content FROM file WHERE commit_id = ? ORDER BY id LIMIT 1";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, commitId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("content");
+    private List<BranchInfo> reduceToTips(Connection conn, List<BranchInfo> branches) throws SQLException {
+        List<BranchInfo> tips = new ArrayList<>();
+        Set<Integer> seenHeads = new HashSet<>();
+        for (BranchInfo branch : branches) {
+            if (!seenHeads.add(branch.headCommitId()))
+                continue;
+            boolean reachable = false;
+            for (BranchInfo other : branches) {
+                if (other.headCommitId() != branch.headCommitId()
+                        && commitGraph.isAncestor(conn, branch.headCommitId(), other.headCommitId())) {
+                    reachable = true;
+                    break;
                 }
             }
+            if (!reachable)
+                tips.add(branch);
         }
-        return null;
+        return tips;
     }
 
     /**
-     * 最新のコミットIDを取得
+     * 重複を除いたブランチIDのリストを作成
      * 
-     * @param conn         データベース接続
-     * @param repositoryId リポジトリID
-     * @return 最新のコミットID
+     * @param branchIds ブランチIDのリスト
+     * @return 最初に現れた順のブランチID
+     */
+    private static List<Integer> distinct(List<Integer> branchIds) {
+        if (branchIds.isEmpty())
+            throw new IllegalArgumentException("branchIds must not be empty");
+        return new ArrayList<>(new LinkedHashSet<>(branchIds));
+    }
+
+    /**
+     * HEADコミットIDの一覧を作成（重複は除く）
+     * 
+     * @param branches ブランチ情報
+     * @return HEADコミットID
+     */
+    private static List<Integer> headCommitIds(List<BranchInfo> branches) {
+        return branches.stream().map(BranchInfo::headCommitId).distinct().toList();
+    }
+
+    /**
+     * ブランチID → 現在のHEADコミットID の対応を作成
+     * 
+     * @param branches ブランチ情報
+     * @return ブランチID → HEADコミットID
+     */
+    private static Map<Integer, Integer> branchHeads(List<BranchInfo> branches) {
+        Map<Integer, Integer> heads = new LinkedHashMap<>();
+        for (BranchInfo branch : branches) {
+            heads.put(branch.branchId(), branch.headCommitId());
+        }
+        return heads;
+    }
+
+    /**
+     * 2つのHEADをマージした場合の結果を判定（結果はキャッシュされる）
+     * 
+     * @param conn          データベース接続
+     * @param headCommitId1 HEADコミットID1
+     * @param headCommitId2 HEADコミットID2
+     * @return 判定結果
      * @throws SQLException SQL例外
      */
-    private int getLatestCommitId(Connection conn, int repositoryId) throws SQLException {
-        String sql = "SELECT id FROM git_commit WHERE repository_id = ? ORDER BY id DESC LIMIT 1";
+    private Analysis analyze(Connection conn, int headCommitId1, int headCommitId2) throws SQLException {
+        String key = headCommitId1 + ":" + headCommitId2;
+        Analysis cached = analysisCache.get(key);
+        if (cached != null)
+            return cached;
+
+        Analysis analysis;
+        if (headCommitId1 == headCommitId2) {
+            analysis = new Analysis(MergeOutcome.UP_TO_DATE, 0);
+        } else if (commitGraph.isAncestor(conn, headCommitId1, headCommitId2)) {
+            analysis = new Analysis(MergeOutcome.FAST_FORWARD, headCommitId2);
+        } else if (commitGraph.isAncestor(conn, headCommitId2, headCommitId1)) {
+            analysis = new Analysis(MergeOutcome.FAST_FORWARD, headCommitId1);
+        } else if (treesEqual(conn, headCommitId1, headCommitId2)) {
+            analysis = new Analysis(MergeOutcome.CLEAN, 0);
+        } else {
+            analysis = new Analysis(MergeOutcome.CONFLICT, 0);
+        }
+        // トランザクション内で読んだ内容はロールバックされうるためキャッシュしない
+        if (conn.getAutoCommit())
+            analysisCache.put(key, analysis);
+        return analysis;
+    }
+
+    /**
+     * 2つのコミットのツリーが同じ内容か判定（内容ハッシュで比較し、本文は読み込まない）
+     * 
+     * @param conn      データベース接続
+     * @param commitId1 コミット1のID
+     * @param commitId2 コミット2のID
+     * @return 全ファイルが一致する場合true
+     * @throws SQLException SQL例外
+     */
+    private boolean treesEqual(Connection conn, int commitId1, int commitId2) throws SQLException {
+        Map<String, Integer> tree1 = commitManager.resolveCommitTree(conn, commitId1);
+        Map<String, Integer> tree2 = commitManager.resolveCommitTree(conn, commitId2);
+        if (!tree1.keySet().equals(tree2.keySet()))
+            return false;
+
+        for (Map.Entry<String, Integer> entry : tree1.entrySet()) {
+            int fileId1 = entry.getValue();
+            int fileId2 = tree2.get(entry.getKey());
+            if (fileId1 != fileId2 && !Objects.equals(getContentHash(conn, fileId1), getContentHash(conn, fileId2)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * file行の内容ハッシュを取得
+     * 
+     * @param conn   データベース接続
+     * @param fileId file行ID
+     * @return 内容ハッシュ
+     * @throws SQLException SQL例外
+     */
+    private String getContentHash(Connection conn, int fileId) throws SQLException {
+        String sql = "SELECT content_hash FROM file WHERE id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, repositoryId);
+            stmt.setInt(1, fileId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt("id");
+                    return rs.getString("content_hash");
                 }
             }
         }
-        return -1;
+        return null;
     }
 
     /**
-     * 両ブランチのHEADを更新
+     * main.txt の内容を取得
+     * 
+     * @param conn     データベース接続
+     * @param commitId コミットID
+     * @return ファイル内容
+     * @throws SQLException SQL例外
+     */
+    private String getFileContent(Connection conn, int commitId) throws SQLException {
+        Integer fileId = commitManager.findFileId(conn, commitId, CommitManager.DEFAULT_FILENAME);
+        return fileId != null ? commitManager.readContent(conn, fileId) : null;
+    }
+
+    /**
+     * ブランチのHEADを子孫コミットへ進める（Fast-forward）
+     * 
+     * 全ブランチを1つのトランザクションで更新し、いずれかのHEADが読み取り後に変わっていた場合は何も更新しない
      * 
      * @param conn        データベース接続
-     * @param branchId1   ブランチ1のID
-     * @param branchId2   ブランチ2のID
-     * @param newCommitId 新しいコミットID
+     * @param branches    ブランチ情報（読み取り時のHEADを含む）
+     * @param newCommitId 新しいHEADコミットID
+     * @return 更新できた場合true
      * @throws SQLException SQL例外
      */
-    private void updateBranchHeads(Connection conn, int branchId1, int branchId2, int newCommitId) throws SQLException {
-        String sql = "UPDATE branch SET head_commit_id = ? WHERE id = ?";
+    private boolean fastForward(Connection conn, List<BranchInfo> branches, int newCommitId) throws SQLException {
+        String sql = "UPDATE branch SET head_commit_id = ? WHERE id = ? AND head_commit_id = ?";
+        conn.setAutoCommit(false);
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, newCommitId);
-            stmt.setInt(2, branchId1);
-            stmt.executeUpdate();
-
-            stmt.setInt(2, branchId2);
-            stmt.executeUpdate();
+            for (BranchInfo branch : branches) {
+                if (branch.headCommitId() == newCommitId)
+                    continue;
+                stmt.setInt(1, newCommitId);
+                stmt.setInt(2, branch.branchId());
+                stmt.setInt(3, branch.headCommitId());
+                if (stmt.executeUpdate() != 1) {
+                    conn.rollback();
+                    return false;
+                }
+            }
+            conn.commit();
+            commitManager.invalidateBranches(branchHeads(branches).keySet());
+            GraphCache.getInstance().invalidate(branches.get(0).repositoryId());
+            return true;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
@@ -233,6 +517,17 @@ public class MergeManager {
         return strategy.merge(branchId1, branchId2);
     }
 
+    /**
+     * 複数ブランチのマージを実行
+     * 
+     * @param strategy  マージ戦略
+     * @param branchIds ブランチIDのリスト
+     * @return マージ結果
+     */
+    public MergeResult executeMerge(MergeStrategy strategy, List<Integer> branchIds) {
+        return strategy.merge(branchIds);
+    }
+
     /**
      * 厳密マージを実行
      * 
@@ -241,7 +536,60 @@ public class MergeManager {
      * @return マージ結果
      */
     public MergeResult performStrictMerge(int branchId1, int branchId2) {
-        return executeMerge(new StrictMergeStrategy(), branchId1, branchId2);
+        return performStrictMerge(branchId1, branchId2, true);
+    }
+
+    /**
+     * 厳密マージを実行
+     * 
+     * @param branchId1      ブランチ1のID
+     * @param branchId2      ブランチ2のID
+     * @param includeContent コンフリクト時に内容を結果に含める場合true
+     * @return マージ結果
+     */
+    public MergeResult performStrictMerge(int branchId1, int branchId2, boolean includeContent) {
+        return executeMerge(new StrictMergeStrategy(includeContent), branchId1, branchId2);
+    }
+
+    /**
+     * 複数ブランチを1つのマージコミットにまとめる厳密マージを実行
+     * 
+     * @param branchIds      ブランチIDのリスト
+     * @param includeContent コンフリクト時に内容を結果に含める場合true
+     * @return マージ結果
+     */
+    public MergeResult performOctopusMerge(List<Integer> branchIds, boolean includeContent) {
+        return executeMerge(new StrictMergeStrategy(includeContent), branchIds);
+    }
+
+    /**
+     * 何も書き込まずにマージ結果をプレビュー
+     * 
+     * @param branchId1 ブランチ1のID
+     * @param branchId2 ブランチ2のID
+     * @return プレビュー（ブランチが存在しない、またはコミットがない場合はnull）
+     */
+    public MergePreview previewMerge(int branchId1, int branchId2) {
+        try (Connection conn = dbManager.getConnection()) {
+            BranchInfo branch1 = getBranchInfo(branchId1);
+            BranchInfo branch2 = getBranchInfo(branchId2);
+            if (branch1 == null || branch2 == null)
+                return null;
+
+            Analysis analysis = analyze(conn, branch1.headCommitId(), branch2.headCommitId());
+            List<LineDiff.Hunk> hunks = List.of();
+            if (analysis.outcome() == MergeOutcome.CONFLICT) {
+                DiffManager.DiffResult diff = diffManager.diff(branch1.headCommitId(), branch2.headCommitId(),
+                        CommitManager.DEFAULT_FILENAME);
+                if (diff != null && !diff.files().isEmpty())
+                    hunks = diff.files().get(0).hunks();
+            }
+            return new MergePreview(branchId1, branch1.headCommitId(), branchId2, branch2.headCommitId(),
+                    analysis.outcome(), analysis.targetCommitId(), hunks);
+        } catch (SQLException e) {
+            System.err.println("Merge preview error: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -255,4 +603,15 @@ public class MergeManager {
     public MergeResult performForceMerge(int branchId1, int branchId2, String content) {
         return executeMerge(new ForceMergeStrategy(content), branchId1, branchId2);
     }
+
+    /**
+     * 複数ブランチの強制マージを実行
+     * 
+     * @param branchIds ブランチIDのリスト
+     * @param content   マージ後の内容
+     * @return マージ結果
+     */
+    public MergeResult performForceMerge(List<Integer> branchIds, String content) {
+        return executeMerge(new ForceMergeStrategy(content), branchIds);
+    }
 }
\ No newline at end of file
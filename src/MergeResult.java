@@ -18,9 +18,9 @@ public sealed interface MergeResult
      * マージコンフリクト結果
      * 
      * @param branchId1 ブランチ1のID
-     * @param content1  ブランチ1の内容
+     * @param content1  ブランチ1の内容（要求されなかった場合はnull）
      * @param branchId2 ブランチ2のID
-     * @param content2  ブランチ2の内容
+     * @param content2  ブランチ2の内容（要求されなかった場合はnull）
      */
     record Conflict(int branchId1, String content1, int branchId2, String content2) implements MergeResult {
     }
@@ -0,0 +1,543 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessagePack形式のエンコーダー
+ * 
+ * 拡張可能なバイト配列に直接書き込み、数値や文字列の変換で中間オブジェクトを作らない。
+ * 整数・文字列・配列・マップは値に応じて最も短い形式を使用する。
+ */
+public class MessagePackWriter {
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * コンストラクタ
+     */
+    public MessagePackWriter() {
+        this(256);
+    }
+
+    /**
+     * コンストラクタ
+     * 
+     * @param initialCapacity 初期バッファサイズ
+     */
+    public MessagePackWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * nilを書き込む
+     * 
+     * @return this
+     */
+    public MessagePackWriter nil() {
+        ensure(1);
+        buffer[length++] = (byte) 0xc0;
+        return this;
+    }
+
+    /**
+     * 真偽値を書き込む
+     * 
+     * @param value 値
+     * @return this
+     */
+    public MessagePackWriter bool(boolean value) {
+        ensure(1);
+        buffer[length++] = (byte) (value ? 0xc3 : 0xc2);
+        return this;
+    }
+
+    /**
+     * 整数を書き込む
+     * 
+     * @param value 値
+     * @return this
+     */
+    public MessagePackWriter integer(long value) {
+        ensure(9);
+        if (value >= 0) {
+            if (value < 0x80) {
+                buffer[length++] = (byte) value;
+            } else if (value < 0x100) {
+                buffer[length++] = (byte) 0xcc;
+                buffer[length++] = (byte) value;
+            } else if (value < 0x10000) {
+                buffer[length++] = (byte) 0xcd;
+                putShort((int) value);
+            } else if (value < 0x100000000L) {
+                buffer[length++] = (byte) 0xce;
+                putInt((int) value);
+            } else {
+                buffer[length++] = (byte) 0xcf;
+                putLong(value);
+            }
+        } else {
+            if (value >= -32) {
+                buffer[length++] = (byte) value;
+            } else if (value >= Byte.MIN_VALUE) {
+                buffer[length++] = (byte) 0xd0;
+                buffer[length++] = (byte) value;
+            } else if (value >= Short.MIN_VALUE) {
+                buffer[length++] = (byte) 0xd1;
+                putShort((int) value);
+            } else if (value >= Integer.MIN_VALUE) {
+                buffer[length++] = (byte) 0xd2;
+                putInt((int) value);
+            } else {
+                buffer[length++] = (byte) 0xd3;
+                putLong(value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 浮動小数点数を書き込む
+     * 
+     * @param value 値
+     * @return this
+     */
+    public MessagePackWriter float64(double value) {
+        ensure(9);
+        buffer[length++] = (byte) 0xcb;
+        putLong(Double.doubleToLongBits(value));
+        return this;
+    }
+
+    /**
+     * 文字列をUTF-8で書き込む（nullの場合はnil）
+     * 
+     * @param value 値
+     * @return this
+     */
+    public MessagePackWriter string(CharSequence value) {
+        if (value == null)
+            return nil();
+        int size = utf8Length(value);
+        if (size < 32) {
+            ensure(1 + size);
+            buffer[length++] = (byte) (0xa0 | size);
+        } else if (size < 0x100) {
+            ensure(2 + size);
+            buffer[length++] = (byte) 0xd9;
+            buffer[length++] = (byte) size;
+        } else if (size < 0x10000) {
+            ensure(3 + size);
+            buffer[length++] = (byte) 0xda;
+            putShort(size);
+        } else {
+            ensure(5 + size);
+            buffer[length++] = (byte) 0xdb;
+            putInt(size);
+        }
+        putUtf8(value);
+        return this;
+    }
+
+    /**
+     * 配列のヘッダーを書き込む（続けて要素をsize個書き込むこと）
+     * 
+     * @param size 要素数
+     * @return this
+     */
+    public MessagePackWriter arrayHeader(int size) {
+        return header(size, 0x90, 0xdc);
+    }
+
+    /**
+     * マップのヘッダーを書き込む（続けてキーと値をsize組書き込むこと）
+     * 
+     * @param size エントリ数
+     * @return this
+     */
+    public MessagePackWriter mapHeader(int size) {
+        return header(size, 0x80, 0xde);
+    }
+
+    /**
+     * 値を型に応じて書き込む
+     * 
+     * 対応する型は null、Boolean、整数型の Number、その他の Number（浮動小数点数として）、Map、List、
+     * それ以外は toString() の文字列
+     * 
+     * @param value 値
+     * @return this
+     */
+    public MessagePackWriter value(Object value) {
+        if (value == null) {
+            nil();
+        } else if (value instanceof Boolean b) {
+            bool(b);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            integer(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            float64(number.doubleValue());
+        } else if (value instanceof Map<?, ?> map) {
+            mapHeader(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                string(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+        } else if (value instanceof List<?> list) {
+            arrayHeader(list.size());
+            for (Object element : list) {
+                value(element);
+            }
+        } else {
+            string(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * JSONをMessagePackに変換して書き込む
+     * 
+     * 配列とマップは要素数が確定するまで最大長のヘッダー分を空けておき、確定後に最短のヘッダーへ詰める
+     * 
+     * @param json JSON
+     * @return this
+     * @throws IllegalArgumentException JSONとして解析できない場合
+     */
+    public MessagePackWriter json(CharSequence json) {
+        new JsonTranscoder(json).value();
+        return this;
+    }
+
+    /**
+     * 書き込んだバイト数を取得
+     * 
+     * @return バイト数
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * 書き込んだ内容を取得
+     * 
+     * @return MessagePackのバイト列
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 書き込んだ内容を出力
+     * 
+     * @param out 出力先
+     * @throws IOException IO例外
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * 配列・マップのヘッダーを書き込む
+     * 
+     * @param size   要素数
+     * @param fix    4ビット以下の要素数用の先頭バイト
+     * @param type16 16ビットの要素数用の先頭バイト（32ビットはその次）
+     * @return this
+     */
+    private MessagePackWriter header(int size, int fix, int type16) {
+        ensure(5);
+        if (size < 16) {
+            buffer[length++] = (byte) (fix | size);
+        } else if (size < 0x10000) {
+            buffer[length++] = (byte) type16;
+            putShort(size);
+        } else {
+            buffer[length++] = (byte) (type16 + 1);
+            putInt(size);
+        }
+        return this;
+    }
+
+    /**
+     * 要素数が確定したヘッダーを、あらかじめ空けておいた5バイトの位置に詰めて書き込む
+     * 
+     * @param position 空けておいた位置
+     * @param size     要素数
+     * @param fix      4ビット以下の要素数用の先頭バイト
+     * @param type16   16ビットの要素数用の先頭バイト
+     */
+    private void patchHeader(int position, int size, int fix, int type16) {
+        int end = length;
+        length = position;
+        header(size, fix, type16);
+        int headerLength = length - position;
+        System.arraycopy(buffer, position + 5, buffer, length, end - position - 5);
+        length = end - (5 - headerLength);
+    }
+
+    private void putShort(int value) {
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    /**
+     * UTF-8でのバイト数を計算
+     * 
+     * @param value 文字列
+     * @return バイト数
+     */
+    private static int utf8Length(CharSequence value) {
+        int size = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 文字列をUTF-8で書き込む（容量は確保済みであること）
+     * 
+     * @param value 文字列
+     */
+    private void putUtf8(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                // 対になっていないサロゲートは String.getBytes と同じく '?' にする
+                if (Character.isSurrogate(c))
+                    c = '?';
+                buffer[length++] = (byte) (0xe0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * バッファの空きを確保
+     * 
+     * @param additional 追加で書き込むバイト数
+     */
+    private void ensure(int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+        }
+    }
+
+    /**
+     * JSONを読みながらMessagePackを書き込む変換器
+     */
+    private class JsonTranscoder {
+        private final CharSequence json;
+        private final StringBuilder text = new StringBuilder();
+        private int pos;
+
+        private JsonTranscoder(CharSequence json) {
+            this.json = json;
+        }
+
+        private void value() {
+            skipWhitespace();
+            if (pos >= json.length())
+                throw error();
+            char c = json.charAt(pos);
+            switch (c) {
+                case '{' -> object();
+                case '[' -> array();
+                case '"' -> string(readString());
+                case 't' -> literal("true", () -> bool(true));
+                case 'f' -> literal("false", () -> bool(false));
+                case 'n' -> literal("null", MessagePackWriter.this::nil);
+                default -> number();
+            }
+        }
+
+        private void object() {
+            pos++;
+            int position = reserveHeader();
+            int size = 0;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    if (peek() != '"')
+                        throw error();
+                    string(readString());
+                    skipWhitespace();
+                    expect(':');
+                    value();
+                    size++;
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        pos++;
+                    } else {
+                        expect('}');
+                        break;
+                    }
+                }
+            }
+            patchHeader(position, size, 0x80, 0xde);
+        }
+
+        private void array() {
+            pos++;
+            int position = reserveHeader();
+            int size = 0;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+            } else {
+                while (true) {
+                    value();
+                    size++;
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        pos++;
+                    } else {
+                        expect(']');
+                        break;
+                    }
+                }
+            }
+            patchHeader(position, size, 0x90, 0xdc);
+        }
+
+        /**
+         * 文字列を読み込む（戻り値の内容は次の呼び出しで上書きされる）
+         * 
+         * @return エスケープを解除した文字列
+         */
+        private CharSequence readString() {
+            pos++;
+            text.setLength(0);
+            while (pos < json.length()) {
+                char c = json.charAt(pos++);
+                if (c == '"')
+                    return text;
+                if (c != '\\') {
+                    text.append(c);
+                    continue;
+                }
+                if (pos >= json.length())
+                    break;
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'b' -> text.append('\b');
+                    case 'f' -> text.append('\f');
+                    case 'n' -> text.append('\n');
+                    case 'r' -> text.append('\r');
+                    case 't' -> text.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > json.length())
+                            throw error();
+                        text.append((char) Integer.parseInt(json.subSequence(pos, pos + 4).toString(), 16));
+                        pos += 4;
+                    }
+                    default -> text.append(escaped);
+                }
+            }
+            throw error();
+        }
+
+        private void number() {
+            int start = pos;
+            boolean fraction = false;
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    fraction = true;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                pos++;
+            }
+            if (start == pos)
+                throw error();
+            String number = json.subSequence(start, pos).toString();
+            try {
+                if (fraction) {
+                    float64(Double.parseDouble(number));
+                } else {
+                    integer(Long.parseLong(number));
+                }
+            } catch (NumberFormatException e) {
+                throw error();
+            }
+        }
+
+        private void literal(String word, Runnable write) {
+            if (pos + word.length() > json.length() || !word.contentEquals(json.subSequence(pos, pos + word.length())))
+                throw error();
+            pos += word.length();
+            write.run();
+        }
+
+        private int reserveHeader() {
+            ensure(5);
+            int position = length;
+            length += 5;
+            return position;
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+                pos++;
+        }
+
+        private char peek() {
+            if (pos >= json.length())
+                throw error();
+            return json.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c)
+                throw error();
+            pos++;
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Invalid JSON at position " + pos);
+        }
+    }
+}
\ No newline at end of file
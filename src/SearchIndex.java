@@ -0,0 +1,335 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * コミットメッセージとファイル内容の全文検索インデックス（SQLite FTS5）
+ *
+ * コミット作成時に同じトランザクション内でメッセージとfile行を登録するため、
+ * 検索結果は常にコミット済みの内容と一致する。FTS5の標準トークナイザーは
+ * 漢字・かなの連続を1語として扱うため、登録前と検索前に2文字ずつのbigramへ分割する。
+ *
+ * 本文の写しを持たないよう、FTS5のテーブルは内容を保持しない形式（content=''）とし、
+ * リポジトリ・コミット・file行との対応は search_entry に記録する。削除時は登録した内容を
+ * 元のコミットメッセージ・file行から作り直してFTS5に渡すため、元の行より先に削除する。
+ */
+public class SearchIndex {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    /** file行の内容のうち登録する最大文字数 */
+    public static final int MAX_INDEXED_CHARS = 1024 * 1024;
+    private static final int SNIPPET_CHARS = 80;
+    private static final int SNIPPET_CONTEXT = 30;
+    /** 抜粋を探すfile行の内容の範囲（文字数） */
+    private static final int SNIPPET_SCAN_CHARS = 64 * 1024;
+    /** ファイル名の一致を本文の一致より重く扱う */
+    private static final String SCORE = "bm25(search_index, 4.0, 1.0)";
+
+    private final DatabaseManager dbManager;
+
+    public SearchIndex() {
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    /**
+     * 検索結果レコード
+     *
+     * @param commitId コミットID
+     * @param fileId   file行ID（コミットメッセージの一致の場合はnull）
+     * @param filename ファイル名（コミットメッセージの一致の場合はnull）
+     * @param message  コミットメッセージ
+     * @param snippet  一致箇所の前後の抜粋
+     * @param score    関連度（大きいほど上位）
+     */
+    public record SearchHit(int commitId, Integer fileId, String filename, String message, String snippet,
+            double score) {
+    }
+
+    /**
+     * 検索結果ページレコード
+     *
+     * @param hits       検索結果（関連度の降順）
+     * @param nextOffset 次のページの offset（ない場合はnull）
+     */
+    public record SearchPage(List<SearchHit> hits, Integer nextOffset) {
+    }
+
+    /**
+     * コミットメッセージを登録
+     *
+     * @param conn         データベース接続（コミット作成と同じトランザクション）
+     * @param repositoryId リポジトリID
+     * @param commitId     コミットID
+     * @param message      コミットメッセージ
+     * @throws SQLException SQL例外
+     */
+    public void indexCommit(Connection conn, int repositoryId, int commitId, String message) throws SQLException {
+        insert(conn, repositoryId, commitId, null, "", message);
+    }
+
+    /**
+     * ファイル内容を登録
+     *
+     * @param conn         データベース接続（コミット作成と同じトランザクション）
+     * @param repositoryId リポジトリID
+     * @param commitId     ファイルを追加したコミットID
+     * @param fileId       file行ID
+     * @param filename     ファイル名
+     * @param content      ファイル内容（先頭 {@link #MAX_INDEXED_CHARS} 文字までを登録する）
+     * @throws SQLException SQL例外
+     */
+    public void indexFile(Connection conn, int repositoryId, int commitId, int fileId, String filename,
+            String content) throws SQLException {
+        insert(conn, repositoryId, commitId, fileId, filename, content);
+    }
+
+    /**
+     * リポジトリの登録内容をすべて削除（インポートの取り消し用、file行・コミットを削除する前に呼ぶ）
+     *
+     * @param conn         データベース接続
+     * @param repositoryId リポジトリID
+     * @throws SQLException SQL例外
+     */
+    public void removeRepository(Connection conn, int repositoryId) throws SQLException {
+        remove(conn, "repository_id = ?", List.of(repositoryId));
+    }
+
+    /**
+     * コミットの登録内容を削除（ガベージコレクション用、file行・コミットを削除する前に呼ぶ）
+     *
+     * @param conn      データベース接続
+     * @param commitIds コミットID
+     * @throws SQLException SQL例外
+     */
+    public void removeCommits(Connection conn, List<Integer> commitIds) throws SQLException {
+        if (commitIds.isEmpty())
+            return;
+        remove(conn, "commit_id IN (" + String.join(",", Collections.nCopies(commitIds.size(), "?")) + ")",
+                commitIds);
+    }
+
+    /**
+     * リポジトリ内を検索
+     *
+     * 空白区切りの語をすべて含むコミットメッセージとファイルを、BM25の関連度順に返す
+     *
+     * @param repositoryId リポジトリID
+     * @param query        検索語
+     * @param limit        取得件数
+     * @param offset       読み飛ばす件数
+     * @return 検索結果ページ
+     */
+    public SearchPage search(int repositoryId, String query, int limit, int offset) {
+        String match = toMatchQuery(query);
+        if (match == null)
+            return new SearchPage(List.of(), null);
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        offset = Math.max(0, offset);
+
+        String sql = "SELECT e.commit_id, e.file_id, c.message, f.filename, " + SCORE + " AS score "
+                + "FROM search_index JOIN search_entry e ON e.id = search_index.rowid "
+                + "JOIN git_commit c ON c.id = e.commit_id LEFT JOIN file f ON f.id = e.file_id "
+                + "WHERE search_index MATCH ? AND e.repository_id = ? ORDER BY score LIMIT ? OFFSET ?";
+        List<SearchHit> hits = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, match);
+            stmt.setInt(2, repositoryId);
+            // 次のページの有無を調べるため1件多く取得
+            stmt.setInt(3, limit + 1);
+            stmt.setInt(4, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int fileId = rs.getInt("file_id");
+                    boolean isFile = !rs.wasNull();
+                    String message = rs.getString("message");
+                    // 抜粋は内容の先頭部分から作り、大きなファイルを丸ごと展開しない
+                    String text = isFile ? ContentCodec.readPrefix(conn, fileId, SNIPPET_SCAN_CHARS) : message;
+                    hits.add(new SearchHit(rs.getInt("commit_id"), isFile ? fileId : null,
+                            isFile ? rs.getString("filename") : null, message, snippet(text, query),
+                            -rs.getDouble("score")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Search error: " + e.getMessage());
+            return new SearchPage(List.of(), null);
+        }
+
+        if (hits.size() > limit) {
+            hits.remove(hits.size() - 1);
+            return new SearchPage(hits, offset + limit);
+        }
+        return new SearchPage(hits, null);
+    }
+
+    /**
+     * 登録用にテキストを分割（漢字・かな・ハングルの連続は2文字ずつ重ねたbigramにする）
+     *
+     * @param text テキスト
+     * @return FTS5の標準トークナイザーに渡すテキスト
+     */
+    public static String tokenize(String text) {
+        if (text == null)
+            return "";
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        List<Integer> run = new ArrayList<>();
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                run.add(codePoint);
+            } else {
+                appendRun(result, run);
+                result.appendCodePoint(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        appendRun(result, run);
+        return result.toString();
+    }
+
+    /**
+     * 検索語をFTS5のクエリに変換（各語を語句として扱い、すべてを含むものに一致させる）
+     *
+     * @param query 検索語（空白区切り）
+     * @return FTS5のクエリ（検索できる語がない場合はnull）
+     */
+    public static String toMatchQuery(String query) {
+        if (query == null)
+            return null;
+        StringJoiner match = new StringJoiner(" ");
+        for (String term : query.trim().split("\\s+")) {
+            // 英数字・かな漢字以外は区切りになるため、記号を含む語も語句として一致させる
+            List<String> tokens = new ArrayList<>();
+            for (String token : tokenize(term).split("[^\\p{L}\\p{N}\\p{M}]+")) {
+                if (!token.isEmpty())
+                    tokens.add(token);
+            }
+            if (!tokens.isEmpty())
+                match.add("\"" + String.join(" ", tokens) + "\"");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * 1件を登録
+     */
+    private void insert(Connection conn, int repositoryId, int commitId, Integer fileId, String filename,
+            String text) throws SQLException {
+        String entrySql = "INSERT INTO search_entry(repository_id, commit_id, file_id) VALUES(?, ?, ?)";
+        long entryId;
+        try (PreparedStatement stmt = conn.prepareStatement(entrySql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, repositoryId);
+            stmt.setInt(2, commitId);
+            if (fileId == null) {
+                stmt.setNull(3, Types.INTEGER);
+            } else {
+                stmt.setInt(3, fileId);
+            }
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (!rs.next())
+                    throw new SQLException("Failed to create search entry");
+                entryId = rs.getLong(1);
+            }
+        }
+        if (fileId != null && text != null && text.length() > MAX_INDEXED_CHARS)
+            text = text.substring(0, MAX_INDEXED_CHARS);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO search_index(rowid, filename, body) VALUES(?, ?, ?)")) {
+            stmt.setLong(1, entryId);
+            stmt.setString(2, tokenize(filename));
+            stmt.setString(3, tokenize(text));
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 条件に一致する登録内容を削除
+     *
+     * 内容を保持しないFTS5のテーブルは、登録した時と同じ値を渡さないと削除できないため、
+     * コミットメッセージとfile行の先頭部分から登録内容を作り直す
+     *
+     * @param conn   データベース接続
+     * @param where  search_entry の条件
+     * @param params 条件のパラメータ
+     * @throws SQLException SQL例外
+     */
+    private void remove(Connection conn, String where, List<Integer> params) throws SQLException {
+        String sql = "SELECT e.id, e.file_id, c.message, f.filename FROM search_entry e "
+                + "LEFT JOIN git_commit c ON c.id = e.commit_id LEFT JOIN file f ON f.id = e.file_id WHERE e." + where;
+        try (PreparedStatement select = conn.prepareStatement(sql);
+                PreparedStatement delete = conn.prepareStatement(
+                        "INSERT INTO search_index(search_index, rowid, filename, body) VALUES('delete', ?, ?, ?)")) {
+            for (int i = 0; i < params.size(); i++)
+                select.setInt(i + 1, params.get(i));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    int fileId = rs.getInt("file_id");
+                    boolean isFile = !rs.wasNull();
+                    delete.setLong(1, rs.getLong("id"));
+                    delete.setString(2, tokenize(isFile ? rs.getString("filename") : ""));
+                    delete.setString(3, tokenize(isFile
+                            ? ContentCodec.readPrefix(conn, fileId, MAX_INDEXED_CHARS)
+                            : rs.getString("message")));
+                    delete.addBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM search_entry WHERE " + where)) {
+            for (int i = 0; i < params.size(); i++)
+                stmt.setInt(i + 1, params.get(i));
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 漢字・かな・ハングルの連続をbigramにして書き出す（1文字だけの場合はその文字を1語にする）
+     */
+    private static void appendRun(StringBuilder result, List<Integer> run) {
+        if (run.isEmpty())
+            return;
+        result.append(' ');
+        if (run.size() == 1)
+            result.appendCodePoint(run.get(0)).append(' ');
+        for (int i = 1; i < run.size(); i++) {
+            result.appendCodePoint(run.get(i - 1)).appendCodePoint(run.get(i)).append(' ');
+        }
+        run.clear();
+    }
+
+    /**
+     * 空白で区切られない文字かどうか
+     */
+    private static boolean isCjk(int codePoint) {
+        if (codePoint == 0x30fc)
+            return true;
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 一致した語の前後を抜き出す
+     *
+     * @param text  元のテキスト
+     * @param query 検索語
+     * @return 抜粋（改行は空白に置き換える）
+     */
+    private static String snippet(String text, String query) {
+        if (text == null)
+            return "";
+        String lower = text.toLowerCase(Locale.ROOT);
+        int position = -1;
+        for (String term : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            int found = term.isEmpty() ? -1 : lower.indexOf(term);
+            if (found >= 0 && (position < 0 || found < position))
+                position = found;
+        }
+        int start = Math.max(0, position - SNIPPET_CONTEXT);
+        int end = Math.min(text.length(), start + SNIPPET_CHARS);
+        String snippet = text.substring(start, end).replaceAll("\\s+", " ").trim();
+        return (start > 0 ? "…" : "") + snippet + (end < text.length() ? "…" : "");
+    }
+}
\ No newline at end of file
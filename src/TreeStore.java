@@ -0,0 +1,242 @@
+package src;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * ツリーオブジェクト管理クラス
+ * 
+ * ツリーは「ファイル名 → fileテーブルの行ID」の対応表。親ツリーとの差分だけを
+ * 保持する差分ツリーとして保存し、変更のないファイルは親と共有する。
+ * 差分の連鎖が長くなった場合は差分同士を畳み込み、読み取りコストを一定に保つ。
+ */
+public class TreeStore {
+    /** 差分ツリーの連鎖の上限 */
+    static final int MAX_CHAIN_DEPTH = 32;
+
+    private static final String CHAIN_CTE = "WITH RECURSIVE chain(id, base, lvl) AS ("
+            + "SELECT id, base_tree_id, 0 FROM tree WHERE id = ? "
+            + "UNION ALL SELECT t.id, t.base_tree_id, c.lvl + 1 FROM tree t JOIN chain c ON t.id = c.base) ";
+
+    /**
+     * ツリー情報レコード
+     * 
+     * @param id         ツリーID
+     * @param baseTreeId 基底ツリーID（完全ツリーの場合はnull）
+     * @param depth      完全ツリーまでの連鎖の長さ
+     * @param entryCount エントリ数
+     */
+    private record TreeInfo(int id, Integer baseTreeId, int depth, int entryCount) {
+    }
+
+    /**
+     * 変更を適用した新しいツリーを書き込む
+     * 
+     * @param conn       データベース接続
+     * @param baseTreeId 親ツリーID（nullの場合は空ツリーから作成）
+     * @param changes    ファイル名 → file行ID（nullは削除）
+     * @return 新しいツリーID
+     * @throws SQLException SQL例外
+     */
+    public int writeTree(Connection conn, Integer baseTreeId, Map<String, Integer> changes) throws SQLException {
+        if (baseTreeId == null) {
+            Map<String, Integer> entries = new TreeMap<>(changes);
+            entries.values().removeIf(Objects::isNull);
+            return insertTree(conn, null, 0, entries);
+        }
+
+        TreeInfo base = getTreeInfo(conn, baseTreeId);
+        if (base == null) {
+            throw new SQLException("Tree not found: " + baseTreeId);
+        }
+        if (base.depth() + 1 < MAX_CHAIN_DEPTH) {
+            return insertTree(conn, baseTreeId, base.depth() + 1, changes);
+        }
+
+        // 連鎖が上限に達した: 差分層を1つに畳み込み、完全ツリーの直上に置く
+        Map<String, Integer> merged = new HashMap<>(changes);
+        Integer rootId = null;
+        Integer current = baseTreeId;
+        while (current != null) {
+            TreeInfo info = getTreeInfo(conn, current);
+            if (info.baseTreeId() == null) {
+                rootId = info.id();
+                break;
+            }
+            for (Map.Entry<String, Integer> entry : loadEntries(conn, info.id()).entrySet()) {
+                if (!merged.containsKey(entry.getKey()))
+                    merged.put(entry.getKey(), entry.getValue());
+            }
+            current = info.baseTreeId();
+        }
+
+        TreeInfo root = getTreeInfo(conn, rootId);
+        if (merged.size() * 2 > root.entryCount()) {
+            // 差分が完全ツリーに匹敵する大きさなら新しい完全ツリーを作る
+            Map<String, Integer> full = resolve(conn, baseTreeId);
+            for (Map.Entry<String, Integer> entry : changes.entrySet()) {
+                if (entry.getValue() == null) {
+                    full.remove(entry.getKey());
+                } else {
+                    full.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return insertTree(conn, null, 0, full);
+        }
+        return insertTree(conn, rootId, 1, merged);
+    }
+
+    /**
+     * ツリーの全エントリを解決
+     * 
+     * @param conn   データベース接続
+     * @param treeId ツリーID
+     * @return ファイル名 → file行ID（ファイル名順）
+     * @throws SQLException SQL例外
+     */
+    public Map<String, Integer> resolve(Connection conn, int treeId) throws SQLException {
+        Map<String, Integer> seen = new HashMap<>();
+        String sql = CHAIN_CTE
+                + "SELECT e.filename, e.file_id FROM chain c JOIN tree_entry e ON e.tree_id = c.id ORDER BY c.lvl";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, treeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String filename = rs.getString("filename");
+                    if (!seen.containsKey(filename)) {
+                        int fileId = rs.getInt("file_id");
+                        seen.put(filename, rs.wasNull() ? null : fileId);
+                    }
+                }
+            }
+        }
+
+        Map<String, Integer> entries = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : seen.entrySet()) {
+            if (entry.getValue() != null)
+                entries.put(entry.getKey(), entry.getValue());
+        }
+        return entries;
+    }
+
+    /**
+     * ツリー内の1ファイルを検索
+     * 
+     * @param conn     データベース接続
+     * @param treeId   ツリーID
+     * @param filename ファイル名
+     * @return file行ID（存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    public Integer lookup(Connection conn, int treeId, String filename) throws SQLException {
+        String sql = CHAIN_CTE
+                + "SELECT e.file_id FROM chain c JOIN tree_entry e ON e.tree_id = c.id AND e.filename = ? ORDER BY c.lvl LIMIT 1";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, treeId);
+            stmt.setString(2, filename);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int fileId = rs.getInt("file_id");
+                    return rs.wasNull() ? null : fileId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ツリーを挿入
+     * 
+     * @param conn       データベース接続
+     * @param baseTreeId 基底ツリーID
+     * @param depth      連鎖の長さ
+     * @param entries    エントリ（nullは削除）
+     * @return 新しいツリーID
+     * @throws SQLException SQL例外
+     */
+    private int insertTree(Connection conn, Integer baseTreeId, int depth, Map<String, Integer> entries)
+            throws SQLException {
+        String treeSql = "INSERT INTO tree(base_tree_id, depth, entry_count) VALUES(?, ?, ?)";
+        int treeId = -1;
+        try (PreparedStatement stmt = conn.prepareStatement(treeSql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            if (baseTreeId != null) {
+                stmt.setInt(1, baseTreeId);
+            } else {
+                stmt.setNull(1, Types.INTEGER);
+            }
+            stmt.setInt(2, depth);
+            stmt.setInt(3, entries.size());
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    treeId = rs.getInt(1);
+                }
+            }
+        }
+        if (treeId == -1) {
+            throw new SQLException("Failed to create tree");
+        }
+
+        String entrySql = "INSERT INTO tree_entry(tree_id, filename, file_id) VALUES(?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(entrySql)) {
+            for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+                stmt.setInt(1, treeId);
+                stmt.setString(2, entry.getKey());
+                if (entry.getValue() != null) {
+                    stmt.setInt(3, entry.getValue());
+                } else {
+                    stmt.setNull(3, Types.INTEGER);
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        return treeId;
+    }
+
+    /**
+     * ツリー情報を取得
+     * 
+     * @param conn   データベース接続
+     * @param treeId ツリーID
+     * @return ツリー情報（存在しない場合はnull）
+     * @throws SQLException SQL例外
+     */
+    private TreeInfo getTreeInfo(Connection conn, int treeId) throws SQLException {
+        String sql = "SELECT id, base_tree_id, depth, entry_count FROM tree WHERE id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, treeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int base = rs.getInt("base_tree_id");
+                    Integer baseTreeId = rs.wasNull() ? null : base;
+                    return new TreeInfo(rs.getInt("id"), baseTreeId, rs.getInt("depth"), rs.getInt("entry_count"));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ツリー自身が持つエントリ（差分）を取得
+     * 
+     * @param conn   データベース接続
+     * @param treeId ツリーID
+     * @return ファイル名 → file行ID（nullは削除）
+     * @throws SQLException SQL例外
+     */
+    private Map<String, Integer> loadEntries(Connection conn, int treeId) throws SQLException {
+        Map<String, Integer> entries = new HashMap<>();
+        String sql = "SELECT filename, file_id FROM tree_entry WHERE tree_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, treeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int fileId = rs.getInt("file_id");
+                    entries.put(rs.getString("filename"), rs.wasNull() ? null : fileId);
+                }
+            }
+        }
+        return entries;
+    }
+}
\ No newline at end of file
@@ -34,6 +34,10 @@ public class ApiHandlerTest {
             return extractJsonField(json, field);
         }
 
+        public Map<String, String> testExtractJsonStringMap(String json, String field) {
+            return extractJsonStringMap(json, field);
+        }
+
         public String testListToJson(List<? extends Map<String, ?>> list, String arrayName) {
             return listToJson(list, arrayName);
         }
@@ -95,12 +99,33 @@ public class ApiHandlerTest {
         assertEquals("存在しないフィールドは空文字", "", nonExistent);
     }
 
+    @Test
+    public void testExtractJsonStringMap() {
+        String json = "{\"branch_id\":1,\"files\":{\"a.txt\":\"line1\\nline2\", \"b.txt\": null}}";
+
+        Map<String, String> files = handler.testExtractJsonStringMap(json, "files");
+        assertEquals("エントリ数が正しい", 2, files.size());
+        assertEquals("エスケープが解除される", "line1\nline2", files.get("a.txt"));
+        assertTrue("nullは削除として扱われる", files.containsKey("b.txt") && files.get("b.txt") == null);
+        assertNull("存在しないフィールドはnull", handler.testExtractJsonStringMap(json, "other"));
+    }
+
     @Test
     public void testValueToJsonString() {
         String result = handler.testValueToJson("test string");
         assertEquals("文字列が正しくJSON化される", "\"test string\"", result);
     }
 
+    @Test
+    public void testValueToJsonControlCharacters() {
+        String text = "a\b\f\u0000\u001f\t\"\\z";
+        String result = handler.testValueToJson(text);
+        assertEquals("制御文字は\\u形式でエスケープされる",
+            "\"a\\u0008\\u000c\\u0000\\u001f\\t\\\"\\\\z\"", result);
+        assertEquals("読み戻すと元の文字列になる", text,
+            handler.testExtractJsonField("{\"text\":" + result + "}", "text"));
+    }
+
     @Test
     public void testValueToJsonNumber() {
         String result1 = handler.testValueToJson(123);
@@ -0,0 +1,151 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * ArchiveStoreのテストクラス
+ */
+public class ArchiveStoreTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private ArchiveStore archiveStore;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        archiveStore = ArchiveStore.getInstance();
+
+        dbManager.createUser("alice");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    private void commit(int branchId, String message, Map<String, String> files) {
+        assertTrue("コミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(branchId, message, 1, files)));
+    }
+
+    /**
+     * a.txt を毎回変更する6コミットを作成（b.txt は最初のコミットだけで追加）
+     */
+    private void createHistory() {
+        commit(1, "version 1", Map.of("a.txt", "版 1 archived text", "b.txt", "unchanged"));
+        for (int i = 2; i <= 6; i++) {
+            commit(1, "version " + i, Map.of("a.txt", "版 " + i + " archived text"));
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testArchiveByDepth() throws SQLException {
+        createHistory();
+
+        ArchiveStore.ArchiveResult result = archiveStore.archive(new ArchiveStore.ArchivePolicy(0, 2));
+        assertNotNull("アーカイブできる", result);
+        assertEquals("HEADから2世代以上前の変更だけ移される", 4, result.files());
+        assertEquals("セグメントは1つ", 1, result.segments());
+        assertEquals("データベースの内容は空になる", 4, count("SELECT COUNT(*) FROM file WHERE content IS NULL"));
+        assertEquals("HEADのツリーにあるファイルは移さない", 0,
+            count("SELECT COUNT(*) FROM file WHERE filename = 'b.txt' AND content IS NULL"));
+
+        for (int i = 1; i <= 6; i++) {
+            assertEquals("どのコミットの内容も読める", "版 " + i + " archived text", commitManager.getFileContent(i, "a.txt"));
+        }
+        byte[] expected = "版 1 archived text".getBytes(StandardCharsets.UTF_8);
+        assertEquals("バイト長", expected.length, commitManager.getContentLength(1, "a.txt"));
+        assertArrayEquals("範囲指定の読み込み", Arrays.copyOfRange(expected, 2, 9),
+            commitManager.readContentRange(1, "a.txt", 2, 7));
+        assertArrayEquals("末尾を超える範囲", Arrays.copyOfRange(expected, expected.length - 4, expected.length),
+            commitManager.readContentRange(1, "a.txt", expected.length - 4, 100));
+
+        assertEquals("2回目は何も移さない", 0, archiveStore.archive(new ArchiveStore.ArchivePolicy(0, 2)).files());
+        ArchiveStore.ArchiveResult totals = archiveStore.getTotals();
+        assertEquals("合計のfile行数", 4, totals.files());
+        assertEquals("合計のセグメント数", 1, totals.segments());
+    }
+
+    @Test
+    public void testArchiveByAge() throws SQLException {
+        createHistory();
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE git_commit SET created_at = datetime('now', '-30 days') WHERE id <= 2");
+        }
+
+        assertEquals("作成から7日を超えたコミットだけ移される（HEADのツリーにあるb.txtを除く）", 2,
+            archiveStore.archive(new ArchiveStore.ArchivePolicy(7, 0)).files());
+        assertEquals("条件がない場合は何もしない", 0,
+            archiveStore.archive(new ArchiveStore.ArchivePolicy(0, 0)).files());
+        assertEquals("内容が読める", "版 2 archived text", commitManager.getFileContent(2, "a.txt"));
+    }
+
+    @Test
+    public void testSearchAndExportReadArchivedContent() throws IOException {
+        createHistory();
+        archiveStore.archive(new ArchiveStore.ArchivePolicy(0, 2));
+
+        SearchIndex.SearchHit hit = new SearchIndex().search(1, "版 1", 10, 0).hits().stream()
+            .filter(h -> h.fileId() != null).findFirst().orElseThrow();
+        assertEquals("抜粋はアーカイブから読む", "版 1 archived text", hit.snippet());
+
+        BundleManager bundleManager = new BundleManager();
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        bundleManager.export(1, bundle, true);
+        int imported = bundleManager.importBundle(new ByteArrayInputStream(bundle.toByteArray()), 1, null).repositoryId();
+        assertEquals("インポートしたリポジトリ", 2, imported);
+        assertEquals("アーカイブ済みの内容も書き出される", "版 1 archived text", commitManager.getFileContent(7, "a.txt"));
+    }
+
+    @Test
+    public void testGarbageCollectionRemovesEmptySegments() throws SQLException {
+        dbManager.createBranch("topic", 1);
+        commit(1, "main", Map.of("m.txt", "main"));
+        commit(2, "topic 1", Map.of("t.txt", "one"));
+        commit(2, "topic 2", Map.of("t.txt", "two"));
+        commit(2, "topic 3", Map.of("t.txt", "three"));
+        assertEquals("topicの古い変更を移す", 2, archiveStore.archive(new ArchiveStore.ArchivePolicy(0, 1)).files());
+        File segment = new File("database/archive/segment-1.seg");
+        assertTrue("セグメントファイルが作られる", segment.exists());
+
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM branch WHERE id = 2");
+        }
+        assertEquals("到達できないコミットを削除", 3, GarbageCollector.getInstance().run().deletedCommits());
+        assertEquals("位置情報も削除される", 0, count("SELECT COUNT(*) FROM file_archive"));
+        assertEquals("セグメントも削除される", 0, count("SELECT COUNT(*) FROM archive_segment"));
+        assertFalse("セグメントファイルも削除される", segment.exists());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.File;
+import java.util.*;
+
+/**
+ * BlameManagerのテストクラス
+ */
+public class BlameManagerTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private BlameManager blameManager;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        blameManager = new BlameManager();
+
+        dbManager.createUser("alice");
+        dbManager.createUser("bob");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("feature", 1);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    private void commit(int branchId, int authorId, Map<String, String> files) {
+        assertTrue("コミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(branchId, "commit", authorId, files)));
+    }
+
+    private void commit(int branchId, int authorId, String content) {
+        commit(branchId, authorId, Map.of(CommitManager.DEFAULT_FILENAME, content));
+    }
+
+    /**
+     * 行ごとの最終変更コミットIDを取得
+     */
+    private List<Integer> lineCommits(int branchId, String filename) {
+        List<Integer> commits = new ArrayList<>();
+        for (BlameManager.BlameLine line : blameManager.blame(branchId, filename).lines()) {
+            commits.add(line.commitId());
+        }
+        return commits;
+    }
+
+    @Test
+    public void testLinesKeepTheirLastCommit() {
+        commit(1, 1, "a\nb\nc");
+        commit(1, 2, "a\nB\nc\nd");
+        commit(1, 1, Map.of("other.txt", "x"));
+
+        BlameManager.BlameResult result = blameManager.blame(1, CommitManager.DEFAULT_FILENAME);
+        assertEquals("HEADのコミット", 3, result.commitId());
+        assertEquals("変更した行だけが新しいコミットになる", List.of(1, 2, 1, 2),
+            lineCommits(1, CommitManager.DEFAULT_FILENAME));
+
+        BlameManager.BlameLine line = result.lines().get(1);
+        assertEquals("行番号", 2, line.line());
+        assertEquals("行の内容", "B", line.text());
+        assertEquals("作成者", "bob", line.author());
+        assertEquals("作成者ID", 2, line.authorId());
+        assertNotNull("作成日時", line.createdAt());
+    }
+
+    @Test
+    public void testIncrementalUpdateUsesCache() {
+        commit(1, 1, "a\nb");
+        for (int i = 0; i < 20; i++) {
+            commit(1, 1, "a\nb\n" + i);
+        }
+        assertEquals("最初の計算", List.of(1, 1, 21), lineCommits(1, CommitManager.DEFAULT_FILENAME));
+
+        long hits = BlameManager.getCacheStats().hits();
+        commit(1, 2, "z\nb\n19");
+        assertEquals("追加したコミットの差分だけ反映される", List.of(22, 1, 21),
+            lineCommits(1, CommitManager.DEFAULT_FILENAME));
+        assertEquals("直前のHEADの結果を使う", hits + 1, BlameManager.getCacheStats().hits());
+    }
+
+    @Test
+    public void testMergeFollowsFirstParent() {
+        commit(1, 1, "a\nb");
+        commit(2, 2, "feature");
+        new MergeManager().performForceMerge(1, 2, "a\nb\nmerged");
+
+        List<Integer> commits = lineCommits(1, CommitManager.DEFAULT_FILENAME);
+        assertEquals("第1親にあった行は元のコミット", List.of(1, 1), commits.subList(0, 2));
+        assertEquals("取り込んだ行はマージコミット", 3, (int) commits.get(2));
+    }
+
+    @Test
+    public void testMissingAndRecreatedFile() {
+        assertNull("コミットがないブランチ", blameManager.blame(1, CommitManager.DEFAULT_FILENAME));
+        commit(1, 1, Map.of("a.txt", "one\ntwo"));
+        assertNull("存在しないファイル", blameManager.blame(1, "missing.txt"));
+
+        Map<String, String> delete = new HashMap<>();
+        delete.put("a.txt", null);
+        commit(1, 1, delete);
+        assertNull("削除したファイル", blameManager.blame(1, "a.txt"));
+
+        commit(1, 2, Map.of("a.txt", "one\ntwo"));
+        assertEquals("作り直したファイルは作り直したコミットから", List.of(3, 3), lineCommits(1, "a.txt"));
+    }
+}
\ No newline at end of file
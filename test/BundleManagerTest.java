@@ -0,0 +1,231 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * BundleManagerのテストクラス
+ */
+public class BundleManagerTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private MergeManager mergeManager;
+    private BundleManager bundleManager;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        mergeManager = new MergeManager();
+        bundleManager = new BundleManager();
+
+        dbManager.createUser("alice");
+        dbManager.createUser("bob");
+        dbManager.createRepository("project", 1);
+        dbManager.createRepository("other", 2);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("feature", 1);
+        dbManager.createBranch("main", 2);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    /**
+     * 複数ファイル・マージ・削除を含む履歴を作成（別リポジトリのコミットを間に挟む）
+     */
+    private void createHistory(int mainCommits) {
+        Map<String, String> initial = new LinkedHashMap<>();
+        initial.put("a.txt", "a1");
+        initial.put("b.txt", "b1");
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Initial", 1, initial));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(3, "Other repo", 2, "other"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature 日本語", 2, "feature"));
+        for (int i = 2; i <= mainCommits; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main " + i, 1, Map.of("a.txt", "a" + i)));
+        }
+        mergeManager.performForceMerge(1, 2, "merged");
+
+        Map<String, String> delete = new HashMap<>();
+        delete.put("b.txt", null);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Delete b", 1, delete));
+    }
+
+    /**
+     * ブランチのファイル一覧を「ファイル名 → 内容」に変換
+     */
+    private Map<String, Object> files(int branchId) {
+        Map<String, Object> files = new TreeMap<>();
+        for (Map<String, Object> file : commitManager.getFilesByBranch(branchId)) {
+            files.put((String) file.get("filename"), file.get("text"));
+        }
+        return files;
+    }
+
+    /**
+     * ブランチの履歴のメッセージを新しい順に取得
+     */
+    private List<String> log(int branchId) throws IOException {
+        List<String> messages = new ArrayList<>();
+        commitManager.walkLog(commitManager.getBranchHeadCommitId(branchId), 10000, false,
+            commit -> messages.add(commit.message()));
+        return messages;
+    }
+
+    /**
+     * リポジトリのブランチを「名前 → ブランチID」で取得
+     */
+    private Map<String, Integer> branches(int repositoryId) {
+        Map<String, Integer> branches = new HashMap<>();
+        for (Map<String, Object> branch : dbManager.getBranches(repositoryId)) {
+            branches.put((String) branch.get("name"), (Integer) branch.get("id"));
+        }
+        return branches;
+    }
+
+    private byte[] export(int repositoryId, boolean compress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bundleManager.export(repositoryId, out, compress);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testExportImportRoundTrip() throws IOException {
+        createHistory(5);
+        byte[] bundle = export(1, true);
+
+        BundleManager.ImportResult result = bundleManager.importBundle(new ByteArrayInputStream(bundle), 2, null);
+        assertEquals("新しいリポジトリが作成される", 3, result.repositoryId());
+        assertEquals("コミット数", 8, result.commits());
+        assertEquals("ブランチ数", 2, result.branches());
+
+        Map<String, Integer> imported = branches(result.repositoryId());
+        for (String name : List.of("main", "feature")) {
+            int original = branches(1).get(name);
+            assertEquals(name + " のファイルが一致する", files(original), files(imported.get(name)));
+            assertEquals(name + " の履歴が一致する", log(original), log(imported.get(name)));
+        }
+        assertFalse("削除したファイルは含まれない", files(imported.get("main")).containsKey("b.txt"));
+        assertEquals("別リポジトリのコミットは含まれない", 8, log(imported.get("main")).size());
+
+        // コミットグラフのインデックスも作り直されている
+        int head = commitManager.getBranchHeadCommitId(imported.get("main"));
+        int featureHead = commitManager.getBranchHeadCommitId(imported.get("feature"));
+        CommitGraph.Ancestry ancestry = new CommitGraph().getAncestry(featureHead, head);
+        assertTrue("マージ済みのブランチは祖先になる", ancestry.aAncestorOfB());
+
+        // インポート後もIDの採番が重ならずにコミットできる
+        assertTrue("インポートしたブランチにコミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(imported.get("main"), "After import", 1, "after")));
+        assertTrue("元のリポジトリにもコミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(1, "Original", 1, "original")));
+        assertEquals("インポートしたリポジトリは独立している", "after",
+            files(imported.get("main")).get(CommitManager.DEFAULT_FILENAME));
+    }
+
+    @Test
+    public void testUncompressedBundleAcrossPages() throws IOException {
+        // ページ境界をまたぐ履歴と非圧縮のバンドル
+        createHistory(520);
+        byte[] bundle = export(1, false);
+        assertFalse("非圧縮のバンドルはgzipではない", (bundle[0] & 0xff) == 0x1f && (bundle[1] & 0xff) == 0x8b);
+
+        BundleManager.ImportResult result = bundleManager.importBundle(new ByteArrayInputStream(bundle), 1, "copy");
+        Map<String, Integer> imported = branches(result.repositoryId());
+        assertEquals("ファイルが一致する", files(1), files(imported.get("main")));
+        assertEquals("履歴が一致する", log(1), log(imported.get("main")));
+        assertEquals("名前を指定できる", "copy", dbManager.getRepositories(1).get(1).get("name"));
+    }
+
+    @Test
+    public void testExportStreamsAfterReleasingLock() throws IOException {
+        createHistory(3);
+        java.util.concurrent.locks.Lock lock = LockManager.getInstance().lockRepository(1);
+        lock.unlock();
+        List<Boolean> lockedDuringWrite = new ArrayList<>();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                lockedDuringWrite.add(((java.util.concurrent.locks.ReentrantLock) lock).isLocked());
+                received.write(b, off, len);
+            }
+        };
+        bundleManager.export(1, out, true);
+
+        assertFalse("出力先に書き込まれる", lockedDuringWrite.isEmpty());
+        assertFalse("出力先への転送中はロックを保持しない", lockedDuringWrite.contains(true));
+        BundleManager.ImportResult result = bundleManager.importBundle(
+            new ByteArrayInputStream(received.toByteArray()), 1, "copy");
+        assertEquals("転送したバンドルを読み込める", log(1), log(branches(result.repositoryId()).get("main")));
+    }
+
+    @Test
+    public void testMergeWithManyParentsRoundTrip() throws IOException, java.sql.SQLException {
+        // 256以上の親を持つオクトパスマージも親の数を切り詰めずに書き出す
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Initial", 1, "base"));
+        List<Integer> parents = new ArrayList<>(List.of(commitManager.getBranchHeadCommitId(1)));
+        for (int i = 0; i < 300; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature " + i, 1, "f" + i));
+            parents.add(commitManager.getBranchHeadCommitId(2));
+        }
+        assertTrue("マージコミットを作成できる", commitManager.executeCommitCommand(commitManager.new CreateMergeCommitCommand(
+            1, parents, "merged", Map.of(1, parents.get(0)))));
+
+        BundleManager.ImportResult result = bundleManager.importBundle(new ByteArrayInputStream(export(1, true)), 1, null);
+        int head = commitManager.getBranchHeadCommitId(branches(result.repositoryId()).get("main"));
+        try (java.sql.Connection conn = dbManager.getConnection();
+             java.sql.PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT COUNT(*) FROM commit_parent WHERE commit_id = ?")) {
+            stmt.setInt(1, head);
+            try (java.sql.ResultSet rs = stmt.executeQuery()) {
+                assertEquals("親の数が保たれる", 301, rs.getInt(1));
+            }
+        }
+        assertEquals("履歴が一致する", log(1), log(branches(result.repositoryId()).get("main")));
+    }
+
+    @Test
+    public void testTruncatedBundleIsRolledBack() throws IOException {
+        createHistory(3);
+        byte[] bundle = export(1, false);
+        byte[] truncated = Arrays.copyOf(bundle, bundle.length - 20);
+
+        try {
+            bundleManager.importBundle(new ByteArrayInputStream(truncated), 1, null);
+            fail("不完全なバンドルは読み込めない");
+        } catch (IOException expected) {
+        }
+        assertEquals("リポジトリは作成されない", 2, dbManager.getRepositories(null).size());
+        assertTrue("元のリポジトリは変わらない", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(1, "Still works", 1, "ok")));
+
+        try {
+            bundleManager.importBundle(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }), 1, null);
+            fail("バンドル以外は読み込めない");
+        } catch (IOException expected) {
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.CommitGraph;
+import src.CommitManager;
+import src.DatabaseManager;
+import src.MergeManager;
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * CommitGraphのテストクラス
+ */
+public class CommitGraphTest {
+    private CommitGraph commitGraph;
+    private CommitManager commitManager;
+    private DatabaseManager dbManager;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        commitGraph = new CommitGraph();
+
+        // main: 1 - 3 - 4, feature: 2 - 3 - 5（3 はマージコミット）
+        dbManager.createUser("testuser");
+        dbManager.createRepository("testrepo", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("feature", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main 1", 1, "m1"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature 1", 1, "f1"));
+        new MergeManager().performForceMerge(1, 2, "merged");
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main 2", 1, "m2"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature 2", 1, "f2"));
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    @Test
+    public void testAncestorOfDivergedBranches() {
+        CommitGraph.Ancestry ancestry = commitGraph.getAncestry(4, 5);
+        assertNotNull("判定結果が取得できる", ancestry);
+        assertFalse("分岐したコミットは祖先ではない", ancestry.aAncestorOfB());
+        assertFalse("分岐したコミットは祖先ではない", ancestry.bAncestorOfA());
+        assertEquals("マージベースはマージコミット", 3, ancestry.mergeBase());
+    }
+
+    @Test
+    public void testAncestorThroughMerge() {
+        CommitGraph.Ancestry ancestry = commitGraph.getAncestry(1, 5);
+        assertTrue("マージの2番目の親を経由して祖先になる", ancestry.aAncestorOfB());
+        assertFalse("子孫は祖先ではない", ancestry.bAncestorOfA());
+        assertEquals("祖先関係ならマージベースは祖先自身", 1, ancestry.mergeBase());
+    }
+
+    @Test
+    public void testUnrelatedRoots() {
+        CommitGraph.Ancestry ancestry = commitGraph.getAncestry(1, 2);
+        assertFalse("独立したルートは祖先ではない", ancestry.aAncestorOfB());
+        assertEquals("共通祖先は存在しない", 0, ancestry.mergeBase());
+        assertNull("存在しないコミットはnull", commitGraph.getAncestry(1, 999));
+    }
+
+    @Test
+    public void testLongHistoryKeepsBloomSparse() throws SQLException {
+        // 1000 - ... - 1399 の直線の履歴と、1100 から分岐して 1300 に合流する枝 2000 - ... - 2149
+        Map<Integer, int[]> parents = new LinkedHashMap<>();
+        parents.put(1000, new int[0]);
+        for (int id = 1001; id < 1400; id++)
+            parents.put(id, new int[] { id - 1 });
+        parents.put(2000, new int[] { 1100 });
+        for (int id = 2001; id < 2150; id++)
+            parents.put(id, new int[] { id - 1 });
+        parents.put(1300, new int[] { 1299, 2149 });
+
+        try (Connection conn = dbManager.getConnection()) {
+            for (int id : recordOrder(parents)) {
+                int[] parentIds = parents.get(id);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO commit_parent(commit_id, position, parent_commit_id) VALUES(?, ?, ?)")) {
+                    for (int i = 0; i < parentIds.length; i++) {
+                        stmt.setInt(1, id);
+                        stmt.setInt(2, i);
+                        stmt.setInt(3, parentIds[i]);
+                        stmt.executeUpdate();
+                    }
+                }
+                commitGraph.record(conn, id, parentIds);
+            }
+
+            assertTrue("合流した枝の根元は祖先", commitGraph.isAncestor(conn, 1100, 1399));
+            assertTrue("枝のコミットは合流後の祖先", commitGraph.isAncestor(conn, 2010, 1399));
+            assertTrue("離れた世代の祖先", commitGraph.isAncestor(conn, 1000, 1399));
+            assertFalse("合流前のコミットから枝へは到達しない", commitGraph.isAncestor(conn, 2010, 1299));
+            assertFalse("子孫は祖先ではない", commitGraph.isAncestor(conn, 1399, 1000));
+            assertEquals("マージベース", 1100, commitGraph.findMergeBase(conn, 1250, 2100));
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT ancestor_bloom FROM commit_graph WHERE commit_id = 1399");
+                 ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                int bits = 0;
+                for (byte b : rs.getBytes("ancestor_bloom"))
+                    bits += Integer.bitCount(b & 0xFF);
+                assertTrue("長い履歴でもフィルタのビットは埋まらない: " + bits, bits < 2048 / 4);
+            }
+        }
+    }
+
+    /**
+     * 親を先に記録する順序を計算
+     */
+    private static List<Integer> recordOrder(Map<Integer, int[]> parents) {
+        List<Integer> order = new ArrayList<>();
+        Set<Integer> done = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int id : parents.keySet()) {
+            stack.push(id);
+            while (!stack.isEmpty()) {
+                int current = stack.peek();
+                if (done.contains(current)) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (int parentId : parents.get(current)) {
+                    if (!done.contains(parentId)) {
+                        stack.push(parentId);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(current);
+                    order.add(current);
+                }
+            }
+        }
+        return order;
+    }
+}
\ No newline at end of file
@@ -60,12 +60,12 @@ public class CommitManagerTest {
         assertTrue("コミットコマンドが正常に実行される", result);
 
         // 作成されたコミットを確認
-        List<Map<String, Object>> commits = commitManager.getCommits(1);
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(1);
         assertFalse("コミットリストが空でない", commits.isEmpty());
 
-        Map<String, Object> commit = commits.get(0);
-        assertEquals("コミットメッセージが正しく保存される", "Initial commit", commit.get("message"));
-        assertEquals("作成者IDが正しく保存される", 1, commit.get("author_id"));
+        CommitManager.CommitRecord commit = commits.get(0);
+        assertEquals("コミットメッセージが正しく保存される", "Initial commit", commit.message());
+        assertEquals("作成者IDが正しく保存される", 1, commit.authorId());
     }
 
     @Test
@@ -89,20 +89,20 @@ public class CommitManagerTest {
         assertTrue("マージコミットが正常に作成される", result);
 
         // マージコミットを確認
-        List<Map<String, Object>> commits = commitManager.getCommits(1);
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(1);
 
         // マージコミットを探す
-        Map<String, Object> mergeCommit = null;
-        for (Map<String, Object> commit : commits) {
-            if ("Merge commit".equals(commit.get("message"))) {
+        CommitManager.CommitRecord mergeCommit = null;
+        for (CommitManager.CommitRecord commit : commits) {
+            if ("Merge commit".equals(commit.message())) {
                 mergeCommit = commit;
                 break;
             }
         }
 
         assertNotNull("マージコミットが作成されている", mergeCommit);
-        assertEquals("親コミット1が正しく設定される", 1, mergeCommit.get("parent_commit_id"));
-        assertEquals("親コミット2が正しく設定される", 2, mergeCommit.get("parent_commit_id_2"));
+        assertEquals("親コミット1が正しく設定される", 1, mergeCommit.parentCommitId());
+        assertEquals("親コミット2が正しく設定される", 2, mergeCommit.parentCommitId2());
     }
 
     @Test
@@ -120,12 +120,12 @@ public class CommitManagerTest {
         commitManager.executeCommitCommand(commit3);
 
         // コミット一覧取得
-        List<Map<String, Object>> commits = commitManager.getCommits(1);
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(1);
         assertEquals("作成したコミット数と一致する", 3, commits.size());
 
         // 降順でソートされていることを確認（最新が最初）
-        assertEquals("最新のコミットが最初", "Third commit", commits.get(0).get("message"));
-        assertEquals("最初のコミットが最後", "First commit", commits.get(2).get("message"));
+        assertEquals("最新のコミットが最初", "Third commit", commits.get(0).message());
+        assertEquals("最初のコミットが最後", "First commit", commits.get(2).message());
     }
 
     @Test
@@ -171,4 +171,151 @@ public class CommitManagerTest {
         Map<String, Object> file = files.get(0);
         assertEquals("最新のコミットの内容が取得される", "Version 2", file.get("text"));
     }
+
+    @Test
+    public void testReadContentRange() {
+        // 範囲指定でのファイル内容取得（UTF-8バイト単位）
+        CommitManager.CreateCommitCommand command = commitManager.new CreateCommitCommand(
+                1, "Test commit", 1, "abcあいう");
+        commitManager.executeCommitCommand(command);
+
+        assertEquals("バイト長が取得される", 12, commitManager.getContentLength(1, "main.txt"));
+        assertArrayEquals("先頭から取得できる", "abc".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                commitManager.readContentRange(1, "main.txt", 0, 3));
+        assertArrayEquals("途中から取得できる", "い".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                commitManager.readContentRange(1, "main.txt", 6, 3));
+        assertEquals("存在しないコミットは-1", -1, commitManager.getContentLength(999, "main.txt"));
+        assertNull("存在しないコミットはnull", commitManager.readContentRange(999, "main.txt", 0, 1));
+    }
+
+    @Test
+    public void testMultiFileCommit() {
+        // 複数ファイルのコミットと未変更ファイルの共有
+        Map<String, String> first = new java.util.LinkedHashMap<>();
+        first.put("main.txt", "Main");
+        first.put("a.txt", "A");
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "First", 1, first));
+
+        Map<String, String> second = new java.util.LinkedHashMap<>();
+        second.put("b.txt", "B");
+        second.put("a.txt", null);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Second", 1, second));
+
+        List<Map<String, Object>> files = commitManager.getFilesByBranch(1);
+        assertEquals("削除と追加が反映される", 2, files.size());
+        assertEquals("ファイル名順で返る", "b.txt", files.get(0).get("filename"));
+        assertEquals("追加ファイルの内容", "B", files.get(0).get("text"));
+        assertEquals("未変更ファイルの内容", "Main", files.get(1).get("text"));
+        assertEquals("未変更ファイルは親コミットの行を共有する", 1, files.get(1).get("file_id"));
+
+        assertEquals("過去のコミットの内容が取得できる", "A", commitManager.getFileContent(1, "a.txt"));
+        assertNull("削除されたファイルはnull", commitManager.getFileContent(2, "a.txt"));
+    }
+
+    @Test
+    public void testLongHistoryTreeResolution() {
+        // 差分ツリーの連鎖が畳み込まれても内容が正しく解決される
+        Map<String, String> initial = new java.util.LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            initial.put("file" + i + ".txt", "v0");
+        }
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Initial", 1, initial));
+
+        for (int n = 1; n <= 80; n++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+                    1, "Commit " + n, 1, Map.of("file" + (n % 3) + ".txt", "v" + n)));
+        }
+
+        List<Map<String, Object>> files = commitManager.getFilesByBranch(1);
+        assertEquals("全ファイルが解決される", 10, files.size());
+        assertEquals("file0 は最後の更新", "v78", commitManager.getFileContent(81, "file0.txt"));
+        assertEquals("file1 は最後の更新", "v79", commitManager.getFileContent(81, "file1.txt"));
+        assertEquals("file2 は最後の更新", "v80", commitManager.getFileContent(81, "file2.txt"));
+        assertEquals("未変更ファイルは初期内容", "v0", commitManager.getFileContent(81, "file9.txt"));
+        assertEquals("途中のコミットも解決できる", "v39", commitManager.getFileContent(40, "file0.txt"));
+    }
+
+    @Test
+    public void testGetCommitsPagination() {
+        // キーセット方式のページングと作成者での絞り込み
+        dbManager.createUser("otheruser");
+        for (int i = 1; i <= 5; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+                    1, "Commit " + i, i % 2 == 0 ? 2 : 1, "Content " + i));
+        }
+
+        List<CommitManager.CommitRecord> page1 = commitManager.getCommits(1, null, null, null, null, 2);
+        assertEquals("1ページ目の件数", 2, page1.size());
+        assertEquals("最新から返る", 5, page1.get(0).id());
+
+        List<CommitManager.CommitRecord> page2 = commitManager.getCommits(1, null, null, null, page1.get(1).id(), 2);
+        assertEquals("2ページ目の件数", 2, page2.size());
+        assertEquals("カーソルの続きから返る", 3, page2.get(0).id());
+
+        List<CommitManager.CommitRecord> byAuthor = commitManager.getCommits(1, 2, null, null, null, 10);
+        assertEquals("作成者で絞り込まれる", 2, byAuthor.size());
+        for (CommitManager.CommitRecord commit : byAuthor) {
+            assertEquals("作成者が一致する", 2, commit.authorId());
+        }
+
+        assertTrue("未来の日付以降は空", commitManager.getCommits(1, null, "9999-01-01", null, null, 10).isEmpty());
+    }
+
+    @Test
+    public void testWalkLog() throws java.io.IOException {
+        // 最初の親のみの走査と全祖先の走査
+        dbManager.createBranch("feature", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main 1", 1, "m1"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main 2", 1, "m2"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature 1", 1, "f1"));
+        commitManager.executeCommitCommand(commitManager.new CreateMergeCommitCommand(1, 2, 3, "merged"));
+
+        List<Integer> firstParent = new java.util.ArrayList<>();
+        commitManager.walkLog(4, 10, true, commit -> firstParent.add(commit.id()));
+        assertEquals("最初の親のみをたどる", List.of(4, 2, 1), firstParent);
+
+        List<Integer> all = new java.util.ArrayList<>();
+        commitManager.walkLog(4, 10, false, commit -> all.add(commit.id()));
+        assertEquals("全祖先を新しい順にたどる", List.of(4, 3, 2, 1), all);
+
+        List<Integer> limited = new java.util.ArrayList<>();
+        commitManager.walkLog(4, 2, false, commit -> limited.add(commit.id()));
+        assertEquals("件数が制限される", List.of(4, 3), limited);
+
+        assertEquals("HEADが取得できる", Integer.valueOf(2), commitManager.getBranchHeadCommitId(1));
+        assertNull("存在しないブランチはnull", commitManager.getBranchHeadCommitId(999));
+    }
+
+    @Test
+    public void testWalkLogAcrossBatches() throws java.io.IOException {
+        // バッチの境界をまたいでも、マージした側の祖先を漏らさず新しい順にたどる
+        dbManager.createBranch("feature", 1);
+        for (int i = 0; i < 20; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature " + i, 1, "f" + i));
+        }
+        for (int i = 0; i < 300; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main " + i, 1, "m" + i));
+        }
+        int mainHead = commitManager.getBranchHeadCommitId(1);
+        assertTrue("マージコミットを作成できる", commitManager.executeCommitCommand(
+            commitManager.new CreateMergeCommitCommand(1, mainHead, 20, "merged")));
+        int head = mainHead + 1;
+
+        List<Integer> all = new java.util.ArrayList<>();
+        commitManager.walkLog(head, 10000, false, commit -> all.add(commit.id()));
+        List<Integer> expected = new java.util.ArrayList<>();
+        for (int id = head; id >= 1; id--) {
+            expected.add(id);
+        }
+        assertEquals("全祖先を新しい順にたどる", expected, all);
+
+        List<Integer> firstParent = new java.util.ArrayList<>();
+        commitManager.walkLog(head, 10000, true, commit -> firstParent.add(commit.id()));
+        assertEquals("最初の親のみ", 301, firstParent.size());
+        assertFalse("マージした側は含まない", firstParent.contains(20));
+
+        List<Integer> limited = new java.util.ArrayList<>();
+        commitManager.walkLog(head, 270, false, commit -> limited.add(commit.id()));
+        assertEquals("件数の制限はバッチをまたいでも守られる", expected.subList(0, 270), limited);
+    }
 }
\ No newline at end of file
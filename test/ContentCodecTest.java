@@ -0,0 +1,250 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * ContentCodecのテストクラス
+ */
+public class ContentCodecTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+
+        dbManager.createUser("alice");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    private void commit(int branchId, String message, Map<String, String> files) {
+        assertTrue("コミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(branchId, message, 1, files)));
+    }
+
+    /**
+     * 圧縮が効く大きな内容を作成
+     */
+    private static String largeContent(String word) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append(i % 7).append(" ").append(word).append(" 行の内容です\n");
+        }
+        return content.toString();
+    }
+
+    private String encodingOf(String filename) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT content_encoding, typeof(content) AS type FROM file WHERE filename = ?")) {
+            stmt.setString(1, filename);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString("content_encoding") + "/" + rs.getString("type");
+            }
+        }
+    }
+
+    @Test
+    public void testCompress() {
+        assertNull("しきい値未満はそのまま", ContentCodec.compress("short"));
+        assertNull("nullはそのまま", ContentCodec.compress(null));
+        String large = largeContent("alpha");
+        byte[] compressed = ContentCodec.compress(large);
+        assertNotNull("大きな内容は圧縮される", compressed);
+        assertTrue("5分の1以下に縮む", compressed.length * 5 < large.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testLargeContentIsStoredCompressed() throws SQLException {
+        String large = largeContent("alpha");
+        commit(1, "add", Map.of("large.txt", large, "small.txt", "small"));
+
+        assertEquals("大きな内容は圧縮して格納", "deflate/blob", encodingOf("large.txt"));
+        assertEquals("小さな内容はそのまま格納", "null/text", encodingOf("small.txt"));
+        assertEquals("展開して読める", large, commitManager.getFileContent(1, "large.txt"));
+        assertEquals("小さな内容も読める", "small", commitManager.getFileContent(1, "small.txt"));
+
+        byte[] expected = large.getBytes(StandardCharsets.UTF_8);
+        assertEquals("展開後のバイト長", expected.length, commitManager.getContentLength(1, "large.txt"));
+        assertArrayEquals("展開後の範囲", Arrays.copyOfRange(expected, 100, 164),
+            commitManager.readContentRange(1, "large.txt", 100, 64));
+        assertEquals("ブランチのファイル一覧", large, commitManager.getFilesByBranch(1).get(0).get("text"));
+    }
+
+    @Test
+    public void testSearchExportAndArchiveDecompress() throws IOException {
+        String large = largeContent("needle");
+        commit(1, "add", Map.of("large.txt", large));
+        commit(1, "change", Map.of("large.txt", largeContent("other")));
+
+        SearchIndex.SearchHit hit = new SearchIndex().search(1, "needle", 10, 0).hits().get(0);
+        assertTrue("抜粋は展開した内容から作る", hit.snippet().contains("needle 行の内容です"));
+
+        BundleManager bundleManager = new BundleManager();
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        bundleManager.export(1, bundle, true);
+        bundleManager.importBundle(new ByteArrayInputStream(bundle.toByteArray()), 1, null);
+        assertEquals("インポートした内容", large, commitManager.getFileContent(3, "large.txt"));
+
+        assertEquals("圧縮された古い内容も（インポートしたリポジトリの分と合わせて）アーカイブできる", 2,
+            ArchiveStore.getInstance().archive(new ArchiveStore.ArchivePolicy(0, 1)).files());
+        assertEquals("アーカイブから読める", large, commitManager.getFileContent(1, "large.txt"));
+    }
+
+    @Test
+    public void testReadPrefix() throws SQLException {
+        String large = largeContent("alpha");
+        commit(1, "add", Map.of("large.txt", large));
+        commit(1, "add small", Map.of("small.txt", "small"));
+        commit(1, "change", Map.of("large.txt", largeContent("beta")));
+        try (Connection conn = dbManager.getConnection()) {
+            assertEquals("圧縮された内容の先頭", large.substring(0, 100), ContentCodec.readPrefix(conn, 1, 100));
+            assertEquals("そのままの内容", "small", ContentCodec.readPrefix(conn, 2, 100));
+            assertEquals("短い場合は全体", "sm", ContentCodec.readPrefix(conn, 2, 2));
+            assertNull("存在しないfile行", ContentCodec.readPrefix(conn, 99, 100));
+        }
+        assertEquals("HEADにない内容をアーカイブ", 1,
+            ArchiveStore.getInstance().archive(new ArchiveStore.ArchivePolicy(0, 1)).files());
+        try (Connection conn = dbManager.getConnection()) {
+            assertEquals("アーカイブされた内容の先頭", large.substring(0, 5000), ContentCodec.readPrefix(conn, 1, 5000));
+        }
+    }
+
+    @Test
+    public void testContentSizeIsStoredAndRangeIsStreamed() throws IOException, SQLException {
+        String large = largeContent("alpha");
+        commit(1, "add", Map.of("large.txt", large));
+        commit(1, "add small", Map.of("small.txt", "小さな内容"));
+        commit(1, "change", Map.of("large.txt", largeContent("beta")));
+        byte[] expected = large.getBytes(StandardCharsets.UTF_8);
+        byte[] small = "小さな内容".getBytes(StandardCharsets.UTF_8);
+
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT size FROM file WHERE id = 1")) {
+            assertEquals("書き込み時にバイト長を記録", expected.length, rs.getLong("size"));
+        }
+        assertEquals("圧縮した内容のバイト長", expected.length, commitManager.getContentLength(1, "large.txt"));
+        assertEquals("そのままの内容のバイト長", small.length, commitManager.getContentLength(2, "small.txt"));
+        assertArrayEquals("そのままの内容の範囲", Arrays.copyOfRange(small, 3, 9),
+            commitManager.readContentRange(2, "small.txt", 3, 6));
+        try (InputStream in = commitManager.openContentRange(1, "large.txt", expected.length - 10, 100)) {
+            assertArrayEquals("末尾を越える範囲は末尾まで",
+                Arrays.copyOfRange(expected, expected.length - 10, expected.length), in.readAllBytes());
+        }
+        assertNull("存在しないファイル", commitManager.openContentRange(1, "missing.txt", 0, 10));
+
+        assertEquals("HEADにない内容をアーカイブ", 1,
+            ArchiveStore.getInstance().archive(new ArchiveStore.ArchivePolicy(0, 1)).files());
+        assertEquals("アーカイブした内容のバイト長", expected.length, commitManager.getContentLength(1, "large.txt"));
+        assertArrayEquals("アーカイブした内容の範囲", Arrays.copyOfRange(expected, 4000, 4100),
+            commitManager.readContentRange(1, "large.txt", 4000, 100));
+
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE file SET size = NULL");
+        }
+        assertEquals("バイト長を記録する前のアーカイブ", expected.length, commitManager.getContentLength(1, "large.txt"));
+        assertEquals("バイト長を記録する前の内容", small.length, commitManager.getContentLength(2, "small.txt"));
+        assertEquals("バイト長を記録する前の圧縮した内容", largeContent("beta").getBytes(StandardCharsets.UTF_8).length,
+            commitManager.getContentLength(3, "large.txt"));
+    }
+
+    @Test
+    public void testEnsureSchemaAddsEncodingColumn() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE file");
+            stmt.executeUpdate("CREATE TABLE file (id INTEGER PRIMARY KEY AUTOINCREMENT, commit_id INTEGER, "
+                + "filename TEXT, content TEXT, content_hash TEXT)");
+        }
+        assertTrue("スキーマを更新できる", dbManager.ensureSchema());
+        assertTrue("2回目も成功する", dbManager.ensureSchema());
+
+        String large = largeContent("alpha");
+        commit(1, "add", Map.of("large.txt", large));
+        assertEquals("追加した列に方式が記録される", "deflate/blob", encodingOf("large.txt"));
+        assertEquals("読める", large, commitManager.getFileContent(1, "large.txt"));
+    }
+
+    private static ContentCodec.StreamedContent encode(String content, long maxBytes) throws IOException {
+        return ContentCodec.encode(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), maxBytes, 100);
+    }
+
+    @Test
+    public void testEncodeStream() throws IOException {
+        ContentCodec.StreamedContent small = encode("小さな内容", 1024);
+        assertEquals("小さな内容はそのまま", "小さな内容", small.text());
+        assertNull("小さな内容は圧縮しない", small.compressed());
+        assertEquals("ハッシュは文字列から計算した値と同じ", ContentHash.of("小さな内容"), small.hash());
+
+        // 読み込み単位（64KB）をまたぐ大きさで、複数バイト文字が境界で分割される場合も扱える
+        String large = largeContent("alpha").repeat(20);
+        ContentCodec.StreamedContent encoded = encode(large, 1 << 20);
+        assertNull("大きな内容はそのまま保持しない", encoded.text());
+        assertNotNull("大きな内容は圧縮する", encoded.compressed());
+        assertEquals("ハッシュは文字列から計算した値と同じ", ContentHash.of(large), encoded.hash());
+        assertEquals("UTF-8のバイト数", large.getBytes(StandardCharsets.UTF_8).length, encoded.size());
+        assertEquals("検索用は先頭部分のみ", large.substring(0, 100), encoded.indexText());
+    }
+
+    @Test
+    public void testEncodeStreamRejects() throws IOException {
+        try {
+            encode(largeContent("alpha"), 1000);
+            fail("上限を超えた内容は拒否される");
+        } catch (ContentCodec.ContentTooLargeException e) {
+            // 期待どおり
+        }
+        try {
+            ContentCodec.encode(new ByteArrayInputStream(new byte[] { 'a', (byte) 0xE3, (byte) 0x81 }), 1024, 100);
+            fail("途中で終わるUTF-8は拒否される");
+        } catch (java.nio.charset.CharacterCodingException e) {
+            // 期待どおり
+        }
+    }
+
+    @Test
+    public void testUploadFileCommand() throws IOException, SQLException {
+        commit(1, "add", Map.of("main.txt", "base"));
+        String large = largeContent("needle").repeat(20);
+        assertTrue("アップロードした内容をコミットできる", commitManager.executeCommitCommand(
+            commitManager.new UploadFileCommand(1, "upload", 1, "large.txt", encode(large, 1 << 20))));
+        assertTrue("小さな内容もコミットできる", commitManager.executeCommitCommand(
+            commitManager.new UploadFileCommand(1, "upload", 1, "small.txt", encode("small", 1 << 20))));
+
+        assertEquals("圧縮して格納", "deflate/blob", encodingOf("large.txt"));
+        assertEquals("そのまま格納", "null/text", encodingOf("small.txt"));
+        assertEquals("展開して読める", large, commitManager.getFileContent(2, "large.txt"));
+        assertEquals("親コミットのファイルを引き継ぐ", "base", commitManager.getFileContent(3, "main.txt"));
+        assertEquals("小さな内容も読める", "small", commitManager.getFileContent(3, "small.txt"));
+        assertEquals("先頭部分で検索できる", 1,
+            new SearchIndex().search(1, "needle", 10, 0).hits().size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * GarbageCollectorのテストクラス
+ */
+public class GarbageCollectorTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private GarbageCollector collector;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        collector = GarbageCollector.getInstance();
+
+        dbManager.createUser("alice");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("topic", 1);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    private void commit(int branchId, String message, Map<String, String> files) {
+        assertTrue("コミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(branchId, message, 1, files)));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    @Test
+    public void testReachableCommitsAreKept() throws SQLException {
+        commit(1, "first", Map.of("a.txt", "one"));
+        commit(1, "second", Map.of("b.txt", "two"));
+        commit(2, "topic", Map.of("c.txt", "three"));
+
+        GarbageCollector.GcResult result = collector.run();
+        assertNotNull("実行できる", result);
+        assertEquals("削除されない", 0, result.deletedCommits());
+        assertEquals("コミットが残る", 3, count("SELECT COUNT(*) FROM git_commit"));
+        assertEquals("ファイルが残る", 3, count("SELECT COUNT(*) FROM file"));
+    }
+
+    @Test
+    public void testUnreachableCommitsAreDeleted() throws SQLException {
+        commit(1, "base", Map.of("a.txt", "one"));
+        for (int i = 0; i < 3; i++) {
+            commit(2, "abandoned " + i, Map.of("topic" + i + ".txt", "discarded content " + i));
+        }
+        commit(1, "main", Map.of("b.txt", "two"));
+        // ブランチを削除してtopicのコミットを到達できなくする
+        execute("DELETE FROM branch WHERE id = 2");
+
+        GarbageCollector.GcResult result = collector.run();
+        assertEquals("到達できないコミットだけ削除される", 3, result.deletedCommits());
+        assertEquals("追加したファイルも削除される", 3, result.deletedFiles());
+        assertEquals("専用のツリーも削除される", 3, result.deletedTrees());
+        assertEquals("残ったコミット", 2, count("SELECT COUNT(*) FROM git_commit"));
+        assertEquals("親の関係も削除される", 0,
+            count("SELECT COUNT(*) FROM commit_parent WHERE commit_id NOT IN (SELECT id FROM git_commit)"));
+        assertEquals("コミットグラフも削除される", 2, count("SELECT COUNT(*) FROM commit_graph"));
+        assertTrue("検索インデックスからも削除される",
+            new SearchIndex().search(1, "discarded", 10, 0).hits().isEmpty());
+        assertEquals("HEADの内容は変わらない", "one",
+            commitManager.getFileContent(5, "a.txt"));
+        assertEquals("HEADの内容は変わらない", "two",
+            commitManager.getFileContent(5, "b.txt"));
+        assertEquals("2回目は何も削除しない", 0, collector.run().deletedCommits());
+        assertEquals("直近の結果", 0, collector.getLastResult().deletedCommits());
+    }
+
+    @Test
+    public void testFilesSharedWithReachableTreesAreRetained() throws SQLException {
+        commit(2, "topic", Map.of("shared.txt", "shared"));
+        // 他のコミットが追加したfile行を到達できるツリーが参照している状態（インポートでの重複排除と同じ）
+        commit(1, "main", Map.of("own.txt", "own"));
+        int sharedFileId = count("SELECT id FROM file WHERE filename = 'shared.txt'");
+        execute("INSERT INTO tree_entry(tree_id, filename, file_id) SELECT tree_id, 'shared.txt', "
+            + sharedFileId + " FROM git_commit WHERE id = 2");
+        execute("DELETE FROM branch WHERE id = 2");
+
+        GarbageCollector.GcResult result = collector.run();
+        assertEquals("削除されない", 0, result.deletedCommits());
+        assertEquals("参照されているため残す", 1, result.retainedCommits());
+        assertEquals("参照されているファイルは読める", "shared", commitManager.getFileContent(2, "shared.txt"));
+    }
+
+    @Test
+    public void testTreesOfRetainedCommitsAreKept() throws SQLException {
+        commit(2, "topic base", Map.of("base.txt", "base"));
+        // 2つ目のコミットのツリーは1つ目のツリーを基底にした差分になる
+        commit(2, "topic", Map.of("shared.txt", "shared"));
+        commit(1, "main", Map.of("own.txt", "own"));
+        int sharedFileId = count("SELECT id FROM file WHERE filename = 'shared.txt'");
+        execute("INSERT INTO tree_entry(tree_id, filename, file_id) SELECT tree_id, 'shared.txt', "
+            + sharedFileId + " FROM git_commit WHERE id = 3");
+        execute("DELETE FROM branch WHERE id = 2");
+
+        GarbageCollector.GcResult result = collector.run();
+        assertEquals("残したコミットの基底ツリーが参照するコミットも残す", 2, result.retainedCommits());
+        assertEquals("削除されない", 0, result.deletedTrees());
+        assertEquals("残したコミットは基底ツリーの内容も読める", "base", commitManager.getFileContent(2, "base.txt"));
+        assertEquals("共有しているファイルも読める", "shared", commitManager.getFileContent(2, "shared.txt"));
+    }
+
+    @Test
+    public void testRepositoryWithoutHeadsIsSkipped() throws SQLException {
+        commit(1, "first", Map.of("a.txt", "one"));
+        // インポート中はブランチが最後に作られる
+        execute("UPDATE branch SET head_commit_id = NULL");
+
+        GarbageCollector.GcResult result = collector.run();
+        assertEquals("対象外", 0, result.repositories());
+        assertEquals("コミットが残る", 1, count("SELECT COUNT(*) FROM git_commit"));
+    }
+}
\ No newline at end of file
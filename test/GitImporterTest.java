@@ -0,0 +1,261 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import src.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * GitImporterのテストクラス（gitコマンドで作成したリポジトリを読み込む）
+ */
+public class GitImporterTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private Path repoDir;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() throws IOException {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        repoDir = Files.createTempDirectory("git-import-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+        try (Stream<Path> paths = Files.walk(repoDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * gitコマンドを実行して標準出力を返す
+     */
+    private String git(String... args) throws IOException {
+        List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=alice", "-c", "user.email=alice@example.com",
+            "-c", "commit.gpgsign=false", "-c", "core.autocrlf=false"));
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(repoDir.toFile());
+        builder.environment().put("GIT_AUTHOR_DATE", "2024-01-02T03:04:05+09:00");
+        builder.environment().put("GIT_COMMITTER_DATE", "2024-01-02T03:04:05+09:00");
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            if (process.waitFor() != 0)
+                throw new IOException("git " + String.join(" ", args) + " failed");
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        return output;
+    }
+
+    /**
+     * gitコマンドが使えるかどうか
+     */
+    private boolean gitAvailable() {
+        try {
+            git("--version");
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = repoDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * メッセージをUTF-8のファイル経由で渡してコミット（引数の文字コードに依存しないように）
+     */
+    private void commit(String message, String... options) throws IOException {
+        Path messageFile = Files.createTempFile("git-import-message", ".txt");
+        try {
+            Files.writeString(messageFile, message, StandardCharsets.UTF_8);
+            List<String> args = new ArrayList<>(List.of("commit", "-q", "-F", messageFile.toString()));
+            args.addAll(List.of(options));
+            git(args.toArray(new String[0]));
+        } finally {
+            Files.delete(messageFile);
+        }
+    }
+
+    /**
+     * 大きめのファイルの1行だけを変えた内容を作成（パックで差分になるように）
+     */
+    private static String bigFile(int changedLine, String value) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append(i == changedLine ? value : "line " + i + " of the application source").append('\n');
+        }
+        return content.toString();
+    }
+
+    /**
+     * ブランチ・マージ・削除・サブディレクトリを含む履歴を作成
+     */
+    private void createHistory() throws IOException {
+        git("init", "-q");
+        git("symbolic-ref", "HEAD", "refs/heads/main");
+        write("README.md", "# sample\n");
+        write("src/app.txt", bigFile(-1, ""));
+        git("add", "-A");
+        commit("Initial");
+
+        git("checkout", "-q", "-b", "feature");
+        write("src/app.txt", bigFile(5, "feature change"));
+        write("docs/guide.md", "日本語のガイド\n");
+        git("add", "-A");
+        commit("Feature 日本語", "--author", "bob <bob@example.com>");
+
+        git("checkout", "-q", "main");
+        write("src/app.txt", bigFile(150, "main change"));
+        Files.delete(repoDir.resolve("README.md"));
+        git("add", "-A");
+        commit("Main change\n\nbody text");
+        git("merge", "-q", "--no-ff", "feature", "-m", "Merge feature");
+
+        write("dir/sub/deep.txt", "deep\n");
+        git("add", "-A");
+        commit("Deep file");
+    }
+
+    /**
+     * gitのブランチのファイル一覧を「ファイル名 → 内容」で取得
+     */
+    private Map<String, Object> gitFiles(String branch) throws IOException {
+        Map<String, Object> files = new TreeMap<>();
+        for (String path : git("ls-tree", "-r", "--name-only", branch).split("\n")) {
+            if (!path.isEmpty())
+                files.put(path, git("show", branch + ":" + path));
+        }
+        return files;
+    }
+
+    /**
+     * インポートしたブランチのファイル一覧を「ファイル名 → 内容」で取得
+     */
+    private Map<String, Object> importedFiles(int branchId) {
+        Map<String, Object> files = new TreeMap<>();
+        for (Map<String, Object> file : commitManager.getFilesByBranch(branchId)) {
+            files.put((String) file.get("filename"), file.get("text"));
+        }
+        return files;
+    }
+
+    /**
+     * インポートしたブランチの履歴のメッセージを取得
+     */
+    private Set<String> importedLog(int branchId) throws IOException {
+        Set<String> messages = new TreeSet<>();
+        commitManager.walkLog(commitManager.getBranchHeadCommitId(branchId), 1000, false,
+            commit -> messages.add(commit.message()));
+        return messages;
+    }
+
+    /**
+     * インポート結果をgitのブランチと比較
+     */
+    private void assertImported(GitImporter.ImportStats stats) throws IOException {
+        assertEquals("コミット数", 5, stats.commits());
+        assertEquals("ブランチ数", 2, stats.branches());
+        assertTrue("展開したバイト数が記録される", stats.inflatedBytes() > 0);
+
+        Map<String, Integer> branches = new HashMap<>();
+        for (Map<String, Object> branch : dbManager.getBranches(stats.repositoryId())) {
+            branches.put((String) branch.get("name"), (Integer) branch.get("id"));
+        }
+        assertEquals("ブランチ名", Set.of("main", "feature"), branches.keySet());
+        for (String name : List.of("main", "feature")) {
+            assertEquals(name + " のファイルが一致する", gitFiles(name), importedFiles(branches.get(name)));
+        }
+        assertEquals("マージした履歴をたどれる",
+            Set.of("Initial", "Feature 日本語", "Main change\n\nbody text", "Merge feature", "Deep file"),
+            importedLog(branches.get("main")));
+        assertFalse("削除したファイルは含まれない", importedFiles(branches.get("main")).containsKey("README.md"));
+
+        int featureHead = commitManager.getBranchHeadCommitId(branches.get("feature"));
+        int mainHead = commitManager.getBranchHeadCommitId(branches.get("main"));
+        assertTrue("マージしたブランチは祖先になる", new CommitGraph().getAncestry(featureHead, mainHead).aAncestorOfB());
+    }
+
+    @Test
+    public void testImportLooseObjects() throws IOException {
+        assumeTrue(gitAvailable());
+        createHistory();
+
+        List<int[]> progress = new ArrayList<>();
+        GitImporter.ImportStats stats = new GitImporter(2).importRepository(repoDir, "sample", null,
+            (importedCommits, totalCommits) -> progress.add(new int[] { importedCommits, totalCommits }));
+        assertImported(stats);
+        assertEquals("名前を指定できる", "sample",
+            dbManager.getRepositories(null).get(0).get("name"));
+        assertArrayEquals("最後の進捗は全コミット", new int[] { stats.commits(), stats.commits() },
+            progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testImportPackedObjectsWithDeltas() throws IOException {
+        assumeTrue(gitAvailable());
+        createHistory();
+        git("repack", "-adfq", "--depth=50", "--window=50");
+        git("pack-refs", "--all");
+        git("prune-packed");
+        assertTrue("差分オブジェクトを含むパックになる",
+            git("verify-pack", "-v", Files.list(repoDir.resolve(".git/objects/pack"))
+                .filter(p -> p.toString().endsWith(".idx")).findFirst().orElseThrow().toString())
+                .contains("chain length"));
+
+        assertImported(new GitImporter(4).importRepository(repoDir.resolve(".git"), null, "carol"));
+    }
+
+    @Test
+    public void testNonUtf8FilesAreSkipped() throws IOException {
+        assumeTrue(gitAvailable());
+        git("init", "-q");
+        git("symbolic-ref", "HEAD", "refs/heads/main");
+        write("text.txt", "テキスト\n");
+        write("image.bin", "最初はテキスト\n");
+        git("add", "-A");
+        commit("Initial");
+        Files.write(repoDir.resolve("image.bin"), new byte[] { (byte) 0x89, 'P', 'N', 'G', (byte) 0xff, 0 });
+        Files.write(repoDir.resolve("latin1.txt"), "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+        git("add", "-A");
+        commit("Binary");
+
+        GitImporter.ImportStats stats = new GitImporter(2).importRepository(repoDir, null, null);
+        assertEquals("UTF-8として読めないblobの数", 2, stats.skippedFiles());
+        int branchId = (Integer) dbManager.getBranches(stats.repositoryId()).get(0).get("id");
+        assertEquals("読めない内容のパスは取り込まない（置換文字で壊さない）", Map.of("text.txt", "テキスト\n"),
+            importedFiles(branchId));
+    }
+
+    @Test
+    public void testNotARepository() throws IOException {
+        try {
+            new GitImporter(1).importRepository(repoDir, null, null);
+            fail("gitリポジトリでない場合は例外になる");
+        } catch (IOException expected) {
+        }
+        assertTrue("リポジトリは作成されない", dbManager.getRepositories(null).isEmpty());
+    }
+}
\ No newline at end of file
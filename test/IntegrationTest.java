@@ -5,9 +5,14 @@ import org.junit.Test;
 import org.junit.After;
 import static org.junit.Assert.*;
 import src.*;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 /**
  * 統合テストクラス
@@ -86,16 +91,16 @@ public class IntegrationTest {
         assertTrue("強制マージ成功", mergeResult instanceof MergeResult.Success);
         
         // 10. 結果確認
-        List<Map<String, Object>> commits = commitManager.getCommits(1);
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(1);
         assertTrue("コミット履歴が存在", commits.size() >= 4);
         
         // マージコミットが作成されていることを確認
         boolean mergeCommitFound = false;
-        for (Map<String, Object> commit : commits) {
-            if ("Merge commit".equals(commit.get("message"))) {
+        for (CommitManager.CommitRecord commit : commits) {
+            if ("Merge commit".equals(commit.message())) {
                 mergeCommitFound = true;
-                assertNotNull("親コミット1が設定", commit.get("parent_commit_id"));
-                assertNotNull("親コミット2が設定", commit.get("parent_commit_id_2"));
+                assertTrue("親コミット1が設定", commit.parentCommitId() != 0);
+                assertTrue("親コミット2が設定", commit.parentCommitId2() != 0);
                 break;
             }
         }
@@ -142,13 +147,13 @@ public class IntegrationTest {
         assertEquals("フィーチャー2の内容", "feature2 content", feature2Files.get(0).get("text"));
         
         // 全リポジトリのコミット確認
-        List<Map<String, Object>> allCommits = commitManager.getCommits(1);
+        List<CommitManager.CommitRecord> allCommits = commitManager.getCommits(1);
         assertEquals("3つのコミットが存在", 3, allCommits.size());
         
         // 各開発者のコミット確認
         int dev1Commits = 0, dev2Commits = 0;
-        for (Map<String, Object> commit : allCommits) {
-            int authorId = (Integer) commit.get("author_id");
+        for (CommitManager.CommitRecord commit : allCommits) {
+            int authorId = commit.authorId();
             if (authorId == 1) dev1Commits++;
             if (authorId == 2) dev2Commits++;
         }
@@ -181,7 +186,7 @@ public class IntegrationTest {
         List<Map<String, Object>> users = dbManager.getAllUsers();
         List<Map<String, Object>> repos = dbManager.getRepositories(null);
         List<Map<String, Object>> branches = dbManager.getBranches(null);
-        List<Map<String, Object>> commits = commitManager.getCommits(null);
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(null);
         
         assertEquals("ユーザー数が正しい", 2, users.size());
         assertEquals("リポジトリ数が正しい", 2, repos.size());
@@ -199,9 +204,9 @@ public class IntegrationTest {
             assertTrue("リポジトリが存在する", repoId == 1 || repoId == 2);
         }
         
-        for (Map<String, Object> commit : commits) {
-            int authorId = (Integer) commit.get("author_id");
-            int repoId = (Integer) commit.get("repository_id");
+        for (CommitManager.CommitRecord commit : commits) {
+            int authorId = commit.authorId();
+            int repoId = commit.repositoryId();
             assertTrue("作成者が存在する", authorId == 1 || authorId == 2);
             assertTrue("リポジトリが存在する", repoId == 1 || repoId == 2);
         }
@@ -229,4 +234,194 @@ public class IntegrationTest {
         MergeResult result4 = mergeManager.performStrictMerge(999, 1);
         assertTrue("存在しないブランチでのマージはコンフリクト", result4 instanceof MergeResult.Conflict);
     }
+
+    @Test
+    public void testDiffBetweenCommits() {
+        // コミット間の差分取得
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+            1, "First", 1, "line 1\nline 2\nline 3"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+            1, "Second", 1, "line 1\nline two\nline 3"));
+
+        DiffManager diffManager = new DiffManager();
+        DiffManager.DiffResult result = diffManager.diff(1, 2);
+        assertNotNull("差分が取得できる", result);
+        assertEquals("変更したファイルは1つ", 1, result.files().size());
+        assertEquals("ファイル名が付く", CommitManager.DEFAULT_FILENAME, result.files().get(0).filename());
+        assertEquals("ハンクは1つ", 1, result.files().get(0).hunks().size());
+        assertEquals("変更行が含まれる", List.of(" line 1", "-line 2", "+line two", " line 3"),
+            result.files().get(0).hunks().get(0).lines());
+
+        assertSame("同じコミットの組はキャッシュから返る", result, diffManager.diff(1, 2));
+        assertNull("存在しないコミットはnull", diffManager.diff(1, 999));
+    }
+
+    @Test
+    public void testDiffAcrossFiles() {
+        // main.txt 以外のファイルの追加・変更・削除もファイルごとに返る
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+            1, "First", 1, Map.of("a.txt", "a1\n", "b.txt", "b\n", "c.txt", "same\n")));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+            1, "Second", 1, Map.of("a.txt", "a2\n", "d.txt", "new\n")));
+        Map<String, String> delete = new java.util.HashMap<>();
+        delete.put("b.txt", null);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Third", 1, delete));
+
+        DiffManager diffManager = new DiffManager();
+        DiffManager.DiffResult result = diffManager.diff(1, 2);
+        assertNotNull("main.txt のないコミットも比較できる", result);
+        assertEquals("変更したファイルのみ（ファイル名順）", List.of("a.txt", "d.txt"),
+            result.files().stream().map(DiffManager.FileDiff::filename).toList());
+        assertEquals("追加したファイル", DiffManager.Status.ADDED, result.files().get(1).status());
+        assertEquals("追加した行", List.of("+new"), result.files().get(1).hunks().get(0).lines());
+
+        DiffManager.DiffResult single = diffManager.diff(1, 2, "a.txt");
+        assertEquals("ファイル名を指定できる", 1, single.files().size());
+        assertEquals("指定したファイルの変更", List.of("-a1", "+a2"), single.files().get(0).hunks().get(0).lines());
+        assertTrue("変更のないファイルを指定すると空", diffManager.diff(1, 2, "c.txt").files().isEmpty());
+
+        DiffManager.FileDiff deleted = diffManager.diff(2, 3).files().get(0);
+        assertEquals("削除したファイル", "b.txt", deleted.filename());
+        assertEquals("削除の種別", DiffManager.Status.DELETED, deleted.status());
+
+        assertEquals("unified 形式にファイル名が付く", "--- a/a.txt\n+++ b/a.txt\n@@ -1,1 +1,1 @@\n-a1\n+a2\n",
+            DiffManager.toUnified(single));
+    }
+
+    @Test
+    public void testGraphPayloadIsCachedAndPatched() throws Exception {
+        // 書き込みがなければ同じペイロードを返し、コミット後は新しいコミットが追記される
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "First", 1, "v1"));
+
+        GraphCache graphCache = GraphCache.getInstance();
+        GraphCache.Payload first = graphCache.getPayload(1);
+        assertSame("書き込みがなければキャッシュが返る", first, graphCache.getPayload(1));
+        assertSame("gzip圧縮は最初に読まれたときに作って保持する", first.gzip(), first.gzip());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertArrayEquals("gzipを展開するとJSON", first.json(), in.readAllBytes());
+        }
+        assertArrayEquals("MessagePackも同じ内容",
+            new MessagePackWriter().json(new String(first.json(), StandardCharsets.UTF_8)).toByteArray(), first.msgpack());
+
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Second \"quoted\"", 1, "v2"));
+        String json = new String(graphCache.getPayload(1).json(), StandardCharsets.UTF_8);
+        assertEquals("グラフJSONが正しい",
+            "{\"nodes\":[{\"id\":1,\"label\":\"First\",\"shape\":\"box\",\"lane\":0,\"row\":0,\"x\":0,\"y\":0},"
+                + "{\"id\":2,\"label\":\"Second \\\"quoted\\\"\",\"shape\":\"box\",\"lane\":0,\"row\":1,\"x\":0,\"y\":100},"
+                + "{\"id\":\"branch-1\",\"label\":\"main\",\"shape\":\"ellipse\",\"color\":\"#d73a49\",\"x\":-150,\"y\":100}],"
+                + "\"edges\":[{\"from\":1,\"to\":2},"
+                + "{\"from\":\"branch-1\",\"to\":2,\"color\":\"#d73a49\",\"label\":\"main\"}]}",
+            json);
+    }
+
+    @Test
+    public void testGraphCacheIsWeighted() throws Exception {
+        // グラフはペイロードの大きさで重み付けされ、破棄すると重みが戻る
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "First", 1, "v1"));
+
+        GraphCache graphCache = GraphCache.getInstance();
+        GraphCache.Payload payload = graphCache.getPayload(1);
+        LruCache.CacheStats stats = graphCache.getCacheStats();
+        assertEquals("グラフが1件キャッシュされる", 1, stats.entries());
+        assertTrue("重みにペイロードが含まれる", stats.weight() >= 2L * payload.json().length);
+
+        graphCache.evict(1);
+        assertEquals("破棄すると重みが戻る", 0, graphCache.getCacheStats().weight());
+        assertNotSame("破棄後は読み直す", payload, graphCache.getPayload(1));
+    }
+
+    @Test
+    public void testGraphForUnknownRepositoryIsNotCached() throws Exception {
+        // 存在しないリポジトリIDの読み取りではグラフを作らず、作成後は通常どおり読める
+        GraphCache graphCache = GraphCache.getInstance();
+        GraphCache.Payload empty = graphCache.getPayload(1);
+        assertEquals("空のグラフ", "{\"nodes\":[],\"edges\":[]}", new String(empty.json(), StandardCharsets.UTF_8));
+        assertSame("要約も同じ空のペイロード", empty, graphCache.getSummaryPayload(1, Set.of()));
+
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "First", 1, "v1"));
+        String json = new String(graphCache.getPayload(1).json(), StandardCharsets.UTF_8);
+        assertTrue("作成後のコミットが含まれる", json.contains("\"label\":\"First\""));
+    }
+
+    @Test
+    public void testGraphLaneLayout() throws Exception {
+        // 並行する履歴は別レーンに置かれ、マージで解放されたレーンは再利用される
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("feature", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Base", 1, "base"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature", 1, "feature"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main", 1, "main"));
+        // 途中で一度読み込み、以降のコミットは差分として配置する
+        GraphCache.getInstance().getPayload(1);
+        mergeManager.performForceMerge(1, 2, "merged");
+        dbManager.createBranch("hotfix", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(3, "Hotfix", 1, "hotfix"));
+
+        String json = new String(GraphCache.getInstance().getPayload(1).json(), StandardCharsets.UTF_8);
+        assertTrue("最初のコミットはレーン0", json.contains("\"label\":\"Base\",\"shape\":\"box\",\"lane\":0,\"row\":0"));
+        assertTrue("並行する履歴は新しいレーンに置かれる",
+            json.contains("\"label\":\"Feature\",\"shape\":\"box\",\"lane\":1,\"row\":1,\"x\":150,\"y\":100"));
+        assertTrue("子は最初の親のレーンを引き継ぐ", json.contains("\"label\":\"Main\",\"shape\":\"box\",\"lane\":0,\"row\":2"));
+        assertTrue("マージコミットは最初の親のレーンに置かれる",
+            json.contains("\"label\":\"Merge commit\",\"shape\":\"box\",\"lane\":0,\"row\":3"));
+        assertTrue("マージで解放されたレーンが再利用される",
+            json.contains("\"label\":\"Hotfix\",\"shape\":\"box\",\"lane\":1,\"row\":4"));
+        assertTrue("ブランチはHEADと同じ行の左側に置かれる", json.contains("\"label\":\"main\",\"shape\":\"ellipse\",\"color\":\"#d73a49\",\"x\":-150,\"y\":300"));
+        assertTrue("同じHEADのブランチは重ならない", json.contains("\"label\":\"feature\",\"shape\":\"ellipse\",\"color\":\"#d73a49\",\"x\":-300,\"y\":300"));
+    }
+
+    @Test
+    public void testGraphSummaryCollapsesLinearChains() throws Exception {
+        // ルート・マージ・ブランチの先端以外の直線区間は1つのノードにまとめられる
+        dbManager.createUser("developer");
+        dbManager.createRepository("project", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("feature", 1);
+        for (int i = 1; i <= 4; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main " + i, 1, "v" + i));
+        }
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature", 1, "feature"));
+        GraphCache.getInstance().getSummaryPayload(1, Set.of());
+        mergeManager.performForceMerge(1, 2, "merged");
+        for (int i = 5; i <= 7; i++) {
+            commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main " + i, 1, "v" + i));
+        }
+
+        String json = new String(GraphCache.getInstance().getSummaryPayload(1, Set.of()).json(), StandardCharsets.UTF_8);
+        assertTrue("ルートは展開される", json.contains("{\"id\":1,\"label\":\"Main 1\""));
+        assertTrue("直線区間は要約される", json.contains(
+            "{\"id\":\"chain-2\",\"label\":\"3件のコミット\",\"shape\":\"box\",\"summary\":true,\"count\":3,\"first\":2,\"last\":4}"));
+        assertTrue("マージコミットは展開される", json.contains("{\"id\":6,\"label\":\"Merge commit\""));
+        assertTrue("マージ後の直線区間も要約される", json.contains("\"id\":\"chain-7\",\"label\":\"2件のコミット\""));
+        assertTrue("ブランチの先端は展開される", json.contains("{\"id\":9,\"label\":\"Main 7\""));
+        assertFalse("要約されたコミットは含まれない", json.contains("\"label\":\"Main 3\""));
+        assertTrue("要約ノードをつなぐエッジ", json.contains("{\"from\":1,\"to\":\"chain-2\"}"));
+        assertTrue("要約ノードからマージコミットへのエッジ", json.contains("{\"from\":\"chain-2\",\"to\":6}"));
+        assertTrue("マージされた親へのエッジ", json.contains("{\"from\":5,\"to\":6,\"dashes\":true,\"color\":\"#28a745\"}"));
+        assertTrue("先端へのエッジ", json.contains("{\"from\":\"chain-7\",\"to\":9}"));
+        assertTrue("ブランチはHEADを指す", json.contains("{\"from\":\"branch-2\",\"to\":6,"));
+
+        String expanded = new String(GraphCache.getInstance().getSummaryPayload(1, Set.of(2)).json(), StandardCharsets.UTF_8);
+        assertFalse("指定した要約ノードは展開される", expanded.contains("chain-2"));
+        assertTrue("展開したコミットが含まれる", expanded.contains("{\"from\":3,\"to\":4}"));
+        assertTrue("他の要約ノードはそのまま", expanded.contains("chain-7"));
+    }
 }
\ No newline at end of file
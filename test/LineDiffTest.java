@@ -0,0 +1,101 @@
+package test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import src.LineDiff;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LineDiffのテストクラス
+ */
+public class LineDiffTest {
+
+    @Test
+    public void testSplitLines() {
+        assertTrue("空文字は空リスト", LineDiff.splitLines("").isEmpty());
+        assertEquals("末尾の改行は行を増やさない", List.of("a", "b"), LineDiff.splitLines("a\nb\n"));
+        assertEquals("末尾に改行がなくても分割される", List.of("a", "b"), LineDiff.splitLines("a\nb"));
+    }
+
+    @Test
+    public void testIdenticalTextHasNoHunks() {
+        List<String> lines = List.of("a", "b", "c");
+        List<LineDiff.Edit> edits = LineDiff.diff(lines, lines);
+
+        assertEquals("全行が一致として扱われる", 3, edits.size());
+        assertTrue("ハンクは生成されない", LineDiff.toHunks(edits, 3).isEmpty());
+    }
+
+    @Test
+    public void testSingleLineChange() {
+        List<LineDiff.Edit> edits = LineDiff.diff(List.of("a", "b", "c"), List.of("a", "x", "c"));
+        List<LineDiff.Hunk> hunks = LineDiff.toHunks(edits, 3);
+
+        assertEquals("ハンクは1つ", 1, hunks.size());
+        LineDiff.Hunk hunk = hunks.get(0);
+        assertEquals("ヘッダーが正しい", "@@ -1,3 +1,3 @@", hunk.header());
+        assertEquals("行が正しい", List.of(" a", "-b", "+x", " c"), hunk.lines());
+    }
+
+    @Test
+    public void testInsertIntoEmptyText() {
+        List<LineDiff.Edit> edits = LineDiff.diff(List.of(), List.of("a", "b"));
+        List<LineDiff.Hunk> hunks = LineDiff.toHunks(edits, 3);
+
+        assertEquals("ハンクは1つ", 1, hunks.size());
+        assertEquals("空ファイルへの追加ヘッダー", "@@ -0,0 +1,2 @@", hunks.get(0).header());
+    }
+
+    @Test
+    public void testDistantChangesSplitIntoHunks() {
+        List<String> before = List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12");
+        List<String> after = List.of("1x", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12x");
+        List<LineDiff.Hunk> hunks = LineDiff.toHunks(LineDiff.diff(before, after), 3);
+
+        assertEquals("離れた変更は別ハンク", 2, hunks.size());
+        assertEquals("1つ目のヘッダー", "@@ -1,4 +1,4 @@", hunks.get(0).header());
+        assertEquals("2つ目のヘッダー", "@@ -9,4 +9,4 @@", hunks.get(1).header());
+    }
+
+    @Test
+    public void testEditScriptReproducesTarget() {
+        List<String> before = List.of("a", "b", "c", "a", "b", "b", "a");
+        List<String> after = List.of("c", "b", "a", "b", "a", "c");
+        List<LineDiff.Edit> edits = LineDiff.diff(before, after);
+
+        int changes = 0;
+        StringBuilder rebuilt = new StringBuilder();
+        for (LineDiff.Edit edit : edits) {
+            if (edit.op() != LineDiff.Op.EQUAL)
+                changes++;
+            if (edit.op() != LineDiff.Op.DELETE)
+                rebuilt.append(edit.line());
+        }
+        assertEquals("編集列から変更後テキストが再構成できる", String.join("", after), rebuilt.toString());
+        assertEquals("最短編集距離になる", 5, changes);
+    }
+
+    @Test
+    public void testLargeRewriteFallsBackToReplace() {
+        // 全行が異なる大きな書き換えでも、編集距離の2乗に比例するメモリを使わずに終わる
+        List<String> before = new ArrayList<>();
+        List<String> after = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            before.add("old " + i);
+            after.add(i % 1000 == 0 ? "old " + i : "new " + i);
+        }
+        List<LineDiff.Edit> edits = LineDiff.diff(before, after);
+
+        StringBuilder rebuilt = new StringBuilder();
+        StringBuilder original = new StringBuilder();
+        for (LineDiff.Edit edit : edits) {
+            if (edit.op() != LineDiff.Op.DELETE)
+                rebuilt.append(edit.line()).append('\n');
+            if (edit.op() != LineDiff.Op.INSERT)
+                original.append(edit.line()).append('\n');
+        }
+        assertEquals("変更後テキストが再構成できる", String.join("\n", after) + "\n", rebuilt.toString());
+        assertEquals("変更前テキストが再構成できる", String.join("\n", before) + "\n", original.toString());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import src.CommitManager;
+import src.DatabaseManager;
+import src.LockManager;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * LockManagerのテストクラス
+ */
+public class LockManagerTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        dbManager.createUser("testuser");
+        dbManager.createRepository("testrepo", 1);
+        dbManager.createBranch("main", 1);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    @Test
+    public void testContentionIsRecorded() throws InterruptedException {
+        LockManager lockManager = LockManager.getInstance();
+        long contendedBefore = lockManager.getStats().contended();
+
+        Lock lock = lockManager.lockRepository(42);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            lockManager.lockRepository(42).unlock();
+            acquired.countDown();
+        });
+        waiter.start();
+        assertFalse("保持中は他スレッドが取得できない", acquired.await(100, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        assertTrue("解放後に取得できる", acquired.await(5, TimeUnit.SECONDS));
+
+        LockManager.LockStats stats = lockManager.getStats();
+        assertEquals("待ちが記録される", contendedBefore + 1, stats.contended());
+        assertTrue("待ち時間が記録される", stats.maxWaitNanos() > 0);
+    }
+
+    @Test
+    public void testConcurrentCommitsToSameBranch() throws InterruptedException {
+        // 同じブランチへの同時コミットは全て成功し、履歴が一直線になる
+        int threads = 4;
+        int commitsPerThread = 5;
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int threadNo = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < commitsPerThread; i++) {
+                    boolean ok = commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(
+                            1, "Commit " + threadNo + "-" + i, 1, "content " + threadNo + "-" + i));
+                    if (!ok)
+                        failures.incrementAndGet();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals("失敗したコミットはない", 0, failures.get());
+        List<CommitManager.CommitRecord> commits = commitManager.getCommits(1);
+        assertEquals("全てのコミットが作成される", threads * commitsPerThread, commits.size());
+        for (CommitManager.CommitRecord commit : commits) {
+            assertEquals("親は直前のコミット", commit.id() - 1, commit.parentCommitId());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+package test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import src.LruCache;
+
+/**
+ * LruCacheのテストクラス
+ */
+public class LruCacheTest {
+
+    @Test
+    public void testEntryLimit() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        cache.put(3, "c");
+
+        assertEquals("最近使われたエントリは残る", "a", cache.get(1));
+        assertNull("最も長く使われていないエントリが破棄される", cache.get(2));
+        assertEquals("破棄数が記録される", 1, cache.getStats().evictions());
+    }
+
+    @Test
+    public void testWeightLimit() {
+        LruCache<Integer, String> cache = new LruCache<>(10, String::length);
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        cache.put(3, "cccc");
+
+        LruCache.CacheStats stats = cache.getStats();
+        assertEquals("重みの上限に収まる件数だけ残る", 2, stats.entries());
+        assertEquals("重みの合計が正しい", 8, stats.weight());
+        assertNull("古いエントリから破棄される", cache.get(1));
+
+        cache.put(4, "ddddddddddd");
+        assertNull("上限を超える値は格納しない", cache.get(4));
+        cache.remove(3);
+        assertEquals("削除で重みが減る", 4, cache.getStats().weight());
+    }
+
+    @Test
+    public void testHitRatio() {
+        LruCache<Integer, String> cache = new LruCache<>(10);
+        cache.put(1, "a");
+        cache.get(1);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+
+        LruCache.CacheStats stats = cache.getStats();
+        assertEquals("ヒット数", 3, stats.hits());
+        assertEquals("ミス数", 1, stats.misses());
+        assertEquals("ヒット率", 0.75, stats.hitRatio(), 0.0001);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import src.MergeJobQueue;
+import src.MergeResult;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MergeJobQueueのテストクラス
+ */
+public class MergeJobQueueTest {
+    private final MergeJobQueue queue = MergeJobQueue.getInstance();
+
+    /**
+     * ジョブが終了するまで待つ
+     */
+    private void awaitFinished(MergeJobQueue.MergeJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getStatus() == MergeJobQueue.Status.QUEUED || job.getStatus() == MergeJobQueue.Status.RUNNING) {
+            assertTrue("ジョブが時間内に終了する", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testJobCompletesWithResult() throws InterruptedException {
+        MergeJobQueue.MergeJob job = queue.submit(100, () -> new MergeResult.Success("done"));
+        awaitFinished(job);
+
+        assertEquals("完了状態になる", MergeJobQueue.Status.DONE, job.getStatus());
+        assertEquals("結果が保持される", "done", ((MergeResult.Success) job.getResult()).message());
+        assertSame("IDで取得できる", job, queue.getJob(job.getId()));
+    }
+
+    @Test
+    public void testFailedJob() throws InterruptedException {
+        MergeJobQueue.MergeJob job = queue.submit(101, () -> {
+            throw new IllegalStateException("boom");
+        });
+        awaitFinished(job);
+
+        assertEquals("失敗状態になる", MergeJobQueue.Status.FAILED, job.getStatus());
+        assertEquals("エラーメッセージが保持される", "boom", job.getError());
+    }
+
+    @Test
+    public void testErrorDoesNotBlockLaterJobs() throws InterruptedException {
+        MergeJobQueue.MergeJob failed = queue.submit(102, () -> {
+            throw new OutOfMemoryError("heap");
+        });
+        MergeJobQueue.MergeJob next = queue.submit(102, () -> new MergeResult.Success("next"));
+        awaitFinished(failed);
+        awaitFinished(next);
+
+        assertEquals("Errorでも失敗状態になる", MergeJobQueue.Status.FAILED, failed.getStatus());
+        assertEquals("エラーメッセージが保持される", "heap", failed.getError());
+        assertEquals("同じリポジトリの後続ジョブが実行される", MergeJobQueue.Status.DONE, next.getStatus());
+    }
+
+    @Test
+    public void testSameRepositoryIsSerialized() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        MergeJobQueue.MergeJob first = queue.submit(200, () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return new MergeResult.Success("first");
+        });
+        MergeJobQueue.MergeJob second = queue.submit(200, () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            running.decrementAndGet();
+            return new MergeResult.Success("second");
+        });
+        // 別リポジトリのジョブは先行ジョブの完了を待たない
+        MergeJobQueue.MergeJob other = queue.submit(201, () -> new MergeResult.Success("other"));
+        awaitFinished(other);
+
+        assertEquals("同じリポジトリの後続ジョブは待機する", MergeJobQueue.Status.QUEUED, second.getStatus());
+        release.countDown();
+        awaitFinished(first);
+        awaitFinished(second);
+
+        assertEquals("後続ジョブも完了する", MergeJobQueue.Status.DONE, second.getStatus());
+        assertEquals("同じリポジトリのジョブは同時に実行されない", 1, maxRunning.get());
+    }
+}
\ No newline at end of file
@@ -8,7 +8,10 @@ import src.MergeManager;
 import src.MergeResult;
 import src.DatabaseManager;
 import src.CommitManager;
+import src.CommitGraph;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * MergeManagerのテストクラス
@@ -161,4 +164,141 @@ public class MergeManagerTest {
         MergeResult forceResult = mergeManager.executeMerge(forceStrategy, 1, 2);
         assertTrue("強制マージで成功", forceResult instanceof MergeResult.Success);
     }
+
+    @Test
+    public void testFastForwardMerge() {
+        // 両ブランチを同じマージコミットに揃えた後、main のみ進める
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Main content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Feature content"));
+        mergeManager.performForceMerge(1, 2, "Merged content");
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main ahead", 1, "Ahead content"));
+        int commitCount = commitManager.getCommits(1).size();
+
+        MergeResult result = mergeManager.performStrictMerge(1, 2);
+
+        assertTrue("Fast-forwardで成功する", result instanceof MergeResult.Success);
+        assertEquals("成功メッセージが正しい", "Fast-forwardマージが完了しました", ((MergeResult.Success) result).message());
+        assertEquals("新しいコミットは作成されない", commitCount, commitManager.getCommits(1).size());
+        assertEquals("遅れていたブランチが進む", commitManager.getBranchHeadCommitId(1), commitManager.getBranchHeadCommitId(2));
+
+        MergeResult again = mergeManager.performStrictMerge(1, 2);
+        assertEquals("同じHEAD同士は何もしない", "既に最新です", ((MergeResult.Success) again).message());
+    }
+
+    @Test
+    public void testStrictMergeConflictWithoutContent() {
+        // 内容を要求しない場合、コンフリクト結果に内容は含まれない
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Main content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Feature content"));
+
+        MergeResult result = mergeManager.performStrictMerge(1, 2, false);
+
+        assertTrue("コンフリクトが発生する", result instanceof MergeResult.Conflict);
+        MergeResult.Conflict conflict = (MergeResult.Conflict) result;
+        assertNull("ブランチ1の内容は含まれない", conflict.content1());
+        assertNull("ブランチ2の内容は含まれない", conflict.content2());
+    }
+
+    @Test
+    public void testOctopusMerge() {
+        // 3つのブランチを1つのマージコミットにまとめる
+        dbManager.createBranch("release", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Same content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Same content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(3, "Release commit", 1, "Same content"));
+        int commitCount = commitManager.getCommits(1).size();
+
+        MergeResult result = mergeManager.performOctopusMerge(List.of(1, 2, 3), true);
+
+        assertTrue("マージが成功する", result instanceof MergeResult.Success);
+        assertEquals("マージコミットは1つだけ作成される", commitCount + 1, commitManager.getCommits(1).size());
+        int mergeCommitId = commitManager.getBranchHeadCommitId(1);
+        assertEquals("ブランチ2も同じHEAD", mergeCommitId, (int) commitManager.getBranchHeadCommitId(2));
+        assertEquals("ブランチ3も同じHEAD", mergeCommitId, (int) commitManager.getBranchHeadCommitId(3));
+
+        List<Integer> logIds = new ArrayList<>();
+        try {
+            commitManager.walkLog(mergeCommitId, 10, false, commit -> logIds.add(commit.id()));
+        } catch (java.io.IOException e) {
+            fail(e.getMessage());
+        }
+        assertEquals("全ての親が履歴に含まれる", List.of(mergeCommitId, 3, 2, 1), logIds);
+
+        CommitGraph.Ancestry ancestry = new CommitGraph().getAncestry(3, mergeCommitId);
+        assertTrue("3番目の親も祖先として扱われる", ancestry.aAncestorOfB());
+    }
+
+    @Test
+    public void testOctopusMergeConflict() {
+        // 1つでも内容が異なるブランチがあればコミットは作成されない
+        dbManager.createBranch("release", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Same content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Same content"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(3, "Release commit", 1, "Other content"));
+        int commitCount = commitManager.getCommits(1).size();
+
+        MergeResult result = mergeManager.performOctopusMerge(List.of(1, 2, 3), true);
+
+        assertTrue("コンフリクトが発生する", result instanceof MergeResult.Conflict);
+        MergeResult.Conflict conflict = (MergeResult.Conflict) result;
+        assertEquals("先頭のブランチが報告される", 1, conflict.branchId1());
+        assertEquals("内容の異なるブランチが報告される", 3, conflict.branchId2());
+        assertEquals("異なる内容が含まれる", "Other content", conflict.content2());
+        assertEquals("コミットは作成されない", commitCount, commitManager.getCommits(1).size());
+        assertEquals("HEADは変わらない", 1, (int) commitManager.getBranchHeadCommitId(1));
+    }
+
+    @Test
+    public void testOctopusFastForward() {
+        // 他の全ブランチの子孫であるHEADがあれば、全ブランチをそこへ進める
+        dbManager.createBranch("release", 1);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Base"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Base"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(3, "Release commit", 1, "Base"));
+        mergeManager.performOctopusMerge(List.of(1, 2, 3), true);
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature ahead", 1, "Ahead"));
+        int head = commitManager.getBranchHeadCommitId(2);
+
+        MergeResult result = mergeManager.performOctopusMerge(List.of(1, 3, 2), true);
+
+        assertEquals("Fast-forwardで成功する", "Fast-forwardマージが完了しました", ((MergeResult.Success) result).message());
+        assertEquals("ブランチ1が進む", head, (int) commitManager.getBranchHeadCommitId(1));
+        assertEquals("ブランチ3が進む", head, (int) commitManager.getBranchHeadCommitId(3));
+    }
+
+    @Test
+    public void testPreviewMerge() {
+        // プレビューは何も書き込まず、結果の種類と差分を返す
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "line 1\nmain"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "line 1\nfeature"));
+        int commitCount = commitManager.getCommits(1).size();
+
+        MergeManager.MergePreview preview = mergeManager.previewMerge(1, 2);
+
+        assertEquals("コンフリクトと判定される", MergeManager.MergeOutcome.CONFLICT, preview.outcome());
+        assertEquals("ハンクが含まれる", 1, preview.hunks().size());
+        assertTrue("差分行が含まれる", preview.hunks().get(0).lines().contains("+feature"));
+        assertEquals("コミットは作成されない", commitCount, commitManager.getCommits(1).size());
+        assertEquals("HEADは変わらない", 1, (int) commitManager.getBranchHeadCommitId(1));
+
+        MergeResult result = mergeManager.performStrictMerge(1, 2);
+        assertTrue("プレビューと同じ結果になる", result instanceof MergeResult.Conflict);
+        assertNull("存在しないブランチはnull", mergeManager.previewMerge(1, 999));
+    }
+
+    @Test
+    public void testPreviewFastForwardAndClean() {
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main commit", 1, "Same"));
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(2, "Feature commit", 1, "Same"));
+
+        MergeManager.MergePreview clean = mergeManager.previewMerge(1, 2);
+        assertEquals("内容が一致すればクリーン", MergeManager.MergeOutcome.CLEAN, clean.outcome());
+        assertTrue("ハンクは空", clean.hunks().isEmpty());
+        assertTrue("実際のマージも成功する", mergeManager.performStrictMerge(1, 2) instanceof MergeResult.Success);
+
+        commitManager.executeCommitCommand(commitManager.new CreateCommitCommand(1, "Main ahead", 1, "Ahead"));
+        MergeManager.MergePreview fastForward = mergeManager.previewMerge(1, 2);
+        assertEquals("Fast-forwardと判定される", MergeManager.MergeOutcome.FAST_FORWARD, fastForward.outcome());
+        assertEquals("進める先はブランチ1のHEAD", fastForward.headCommitId1(), fastForward.targetCommitId());
+    }
 }
\ No newline at end of file
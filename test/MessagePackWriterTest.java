@@ -0,0 +1,109 @@
+package test;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import src.MessagePackWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessagePackWriterのテストクラス
+ */
+public class MessagePackWriterTest {
+
+    /**
+     * int配列をバイト配列に変換
+     */
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void testIntegers() {
+        assertArrayEquals("正のfixint", bytes(0x7f), new MessagePackWriter().integer(127).toByteArray());
+        assertArrayEquals("uint8", bytes(0xcc, 0xff), new MessagePackWriter().integer(255).toByteArray());
+        assertArrayEquals("uint16", bytes(0xcd, 0x01, 0x00), new MessagePackWriter().integer(256).toByteArray());
+        assertArrayEquals("uint32", bytes(0xce, 0x00, 0x01, 0x00, 0x00),
+            new MessagePackWriter().integer(65536).toByteArray());
+        assertArrayEquals("負のfixint", bytes(0xff), new MessagePackWriter().integer(-1).toByteArray());
+        assertArrayEquals("int8", bytes(0xd0, 0xdf), new MessagePackWriter().integer(-33).toByteArray());
+        assertArrayEquals("int16", bytes(0xd1, 0xff, 0x7f), new MessagePackWriter().integer(-129).toByteArray());
+        assertArrayEquals("int64", bytes(0xd3, 0x80, 0, 0, 0, 0, 0, 0, 0),
+            new MessagePackWriter().integer(Long.MIN_VALUE).toByteArray());
+    }
+
+    @Test
+    public void testStrings() {
+        assertArrayEquals("fixstr", bytes(0xa2, 'h', 'i'), new MessagePackWriter().string("hi").toByteArray());
+        assertArrayEquals("マルチバイト文字はUTF-8で書き込まれる", bytes(0xa3, 0xe3, 0x81, 0x82),
+            new MessagePackWriter().string("あ").toByteArray());
+        assertArrayEquals("サロゲートペア", bytes(0xa4, 0xf0, 0x9f, 0x98, 0x80),
+            new MessagePackWriter().string("😀").toByteArray());
+        assertArrayEquals("nullはnil", bytes(0xc0), new MessagePackWriter().string(null).toByteArray());
+
+        byte[] str8 = new MessagePackWriter().string("a".repeat(40)).toByteArray();
+        assertEquals("32バイト以上はstr8", 0xd9, str8[0] & 0xff);
+        assertEquals("str8の長さ", 40, str8[1] & 0xff);
+        assertEquals("全体の長さ", 42, str8.length);
+    }
+
+    @Test
+    public void testValue() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", 1);
+        map.put("ok", true);
+        map.put("none", null);
+        map.put("list", List.of(1, "a"));
+
+        byte[] expected = bytes(0x84,
+            0xa2, 'i', 'd', 0x01,
+            0xa2, 'o', 'k', 0xc3,
+            0xa4, 'n', 'o', 'n', 'e', 0xc0,
+            0xa4, 'l', 'i', 's', 't', 0x92, 0x01, 0xa1, 'a');
+        assertArrayEquals("Map・List・nullの変換", expected, new MessagePackWriter().value(map).toByteArray());
+    }
+
+    @Test
+    public void testJsonMatchesValue() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("label", "say \"hi\"\n改行");
+        map.put("count", -5);
+        map.put("ratio", 0.5);
+        map.put("flag", false);
+        map.put("empty", List.of());
+
+        byte[] fromJson = new MessagePackWriter()
+            .json("{ \"label\": \"say \\\"hi\\\"\\n\\u6539行\", \"count\": -5, \"ratio\": 0.5, \"flag\": false, \"empty\": [] }")
+            .toByteArray();
+        assertArrayEquals("JSONからの変換結果が直接書き込んだ場合と一致する",
+            new MessagePackWriter().value(map).toByteArray(), fromJson);
+    }
+
+    @Test
+    public void testJsonLargeArrayHeader() {
+        // 要素数が16以上の配列は16ビットのヘッダーになる
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append(i);
+        }
+        json.append(']');
+
+        byte[] encoded = new MessagePackWriter(16).json(json).toByteArray();
+        assertArrayEquals("array16のヘッダー", bytes(0xdc, 0x00, 0x14), Arrays.copyOf(encoded, 3));
+        assertEquals("ヘッダーと要素のみの長さ", 3 + 20, encoded.length);
+        assertEquals("最後の要素", 19, encoded[encoded.length - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJson() {
+        new MessagePackWriter().json("{\"a\":}");
+    }
+}
\ No newline at end of file
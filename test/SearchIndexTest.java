@@ -0,0 +1,209 @@
+package test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.After;
+import static org.junit.Assert.*;
+import src.*;
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * SearchIndexのテストクラス
+ */
+public class SearchIndexTest {
+    private DatabaseManager dbManager;
+    private CommitManager commitManager;
+    private SearchIndex searchIndex;
+    private static final String TEST_DB_PATH = "database/test_database.db";
+
+    @Before
+    public void setUp() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        commitManager = new CommitManager();
+        searchIndex = new SearchIndex();
+
+        dbManager.createUser("alice");
+        dbManager.createRepository("project", 1);
+        dbManager.createRepository("other", 1);
+        dbManager.createBranch("main", 1);
+        dbManager.createBranch("main", 2);
+    }
+
+    @After
+    public void tearDown() {
+        File testDb = new File(TEST_DB_PATH);
+        if (testDb.exists()) {
+            testDb.delete();
+        }
+    }
+
+    private void commit(int branchId, String message, Map<String, String> files) {
+        assertTrue("コミットできる", commitManager.executeCommitCommand(
+            commitManager.new CreateCommitCommand(branchId, message, 1, files)));
+    }
+
+    /**
+     * 検索結果を「種類:ファイル名またはメッセージ」の一覧に変換
+     */
+    private List<String> describe(SearchIndex.SearchPage page) {
+        List<String> result = new ArrayList<>();
+        for (SearchIndex.SearchHit hit : page.hits()) {
+            result.add(hit.fileId() != null ? "file:" + hit.filename() : "commit:" + hit.message());
+        }
+        return result;
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals("漢字・かなはbigramになる", " 日本 本語 語の の検 検索 ", SearchIndex.tokenize("日本語の検索"));
+        assertEquals("英数字はそのまま", "fix bug 42", SearchIndex.tokenize("fix bug 42"));
+        assertEquals("1文字の場合はその文字", "a  字  b", SearchIndex.tokenize("a 字 b"));
+        assertEquals("混在", "v2 リリ リー ース ", SearchIndex.tokenize("v2リリース"));
+    }
+
+    @Test
+    public void testToMatchQuery() {
+        assertEquals("語ごとの語句になる", "\"hello\" \"日本 本語\"", SearchIndex.toMatchQuery("hello  日本語"));
+        assertEquals("記号は区切りになる", "\"foo bar\"", SearchIndex.toMatchQuery("foo-bar"));
+        assertEquals("FTS5の構文は無効化される", "\"a\" \"OR\" \"b\"", SearchIndex.toMatchQuery("a OR b\""));
+        assertNull("空の検索語", SearchIndex.toMatchQuery("  "));
+        assertNull("記号のみ", SearchIndex.toMatchQuery("\"*"));
+    }
+
+    @Test
+    public void testSearchMessagesAndFiles() {
+        commit(1, "Add parser", Map.of("parser.txt", "tokenizer and grammar"));
+        commit(1, "検索機能を追加", Map.of("docs.md", "全文検索の説明です\nsecond line"));
+        commit(1, "Refactor", Map.of("main.txt", "calls the parser"));
+        commit(2, "Parser in other repository", Map.of("parser.txt", "other"));
+
+        assertEquals("メッセージ・ファイル名・内容が一致し、ファイル名の一致が上位になる",
+            List.of("file:parser.txt", "commit:Add parser", "file:main.txt"),
+            describe(searchIndex.search(1, "parser", 10, 0)));
+        assertEquals("日本語の部分一致", List.of("commit:検索機能を追加", "file:docs.md"),
+            describe(searchIndex.search(1, "検索", 10, 0)).stream().sorted().toList());
+        assertEquals("すべての語を含むものだけ", List.of("file:docs.md"),
+            describe(searchIndex.search(1, "全文検索 second", 10, 0)));
+        assertTrue("含まれない語", searchIndex.search(1, "missing", 10, 0).hits().isEmpty());
+        assertEquals("リポジトリで絞り込まれる", 2, searchIndex.search(2, "parser", 10, 0).hits().size());
+
+        SearchIndex.SearchHit hit = searchIndex.search(1, "second", 10, 0).hits().get(0);
+        assertEquals("ファイルを追加したコミット", "検索機能を追加", hit.message());
+        assertEquals("抜粋の改行は空白になる", "全文検索の説明です second line", hit.snippet());
+        assertTrue("関連度は正の値", hit.score() > 0);
+    }
+
+    @Test
+    public void testPagination() {
+        for (int i = 1; i <= 5; i++) {
+            commit(1, "release " + i, Map.of("file" + i + ".txt", "content " + i));
+        }
+
+        SearchIndex.SearchPage first = searchIndex.search(1, "release", 2, 0);
+        assertEquals("1ページ目の件数", 2, first.hits().size());
+        assertEquals("次のページの offset", Integer.valueOf(2), first.nextOffset());
+
+        SearchIndex.SearchPage last = searchIndex.search(1, "release", 2, 4);
+        assertEquals("最後のページの件数", 1, last.hits().size());
+        assertNull("最後のページには次がない", last.nextOffset());
+
+        Set<Integer> commitIds = new HashSet<>();
+        for (int offset = 0; offset < 5; offset += 2) {
+            searchIndex.search(1, "release", 2, offset).hits().forEach(h -> commitIds.add(h.commitId()));
+        }
+        assertEquals("ページをまたいで重複しない", 5, commitIds.size());
+    }
+
+    @Test
+    public void testMergeAndImportAreIndexed() throws IOException {
+        dbManager.createBranch("feature", 1);
+        commit(1, "Initial", Map.of("a.txt", "alpha"));
+        commit(3, "Feature", Map.of("b.txt", "beta"));
+        new MergeManager().performForceMerge(1, 3, "merged gamma");
+        assertEquals("マージの内容も登録される", 1, searchIndex.search(1, "gamma", 10, 0).hits().size());
+
+        BundleManager bundleManager = new BundleManager();
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        bundleManager.export(1, bundle, true);
+        int imported = bundleManager.importBundle(new ByteArrayInputStream(bundle.toByteArray()), 1, null).repositoryId();
+        assertEquals("インポートしたリポジトリも検索できる",
+            describe(searchIndex.search(1, "beta", 10, 0)), describe(searchIndex.search(imported, "beta", 10, 0)));
+    }
+
+    /**
+     * 語を含む登録件数をFTS5の索引から直接数える
+     */
+    private int documents(String term) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS temp.search_vocab USING fts5vocab(main, search_index, row)");
+            try (ResultSet rs = stmt.executeQuery("SELECT doc FROM temp.search_vocab WHERE term = '" + term + "'")) {
+                return rs.next() ? rs.getInt("doc") : 0;
+            }
+        }
+    }
+
+    @Test
+    public void testIndexDoesNotStoreContent() throws SQLException {
+        commit(1, "Add parser", Map.of("parser.txt", "tokenizer and grammar"));
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT body FROM search_index")) {
+            while (rs.next())
+                assertNull("本文の写しを保持しない", rs.getString("body"));
+        }
+        SearchIndex.SearchHit hit = searchIndex.search(1, "grammar", 10, 0).hits().get(0);
+        assertEquals("抜粋はfile行から作る", "tokenizer and grammar", hit.snippet());
+    }
+
+    @Test
+    public void testRemoveDeletesIndexedTokens() throws SQLException {
+        commit(1, "Add parser", Map.of("parser.txt", "tokenizer and grammar"));
+        commit(2, "Add parser", Map.of("parser.txt", "tokenizer and grammar"));
+        assertEquals("両方のリポジトリの内容が登録される", 2, documents("grammar"));
+
+        try (Connection conn = dbManager.getConnection()) {
+            searchIndex.removeRepository(conn, 1);
+        }
+        assertEquals("索引から語が取り除かれる", 1, documents("grammar"));
+        assertTrue("削除したリポジトリは一致しない", searchIndex.search(1, "grammar", 10, 0).hits().isEmpty());
+        assertEquals("他のリポジトリは残る", 2, searchIndex.search(2, "parser", 10, 0).hits().size());
+
+        try (Connection conn = dbManager.getConnection()) {
+            searchIndex.removeCommits(conn, List.of(2));
+        }
+        assertEquals("ファイルの語も取り除かれる", 0, documents("grammar"));
+        assertEquals("メッセージの語も取り除かれる", 0, documents("parser"));
+    }
+
+    @Test
+    public void testMigrateStoredIndex() throws SQLException {
+        commit(1, "Add parser", Map.of("parser.txt", "tokenizer and grammar"));
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE search_index");
+            stmt.executeUpdate("DROP TABLE search_entry");
+            stmt.executeUpdate("CREATE VIRTUAL TABLE search_index USING fts5(filename, body, "
+                + "repository_id UNINDEXED, commit_id UNINDEXED, file_id UNINDEXED)");
+            stmt.executeUpdate("INSERT INTO search_index(filename, body, repository_id, commit_id, file_id) "
+                + "VALUES('parser.txt', 'tokenizer and grammar', 1, 1, 1), ('', 'Add parser', 1, 1, NULL)");
+        }
+        assertTrue("スキーマを移行できる", dbManager.ensureSchema());
+        assertTrue("2回目も成功する", dbManager.ensureSchema());
+
+        assertEquals("移行した内容で検索できる", List.of("file:parser.txt", "commit:Add parser"),
+            describe(searchIndex.search(1, "parser", 10, 0)));
+        try (Connection conn = dbManager.getConnection()) {
+            searchIndex.removeCommits(conn, List.of(1));
+        }
+        assertEquals("移行した内容も取り除ける", 0, documents("parser"));
+    }
+}
\ No newline at end of file